@@ -0,0 +1,227 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Throughput of CertificateService.generateCertificate for all 16 combinations of the four template images
+ * and each of the three font family branches, with and without the static layer. Firestore is stubbed with an in-memory template and
+ * the PDF store never hits, so every operation renders a certificate.
+ *
+ * Run with: mvn -P jmh test-compile exec:exec
+ * The default arguments add the GC profiler (gc.alloc.rate.norm is bytes allocated per certificate);
+ * the size of the generated PDFs is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CertificateRenderBenchmark {
+
+    private static final String EVENT_ID = "benchmark-event";
+    private static final String CERTIFICATE_ID = "benchmark-certificate";
+    private static final String SIGNATORY = "Maria Santos";
+
+    @Param({"false", "true"})
+    public boolean background;
+
+    @Param({"false", "true"})
+    public boolean logo;
+
+    @Param({"false", "true"})
+    public boolean watermark;
+
+    @Param({"false", "true"})
+    public boolean signature;
+
+    // Any other family takes the Times Roman branch, so it would only repeat "Times New Roman"
+    @Param({"Times New Roman", "Helvetica", "Courier"})
+    public String fontFamily;
+
+    @Param({"true", "false"})
+    public boolean staticLayer;
+
+    private CertificateService certificateService;
+    private Map<String, String>[] attendees;
+    private int next;
+    private long outputBytes;
+    private long certificates;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        Certificate template = template();
+
+        // Version check and template lookup done by getCompiledTemplate
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference certificatesCollection = mock(CollectionReference.class);
+        Query versionQuery = mock(Query.class);
+        ApiFuture<QuerySnapshot> versionFuture = mock(ApiFuture.class);
+        QuerySnapshot versionSnapshot = mock(QuerySnapshot.class);
+        QueryDocumentSnapshot versionDoc = mock(QueryDocumentSnapshot.class);
+        when(firestore.collection("certificates")).thenReturn(certificatesCollection);
+        when(certificatesCollection.whereEqualTo("eventId", EVENT_ID)).thenReturn(versionQuery);
+        when(versionQuery.select("eventId")).thenReturn(versionQuery);
+        when(versionQuery.limit(1)).thenReturn(versionQuery);
+        when(versionQuery.get()).thenReturn(versionFuture);
+        when(versionFuture.get()).thenReturn(versionSnapshot);
+        when(versionSnapshot.getDocuments()).thenReturn(List.of(versionDoc));
+        when(versionDoc.getId()).thenReturn(CERTIFICATE_ID);
+        when(versionDoc.getUpdateTime()).thenReturn(Timestamp.ofTimeSecondsAndNanos(1_700_000_000L, 0));
+
+        DocumentReference certificateRef = mock(DocumentReference.class);
+        ApiFuture<DocumentSnapshot> certificateFuture = mock(ApiFuture.class);
+        DocumentSnapshot certificateDoc = mock(DocumentSnapshot.class);
+        when(certificatesCollection.document(CERTIFICATE_ID)).thenReturn(certificateRef);
+        when(certificateRef.get()).thenReturn(certificateFuture);
+        when(certificateFuture.get()).thenReturn(certificateDoc);
+        when(certificateDoc.exists()).thenReturn(true);
+        when(certificateDoc.toObject(Certificate.class)).thenReturn(template);
+
+        DocumentSnapshot eventDoc = mock(DocumentSnapshot.class);
+        when(eventDoc.exists()).thenReturn(true);
+        when(eventDoc.getString("eventName")).thenReturn("Tech Summit 2025");
+        when(eventDoc.get("date")).thenReturn("June 01, 2025");
+        EventMetadataCache eventMetadataCache = mock(EventMetadataCache.class);
+        when(eventMetadataCache.get(EVENT_ID)).thenReturn(new EventMetadataCache.EventMetadata(EVENT_ID, eventDoc));
+
+        certificateService = new CertificateService(firestore, eventMetadataCache,
+                new CertificatePdfStore(new EmptyBlobStore(), new SimpleMeterRegistry()), staticLayer, 1);
+
+        attendees = new Map[64];
+        for (int i = 0; i < attendees.length; i++) {
+            Map<String, String> attendee = new HashMap<>();
+            attendee.put("firstName", "Attendee");
+            attendee.put("lastName", "Number " + i);
+            attendee.put("email", "attendee" + i + "@example.com");
+            attendees[i] = attendee;
+        }
+
+        // generateCertificate logs every step; writing that to the console would dominate the measurement
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+        if (certificates > 0) {
+            System.out.printf("[CertificateRenderBenchmark] background=%s logo=%s watermark=%s signature=%s"
+                    + " fontFamily=%s staticLayer=%s: %d bytes per certificate%n",
+                    background, logo, watermark, signature, fontFamily, staticLayer, outputBytes / certificates);
+        }
+    }
+
+    @Benchmark
+    public byte[] generateCertificate() throws IOException {
+        byte[] pdf = certificateService.generateCertificate(attendees[next++ & (attendees.length - 1)], EVENT_ID);
+        outputBytes += pdf.length;
+        certificates++;
+        return pdf;
+    }
+
+    private Certificate template() throws IOException {
+        Certificate template = new Certificate();
+        template.setId(CERTIFICATE_ID);
+        template.setEventId(EVENT_ID);
+        template.setTitle("CERTIFICATE OF PARTICIPATION");
+        template.setSubtitle("This certificate is proudly presented to");
+        template.setDescription("for actively participating in");
+        template.setFontFamily(fontFamily);
+        template.setShowQRCode(true);
+        template.setSignatories(List.of(Map.of("name", SIGNATORY, "title", "Dean")));
+
+        if (background) {
+            template.setBackgroundImage(pngBase64(1600, 1200));
+        }
+        if (logo) {
+            template.setLogoImage(pngBase64(400, 400));
+        }
+        if (watermark) {
+            template.setWatermarkImage(pngBase64(300, 300));
+        }
+        if (signature) {
+            template.setSignatureImages(Map.of(SIGNATORY, pngBase64(400, 150)));
+        }
+        return template;
+    }
+
+    private static String pngBase64(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int y = 0; y < height; y += 20) {
+            g2d.setColor(new java.awt.Color((y * 7) % 256, (y * 3) % 256, 200));
+            g2d.fillRect(0, y, width, 20);
+        }
+        g2d.dispose();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+
+    /**
+     * A store that never has the certificate, so every call renders
+     */
+    private static class EmptyBlobStore implements BlobStore {
+        @Override
+        public byte[] get(String path) {
+            return null;
+        }
+
+        @Override
+        public boolean putIfAbsent(String path, byte[] content, String contentType) {
+            return false;
+        }
+
+        @Override
+        public boolean delete(String path) {
+            return false;
+        }
+
+        @Override
+        public int deletePrefix(String prefix) {
+            return 0;
+        }
+    }
+}
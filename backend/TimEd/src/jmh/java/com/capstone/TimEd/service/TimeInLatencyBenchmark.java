@@ -0,0 +1,165 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Time-in latency with every Firestore round trip delayed by {@code roundTripMs}. markAttendance is the
+ * current path (event, user and selfie reads issued together, then one create()); sequentialReads replays the
+ * old path, which waited on a duplicate-check query, the event, the user and the selfie one after another
+ * before writing.
+ *
+ * Sample-time mode reports p0.50 and p0.99 for both. Run with:
+ * mvn -P jmh test-compile exec:exec -Djmh.args=TimeInLatencyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeInLatencyBenchmark {
+
+    private static final String EVENT_ID = "benchmark-event";
+    private static final String USER_ID = "benchmark-user";
+
+    @Param({"10", "40"})
+    public long roundTripMs;
+
+    private ScheduledExecutorService network;
+    private Firestore firestore;
+    private EventMetadataCache eventMetadataCache;
+    private SelfieService selfieService;
+    private AttendanceService attendanceService;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        network = Executors.newScheduledThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "simulated-firestore");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        DocumentSnapshot eventDoc = mock(DocumentSnapshot.class);
+        when(eventDoc.exists()).thenReturn(true);
+        when(eventDoc.getString("eventName")).thenReturn("Tech Summit 2025");
+        EventMetadataCache.EventMetadata event = new EventMetadataCache.EventMetadata(EVENT_ID, eventDoc);
+
+        DocumentSnapshot userDoc = mock(DocumentSnapshot.class);
+        when(userDoc.exists()).thenReturn(true);
+        when(userDoc.getString("firstName")).thenReturn("Ana");
+        when(userDoc.getString("email")).thenReturn("ana@example.com");
+        when(userDoc.getString("departmentId")).thenReturn("cs");
+
+        firestore = mock(Firestore.class);
+        CollectionReference users = mock(CollectionReference.class);
+        DocumentReference userRef = mock(DocumentReference.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(users.document(anyString())).thenReturn(userRef);
+        when(userRef.get()).thenAnswer(invocation -> roundTrip(userDoc));
+
+        CollectionReference events = mock(CollectionReference.class);
+        DocumentReference eventRef = mock(DocumentReference.class);
+        CollectionReference attendees = mock(CollectionReference.class);
+        DocumentReference attendeeRef = mock(DocumentReference.class);
+        when(firestore.collection("events")).thenReturn(events);
+        when(events.document(anyString())).thenReturn(eventRef);
+        when(eventRef.collection("attendees")).thenReturn(attendees);
+        when(attendees.document(anyString())).thenReturn(attendeeRef);
+        when(attendeeRef.create(anyMap())).thenAnswer(invocation -> roundTrip(mock(WriteResult.class)));
+        when(attendees.get()).thenAnswer(invocation -> roundTrip(null)); // the old duplicate-check query
+
+        // Legacy manual time-ins are checked alongside the other reads
+        CollectionReference legacyAttendees = mock(CollectionReference.class);
+        Query legacyQuery = mock(Query.class);
+        QuerySnapshot noLegacyTimeIn = mock(QuerySnapshot.class);
+        when(noLegacyTimeIn.isEmpty()).thenReturn(true);
+        when(firestore.collection("attendees")).thenReturn(legacyAttendees);
+        when(legacyAttendees.whereEqualTo(anyString(), any())).thenReturn(legacyQuery);
+        when(legacyQuery.whereEqualTo(anyString(), any())).thenReturn(legacyQuery);
+        when(legacyQuery.limit(anyInt())).thenReturn(legacyQuery);
+        when(legacyQuery.get()).thenAnswer(invocation -> roundTrip(noLegacyTimeIn));
+
+        eventMetadataCache = mock(EventMetadataCache.class);
+        when(eventMetadataCache.getAsync(EVENT_ID)).thenAnswer(invocation -> roundTrip(event));
+
+        // The selfie index lookup is one more document read
+        selfieService = mock(SelfieService.class);
+        when(selfieService.findSelfieUrlAsync(USER_ID, EVENT_ID)).thenAnswer(invocation -> {
+            CompletableFuture<String> selfie = new CompletableFuture<>();
+            network.schedule(() -> selfie.complete(null), roundTripMs, TimeUnit.MILLISECONDS);
+            return selfie;
+        });
+
+        attendanceService = new AttendanceService(firestore, null, mock(CertificateJobService.class),
+                mock(DepartmentCache.class), selfieService, new SimpleMeterRegistry(), eventMetadataCache);
+
+        // markAttendance logs every call; the console would dominate the measurement
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(stdout);
+        network.shutdownNow();
+    }
+
+    @Benchmark
+    public String markAttendance() {
+        return attendanceService.markAttendance(EVENT_ID, USER_ID, null, null, false);
+    }
+
+    @Benchmark
+    public Object sequentialReads() throws Exception {
+        firestore.collection("events").document(EVENT_ID).collection("attendees").get().get();
+        eventMetadataCache.getAsync(EVENT_ID).get();
+        firestore.collection("users").document(USER_ID).get().get();
+        selfieService.findSelfieUrlAsync(USER_ID, EVENT_ID).get();
+        return firestore.collection("events").document(EVENT_ID).collection("attendees").document(USER_ID)
+                .create(Map.of()).get();
+    }
+
+    private <T> ApiFuture<T> roundTrip(T value) {
+        SettableApiFuture<T> future = SettableApiFuture.create();
+        network.schedule(() -> future.set(value), roundTripMs, TimeUnit.MILLISECONDS);
+        return future;
+    }
+}
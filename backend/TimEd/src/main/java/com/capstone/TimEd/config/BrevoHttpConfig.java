@@ -0,0 +1,145 @@
+package com.capstone.TimEd.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The one HTTP client used for Brevo calls. Sharing it keeps TLS connections alive between sends
+ * instead of paying a handshake per email.
+ */
+@Configuration
+public class BrevoHttpConfig {
+
+    @Value("${app.brevo.http.max-idle-connections:8}")
+    private int maxIdleConnections;
+
+    @Value("${app.brevo.http.keep-alive-ms:300000}")
+    private long keepAliveMs;
+
+    @Value("${app.brevo.http.max-requests:32}")
+    private int maxRequests;
+
+    @Value("${app.brevo.http.max-requests-per-host:8}")
+    private int maxRequestsPerHost;
+
+    @Value("${app.brevo.http.connect-timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${app.brevo.http.read-timeout-ms:30000}")
+    private long readTimeoutMs;
+
+    @Value("${app.brevo.http.write-timeout-ms:30000}")
+    private long writeTimeoutMs;
+
+    @Value("${app.brevo.http.call-timeout-ms:60000}")
+    private long callTimeoutMs;
+
+    @Bean(name = "brevoHttpClient")
+    public OkHttpClient brevoHttpClient(MeterRegistry meterRegistry) {
+        return build(meterRegistry, maxIdleConnections, keepAliveMs, maxRequests, maxRequestsPerHost,
+                connectTimeoutMs, readTimeoutMs, writeTimeoutMs, callTimeoutMs);
+    }
+
+    public static OkHttpClient build(MeterRegistry meterRegistry, int maxIdleConnections, long keepAliveMs,
+                                     int maxRequests, int maxRequestsPerHost, long connectTimeoutMs,
+                                     long readTimeoutMs, long writeTimeoutMs, long callTimeoutMs) {
+        ConnectionPool connectionPool = new ConnectionPool(maxIdleConnections, keepAliveMs, TimeUnit.MILLISECONDS);
+        Gauge.builder("brevo.http.pool.connections", connectionPool, ConnectionPool::connectionCount)
+                .description("Open connections to Brevo")
+                .register(meterRegistry);
+        Gauge.builder("brevo.http.pool.idle", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Idle connections to Brevo waiting to be reused")
+                .register(meterRegistry);
+
+        // Only limits asynchronous calls; synchronous sends are bounded by the outbox's sender pool
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        return new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(writeTimeoutMs, TimeUnit.MILLISECONDS)
+                .callTimeout(callTimeoutMs, TimeUnit.MILLISECONDS)
+                .pingInterval(30, TimeUnit.SECONDS) // keeps idle HTTP/2 connections from being dropped silently
+                .eventListenerFactory(new CallMetrics(meterRegistry))
+                .build();
+    }
+
+    /**
+     * Times every call and counts whether it reused a pooled connection or had to open a new one
+     */
+    static class CallMetrics implements EventListener.Factory {
+
+        private final Timer succeeded;
+        private final Timer failed;
+        private final Counter reused;
+        private final Counter opened;
+
+        CallMetrics(MeterRegistry meterRegistry) {
+            succeeded = Timer.builder("brevo.http.call").tag("outcome", "success")
+                    .description("Brevo HTTP calls, including connection setup")
+                    .register(meterRegistry);
+            failed = Timer.builder("brevo.http.call").tag("outcome", "failure").register(meterRegistry);
+            reused = Counter.builder("brevo.http.connections").tag("type", "reused")
+                    .description("Connections acquired for Brevo calls")
+                    .register(meterRegistry);
+            opened = Counter.builder("brevo.http.connections").tag("type", "new").register(meterRegistry);
+        }
+
+        @Override
+        public EventListener create(Call call) {
+            return new EventListener() {
+                private long startNanos;
+                private boolean connecting;
+
+                @Override
+                public void callStart(Call call) {
+                    startNanos = System.nanoTime();
+                }
+
+                @Override
+                public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+                    connecting = true;
+                }
+
+                @Override
+                public void connectionAcquired(Call call, Connection connection) {
+                    (connecting ? opened : reused).increment();
+                    connecting = false;
+                }
+
+                @Override
+                public void callEnd(Call call) {
+                    succeeded.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
+
+                @Override
+                public void callFailed(Call call, IOException e) {
+                    failed.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+                }
+            };
+        }
+    }
+}
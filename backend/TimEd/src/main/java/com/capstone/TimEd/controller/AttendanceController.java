@@ -1,29 +1,52 @@
 package com.capstone.TimEd.controller;
 
 import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.GZIPOutputStream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.capstone.TimEd.dto.AttendeePageDto;
+import com.capstone.TimEd.dto.BulkTimeInRequest;
+import com.capstone.TimEd.dto.BulkTimeInResult;
+import com.capstone.TimEd.model.CertificateBatch;
+import com.capstone.TimEd.model.CertificateJob;
+import com.capstone.TimEd.service.AttendanceExportService;
+import com.capstone.TimEd.service.AttendanceFeedService;
 import com.capstone.TimEd.service.AttendanceService;
+import com.capstone.TimEd.service.AuthService;
+import com.capstone.TimEd.service.CertificateBatchService;
+import com.capstone.TimEd.service.CertificateJobService;
 import com.capstone.TimEd.service.CertificateService;
+import com.capstone.TimEd.service.EmailOutboxService;
 import com.capstone.TimEd.service.EmailService;
 import com.capstone.TimEd.service.FirebaseEmailService;
-import com.google.cloud.firestore.DocumentSnapshot;
-import com.google.cloud.firestore.QueryDocumentSnapshot;
-import com.google.firebase.cloud.FirestoreClient;
+import com.capstone.TimEd.service.SelfieService;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
@@ -39,17 +62,38 @@ public class AttendanceController {
     private final EmailService emailService;
     private final FirebaseEmailService firebaseEmailService;
     private final AttendanceService attendanceService;
+    private final CertificateJobService certificateJobService;
+    private final SelfieService selfieService;
+    private final AttendanceExportService attendanceExportService;
+    private final AttendanceFeedService attendanceFeedService;
+    private final CertificateBatchService certificateBatchService;
+    private final EmailOutboxService emailOutboxService;
+    private final AuthService authService;
 
     @Autowired
     public AttendanceController(
             AttendanceService attendanceService,
             CertificateService certificateService,
             EmailService emailService,
-            FirebaseEmailService firebaseEmailService) {
+            FirebaseEmailService firebaseEmailService,
+            CertificateJobService certificateJobService,
+            SelfieService selfieService,
+            AttendanceExportService attendanceExportService,
+            AttendanceFeedService attendanceFeedService,
+            CertificateBatchService certificateBatchService,
+            EmailOutboxService emailOutboxService,
+            AuthService authService) {
         this.attendanceService = attendanceService;
         this.certificateService = certificateService;
         this.emailService = emailService;
         this.firebaseEmailService = firebaseEmailService;
+        this.certificateJobService = certificateJobService;
+        this.selfieService = selfieService;
+        this.attendanceExportService = attendanceExportService;
+        this.attendanceFeedService = attendanceFeedService;
+        this.certificateBatchService = certificateBatchService;
+        this.emailOutboxService = emailOutboxService;
+        this.authService = authService;
     }
 
     @PostMapping("/{eventId}/{userId}/refresh-selfie")
@@ -60,6 +104,84 @@ public class AttendanceController {
         return ResponseEntity.ok(result);
     }
 
+    /**
+     * Kiosk bulk time-in. Returns one result per check-in, in request order.
+     */
+    @PostMapping("/{eventId}/bulk")
+    public ResponseEntity<?> bulkTimeIn(
+            @PathVariable String eventId,
+            @org.springframework.web.bind.annotation.RequestBody BulkTimeInRequest request) {
+        try {
+            List<BulkTimeInResult> results = attendanceService.bulkTimeIn(eventId, request);
+            return ResponseEntity.ok(results);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error recording bulk time-in: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/{eventId}/{userId}/selfie")
+    public ResponseEntity<String> uploadSelfie(
+            @PathVariable String eventId,
+            @PathVariable String userId,
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "false") boolean manual) {
+        if (file == null || file.isEmpty()) {
+            return ResponseEntity.badRequest().body("Selfie file is required");
+        }
+        try {
+            return ResponseEntity.ok(selfieService.upload(eventId, userId, file, manual));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error uploading selfie: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Storage-finalize hook. Accepts the Cloud Storage object resource (name, metadata, updated)
+     * forwarded by the selfie-finalized function (backend/functions/selfie-finalized) and indexes it
+     * if it is an event selfie. Rejected unless app.selfie-index.hook-token is set and matches X-Hook-Token.
+     */
+    @PostMapping("/selfies/finalized")
+    public ResponseEntity<String> selfieFinalized(
+            @RequestHeader(value = "X-Hook-Token", required = false) String hookToken,
+            @org.springframework.web.bind.annotation.RequestBody Map<String, Object> object) {
+        if (!selfieService.isHookAuthorized(hookToken)) {
+            return ResponseEntity.status(401).body("Invalid hook token");
+        }
+        try {
+            String objectName = (String) object.get("name");
+            Map<String, String> metadata = new HashMap<>();
+            if (object.get("metadata") instanceof Map<?, ?> rawMetadata) {
+                rawMetadata.forEach((key, value) -> metadata.put(String.valueOf(key), String.valueOf(value)));
+            }
+            long updatedAt = object.get("updated") != null
+                    ? Instant.parse(object.get("updated").toString()).toEpochMilli()
+                    : System.currentTimeMillis();
+
+            boolean indexed = selfieService.indexObject(objectName, metadata, updatedAt);
+            return ResponseEntity.ok(indexed ? "Selfie indexed" : "Ignored: not an event selfie");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error indexing selfie: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Index selfies uploaded before the selfie index existed. Lists the whole selfie folder, so admins only.
+     */
+    @PostMapping("/selfies/reindex")
+    public ResponseEntity<String> reindexSelfies(
+            @RequestHeader(value = "Authorization", required = false) String authorization) {
+        if (!authService.isAdmin(authorization)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Admin access required");
+        }
+        try {
+            return ResponseEntity.ok("Indexed " + selfieService.reindexAll() + " selfies");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error reindexing selfies: " + e.getMessage());
+        }
+    }
+
     @PostMapping("/{eventId}/{userId}")
     public ResponseEntity<String> markAttendance(
             @PathVariable String eventId,
@@ -81,129 +203,12 @@ public class AttendanceController {
                         + requestLastName + ", isManualEntry: " + isManualEntry);
             }
 
+            // Certificate generation and email are queued by the service and handled by the
+            // certificate workers, so this request returns as soon as the time-in is recorded
             String result = attendanceService.markAttendance(eventId, userId, requestFirstName, requestLastName,
                     isManualEntry);
             System.out.println("Attendance marked result: " + result);
 
-            // Only proceed if the user hasn't already timed in
-            if (!result.contains("Already timed in")) {
-                try {
-                    System.out
-                            .println("Processing certificate email for userId: " + userId + " in eventId: " + eventId);
-
-                    List<QueryDocumentSnapshot> attendeeDocs = FirestoreClient.getFirestore()
-                            .collection("events")
-                            .document(eventId)
-                            .collection("attendees")
-                            .whereEqualTo("userId", userId)
-                            .whereEqualTo("type", "event_time_in")
-                            .get()
-                            .get()
-                            .getDocuments();
-
-                    if (!attendeeDocs.isEmpty()) {
-                        DocumentSnapshot userDoc = attendeeDocs.get(0);
-
-                        String email = userDoc.getString("email");
-                        // Use request names if available, otherwise fallback to document
-                        String firstName = (requestFirstName != null && !requestFirstName.isEmpty()) ? requestFirstName
-                                : userDoc.getString("firstName");
-                        String lastName = (requestLastName != null && !requestLastName.isEmpty()) ? requestLastName
-                                : (userDoc.contains("lastName") ? userDoc.getString("lastName") : "");
-
-                        if (email == null || email.isEmpty()) {
-                            System.err.println("Email is missing for userId: " + userId);
-                            return ResponseEntity.ok(result + " (Note: Email not found)");
-                        }
-
-                        Map<String, String> userAttendance = new HashMap<>();
-                        userAttendance.put("userId", userId);
-                        userAttendance.put("email", email);
-                        userAttendance.put("firstName", firstName);
-                        userAttendance.put("lastName", lastName);
-                        userAttendance.put("manualEntry", String.valueOf(isManualEntry));
-                        userAttendance.put("checkinMethod", String.valueOf(isManualEntry)); // true for manual, false
-                                                                                            // for QR
-                        userAttendance.put("timeIn", userDoc.getString("timestamp"));
-                        userAttendance.put("timeOut", "");
-
-                        System.out.println("Generating certificate using - FirstName: '" + firstName + "', LastName: '"
-                                + lastName + "'");
-                        byte[] certificatePdf = certificateService.generateCertificate(userAttendance, eventId);
-
-                        System.out.println("Sending certificate via Firebase to " + email);
-                        firebaseEmailService.sendCertificateEmail(email, eventId, certificatePdf);
-                        System.out.println("Certificate email successfully queued via Firebase for " + email);
-                    } else {
-                        System.err.println("No attendee record found for userId: " + userId
-                                + " on first attempt. Retrying after delay...");
-
-                        // Retry after a short delay to handle Firestore eventual consistency
-                        try {
-                            Thread.sleep(2000); // Wait 2 seconds for Firestore consistency
-
-                            List<QueryDocumentSnapshot> retryAttendeeDocs = FirestoreClient.getFirestore()
-                                    .collection("events")
-                                    .document(eventId)
-                                    .collection("attendees")
-                                    .whereEqualTo("userId", userId)
-                                    .whereEqualTo("type", "event_time_in")
-                                    .get()
-                                    .get()
-                                    .getDocuments();
-
-                            if (!retryAttendeeDocs.isEmpty()) {
-                                System.out.println("Retry successful: Found attendee record for userId: " + userId);
-                                DocumentSnapshot userDoc = retryAttendeeDocs.get(0);
-
-                                String email = userDoc.getString("email");
-                                String firstName = userDoc.getString("firstName");
-                                String lastName = userDoc.contains("lastName") ? userDoc.getString("lastName") : "";
-
-                                if (email != null && !email.isEmpty()) {
-                                    Map<String, String> userAttendance = new HashMap<>();
-                                    userAttendance.put("userId", userId);
-                                    userAttendance.put("email", email);
-                                    userAttendance.put("firstName", firstName);
-                                    userAttendance.put("lastName", lastName);
-                                    userAttendance.put("manualEntry", "false");
-                                    userAttendance.put("checkinMethod", "false"); // QR code check-in
-                                    userAttendance.put("timeIn", userDoc.getString("timestamp"));
-                                    userAttendance.put("timeOut", "");
-
-                                    System.out.println(
-                                            "Generating certificate for " + firstName + " " + lastName + " (retry)");
-                                    byte[] certificatePdf = certificateService.generateCertificate(userAttendance,
-                                            eventId);
-
-                                    System.out.println("Sending certificate via Firebase to " + email + " (retry)");
-                                    firebaseEmailService.sendCertificateEmail(email, eventId, certificatePdf);
-                                    System.out.println("Certificate email successfully queued via Firebase for " + email
-                                            + " (retry)");
-
-                                    return ResponseEntity.ok(result); // Success: certificate sent
-                                } else {
-                                    System.err.println("Email is missing for userId: " + userId + " (retry)");
-                                    return ResponseEntity.ok(result + " (Note: Email not found)");
-                                }
-                            } else {
-                                System.err
-                                        .println("Retry failed: Still no attendee record found for userId: " + userId);
-                                return ResponseEntity.ok(result + " (Note: No attendee record found)");
-                            }
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                            System.err.println("Retry interrupted for userId: " + userId);
-                            return ResponseEntity.ok(result + " (Note: Certificate processing interrupted)");
-                        }
-                    }
-                } catch (Exception e) {
-                    System.err.println("Error during certificate generation or email sending: " + e.getMessage());
-                    e.printStackTrace();
-                    return ResponseEntity.ok(result + " (Note: Certificate/email failed)");
-                }
-            }
-
             return ResponseEntity.ok(result);
         } catch (Exception e) {
             System.err.println("Error marking attendance: " + e.getMessage());
@@ -212,6 +217,31 @@ public class AttendanceController {
         }
     }
 
+    @GetMapping("/{eventId}/{userId}/certificate-job")
+    public ResponseEntity<?> getCertificateJob(
+            @PathVariable String eventId,
+            @PathVariable String userId) {
+        try {
+            CertificateJob job = certificateJobService.getJob(eventId, userId);
+            if (job == null) {
+                return ResponseEntity.status(404).body("No certificate job found for this attendee");
+            }
+            return ResponseEntity.ok(job);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error fetching certificate job: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/certificate-jobs/stats")
+    public ResponseEntity<Map<String, Object>> getCertificateJobStats() {
+        return ResponseEntity.ok(certificateJobService.getStats());
+    }
+
+    @GetMapping("/email-outbox/stats")
+    public ResponseEntity<Map<String, Object>> getEmailOutboxStats() {
+        return ResponseEntity.ok(emailOutboxService.getStats());
+    }
+
     @PostMapping("/{eventId}/{userId}/timeout")
     public ResponseEntity<String> markTimeOut(
             @PathVariable String eventId,
@@ -228,23 +258,8 @@ public class AttendanceController {
         try {
             String result;
             if ("timein".equalsIgnoreCase(actionType)) {
+                // The certificate is queued by the service once the time-in is written
                 result = attendanceService.manualTimeIn(eventId, userId);
-
-                if (!result.contains("already timed in")) {
-                    List<Map<String, String>> attendees = attendanceService.getAttendees(eventId);
-                    Map<String, String> userAttendance = null;
-                    for (Map<String, String> attendee : attendees) {
-                        if (attendee.get("userId").equals(userId)) {
-                            userAttendance = attendee;
-                            break;
-                        }
-                    }
-
-                    if (userAttendance != null) {
-                        byte[] certificatePdf = certificateService.generateCertificate(userAttendance, eventId);
-                        firebaseEmailService.sendCertificateEmail(userAttendance.get("email"), eventId, certificatePdf);
-                    }
-                }
             } else if ("timeout".equalsIgnoreCase(actionType)) {
                 result = attendanceService.manualTimeOut(eventId, userId);
             } else {
@@ -274,6 +289,133 @@ public class AttendanceController {
         }
     }
 
+    /**
+     * Paged attendee listing. checkinMethod is "manual" or "qr"; all filters are optional.
+     */
+    @GetMapping("/{eventId}/attendees/page")
+    public ResponseEntity<?> getAttendeePage(
+            @PathVariable String eventId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            @RequestParam(required = false) String departmentId,
+            @RequestParam(required = false) String checkinMethod,
+            @RequestParam(required = false) Boolean hasTimedOut) {
+        try {
+            Boolean manual = parseCheckinMethod(checkinMethod);
+            AttendeePageDto page = attendanceService.getAttendeePage(eventId, cursor, limit, departmentId, manual,
+                    hasTimedOut);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error fetching attendee page: " + e.getMessage());
+            return ResponseEntity.status(500).body("Error fetching attendees: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the attendance list as CSV or NDJSON, gzipped when the client accepts it.
+     */
+    @GetMapping("/{eventId}/attendees/export")
+    public ResponseEntity<StreamingResponseBody> exportAttendees(
+            @PathVariable String eventId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) String departmentId,
+            @RequestParam(required = false) String checkinMethod,
+            @RequestParam(required = false) Boolean hasTimedOut,
+            @RequestHeader(value = "Accept-Encoding", required = false) String acceptEncoding) {
+        String exportFormat = format.toLowerCase();
+        Boolean manual;
+        try {
+            manual = parseCheckinMethod(checkinMethod);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (!AttendanceExportService.FORMAT_CSV.equals(exportFormat)
+                && !AttendanceExportService.FORMAT_NDJSON.equals(exportFormat)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Fail with a status while we still can; once streaming starts the headers are gone
+        AttendeePageDto firstPage;
+        try {
+            firstPage = attendanceExportService.firstPage(eventId, departmentId, manual, hasTimedOut);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (ExecutionException e) {
+            System.err.println("Error exporting attendees for event " + eventId + ": " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = gzip ? new GZIPOutputStream(outputStream, true) : outputStream;
+            // A failure after the first page throws, which aborts the connection without finishing the
+            // chunked body or the gzip trailer, so a partial file cannot pass as a complete one
+            attendanceExportService.export(eventId, exportFormat, departmentId, manual, hasTimedOut, firstPage, out);
+            if (gzip) {
+                ((GZIPOutputStream) out).finish();
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(AttendanceExportService.FORMAT_CSV.equals(exportFormat)
+                ? new MediaType("text", "csv", StandardCharsets.UTF_8)
+                : new MediaType("application", "x-ndjson", StandardCharsets.UTF_8));
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename("attendance-" + eventId + "." + exportFormat)
+                .build());
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Live feed of attendees added or updated after the viewer connects (Server-Sent Events)
+     */
+    @GetMapping(value = "/{eventId}/attendees/live", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter liveAttendees(@PathVariable String eventId) {
+        return attendanceFeedService.subscribe(eventId);
+    }
+
+    @PostMapping("/{eventId}/attendees/backfill-departments")
+    public ResponseEntity<String> backfillAttendeeDepartments(@PathVariable String eventId) {
+        try {
+            int updated = attendanceService.backfillAttendeeDepartments(eventId);
+            return ResponseEntity.ok("Updated " + updated + " attendee records");
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error backfilling departments: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Backfill department and timestamp on the attendee records of every event
+     */
+    @PostMapping("/migrate-attendees")
+    public ResponseEntity<String> migrateAttendeeRecords() {
+        try {
+            return ResponseEntity.ok(attendanceService.migrateAttendeeRecords());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error migrating attendee records: " + e.getMessage());
+        }
+    }
+
+    private Boolean parseCheckinMethod(String checkinMethod) {
+        if (checkinMethod == null || checkinMethod.isEmpty()) {
+            return null;
+        }
+        if ("manual".equalsIgnoreCase(checkinMethod) || "true".equalsIgnoreCase(checkinMethod)) {
+            return true;
+        }
+        if ("qr".equalsIgnoreCase(checkinMethod) || "false".equalsIgnoreCase(checkinMethod)) {
+            return false;
+        }
+        throw new IllegalArgumentException("checkinMethod must be 'manual' or 'qr'");
+    }
+
     @GetMapping("/user/{userId}/attended-events")
     public ResponseEntity<List<Map<String, Object>>> getUserAttendedEvents(@PathVariable String userId) {
         try {
@@ -304,10 +446,37 @@ public class AttendanceController {
         }
     }
 
+    /**
+     * Download one attendee's certificate. Served from the certificate store unless it has never been generated.
+     */
+    @GetMapping("/{eventId}/{userId}/certificate")
+    public ResponseEntity<?> downloadCertificate(
+            @PathVariable String eventId,
+            @PathVariable String userId) {
+        try {
+            // Same recipient map as the sends build, so the stored PDF they generated is the one served
+            Map<String, String> recipient = certificateService.getCertificateRecipient(eventId, userId);
+            if (recipient == null) {
+                return ResponseEntity.status(404).body("User not found in event attendees");
+            }
+            byte[] certificatePdf = certificateService.generateCertificate(recipient, eventId);
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_PDF)
+                    .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                            .filename("certificate-" + eventId + "-" + userId + ".pdf")
+                            .build()
+                            .toString())
+                    .body(certificatePdf);
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Error generating certificate: " + e.getMessage());
+        }
+    }
+
     @PostMapping("/{eventId}/send-certificates")
     public ResponseEntity<String> sendCertificates(
             @PathVariable String eventId,
-            @RequestParam(required = false) String userId) {
+            @RequestParam(required = false) String userId,
+            @RequestParam(defaultValue = "false") boolean resend) {
         try {
             List<Map<String, String>> attendees = attendanceService.getAttendees(eventId);
 
@@ -318,20 +487,25 @@ public class AttendanceController {
             if (userId != null && !userId.isEmpty()) {
                 for (Map<String, String> attendee : attendees) {
                     if (attendee.get("userId").equals(userId)) {
-                        byte[] certificatePdf = certificateService.generateCertificate(attendee, eventId);
-                        firebaseEmailService.sendCertificateEmail(attendee.get("email"), eventId, certificatePdf);
+                        CertificateService.GeneratedCertificate certificate =
+                                certificateService.generateStoredCertificate(attendee, eventId);
+                        if (resend) {
+                            // Skips the duplicate check, which otherwise drops every send after the first
+                            firebaseEmailService.resendCertificateEmail(attendee.get("email"), eventId, certificate);
+                        } else {
+                            firebaseEmailService.sendCertificateEmail(attendee.get("email"), eventId, certificate);
+                        }
                         return ResponseEntity.ok("Certificate sent successfully to user: " + userId);
                     }
                 }
                 return ResponseEntity.status(404).body("User not found in event attendees");
             }
 
-            for (Map<String, String> attendee : attendees) {
-                byte[] certificatePdf = certificateService.generateCertificate(attendee, eventId);
-                firebaseEmailService.sendCertificateEmail(attendee.get("email"), eventId, certificatePdf);
-            }
-
-            return ResponseEntity.ok("Certificates sent successfully to all attendees");
+            // Rendering every certificate takes minutes on large events, so it runs as a background batch
+            CertificateBatch batch = certificateBatchService.startAttendanceSend(eventId);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/certificates/batches/" + batch.getId()))
+                    .body("Sending certificates in the background (batch " + batch.getId() + ")");
         } catch (Exception e) {
             return ResponseEntity
                     .status(500)
@@ -1,28 +1,37 @@
 package com.capstone.TimEd.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.capstone.TimEd.model.Certificate;
+import com.capstone.TimEd.model.CertificateBatch;
 import com.capstone.TimEd.model.Event;
+import com.capstone.TimEd.service.CertificateBatchService;
+import com.capstone.TimEd.service.CertificateImageStore;
+import com.capstone.TimEd.service.CertificateImageOptimizer;
+import com.capstone.TimEd.service.CertificateImageOptimizer.OptimizedImage;
 import com.capstone.TimEd.service.CertificateService;
 import com.capstone.TimEd.service.EventService;
 
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.Base64;
 import java.util.HashMap;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.awt.Graphics2D;
+import java.util.LinkedHashMap;
+import java.net.URI;
 
 @RestController
 @RequestMapping("/api/certificates")
@@ -34,6 +43,15 @@ public class CertificateController {
     @Autowired
     private EventService eventService;
 
+    @Autowired
+    private CertificateBatchService certificateBatchService;
+
+    @Autowired
+    private CertificateImageOptimizer certificateImageOptimizer;
+
+    @Autowired
+    private CertificateImageStore certificateImageStore;
+
     /**
      * Create a new certificate template
      */
@@ -79,7 +97,7 @@ public class CertificateController {
         try {
             Certificate certificate = certificateService.getCertificate(id);
             if (certificate != null) {
-                return ResponseEntity.ok(certificate);
+                return ResponseEntity.ok(certificateService.inlineImages(certificate));
             } else {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("Certificate not found with ID: " + id);
@@ -155,6 +173,28 @@ public class CertificateController {
         }
     }
 
+    /**
+     * A stored template image by reference, for list thumbnails. References are content hashes,
+     * so the response never changes and browsers can cache it for good.
+     */
+    @GetMapping("/images/{ref}")
+    public ResponseEntity<?> getCertificateImage(@PathVariable String ref) {
+        try {
+            byte[] image = certificateImageStore.get(ref);
+            if (image == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No image found for reference: " + ref);
+            }
+            return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(CertificateImageStore.contentType(image)))
+                .cacheControl(CacheControl.maxAge(365, TimeUnit.DAYS).cachePublic().immutable())
+                .eTag(ref)
+                .body(image);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Error retrieving certificate image: " + e.getMessage());
+        }
+    }
+
     /**
      * Get certificate by event ID
      */
@@ -163,7 +203,7 @@ public class CertificateController {
         try {
             Certificate certificate = certificateService.getCertificateByEventId(eventId);
             if (certificate != null) {
-                return ResponseEntity.ok(certificate);
+                return ResponseEntity.ok(certificateService.inlineImages(certificate));
             } else {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("No certificate found for event ID: " + eventId);
@@ -188,13 +228,119 @@ public class CertificateController {
                     .body("Certificate ID and Event ID are required");
             }
             
-            String result = certificateService.sendCertificates(certificateId, eventId);
-            return ResponseEntity.ok(result);
+            // Certificates are rendered and emailed in the background; poll the batch for progress
+            CertificateBatch batch = certificateBatchService.startTemplateSend(certificateId, eventId);
+            return ResponseEntity.accepted()
+                .location(URI.create("/api/certificates/batches/" + batch.getId()))
+                .body("Sending certificates in the background (batch " + batch.getId() + ")");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error sending certificates: " + e.getMessage());
         }
     }
+
+    /**
+     * Progress of a bulk certificate send
+     */
+    @GetMapping("/batches/{batchId}")
+    public ResponseEntity<?> getCertificateBatch(@PathVariable String batchId) {
+        CertificateBatch batch = certificateBatchService.getBatch(batchId);
+        if (batch == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Certificate batch not found");
+        }
+        return ResponseEntity.ok(batch);
+    }
+
+    /**
+     * Progress of the running or most recent bulk certificate send for an event
+     */
+    @GetMapping("/{eventId}/batch")
+    public ResponseEntity<?> getLatestCertificateBatch(@PathVariable String eventId) {
+        CertificateBatch batch = certificateBatchService.getLatestBatch(eventId);
+        if (batch == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No certificate batch found for this event");
+        }
+        return ResponseEntity.ok(batch);
+    }
+
+    /**
+     * Every attendee's certificate in one PDF for printing, sorted by name and streamed page by page
+     */
+    @GetMapping("/{eventId}/print")
+    public ResponseEntity<?> printCertificates(@PathVariable String eventId) {
+        List<Map<String, String>> recipients;
+        try {
+            recipients = certificateService.getCertificateRecipients(eventId);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Error loading attendees: " + e.getMessage());
+        }
+        if (recipients.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No attendees found for this event");
+        }
+        sortByName(recipients);
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                certificateService.writeCertificateBook(eventId, recipients, outputStream);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Headers are already sent, so the client sees a truncated file
+                System.err.println("Error writing certificates for event " + eventId + ": " + e.getMessage());
+            }
+        };
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_PDF)
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("certificates-" + eventId + ".pdf")
+                .build()
+                .toString())
+            .body(body);
+    }
+
+    /**
+     * A ZIP of every attendee's certificate, streamed as the PDFs are rendered
+     */
+    @GetMapping("/{eventId}/archive")
+    public ResponseEntity<?> archiveCertificates(@PathVariable String eventId) {
+        List<Map<String, String>> recipients;
+        try {
+            recipients = certificateService.getCertificateRecipients(eventId);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Error loading attendees: " + e.getMessage());
+        }
+        if (recipients.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("No attendees found for this event");
+        }
+        sortByName(recipients);
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                certificateBatchService.writeCertificateArchive(eventId, recipients, outputStream);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType("application/zip"))
+            .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                .filename("certificates-" + eventId + ".zip")
+                .build()
+                .toString())
+            .body(body);
+    }
+
+    private void sortByName(List<Map<String, String>> recipients) {
+        recipients.sort(Comparator
+            .comparing((Map<String, String> r) -> r.getOrDefault("lastName", ""), String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(r -> r.getOrDefault("firstName", ""), String.CASE_INSENSITIVE_ORDER));
+    }
     
     /**
      * Link a certificate to an event
@@ -262,68 +408,23 @@ public class CertificateController {
                 }
             }
 
+            Map<String, Object> images = new LinkedHashMap<>();
+            long originalBytes = 0;
+            long storedBytes = 0;
+
             // Process background image
             if (background != null && !background.isEmpty()) {
                 try {
                     System.out.println("[DEBUG] uploadCertificateImages: Processing background image for eventId: " + eventId);
-                    byte[] backgroundBytes = background.getBytes();
-                    System.out.println("[DEBUG] uploadCertificateImages: Original background image size: " + backgroundBytes.length + " bytes");
                     System.out.println("[DEBUG] uploadCertificateImages: Content type: " + background.getContentType());
-                    
-                    // Process image to ensure it's compatible with PDF generation
-                    try (ByteArrayInputStream bis = new ByteArrayInputStream(backgroundBytes);
-                         ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                        
-                        // Read the image 
-                        BufferedImage originalImage = ImageIO.read(bis);
-                        if (originalImage != null) {
-                            System.out.println("[DEBUG] uploadCertificateImages: Successfully read image: " + 
-                                            originalImage.getWidth() + "x" + originalImage.getHeight() + 
-                                            ", type: " + originalImage.getType());
-                            
-                            // Convert to a compatible format
-                            BufferedImage convertedImg = new BufferedImage(
-                                originalImage.getWidth(),
-                                originalImage.getHeight(),
-                                BufferedImage.TYPE_INT_ARGB
-                            );
-                            
-                            Graphics2D g2d = convertedImg.createGraphics();
-                            // Use white background for images without alpha to prevent black background issues
-                            g2d.setColor(java.awt.Color.WHITE);
-                            g2d.fillRect(0, 0, originalImage.getWidth(), originalImage.getHeight());
-                            g2d.drawImage(originalImage, 0, 0, null);
-                            g2d.dispose();
-                            
-                            System.out.println("[DEBUG] uploadCertificateImages: Converted to ARGB format");
-                            
-                            // Write as PNG for better transparency support
-                            boolean success = ImageIO.write(convertedImg, "PNG", bos);
-                            if (success) {
-                                backgroundBytes = bos.toByteArray();
-                                System.out.println("[DEBUG] uploadCertificateImages: Successfully converted to PNG, new size: " + backgroundBytes.length + " bytes");
-                            } else {
-                                System.err.println("[DEBUG] uploadCertificateImages: No image writer found for PNG format");
-                            }
-                        } else {
-                            System.err.println("[DEBUG] uploadCertificateImages: Failed to read image with ImageIO. Will use original bytes.");
-                            // Try to determine format based on first bytes
-                            printImageFormat(backgroundBytes);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("[DEBUG] uploadCertificateImages: Error processing image format: " + e.getMessage());
-                        e.printStackTrace();
-                        // Continue with original bytes if processing fails
+                    OptimizedImage optimized = certificateImageOptimizer.optimizeBackground(background.getBytes());
+                    if ("original".equals(optimized.getFormat())) {
+                        printImageFormat(optimized.getBytes());
                     }
-                    
-                    // Base64 encode the image
-                    String base64Background = Base64.getEncoder().encodeToString(backgroundBytes);
-                    System.out.println("[DEBUG] uploadCertificateImages: Base64 encoded string length: " + base64Background.length());
-                    System.out.println("[DEBUG] uploadCertificateImages: Base64 string starts with: " + 
-                                    (base64Background.length() > 20 ? base64Background.substring(0, 20) + "..." : base64Background));
-                    
-                    certificate.setBackgroundImage(base64Background);
-                    System.out.println("[DEBUG] uploadCertificateImages: Background image processed and stored in certificate object");
+                    certificate.setBackgroundImage(Base64.getEncoder().encodeToString(optimized.getBytes()));
+                    images.put("background", optimized.toReport());
+                    originalBytes += optimized.getOriginalSize();
+                    storedBytes += optimized.getBytes().length;
                 } catch (Exception e) {
                     System.err.println("[DEBUG] uploadCertificateImages: Error processing background image: " + e.getMessage());
                     e.printStackTrace();
@@ -333,10 +434,12 @@ public class CertificateController {
             // Process logo image
             if (logo != null && !logo.isEmpty()) {
                 try {
-                    byte[] logoBytes = logo.getBytes();
-                    String base64Logo = Base64.getEncoder().encodeToString(logoBytes);
-                    certificate.setLogoImage(base64Logo);
-                    System.out.println("Logo image processed, size: " + logoBytes.length + " bytes");
+                    OptimizedImage optimized = certificateImageOptimizer.optimizeLogo(logo.getBytes(),
+                            certificate.getLogoWidth(), certificate.getLogoHeight());
+                    certificate.setLogoImage(Base64.getEncoder().encodeToString(optimized.getBytes()));
+                    images.put("logo", optimized.toReport());
+                    originalBytes += optimized.getOriginalSize();
+                    storedBytes += optimized.getBytes().length;
                 } catch (Exception e) {
                     System.err.println("Error processing logo image: " + e.getMessage());
                 }
@@ -345,10 +448,11 @@ public class CertificateController {
             // Process watermark image
             if (watermark != null && !watermark.isEmpty()) {
                 try {
-                    byte[] watermarkBytes = watermark.getBytes();
-                    String base64Watermark = Base64.getEncoder().encodeToString(watermarkBytes);
-                    certificate.setWatermarkImage(base64Watermark);
-                    System.out.println("Watermark image processed, size: " + watermarkBytes.length + " bytes");
+                    OptimizedImage optimized = certificateImageOptimizer.optimizeWatermark(watermark.getBytes());
+                    certificate.setWatermarkImage(Base64.getEncoder().encodeToString(optimized.getBytes()));
+                    images.put("watermark", optimized.toReport());
+                    originalBytes += optimized.getOriginalSize();
+                    storedBytes += optimized.getBytes().length;
                 } catch (Exception e) {
                     System.err.println("Error processing watermark image: " + e.getMessage());
                 }
@@ -360,11 +464,13 @@ public class CertificateController {
                 for (Map.Entry<String, MultipartFile> entry : signatures.entrySet()) {
                     try {
                         if (entry.getValue() != null && !entry.getValue().isEmpty()) {
-                            byte[] signatureBytes = entry.getValue().getBytes();
-                            String base64Signature = Base64.getEncoder().encodeToString(signatureBytes);
-                            signatureImages.put(entry.getKey(), base64Signature);
-                            System.out.println("Signature image processed for: " + entry.getKey() + 
-                                            ", size: " + signatureBytes.length + " bytes");
+                            OptimizedImage optimized =
+                                    certificateImageOptimizer.optimizeSignature(entry.getValue().getBytes());
+                            signatureImages.put(entry.getKey(),
+                                    Base64.getEncoder().encodeToString(optimized.getBytes()));
+                            images.put("signature:" + entry.getKey(), optimized.toReport());
+                            originalBytes += optimized.getOriginalSize();
+                            storedBytes += optimized.getBytes().length;
                         }
                     } catch (Exception e) {
                         System.err.println("Error processing signature image for " + entry.getKey() + 
@@ -381,13 +487,21 @@ public class CertificateController {
             // Verify the images were saved
             Certificate verifiedCert = certificateService.getCertificate(savedCertificate.getId());
             System.out.println("[DEBUG] uploadCertificateImages: Verification - Background image present: " + 
-                             (verifiedCert.getBackgroundImage() != null));
-            if (verifiedCert.getBackgroundImage() != null) {
-                System.out.println("[DEBUG] uploadCertificateImages: Verification - Background image length: " + 
-                                verifiedCert.getBackgroundImage().length());
+                             (verifiedCert.getBackgroundImageRef() != null || verifiedCert.getBackgroundImage() != null));
+            if (verifiedCert.getBackgroundImageRef() != null) {
+                System.out.println("[DEBUG] uploadCertificateImages: Verification - Background image ref: " + 
+                                verifiedCert.getBackgroundImageRef());
             }
             
-            return ResponseEntity.ok().build();
+            System.out.println("[DEBUG] uploadCertificateImages: Stored " + storedBytes + " of " + originalBytes
+                    + " uploaded bytes");
+
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("images", images);
+            report.put("originalBytes", originalBytes);
+            report.put("storedBytes", storedBytes);
+            report.put("bytesSaved", originalBytes - storedBytes);
+            return ResponseEntity.ok(report);
         } catch (Exception e) {
             System.err.println("Error uploading images: " + e.getMessage());
             e.printStackTrace();
@@ -410,18 +524,25 @@ public class CertificateController {
 
             if (background) {
                 certificate.setBackgroundImage(null);
+                certificate.setBackgroundImageRef(null);
             }
             if (logo) {
                 certificate.setLogoImage(null);
+                certificate.setLogoImageRef(null);
             }
             if (watermark) {
                 certificate.setWatermarkImage(null);
+                certificate.setWatermarkImageRef(null);
             }
             if (signatory != null) {
                 Map<String, String> signatureImages = certificate.getSignatureImages();
                 if (signatureImages != null) {
                     signatureImages.remove(signatory);
                 }
+                Map<String, String> signatureImageRefs = certificate.getSignatureImageRefs();
+                if (signatureImageRefs != null) {
+                    signatureImageRefs.remove(signatory);
+                }
             }
 
             certificateService.createCertificate(certificate);
@@ -478,4 +599,18 @@ public class CertificateController {
                 .body("Error cleaning up certificates: " + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Move images embedded in older certificate documents into the image store
+     */
+    @PostMapping("/migrate-images")
+    public ResponseEntity<?> migrateCertificateImages() {
+        try {
+            return ResponseEntity.ok(certificateService.migrateInlineImages());
+        } catch (Exception e) {
+            System.err.println("Error in migrate-images endpoint: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Error migrating certificate images: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.capstone.TimEd.dto;
+
+public class AttendeeDto {
+    private String userId;
+    private String firstName;
+    private String lastName;
+    private String email;
+    private String departmentId;
+    private String department; // Department name, "N/A" if unknown
+    private String timeIn; // Format: "yyyy-MM-dd HH:mm:ss"
+    private String timeOut; // null until the attendee times out
+    private boolean hasTimedOut;
+    private String type;
+    private String selfieUrl;
+    private boolean manualEntry;
+    private boolean checkinMethod; // true for manual, false for QR code
+
+    // Default constructor
+    public AttendeeDto() {}
+
+    // Getters and Setters
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getDepartmentId() {
+        return departmentId;
+    }
+
+    public void setDepartmentId(String departmentId) {
+        this.departmentId = departmentId;
+    }
+
+    public String getDepartment() {
+        return department;
+    }
+
+    public void setDepartment(String department) {
+        this.department = department;
+    }
+
+    public String getTimeIn() {
+        return timeIn;
+    }
+
+    public void setTimeIn(String timeIn) {
+        this.timeIn = timeIn;
+    }
+
+    public String getTimeOut() {
+        return timeOut;
+    }
+
+    public void setTimeOut(String timeOut) {
+        this.timeOut = timeOut;
+    }
+
+    public boolean isHasTimedOut() {
+        return hasTimedOut;
+    }
+
+    public void setHasTimedOut(boolean hasTimedOut) {
+        this.hasTimedOut = hasTimedOut;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getSelfieUrl() {
+        return selfieUrl;
+    }
+
+    public void setSelfieUrl(String selfieUrl) {
+        this.selfieUrl = selfieUrl;
+    }
+
+    public boolean isManualEntry() {
+        return manualEntry;
+    }
+
+    public void setManualEntry(boolean manualEntry) {
+        this.manualEntry = manualEntry;
+    }
+
+    public boolean isCheckinMethod() {
+        return checkinMethod;
+    }
+
+    public void setCheckinMethod(boolean checkinMethod) {
+        this.checkinMethod = checkinMethod;
+    }
+}
@@ -0,0 +1,42 @@
+package com.capstone.TimEd.dto;
+
+import java.util.List;
+
+public class AttendeePageDto {
+    private List<AttendeeDto> attendees;
+    private String nextCursor; // null on the last page
+    private long total; // matching attendees across all pages
+
+    // Default constructor
+    public AttendeePageDto() {}
+
+    public AttendeePageDto(List<AttendeeDto> attendees, String nextCursor, long total) {
+        this.attendees = attendees;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    public List<AttendeeDto> getAttendees() {
+        return attendees;
+    }
+
+    public void setAttendees(List<AttendeeDto> attendees) {
+        this.attendees = attendees;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,60 @@
+package com.capstone.TimEd.dto;
+
+import java.util.List;
+
+public class BulkTimeInRequest {
+    private List<CheckIn> checkIns;
+    private boolean manualEntry; // true if the kiosk operator typed the IDs instead of scanning
+
+    // Default constructor
+    public BulkTimeInRequest() {}
+
+    public BulkTimeInRequest(List<CheckIn> checkIns, boolean manualEntry) {
+        this.checkIns = checkIns;
+        this.manualEntry = manualEntry;
+    }
+
+    public List<CheckIn> getCheckIns() {
+        return checkIns;
+    }
+
+    public void setCheckIns(List<CheckIn> checkIns) {
+        this.checkIns = checkIns;
+    }
+
+    public boolean isManualEntry() {
+        return manualEntry;
+    }
+
+    public void setManualEntry(boolean manualEntry) {
+        this.manualEntry = manualEntry;
+    }
+
+    public static class CheckIn {
+        private String userId;
+        private String timestamp; // "yyyy-MM-dd HH:mm:ss" Asia/Manila, scan time at the kiosk
+
+        public CheckIn() {}
+
+        public CheckIn(String userId, String timestamp) {
+            this.userId = userId;
+            this.timestamp = timestamp;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public void setUserId(String userId) {
+            this.userId = userId;
+        }
+
+        public String getTimestamp() {
+            return timestamp;
+        }
+
+        public void setTimestamp(String timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.capstone.TimEd.dto;
+
+public class BulkTimeInResult {
+    public static final String CREATED = "CREATED";
+    public static final String ALREADY_TIMED_IN = "ALREADY_TIMED_IN";
+    public static final String USER_NOT_FOUND = "USER_NOT_FOUND";
+    public static final String INVALID = "INVALID";
+    public static final String ERROR = "ERROR";
+
+    private String userId;
+    private String status;
+    private String message;
+
+    // Default constructor
+    public BulkTimeInResult() {}
+
+    public BulkTimeInResult(String userId, String status, String message) {
+        this.userId = userId;
+        this.status = status;
+        this.message = message;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
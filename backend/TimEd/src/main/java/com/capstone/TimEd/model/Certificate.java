@@ -38,6 +38,13 @@ public class Certificate {
     private float watermarkImageOpacity = 0.1f;
     private Map<String, String> signatureImages; // Map of signatory name to Base64 encoded signature image
 
+    // Stored image references (content hashes in the image store); the inline fields above are only
+    // used by requests and by documents saved before images were moved out of Firestore
+    private String backgroundImageRef;
+    private String logoImageRef;
+    private String watermarkImageRef;
+    private Map<String, String> signatureImageRefs; // Map of signatory name to signature image hash
+
     // QR Code properties
     private boolean showQRCode = true;
     private String qrCodePosition = "bottom-right"; // bottom-right, bottom-left, top-right, top-left
@@ -175,6 +182,18 @@ public class Certificate {
     public Map<String, String> getSignatureImages() { return signatureImages; }
     public void setSignatureImages(Map<String, String> signatureImages) { this.signatureImages = signatureImages; }
 
+    public String getBackgroundImageRef() { return backgroundImageRef; }
+    public void setBackgroundImageRef(String backgroundImageRef) { this.backgroundImageRef = backgroundImageRef; }
+
+    public String getLogoImageRef() { return logoImageRef; }
+    public void setLogoImageRef(String logoImageRef) { this.logoImageRef = logoImageRef; }
+
+    public String getWatermarkImageRef() { return watermarkImageRef; }
+    public void setWatermarkImageRef(String watermarkImageRef) { this.watermarkImageRef = watermarkImageRef; }
+
+    public Map<String, String> getSignatureImageRefs() { return signatureImageRefs; }
+    public void setSignatureImageRefs(Map<String, String> signatureImageRefs) { this.signatureImageRefs = signatureImageRefs; }
+
     public boolean isShowQRCode() { return showQRCode; }
     public void setShowQRCode(boolean showQRCode) { this.showQRCode = showQRCode; }
 
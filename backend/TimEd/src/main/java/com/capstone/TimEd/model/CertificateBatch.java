@@ -0,0 +1,105 @@
+package com.capstone.TimEd.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Progress of a bulk certificate send for one event.
+ * Counters are updated by the render workers while the batch runs, so reads are a live snapshot.
+ * The batch is also saved to Firestore, so its status survives a restart and is visible to every instance.
+ */
+public class CertificateBatch {
+
+    public static final String STATUS_RUNNING = "RUNNING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final String id;
+    private final String eventId;
+    private final long startedAt; // epoch millis
+
+    private volatile String status = STATUS_RUNNING;
+    private volatile int total = -1; // unknown until the attendees are loaded
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile long completedAt; // epoch millis
+    private volatile String lastError;
+
+    public CertificateBatch(String id, String eventId, long startedAt) {
+        this.id = id;
+        this.eventId = eventId;
+        this.startedAt = startedAt;
+    }
+
+    public String getId() { return id; }
+
+    public String getEventId() { return eventId; }
+
+    public long getStartedAt() { return startedAt; }
+
+    public String getStatus() { return status; }
+
+    public int getTotal() { return total; }
+
+    public void setTotal(int total) { this.total = total; }
+
+    public int getSucceeded() { return succeeded.get(); }
+
+    public int getFailed() { return failed.get(); }
+
+    public int getPending() {
+        return total < 0 ? -1 : Math.max(0, total - succeeded.get() - failed.get());
+    }
+
+    public long getCompletedAt() { return completedAt; }
+
+    public String getLastError() { return lastError; }
+
+    public boolean isRunning() { return STATUS_RUNNING.equals(status); }
+
+    public void recordSuccess() {
+        succeeded.incrementAndGet();
+    }
+
+    public void recordFailure(String error) {
+        failed.incrementAndGet();
+        lastError = error;
+    }
+
+    public void finish(String status, long completedAt) {
+        this.completedAt = completedAt;
+        this.status = status;
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> data = new HashMap<>();
+        data.put("eventId", eventId);
+        data.put("startedAt", startedAt);
+        data.put("status", status);
+        data.put("total", total);
+        data.put("succeeded", succeeded.get());
+        data.put("failed", failed.get());
+        data.put("completedAt", completedAt);
+        data.put("lastError", lastError);
+        return data;
+    }
+
+    /**
+     * Rebuild a batch saved with toMap
+     */
+    public static CertificateBatch fromMap(String id, Map<String, Object> data) {
+        CertificateBatch batch = new CertificateBatch(id, (String) data.get("eventId"), longValue(data.get("startedAt")));
+        batch.status = (String) data.getOrDefault("status", STATUS_FAILED);
+        batch.total = (int) longValue(data.getOrDefault("total", -1L));
+        batch.succeeded.set((int) longValue(data.get("succeeded")));
+        batch.failed.set((int) longValue(data.get("failed")));
+        batch.completedAt = longValue(data.get("completedAt"));
+        batch.lastError = (String) data.get("lastError");
+        return batch;
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
@@ -0,0 +1,109 @@
+package com.capstone.TimEd.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A queued certificate generation + email job for a single attendee.
+ * The document ID is always {eventId}_{userId}, so each attendee gets at most one job per event.
+ */
+public class CertificateJob {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private String id;
+    private String eventId;
+    private String userId;
+    private String email;
+    private String firstName;
+    private String lastName;
+    private String timeIn;
+    private boolean manualEntry;
+
+    private String status = STATUS_PENDING;
+    private int attempts;
+    private long enqueuedAt; // epoch millis
+    private long availableAt; // epoch millis - next attempt when PENDING, lease expiry when PROCESSING
+    private long completedAt; // epoch millis
+    private String lastError;
+
+    public CertificateJob() {}
+
+    public CertificateJob(String eventId, String userId, String email, String firstName, String lastName,
+                          String timeIn, boolean manualEntry) {
+        this.id = idFor(eventId, userId);
+        this.eventId = eventId;
+        this.userId = userId;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.timeIn = timeIn;
+        this.manualEntry = manualEntry;
+    }
+
+    public static String idFor(String eventId, String userId) {
+        return eventId + "_" + userId;
+    }
+
+    /**
+     * Builds the attendee map expected by CertificateService.generateCertificate
+     */
+    public Map<String, String> toAttendeeMap() {
+        Map<String, String> attendee = new HashMap<>();
+        attendee.put("userId", userId);
+        attendee.put("email", email);
+        attendee.put("firstName", firstName);
+        attendee.put("lastName", lastName != null ? lastName : "");
+        attendee.put("manualEntry", String.valueOf(manualEntry));
+        attendee.put("checkinMethod", String.valueOf(manualEntry)); // true for manual, false for QR
+        attendee.put("timeIn", timeIn);
+        attendee.put("timeOut", "");
+        return attendee;
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getEventId() { return eventId; }
+    public void setEventId(String eventId) { this.eventId = eventId; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getEmail() { return email; }
+    public void setEmail(String email) { this.email = email; }
+
+    public String getFirstName() { return firstName; }
+    public void setFirstName(String firstName) { this.firstName = firstName; }
+
+    public String getLastName() { return lastName; }
+    public void setLastName(String lastName) { this.lastName = lastName; }
+
+    public String getTimeIn() { return timeIn; }
+    public void setTimeIn(String timeIn) { this.timeIn = timeIn; }
+
+    public boolean isManualEntry() { return manualEntry; }
+    public void setManualEntry(boolean manualEntry) { this.manualEntry = manualEntry; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public long getEnqueuedAt() { return enqueuedAt; }
+    public void setEnqueuedAt(long enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+
+    public long getAvailableAt() { return availableAt; }
+    public void setAvailableAt(long availableAt) { this.availableAt = availableAt; }
+
+    public long getCompletedAt() { return completedAt; }
+    public void setCompletedAt(long completedAt) { this.completedAt = completedAt; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,105 @@
+package com.capstone.TimEd.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A transactional email waiting in the outbox for the Brevo dispatcher.
+ * Attachments are kept in blob storage (attachmentPath) so records stay small.
+ */
+public class OutboxEmail {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_PROCESSING = "PROCESSING";
+    public static final String STATUS_DONE = "DONE";
+    public static final String STATUS_FAILED = "FAILED";
+
+    // Priority emails (OTPs) are claimed before normal ones and always have a sender kept free for them
+    public static final int PRIORITY_NORMAL = 0;
+    public static final int PRIORITY_HIGH = 1;
+
+    private String id;
+    private String toEmail;
+    private String subject;
+    private String htmlContent;
+    private String textContent;
+    private List<String> tags = new ArrayList<>();
+    private String attachmentName;
+    private String attachmentPath;
+
+    private int priority = PRIORITY_NORMAL;
+    private long expiresAt; // epoch millis - not sent after this (e.g. an OTP that is no longer valid); 0 for never
+
+    private String status = STATUS_PENDING;
+    private int attempts;
+    private long enqueuedAt; // epoch millis
+    private long availableAt; // epoch millis - next attempt when PENDING, lease expiry when PROCESSING
+    private long completedAt; // epoch millis
+    private String lastError;
+
+    public OutboxEmail() {}
+
+    public OutboxEmail(String toEmail, String subject, String htmlContent, String textContent, List<String> tags) {
+        this.toEmail = toEmail;
+        this.subject = subject;
+        this.htmlContent = htmlContent;
+        this.textContent = textContent;
+        this.tags = tags != null ? new ArrayList<>(tags) : new ArrayList<>();
+    }
+
+    /**
+     * Emails without an attachment that share tags can go out in one multi-version Brevo request
+     */
+    public String batchKey() {
+        return attachmentPath != null ? null : String.join(",", tags);
+    }
+
+    // Getters and Setters
+    public String getId() { return id; }
+    public void setId(String id) { this.id = id; }
+
+    public String getToEmail() { return toEmail; }
+    public void setToEmail(String toEmail) { this.toEmail = toEmail; }
+
+    public String getSubject() { return subject; }
+    public void setSubject(String subject) { this.subject = subject; }
+
+    public String getHtmlContent() { return htmlContent; }
+    public void setHtmlContent(String htmlContent) { this.htmlContent = htmlContent; }
+
+    public String getTextContent() { return textContent; }
+    public void setTextContent(String textContent) { this.textContent = textContent; }
+
+    public List<String> getTags() { return tags; }
+    public void setTags(List<String> tags) { this.tags = tags; }
+
+    public String getAttachmentName() { return attachmentName; }
+    public void setAttachmentName(String attachmentName) { this.attachmentName = attachmentName; }
+
+    public String getAttachmentPath() { return attachmentPath; }
+    public void setAttachmentPath(String attachmentPath) { this.attachmentPath = attachmentPath; }
+
+    public int getPriority() { return priority; }
+    public void setPriority(int priority) { this.priority = priority; }
+
+    public long getExpiresAt() { return expiresAt; }
+    public void setExpiresAt(long expiresAt) { this.expiresAt = expiresAt; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public long getEnqueuedAt() { return enqueuedAt; }
+    public void setEnqueuedAt(long enqueuedAt) { this.enqueuedAt = enqueuedAt; }
+
+    public long getAvailableAt() { return availableAt; }
+    public void setAvailableAt(long availableAt) { this.availableAt = availableAt; }
+
+    public long getCompletedAt() { return completedAt; }
+    public void setCompletedAt(long completedAt) { this.completedAt = completedAt; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+}
@@ -0,0 +1,78 @@
+package com.capstone.TimEd.model;
+
+/**
+ * Points an attendee's event selfie at its storage object.
+ * The document ID is always {userId}_{eventId}, so lookups are a single read.
+ */
+public class SelfieIndexEntry {
+
+    private String id;
+    private String userId;
+    private String eventId;
+    private String objectName;
+    private String url;
+    private long updatedAt; // epoch millis of the storage object
+
+    public SelfieIndexEntry() {}
+
+    public SelfieIndexEntry(String userId, String eventId, String objectName, String url, long updatedAt) {
+        this.id = idFor(userId, eventId);
+        this.userId = userId;
+        this.eventId = eventId;
+        this.objectName = objectName;
+        this.url = url;
+        this.updatedAt = updatedAt;
+    }
+
+    public static String idFor(String userId, String eventId) {
+        return userId + "_" + eventId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    public String getObjectName() {
+        return objectName;
+    }
+
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
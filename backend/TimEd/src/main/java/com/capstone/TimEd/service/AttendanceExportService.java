@@ -0,0 +1,129 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.dto.AttendeeDto;
+import com.capstone.TimEd.dto.AttendeePageDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Writes an event's attendance to a stream one Firestore page at a time,
+ * so memory use does not grow with the size of the event.
+ */
+@Service
+public class AttendanceExportService {
+
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_NDJSON = "ndjson";
+
+    private static final int PAGE_SIZE = 500;
+    private static final String[] CSV_HEADER = { "User ID", "First Name", "Last Name", "Email", "Department",
+            "Time In", "Time Out", "Check-in Method", "Selfie URL" };
+
+    private final AttendanceService attendanceService;
+    private final ObjectMapper objectMapper;
+
+    public AttendanceExportService(AttendanceService attendanceService, ObjectMapper objectMapper) {
+        this.attendanceService = attendanceService;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Read the first page before the response is committed, so a Firestore error can still become an error status.
+     */
+    public AttendeePageDto firstPage(String eventId, String departmentId, Boolean checkinMethod, Boolean hasTimedOut)
+            throws ExecutionException, InterruptedException {
+        return attendanceService.getAttendeePage(eventId, null, PAGE_SIZE, departmentId, checkinMethod, hasTimedOut,
+                false);
+    }
+
+    /**
+     * Write firstPage and every page after it. If a later page fails, an error line is written and an IOException
+     * thrown, so the server aborts the response instead of ending it like a complete file.
+     */
+    public void export(String eventId, String format, String departmentId, Boolean checkinMethod,
+            Boolean hasTimedOut, AttendeePageDto firstPage, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        boolean csv = FORMAT_CSV.equals(format);
+        if (csv) {
+            writeCsvRow(writer, CSV_HEADER);
+        }
+
+        AttendeePageDto page = firstPage;
+        int rows = 0;
+        while (true) {
+            for (AttendeeDto attendee : page.getAttendees()) {
+                if (csv) {
+                    writeCsvRow(writer, new String[] { attendee.getUserId(), attendee.getFirstName(),
+                            attendee.getLastName(), attendee.getEmail(), attendee.getDepartment(),
+                            attendee.getTimeIn(), attendee.getTimeOut() != null ? attendee.getTimeOut() : "N/A",
+                            attendee.isCheckinMethod() ? "Manual" : "QR", attendee.getSelfieUrl() });
+                } else {
+                    writer.write(objectMapper.writeValueAsString(attendee));
+                    writer.write('\n');
+                }
+            }
+            rows += page.getAttendees().size();
+
+            // Push each page to the client before reading the next one
+            writer.flush();
+            String cursor = page.getNextCursor();
+            if (cursor == null) {
+                break;
+            }
+            try {
+                page = attendanceService.getAttendeePage(eventId, cursor, PAGE_SIZE, departmentId, checkinMethod,
+                        hasTimedOut, false);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw writeIncomplete(writer, csv, eventId, rows, e);
+            } catch (ExecutionException e) {
+                throw writeIncomplete(writer, csv, eventId, rows, e);
+            }
+        }
+
+        System.out.println("[AttendanceExportService] Exported " + rows + " attendees for event " + eventId);
+    }
+
+    private IOException writeIncomplete(Writer writer, boolean csv, String eventId, int rows, Exception cause)
+            throws IOException {
+        String message = "Export incomplete after " + rows + " rows: " + cause.getMessage();
+        System.err.println("[AttendanceExportService] " + message + " (event " + eventId + ")");
+        if (csv) {
+            writer.write("#ERROR," + escapeCsv(message) + "\r\n");
+        } else {
+            writer.write(objectMapper.writeValueAsString(Map.of("error", message)));
+            writer.write('\n');
+        }
+        writer.flush();
+        return new IOException(message, cause);
+    }
+
+    private void writeCsvRow(Writer writer, String[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(escapeCsv(values[i]));
+        }
+        writer.write("\r\n");
+    }
+
+    private String escapeCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0
+                || value.indexOf('\r') >= 0) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+}
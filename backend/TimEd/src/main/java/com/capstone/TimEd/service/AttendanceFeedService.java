@@ -0,0 +1,206 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.dto.AttendeeDto;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Live attendance feed for the admin dashboard. Each event has at most one Firestore snapshot listener,
+ * shared by every connected viewer and removed when the last one disconnects.
+ */
+@Service
+public class AttendanceFeedService {
+
+    private static final long EMITTER_TIMEOUT_MS = 60 * 60 * 1000;
+    private static final long HEARTBEAT_SECONDS = 25;
+
+    private final Firestore firestore;
+    private final AttendanceService attendanceService;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+
+    // Deltas are mapped and sent off the Firestore listener thread, one at a time to keep their order
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "attendance-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "attendance-feed-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AttendanceFeedService(Firestore firestore, AttendanceService attendanceService,
+            MeterRegistry meterRegistry) {
+        this.firestore = firestore;
+        this.attendanceService = attendanceService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("attendance.feed.listeners", feeds, Map::size)
+                .description("Events with an active attendee snapshot listener")
+                .register(meterRegistry);
+        Gauge.builder("attendance.feed.viewers", feeds,
+                        map -> map.values().stream().mapToInt(feed -> feed.emitters.size()).sum())
+                .description("Connected live attendance viewers")
+                .register(meterRegistry);
+
+        // Comments keep idle connections open through proxies and flush out dead clients
+        heartbeat.scheduleWithFixedDelay(() -> {
+            for (Map.Entry<String, Feed> entry : feeds.entrySet()) {
+                for (SseEmitter emitter : entry.getValue().emitters) {
+                    try {
+                        emitter.send(SseEmitter.event().comment("keep-alive"));
+                    } catch (IOException | IllegalStateException e) {
+                        unsubscribe(entry.getKey(), emitter);
+                    }
+                }
+            }
+        }, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        heartbeat.shutdownNow();
+        dispatcher.shutdownNow();
+        for (Feed feed : feeds.values()) {
+            feed.registration.remove();
+            feed.emitters.forEach(SseEmitter::complete);
+        }
+        feeds.clear();
+    }
+
+    /**
+     * Connect a viewer to an event's feed. The viewer only receives changes from now on;
+     * the current roster comes from the attendee listing.
+     */
+    public SseEmitter subscribe(String eventId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MS);
+        emitter.onCompletion(() -> unsubscribe(eventId, emitter));
+        emitter.onTimeout(() -> unsubscribe(eventId, emitter));
+        emitter.onError(error -> unsubscribe(eventId, emitter));
+
+        synchronized (feeds) {
+            Feed feed = feeds.get(eventId);
+            if (feed == null) {
+                // The listener holds its own feed, so a snapshot that arrives before this returns is not lost
+                Feed newFeed = new Feed();
+                feeds.put(eventId, newFeed);
+                newFeed.registration = firestore.collection("events").document(eventId).collection("attendees")
+                        .addSnapshotListener((snapshot, error) -> onSnapshot(eventId, newFeed, snapshot, error));
+                feed = newFeed;
+                System.out.println("[AttendanceFeedService] Started listener for event " + eventId);
+            }
+            feed.emitters.add(emitter);
+        }
+        return emitter;
+    }
+
+    private void unsubscribe(String eventId, SseEmitter emitter) {
+        synchronized (feeds) {
+            Feed feed = feeds.get(eventId);
+            if (feed == null) {
+                return;
+            }
+            feed.emitters.remove(emitter);
+            if (feed.emitters.isEmpty()) {
+                feed.registration.remove();
+                feeds.remove(eventId);
+                System.out.println("[AttendanceFeedService] Stopped listener for event " + eventId);
+            }
+        }
+    }
+
+    private void onSnapshot(String eventId, Feed feed, QuerySnapshot snapshot, Exception error) {
+        if (error != null) {
+            System.err.println("[AttendanceFeedService] Listener failed for event " + eventId + ": " + error.getMessage());
+            // Let the dashboards reconnect, which starts a fresh listener
+            synchronized (feeds) {
+                if (!feeds.remove(eventId, feed)) {
+                    return;
+                }
+                // Taking the lock waits out subscribe(), so the registration is set by now
+                feed.registration.remove();
+            }
+            feed.emitters.forEach(emitter -> emitter.completeWithError(error));
+            return;
+        }
+        if (snapshot == null) {
+            return;
+        }
+
+        // The first snapshot is the whole roster, which viewers already loaded
+        if (!feed.initialized) {
+            feed.initialized = true;
+            return;
+        }
+
+        List<QueryDocumentSnapshot> changedDocs = new ArrayList<>();
+        List<String> changeTypes = new ArrayList<>();
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            if (change.getType() != DocumentChange.Type.REMOVED) {
+                changedDocs.add(change.getDocument());
+                changeTypes.add(change.getType().name());
+            }
+        }
+        if (changedDocs.isEmpty()) {
+            return;
+        }
+
+        dispatcher.execute(() -> {
+            try {
+                List<AttendeeDto> attendees = attendanceService.toAttendeeDtos(changedDocs);
+                for (int i = 0; i < attendees.size(); i++) {
+                    Map<String, Object> delta = new LinkedHashMap<>();
+                    delta.put("type", changeTypes.get(i));
+                    delta.put("attendee", attendees.get(i));
+                    broadcast(eventId, feed, delta);
+                }
+            } catch (Exception e) {
+                System.err.println("[AttendanceFeedService] Error sending changes for event " + eventId + ": "
+                        + e.getMessage());
+            }
+        });
+    }
+
+    private void broadcast(String eventId, Feed feed, Map<String, Object> delta) {
+        for (SseEmitter emitter : feed.emitters) {
+            try {
+                emitter.send(SseEmitter.event().name("attendee").data(delta));
+            } catch (IOException | IllegalStateException e) {
+                unsubscribe(eventId, emitter);
+            }
+        }
+    }
+
+    private static class Feed {
+        private ListenerRegistration registration;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+        private volatile boolean initialized;
+    }
+}
@@ -1,65 +1,106 @@
 package com.capstone.TimEd.service;
 
+import com.capstone.TimEd.dto.AttendeeDto;
+import com.capstone.TimEd.dto.AttendeePageDto;
+import com.capstone.TimEd.dto.BulkTimeInRequest;
+import com.capstone.TimEd.dto.BulkTimeInResult;
+import com.capstone.TimEd.model.CertificateJob;
+import com.capstone.TimEd.service.EventMetadataCache.EventMetadata;
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.*;
-import com.google.cloud.storage.Blob;
-import com.google.cloud.storage.Bucket;
-import com.google.cloud.storage.Storage;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.cloud.FirestoreClient;
-import com.google.firebase.cloud.StorageClient;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 @Service
 public class AttendanceService {
 
-    private final Firestore firestore = FirestoreClient.getFirestore();
+    // Users per getAll call when resolving attendees
+    private static final int USER_BATCH_SIZE = 300;
+    private static final int MAX_BULK_TIME_INS = 1000;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int MIGRATION_PAGE_SIZE = 100;
+    private static final int LEGACY_TIME_IN_EVENTS = 1000;
+
+    private final Firestore firestore;
     private final FirebaseApp firebaseApp;
+    private final CertificateJobService certificateJobService;
+    private final DepartmentCache departmentCache;
+    private final SelfieService selfieService;
+    private final MeterRegistry meterRegistry;
+    private final EventMetadataCache eventMetadataCache;
+
+    // When each event's attendee records were last backfilled by this instance
+    // Users with a legacy time-in, per event, least recently used first. Legacy records are no longer written,
+    // so an event's set never changes once read, and time-ins after the first skip the query
+    private final Map<String, Set<String>> legacyTimeIns = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                    return size() > LEGACY_TIME_IN_EVENTS;
+                }
+            });
 
-    public AttendanceService(FirebaseApp firebaseApp) {
+    public AttendanceService(Firestore firestore, FirebaseApp firebaseApp,
+            CertificateJobService certificateJobService, DepartmentCache departmentCache, SelfieService selfieService,
+            MeterRegistry meterRegistry, EventMetadataCache eventMetadataCache) {
+        this.firestore = firestore;
         this.firebaseApp = firebaseApp;
+        this.certificateJobService = certificateJobService;
+        this.departmentCache = departmentCache;
+        this.selfieService = selfieService;
+        this.meterRegistry = meterRegistry;
+        this.eventMetadataCache = eventMetadataCache;
         // Da, we initialize FirebaseApp before using Firestore.
     }
 
     public String markAttendance(String eventId, String userId, String firstName, String lastName,
             boolean isManualEntry) {
+        Timer.Sample total = Timer.start(meterRegistry);
         try {
-            // Check if user has already timed in for this event
-            CollectionReference attendeesRef = firestore.collection("events")
-                    .document(eventId)
-                    .collection("attendees");
-
-            ApiFuture<QuerySnapshot> existingQuery = attendeesRef
-                    .whereEqualTo("userId", userId)
-                    .whereEqualTo("type", "event_time_in")
-                    .get();
-
-            List<QueryDocumentSnapshot> existingDocs = existingQuery.get().getDocuments();
-            if (!existingDocs.isEmpty()) {
-                return "Already timed in for this event. Certificate has already been generated.";
+            // The event, user and selfie lookups are independent, so issue them together.
+            // Duplicate time-ins are caught by the create() below rather than a query.
+            Timer.Sample reads = Timer.start(meterRegistry);
+            EventMetadata event;
+            DocumentSnapshot userDoc;
+            String eventSelfieUrl;
+            boolean legacyTimeIn;
+            try {
+                ApiFuture<EventMetadata> eventQuery = eventMetadataCache.getAsync(eventId);
+                ApiFuture<DocumentSnapshot> userQuery = firestore.collection("users").document(userId).get();
+                CompletableFuture<String> selfieLookup = selfieService.findSelfieUrlAsync(userId, eventId);
+                ApiFuture<Set<String>> legacyQuery = legacyTimeInUserIds(eventId);
+
+                event = eventQuery.get();
+                userDoc = userQuery.get();
+                eventSelfieUrl = selfieLookup.get();
+                legacyTimeIn = legacyQuery.get().contains(userId);
+            } finally {
+                reads.stop(timeInTimer("qr", "reads"));
             }
 
-            // Get event details
-            DocumentReference eventRef = firestore.collection("events").document(eventId);
-            ApiFuture<DocumentSnapshot> eventQuery = eventRef.get();
-            DocumentSnapshot eventDoc = eventQuery.get();
-
-            if (!eventDoc.exists()) {
+            if (!event.exists()) {
                 return "Event not found";
             }
 
             // Validate server time against event date - prevent early time-in
-            Date eventDate = eventDoc.getDate("date");
+            Date eventDate = event.getDate();
             if (eventDate != null) {
                 ZonedDateTime eventStartTime = eventDate.toInstant().atZone(ZoneId.of("Asia/Manila"));
                 ZonedDateTime serverNow = Instant.now().atZone(ZoneId.of("Asia/Manila"));
@@ -67,20 +108,19 @@ public class AttendanceService {
                 if (serverNow.isBefore(eventStartTime)) {
                     String formattedEventTime = eventStartTime
                             .format(DateTimeFormatter.ofPattern("MMMM d, yyyy 'at' h:mm a"));
-                    return "Cannot time-in yet. Event '" + eventDoc.getString("eventName") + "' starts on "
+                    return "Cannot time-in yet. Event '" + event.getEventName() + "' starts on "
                             + formattedEventTime + ". Please wait until the event starts.";
                 }
             }
 
-            // Get user details
-            DocumentReference userRef = firestore.collection("users").document(userId);
-            ApiFuture<DocumentSnapshot> userQuery = userRef.get();
-            DocumentSnapshot userDoc = userQuery.get();
-
             if (!userDoc.exists()) {
                 return "User not found";
             }
 
+            if (legacyTimeIn) {
+                return "Already timed in for this event. Certificate has already been generated.";
+            }
+
             // Use provided names if available, otherwise fallback to Firestore
             String finalFirstName = (firstName != null && !firstName.isEmpty()) ? firstName
                     : userDoc.getString("firstName");
@@ -99,13 +139,12 @@ public class AttendanceService {
             ZonedDateTime philippinesTime = Instant.now().atZone(ZoneId.of("Asia/Manila"));
             String timestamp = philippinesTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
 
-            // Find the correct selfie in Firebase Storage with retry logic
-            String selfieUrl = findSelfieUrl(userId, eventId, userDoc);
+            String selfieUrl = selfieOrProfilePicture(eventSelfieUrl, userId, eventId, userDoc);
 
             Map<String, Object> attendanceData = new HashMap<>();
             attendanceData.put("userId", userId);
             attendanceData.put("eventId", eventId);
-            attendanceData.put("eventName", eventDoc.getString("eventName"));
+            attendanceData.put("eventName", event.getEventName());
             attendanceData.put("firstName", finalFirstName);
             attendanceData.put("lastName", finalLastName);
             attendanceData.put("email", userDoc.getString("email"));
@@ -113,6 +152,7 @@ public class AttendanceService {
             attendanceData.put("type", "event_time_in");
             attendanceData.put("hasTimedOut", false);
             attendanceData.put("selfieUrl", selfieUrl); // Use event-specific selfie URL
+            attendanceData.put("departmentId", userDoc.getString("departmentId")); // For department filtering
             attendanceData.put("checkinMethod", isManualEntry); // true for manual, false for QR code
 
             // Debug: Log the checkinMethod value being set
@@ -120,13 +160,188 @@ public class AttendanceService {
                     + isManualEntry + ") for user: " + userId);
 
             // Add the attendance record to the event's attendees subcollection
-            attendeesRef.document(userId).set(attendanceData).get();
+            Timer.Sample write = Timer.start(meterRegistry);
+            boolean created;
+            try {
+                created = createAttendee(eventId, userId, attendanceData);
+            } finally {
+                write.stop(timeInTimer("qr", "write"));
+            }
+            if (!created) {
+                fillMissingDepartment(eventId, userId, userDoc);
+                return "Already timed in for this event. Certificate has already been generated.";
+            }
+
+            // Certificate generation and email run on the certificate workers, not this request
+            if (!enqueueCertificate(eventId, userId, userDoc.getString("email"), finalFirstName, finalLastName,
+                    timestamp, isManualEntry)) {
+                return "Error marking attendance: certificate could not be queued, please time in again";
+            }
 
             return "Attendance marked successfully";
         } catch (Exception e) {
             e.printStackTrace();
             return "Error marking attendance: " + e.getMessage();
+        } finally {
+            total.stop(timeInTimer("qr", "total"));
+        }
+    }
+
+    /**
+     * Kiosk bulk time-in: validates the event once, resolves users with batched getAll calls
+     * and writes attendee documents through a BulkWriter. Certificates are queued, not generated here.
+     */
+    public List<BulkTimeInResult> bulkTimeIn(String eventId, BulkTimeInRequest request)
+            throws ExecutionException, InterruptedException {
+        Timer.Sample total = Timer.start(meterRegistry);
+        try {
+            return recordBulkTimeIn(eventId, request);
+        } finally {
+            total.stop(timeInTimer("bulk", "total"));
+        }
+    }
+
+    private List<BulkTimeInResult> recordBulkTimeIn(String eventId, BulkTimeInRequest request)
+            throws ExecutionException, InterruptedException {
+        List<BulkTimeInRequest.CheckIn> checkIns = request.getCheckIns() != null ? request.getCheckIns()
+                : Collections.emptyList();
+        if (checkIns.size() > MAX_BULK_TIME_INS) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_TIME_INS + " check-ins per request");
+        }
+
+        EventMetadata event = eventMetadataCache.get(eventId);
+        if (!event.exists()) {
+            throw new IllegalArgumentException("Event not found");
+        }
+        Date eventDate = event.getDate();
+        if (eventDate != null && Instant.now().isBefore(eventDate.toInstant())) {
+            throw new IllegalArgumentException("Cannot time-in yet. Event '" + event.getEventName()
+                    + "' has not started.");
+        }
+
+        Set<String> userIds = new LinkedHashSet<>();
+        for (BulkTimeInRequest.CheckIn checkIn : checkIns) {
+            if (checkIn != null && checkIn.getUserId() != null && !checkIn.getUserId().isEmpty()) {
+                userIds.add(checkIn.getUserId());
+            }
+        }
+        ApiFuture<Set<String>> legacyQuery = legacyTimeInUserIds(eventId);
+        Map<String, DocumentSnapshot> usersById = getUsersById(userIds);
+        Set<String> legacyUserIds = legacyQuery.get();
+
+        boolean manualEntry = request.isManualEntry();
+        String now = Instant.now().atZone(ZoneId.of("Asia/Manila"))
+                .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+        List<BulkTimeInResult> results = new ArrayList<>();
+        // Results keep request order; written entries are filled in once the BulkWriter finishes
+        Map<BulkTimeInResult, ApiFuture<WriteResult>> writes = new LinkedHashMap<>();
+        Map<String, CertificateJob> jobs = new HashMap<>();
+        Set<String> seen = new HashSet<>();
+        BulkWriter writer = firestore.bulkWriter();
+
+        for (BulkTimeInRequest.CheckIn checkIn : checkIns) {
+            String userId = checkIn != null ? checkIn.getUserId() : null;
+            if (userId == null || userId.isEmpty()) {
+                results.add(new BulkTimeInResult(userId, BulkTimeInResult.INVALID, "userId is required"));
+                continue;
+            }
+            if (!seen.add(userId)) {
+                results.add(new BulkTimeInResult(userId, BulkTimeInResult.ALREADY_TIMED_IN, "Duplicate scan in this batch"));
+                continue;
+            }
+            if (legacyUserIds.contains(userId)) {
+                results.add(new BulkTimeInResult(userId, BulkTimeInResult.ALREADY_TIMED_IN, "Already timed in for this event"));
+                continue;
+            }
+
+            String timestamp = checkIn.getTimestamp() != null && !checkIn.getTimestamp().isEmpty()
+                    ? checkIn.getTimestamp() : now;
+            try {
+                LocalDateTime.parse(timestamp, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            } catch (DateTimeParseException e) {
+                results.add(new BulkTimeInResult(userId, BulkTimeInResult.INVALID,
+                        "timestamp must be yyyy-MM-dd HH:mm:ss"));
+                continue;
+            }
+
+            DocumentSnapshot userDoc = usersById.get(userId);
+            if (userDoc == null || !userDoc.exists()) {
+                results.add(new BulkTimeInResult(userId, BulkTimeInResult.USER_NOT_FOUND, "User not found"));
+                continue;
+            }
+
+            String firstName = userDoc.getString("firstName");
+            String lastName = userDoc.contains("lastName") ? userDoc.getString("lastName") : "";
+
+            Map<String, Object> attendanceData = new HashMap<>();
+            attendanceData.put("userId", userId);
+            attendanceData.put("eventId", eventId);
+            attendanceData.put("eventName", event.getEventName());
+            attendanceData.put("firstName", firstName);
+            attendanceData.put("lastName", lastName);
+            attendanceData.put("email", userDoc.getString("email"));
+            attendanceData.put("timestamp", timestamp);
+            attendanceData.put("type", "event_time_in");
+            attendanceData.put("hasTimedOut", false);
+            attendanceData.put("selfieUrl", userDoc.getString("profilePictureUrl")); // Kiosk scans have no selfie
+            attendanceData.put("departmentId", userDoc.getString("departmentId"));
+            attendanceData.put("manualEntry", manualEntry);
+            attendanceData.put("checkinMethod", manualEntry);
+
+            BulkTimeInResult result = new BulkTimeInResult(userId, null, null);
+            results.add(result);
+            writes.put(result, writer.create(attendeeRef(eventId, userId), attendanceData));
+            jobs.put(userId, new CertificateJob(eventId, userId, userDoc.getString("email"), firstName, lastName,
+                    timestamp, manualEntry));
         }
+        writer.close(); // flushes and waits for every write
+
+        List<CertificateJob> createdJobs = new ArrayList<>();
+        for (Map.Entry<BulkTimeInResult, ApiFuture<WriteResult>> write : writes.entrySet()) {
+            BulkTimeInResult result = write.getKey();
+            try {
+                write.getValue().get();
+                result.setStatus(BulkTimeInResult.CREATED);
+                result.setMessage("Attendance marked successfully");
+                createdJobs.add(jobs.get(result.getUserId()));
+            } catch (ExecutionException e) {
+                if (FirestoreErrors.isAlreadyExists(e)) {
+                    result.setStatus(BulkTimeInResult.ALREADY_TIMED_IN);
+                    result.setMessage("Already timed in for this event");
+                } else {
+                    result.setStatus(BulkTimeInResult.ERROR);
+                    result.setMessage(e.getMessage());
+                }
+            }
+        }
+
+        // Certificate generation and email run on the certificate workers
+        if (!createdJobs.isEmpty()) {
+            try {
+                certificateJobService.enqueueAll(createdJobs);
+            } catch (ExecutionException e) {
+                // Undo the time-ins so the kiosk can resend them, rather than keeping records with no certificate
+                System.err.println("[AttendanceService] Could not queue certificates for bulk time-in on event "
+                        + eventId + ": " + e.getMessage());
+                BulkWriter rollback = firestore.bulkWriter();
+                for (CertificateJob job : createdJobs) {
+                    rollback.delete(attendeeRef(eventId, job.getUserId()));
+                }
+                rollback.close();
+                for (BulkTimeInResult result : writes.keySet()) {
+                    if (BulkTimeInResult.CREATED.equals(result.getStatus())) {
+                        result.setStatus(BulkTimeInResult.ERROR);
+                        result.setMessage("Certificate could not be queued, please time in again");
+                    }
+                }
+                createdJobs.clear();
+            }
+        }
+
+        System.out.println("[AttendanceService] Bulk time-in for event " + eventId + ": " + createdJobs.size()
+                + " of " + checkIns.size() + " recorded");
+        return results;
     }
 
     public String markTimeOut(String eventId, String userId) {
@@ -169,27 +384,35 @@ public class AttendanceService {
     }
 
     public String manualTimeIn(String eventId, String userId) {
+        Timer.Sample total = Timer.start(meterRegistry);
         try {
-            // Check if user has already timed in for this event in the new structure
-            ApiFuture<QuerySnapshot> existingQuery = firestore.collection("attendees")
-                    .whereEqualTo("eventId", eventId)
-                    .whereEqualTo("userId", userId)
-                    .whereEqualTo("type", "event_time_in")
-                    .get();
-
-            List<QueryDocumentSnapshot> existingDocs = existingQuery.get().getDocuments();
-            if (!existingDocs.isEmpty()) {
-                return "User has already timed in for this event. Certificate has already been generated.";
+            // Issue the event, user and selfie lookups together; create() below is the duplicate check
+            Timer.Sample reads = Timer.start(meterRegistry);
+            EventMetadata event;
+            DocumentSnapshot userDoc;
+            String eventSelfieUrl;
+            boolean legacyTimeIn;
+            try {
+                ApiFuture<EventMetadata> eventQuery = eventMetadataCache.getAsync(eventId);
+                ApiFuture<DocumentSnapshot> userQuery = firestore.collection("users").document(userId).get();
+                CompletableFuture<String> selfieLookup = selfieService.findSelfieUrlAsync(userId, eventId);
+                ApiFuture<Set<String>> legacyQuery = legacyTimeInUserIds(eventId);
+
+                event = eventQuery.get();
+                userDoc = userQuery.get();
+                eventSelfieUrl = selfieLookup.get();
+                legacyTimeIn = legacyQuery.get().contains(userId);
+            } finally {
+                reads.stop(timeInTimer("manual", "reads"));
             }
 
             // Get event details
-            DocumentSnapshot eventDoc = firestore.collection("events").document(eventId).get().get();
-            if (!eventDoc.exists()) {
+            if (!event.exists()) {
                 return "Event does not exist: " + eventId;
             }
 
             // Validate server time against event date - prevent early time-in
-            Date eventDate = eventDoc.getDate("date");
+            Date eventDate = event.getDate();
             if (eventDate != null) {
                 ZonedDateTime eventStartTime = eventDate.toInstant().atZone(ZoneId.of("Asia/Manila"));
                 ZonedDateTime serverNow = Instant.now().atZone(ZoneId.of("Asia/Manila"));
@@ -197,19 +420,22 @@ public class AttendanceService {
                 if (serverNow.isBefore(eventStartTime)) {
                     String formattedEventTime = eventStartTime
                             .format(DateTimeFormatter.ofPattern("MMMM d, yyyy 'at' h:mm a"));
-                    return "Cannot time-in yet. Event '" + eventDoc.getString("eventName") + "' starts on "
+                    return "Cannot time-in yet. Event '" + event.getEventName() + "' starts on "
                             + formattedEventTime + ". Please wait until the event starts.";
                 }
             }
 
-            String eventName = eventDoc.getString("eventName");
+            String eventName = event.getEventName();
 
             // Get user details
-            DocumentSnapshot userDoc = firestore.collection("users").document(userId).get().get();
             if (!userDoc.exists()) {
                 return "User does not exist: " + userId;
             }
 
+            if (legacyTimeIn) {
+                return "User has already timed in for this event. Certificate has already been generated.";
+            }
+
             String email = userDoc.getString("email");
             String firstName = userDoc.getString("firstName");
             String lastName = userDoc.contains("lastName") ? userDoc.getString("lastName") : "";
@@ -218,8 +444,7 @@ public class AttendanceService {
             ZonedDateTime philippinesTime = Instant.now().atZone(ZoneId.of("Asia/Manila"));
             String timestamp = philippinesTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
 
-            // Find the correct selfie in Firebase Storage with retry logic
-            String selfieUrl = findSelfieUrl(userId, eventId, userDoc);
+            String selfieUrl = selfieOrProfilePicture(eventSelfieUrl, userId, eventId, userDoc);
 
             Map<String, Object> attendanceData = new HashMap<>();
             attendanceData.put("eventId", eventId);
@@ -232,24 +457,62 @@ public class AttendanceService {
             attendanceData.put("type", "event_time_in");
             attendanceData.put("hasTimedOut", false);
             attendanceData.put("selfieUrl", selfieUrl);
+            attendanceData.put("departmentId", userDoc.getString("departmentId"));
             attendanceData.put("manualEntry", true);
             attendanceData.put("checkinMethod", true); // Manual check-in
 
             // Debug: Log the checkinMethod value being set
             System.out.println("[DEBUG] Manual Time-in - Setting checkinMethod to: true for user: " + userId);
 
-            // Add to the new 'attendees' collection
-            firestore.collection("attendees").add(attendanceData);
+            // Manual time-ins share the QR path's attendee document, so a user can only time in once per event
+            Timer.Sample write = Timer.start(meterRegistry);
+            boolean created;
+            try {
+                created = createAttendee(eventId, userId, attendanceData);
+            } finally {
+                write.stop(timeInTimer("manual", "write"));
+            }
+            if (!created) {
+                return "User has already timed in for this event. Certificate has already been generated.";
+            }
+
+            if (!enqueueCertificate(eventId, userId, email, firstName, lastName, timestamp, true)) {
+                return "Failed to mark manual time-in: certificate could not be queued, please try again";
+            }
 
             return "Manual time-in recorded for user " + userId + " at event " + eventId;
         } catch (Exception e) {
             return "Failed to mark manual time-in: " + e.getMessage();
+        } finally {
+            total.stop(timeInTimer("manual", "total"));
         }
     }
 
     public String manualTimeOut(String eventId, String userId) {
         try {
-            // Find the attendance record in the new structure
+            // Create timeout timestamp with Philippines timezone
+            ZonedDateTime philippinesTime = Instant.now().atZone(ZoneId.of("Asia/Manila"));
+            String timeOutTimestamp = philippinesTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+
+            DocumentReference attendeeRef = attendeeRef(eventId, userId);
+            DocumentSnapshot attendeeDoc = attendeeRef.get().get();
+
+            if (attendeeDoc.exists()) {
+                if (Boolean.TRUE.equals(attendeeDoc.getBoolean("hasTimedOut"))) {
+                    return "Already timed out for this event";
+                }
+
+                Map<String, Object> updateData = new HashMap<>();
+                updateData.put("hasTimedOut", true);
+                updateData.put("timeOutTimestamp", timeOutTimestamp);
+                updateData.put("manualTimeOut", true);
+
+                // Only apply if nobody changed the record since we read it
+                attendeeRef.update(updateData, Precondition.updatedAt(attendeeDoc.getUpdateTime())).get();
+                return "Manual time-out recorded for user " + userId + " at event " + eventId;
+            }
+
+            // Older manual time-ins were written to the top-level 'attendees' collection
             ApiFuture<QuerySnapshot> query = firestore.collection("attendees")
                     .whereEqualTo("eventId", eventId)
                     .whereEqualTo("userId", userId)
@@ -267,17 +530,13 @@ public class AttendanceService {
                 return "Already timed out for this event";
             }
 
-            // Create timeout timestamp with Philippines timezone
-            ZonedDateTime philippinesTime = Instant.now().atZone(ZoneId.of("Asia/Manila"));
-            String timeOutTimestamp = philippinesTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-
             // Update the attendance record
             Map<String, Object> updateData = new HashMap<>();
             updateData.put("hasTimedOut", true);
             updateData.put("timeOutTimestamp", timeOutTimestamp);
             updateData.put("manualEntry", true);
 
-            firestore.collection("attendees").document(attendanceDoc.getId()).update(updateData);
+            firestore.collection("attendees").document(attendanceDoc.getId()).update(updateData).get();
 
             return "Manual time-out recorded for user " + userId + " at event " + eventId;
         } catch (Exception e) {
@@ -285,6 +544,78 @@ public class AttendanceService {
         }
     }
 
+    /**
+     * Time-ins recorded by older manual entries in the top-level 'attendees' collection.
+     * They have no events/{eventId}/attendees document, so create() alone would not catch them as duplicates.
+     */
+    private Query legacyTimeInQuery(String eventId) {
+        return firestore.collection("attendees")
+                .whereEqualTo("eventId", eventId)
+                .whereEqualTo("type", "event_time_in");
+    }
+
+    /**
+     * The users with a legacy time-in for an event, read once per event and then served from memory
+     */
+    private ApiFuture<Set<String>> legacyTimeInUserIds(String eventId) {
+        Set<String> cached = legacyTimeIns.get(eventId);
+        if (cached != null) {
+            return ApiFutures.immediateFuture(cached);
+        }
+        return ApiFutures.transform(legacyTimeInQuery(eventId).select("userId").get(), snapshot -> {
+            Set<String> userIds = new HashSet<>();
+            for (QueryDocumentSnapshot legacyDoc : snapshot.getDocuments()) {
+                userIds.add(legacyDoc.getString("userId"));
+            }
+            Set<String> result = userIds.isEmpty() ? Set.of() : Collections.unmodifiableSet(userIds);
+            legacyTimeIns.put(eventId, result);
+            return result;
+        }, MoreExecutors.directExecutor());
+    }
+
+    private DocumentReference attendeeRef(String eventId, String userId) {
+        return firestore.collection("events").document(eventId).collection("attendees").document(userId);
+    }
+
+    /**
+     * Write a time-in as events/{eventId}/attendees/{userId} in a single precondition write.
+     * Returns false if the user already timed in, which makes time-in exactly-once across the QR and manual paths.
+     */
+    private boolean createAttendee(String eventId, String userId, Map<String, Object> attendanceData)
+            throws ExecutionException, InterruptedException {
+        try {
+            attendeeRef(eventId, userId).create(attendanceData).get();
+            return true;
+        } catch (ExecutionException e) {
+            if (FirestoreErrors.isAlreadyExists(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Queue the certificate job for a new time-in. If the queue write fails the attendee document is
+     * deleted again, so the user can retry instead of being stuck as timed in without a certificate.
+     */
+    private boolean enqueueCertificate(String eventId, String userId, String email, String firstName,
+            String lastName, String timestamp, boolean manualEntry) throws InterruptedException {
+        try {
+            certificateJobService.enqueue(eventId, userId, email, firstName, lastName, timestamp, manualEntry);
+            return true;
+        } catch (ExecutionException e) {
+            System.err.println("[AttendanceService] Could not queue certificate for " + eventId + "/" + userId
+                    + ", undoing time-in: " + e.getMessage());
+            try {
+                attendeeRef(eventId, userId).delete().get();
+            } catch (ExecutionException deleteError) {
+                System.err.println("[AttendanceService] Could not undo time-in for " + eventId + "/" + userId
+                        + ": " + deleteError.getMessage());
+            }
+            return false;
+        }
+    }
+
     public List<Map<String, String>> getAttendees(String eventId) {
         List<Map<String, String>> attendees = new ArrayList<>();
 
@@ -297,38 +628,38 @@ public class AttendanceService {
             ApiFuture<QuerySnapshot> query = eventAttendeesRef.get();
             List<QueryDocumentSnapshot> docs = query.get().getDocuments();
 
+            // Resolve every attendee's user document in batched reads up front
+            List<String> userIds = new ArrayList<>();
+            for (QueryDocumentSnapshot doc : docs) {
+                userIds.add(attendeeUserId(doc));
+            }
+            Map<String, DocumentSnapshot> usersById = getUsersById(userIds);
+
+            // Department names come from the shared cache instead of one read per attendee
+            List<String> departmentIds = new ArrayList<>();
+            for (DocumentSnapshot userDoc : usersById.values()) {
+                if (userDoc.exists() && userDoc.getString("departmentId") != null) {
+                    departmentIds.add(userDoc.getString("departmentId"));
+                }
+            }
+            Map<String, String> departmentNames = departmentCache.getNames(departmentIds);
+
             for (QueryDocumentSnapshot doc : docs) {
                 Map<String, Object> data = doc.getData();
                 Map<String, String> attendee = new HashMap<>();
+                String userId = attendeeUserId(doc);
+                DocumentSnapshot userDoc = usersById.get(userId);
+                boolean userExists = userDoc != null && userDoc.exists();
 
                 // Check if this is the old structure (has 'attended' field) or new structure
                 if (data.containsKey("attended")) {
-                    // Old structure
-                    String userId = doc.getId(); // UserId is the document ID in old structure
-
-                    // Get user details
-                    DocumentReference userRef = firestore.collection("users").document(userId);
-                    DocumentSnapshot userDoc = userRef.get().get();
-
-                    if (userDoc.exists()) {
+                    // Old structure - userId is the document ID
+                    if (userExists) {
                         attendee.put("userId", userId);
                         attendee.put("firstName", userDoc.getString("firstName"));
                         attendee.put("lastName", userDoc.getString("lastName"));
                         attendee.put("email", userDoc.getString("email"));
-
-                        // Get department
-                        String departmentId = userDoc.getString("departmentId");
-                        if (departmentId != null) {
-                            DocumentReference deptRef = firestore.collection("departments").document(departmentId);
-                            DocumentSnapshot deptDoc = deptRef.get().get();
-                            if (deptDoc.exists()) {
-                                attendee.put("department", deptDoc.getString("name"));
-                            } else {
-                                attendee.put("department", "N/A");
-                            }
-                        } else {
-                            attendee.put("department", "N/A");
-                        }
+                        attendee.put("department", departmentName(userDoc, departmentNames));
 
                         // Handle time fields
                         String timeIn = data.get("timeIn") != null ? data.get("timeIn").toString() : "";
@@ -346,59 +677,16 @@ public class AttendanceService {
                         attendee.put("timeIn", timeIn);
                         attendee.put("timeOut", "N/A"); // Old structure doesn't have timeOut
                         attendee.put("type", "event_time_in");
-                        // Handle manualEntry and checkinMethod with proper fallbacks
-                        Object manualEntryValue = data.get("manualEntry");
-                        boolean isManualEntry = manualEntryValue instanceof Boolean ? (Boolean) manualEntryValue
-                                : (manualEntryValue != null && "true".equals(manualEntryValue.toString()));
-
-                        Object checkinMethodValue = data.get("checkinMethod");
-                        boolean checkinMethodBool;
-
-                        if (checkinMethodValue != null) {
-                            // If checkinMethod exists, use it
-                            checkinMethodBool = checkinMethodValue instanceof Boolean ? (Boolean) checkinMethodValue
-                                    : "true".equals(checkinMethodValue.toString());
-                        } else {
-                            // If checkinMethod doesn't exist, fall back to manualEntry logic
-                            checkinMethodBool = isManualEntry;
-                        }
-
-                        attendee.put("manualEntry", String.valueOf(isManualEntry));
-                        attendee.put("checkinMethod", String.valueOf(checkinMethodBool));
-
-                        // Debug: Log checkinMethod retrieval for old structure
-                        System.out.println("[DEBUG] Old Structure - User: " + userId + ", checkinMethod raw: "
-                                + checkinMethodValue + " (exists: " + (checkinMethodValue != null) + "), manualEntry: "
-                                + manualEntryValue + ", final checkinMethod: " + checkinMethodBool);
-
+                        putCheckinFields(attendee, data);
                         attendee.put("selfieUrl", null);
                     }
                 } else {
                     // New structure
-                    String userId = data.getOrDefault("userId", "").toString();
-                    String email = data.getOrDefault("email", "").toString();
-
-                    // Get user details for department
-                    DocumentReference userRef = firestore.collection("users").document(userId);
-                    DocumentSnapshot userDoc = userRef.get().get();
-                    String departmentName = "N/A";
-
-                    if (userDoc.exists()) {
-                        String departmentId = userDoc.getString("departmentId");
-                        if (departmentId != null) {
-                            DocumentReference deptRef = firestore.collection("departments").document(departmentId);
-                            DocumentSnapshot deptDoc = deptRef.get().get();
-                            if (deptDoc.exists()) {
-                                departmentName = deptDoc.getString("name");
-                            }
-                        }
-                    }
-
                     attendee.put("userId", userId);
                     attendee.put("firstName", data.getOrDefault("firstName", "").toString());
                     attendee.put("lastName", data.getOrDefault("lastName", "").toString());
-                    attendee.put("email", email);
-                    attendee.put("department", departmentName);
+                    attendee.put("email", data.getOrDefault("email", "").toString());
+                    attendee.put("department", userExists ? departmentName(userDoc, departmentNames) : "N/A");
                     attendee.put("timeIn", data.getOrDefault("timestamp", "").toString());
 
                     Object hasTimedOutObj = data.get("hasTimedOut");
@@ -407,31 +695,7 @@ public class AttendanceService {
 
                     attendee.put("type", data.getOrDefault("type", "event_time_in").toString());
                     attendee.put("selfieUrl", data.get("selfieUrl") != null ? data.get("selfieUrl").toString() : null);
-
-                    // Handle manualEntry and checkinMethod with proper fallbacks
-                    Object manualEntryValue = data.get("manualEntry");
-                    boolean isManualEntry = manualEntryValue instanceof Boolean ? (Boolean) manualEntryValue
-                            : (manualEntryValue != null && "true".equals(manualEntryValue.toString()));
-
-                    Object checkinMethodValue = data.get("checkinMethod");
-                    boolean checkinMethodBool;
-
-                    if (checkinMethodValue != null) {
-                        // If checkinMethod exists, use it
-                        checkinMethodBool = checkinMethodValue instanceof Boolean ? (Boolean) checkinMethodValue
-                                : "true".equals(checkinMethodValue.toString());
-                    } else {
-                        // If checkinMethod doesn't exist, fall back to manualEntry logic
-                        checkinMethodBool = isManualEntry;
-                    }
-
-                    attendee.put("manualEntry", String.valueOf(isManualEntry));
-                    attendee.put("checkinMethod", String.valueOf(checkinMethodBool));
-
-                    // Debug: Log checkinMethod retrieval for new structure
-                    System.out.println("[DEBUG] New Structure - User: " + userId + ", checkinMethod raw: "
-                            + checkinMethodValue + " (exists: " + (checkinMethodValue != null) + "), manualEntry: "
-                            + manualEntryValue + ", final checkinMethod: " + checkinMethodBool);
+                    putCheckinFields(attendee, data);
                 }
 
                 if (!attendee.isEmpty()) {
@@ -446,6 +710,306 @@ public class AttendanceService {
         }
     }
 
+    /**
+     * One page of an event's attendees, ordered by time-in. Filters are optional and applied server side.
+     * Pass the returned nextCursor back to get the following page.
+     */
+    public AttendeePageDto getAttendeePage(String eventId, String cursor, int limit, String departmentId,
+            Boolean checkinMethod, Boolean hasTimedOut) throws ExecutionException, InterruptedException {
+        return getAttendeePage(eventId, cursor, limit, departmentId, checkinMethod, hasTimedOut, true);
+    }
+
+    /**
+     * Same as above; exports page through the whole event and skip the count to save a read per page.
+     */
+    AttendeePageDto getAttendeePage(String eventId, String cursor, int limit, String departmentId,
+            Boolean checkinMethod, Boolean hasTimedOut, boolean includeTotal)
+            throws ExecutionException, InterruptedException {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Query filtered = filteredAttendeesQuery(eventId, departmentId, checkinMethod, hasTimedOut);
+
+        Query page = filtered.orderBy("timestamp").orderBy(FieldPath.documentId());
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] position = decodeCursor(cursor);
+            page = page.startAfter(position[0], position[1]);
+        }
+
+        // Fetch one extra row to know whether another page exists; count runs alongside
+        ApiFuture<QuerySnapshot> pageQuery = page.limit(pageSize + 1).get();
+        ApiFuture<AggregateQuerySnapshot> countQuery = includeTotal ? filtered.count().get() : null;
+
+        List<QueryDocumentSnapshot> docs = pageQuery.get().getDocuments();
+        String nextCursor = null;
+        if (docs.size() > pageSize) {
+            docs = docs.subList(0, pageSize);
+            QueryDocumentSnapshot last = docs.get(pageSize - 1);
+            nextCursor = encodeCursor(last.getString("timestamp"), last.getId());
+        }
+
+        long total = countQuery != null ? countQuery.get().getCount() : -1;
+        return new AttendeePageDto(toAttendeeDtos(docs), nextCursor, total);
+    }
+
+    Query filteredAttendeesQuery(String eventId, String departmentId, Boolean checkinMethod, Boolean hasTimedOut) {
+        Query query = firestore.collection("events").document(eventId).collection("attendees");
+        if (departmentId != null && !departmentId.isEmpty()) {
+            query = query.whereEqualTo("departmentId", departmentId);
+        }
+        if (checkinMethod != null) {
+            query = query.whereEqualTo("checkinMethod", checkinMethod);
+        }
+        if (hasTimedOut != null) {
+            query = query.whereEqualTo("hasTimedOut", hasTimedOut);
+        }
+        return query;
+    }
+
+    /**
+     * Map attendee documents to DTOs, resolving department names in one pass.
+     * Records written before departmentId was stored on them fall back to the user document.
+     */
+    List<AttendeeDto> toAttendeeDtos(List<? extends DocumentSnapshot> docs)
+            throws ExecutionException, InterruptedException {
+        List<String> usersWithoutDepartment = new ArrayList<>();
+        for (DocumentSnapshot doc : docs) {
+            if (doc.getString("departmentId") == null) {
+                usersWithoutDepartment.add(attendeeUserId(doc));
+            }
+        }
+        Map<String, DocumentSnapshot> usersById = getUsersById(usersWithoutDepartment);
+
+        Map<String, String> departmentIdsByUser = new HashMap<>();
+        for (DocumentSnapshot doc : docs) {
+            String departmentId = doc.getString("departmentId");
+            if (departmentId == null) {
+                DocumentSnapshot userDoc = usersById.get(attendeeUserId(doc));
+                departmentId = userDoc != null && userDoc.exists() ? userDoc.getString("departmentId") : null;
+            }
+            departmentIdsByUser.put(doc.getId(), departmentId);
+        }
+        Map<String, String> departmentNames = departmentCache.getNames(departmentIdsByUser.values());
+
+        List<AttendeeDto> attendees = new ArrayList<>();
+        for (DocumentSnapshot doc : docs) {
+            String departmentId = departmentIdsByUser.get(doc.getId());
+            String departmentName = departmentId != null ? departmentNames.get(departmentId) : null;
+
+            AttendeeDto attendee = new AttendeeDto();
+            attendee.setUserId(attendeeUserId(doc));
+            attendee.setFirstName(doc.getString("firstName"));
+            attendee.setLastName(doc.getString("lastName"));
+            attendee.setEmail(doc.getString("email"));
+            attendee.setDepartmentId(departmentId);
+            attendee.setDepartment(departmentName != null ? departmentName : "N/A");
+            attendee.setTimeIn(doc.getString("timestamp"));
+            attendee.setHasTimedOut(Boolean.TRUE.equals(doc.getBoolean("hasTimedOut")));
+            attendee.setTimeOut(attendee.isHasTimedOut() ? doc.getString("timeOutTimestamp") : null);
+            attendee.setType(doc.getString("type") != null ? doc.getString("type") : "event_time_in");
+            attendee.setSelfieUrl(doc.getString("selfieUrl"));
+
+            Map<String, String> checkinFields = new HashMap<>();
+            putCheckinFields(checkinFields, doc.getData() != null ? doc.getData() : Collections.emptyMap());
+            attendee.setManualEntry(Boolean.parseBoolean(checkinFields.get("manualEntry")));
+            attendee.setCheckinMethod(Boolean.parseBoolean(checkinFields.get("checkinMethod")));
+
+            attendees.add(attendee);
+        }
+        return attendees;
+    }
+
+    /**
+     * Fill in the fields the listing query depends on for attendee records written without them:
+     * departmentId from the user document (older records and the mobile app's direct writes) and a
+     * sortable timestamp (the old structure only has timeIn). Returns the number of records updated.
+     */
+    public int backfillAttendeeDepartments(String eventId) throws ExecutionException, InterruptedException {
+        List<QueryDocumentSnapshot> docs = firestore.collection("events").document(eventId)
+                .collection("attendees").get().get().getDocuments();
+
+        List<QueryDocumentSnapshot> missing = new ArrayList<>();
+        List<String> userIds = new ArrayList<>();
+        for (QueryDocumentSnapshot doc : docs) {
+            if (!doc.contains("departmentId") || doc.getString("timestamp") == null) {
+                missing.add(doc);
+                userIds.add(attendeeUserId(doc));
+            }
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        Map<String, DocumentSnapshot> usersById = getUsersById(userIds);
+
+        BulkWriter writer = firestore.bulkWriter();
+        int updated = 0;
+        for (QueryDocumentSnapshot doc : missing) {
+            Map<String, Object> updates = new HashMap<>();
+            DocumentSnapshot userDoc = usersById.get(attendeeUserId(doc));
+            if (!doc.contains("departmentId") && userDoc != null && userDoc.exists()) {
+                updates.put("departmentId", userDoc.getString("departmentId"));
+            }
+            if (doc.getString("timestamp") == null) {
+                updates.put("timestamp", legacyTimestamp(doc.get("timeIn")));
+            }
+            if (!updates.isEmpty()) {
+                writer.update(doc.getReference(), updates);
+                updated++;
+            }
+        }
+        writer.close();
+        System.out.println("[AttendanceService] Backfilled " + updated + " attendee records for event " + eventId);
+        return updated;
+    }
+
+    /**
+     * One-off migration: run backfillAttendeeDepartments for every event, so records written before
+     * departmentId and timestamp were stored show up in filtered, ordered pages. Safe to run again.
+     */
+    public String migrateAttendeeRecords() throws ExecutionException, InterruptedException {
+        int events = 0;
+        int updated = 0;
+        String lastId = null;
+
+        while (true) {
+            Query page = firestore.collection("events")
+                    .orderBy(FieldPath.documentId())
+                    .select(FieldPath.documentId())
+                    .limit(MIGRATION_PAGE_SIZE);
+            if (lastId != null) {
+                page = page.startAfter(lastId);
+            }
+            List<QueryDocumentSnapshot> documents = page.get().get().getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                updated += backfillAttendeeDepartments(document.getId());
+                events++;
+            }
+            if (documents.size() < MIGRATION_PAGE_SIZE) {
+                break;
+            }
+            lastId = documents.get(documents.size() - 1).getId();
+        }
+
+        System.out.println("[AttendanceService] Backfilled " + updated + " attendee records across " + events
+                + " events");
+        return "Updated " + updated + " attendee records across " + events + " events";
+    }
+
+    // Old-structure timeIn values are ISO instants; the listing sorts on Manila-local yyyy-MM-dd HH:mm:ss
+    private String legacyTimestamp(Object timeIn) {
+        String value = timeIn != null ? timeIn.toString() : "";
+        if (value.contains("T")) {
+            try {
+                return Instant.parse(value).atZone(ZoneId.of("Asia/Manila"))
+                        .format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
+            } catch (DateTimeParseException e) {
+                System.err.println("[AttendanceService] Could not parse timeIn " + value + ": " + e.getMessage());
+            }
+        }
+        return value;
+    }
+
+    /**
+     * The mobile app writes its own attendee document before calling time-in, without departmentId.
+     * When time-in then finds the document, copy the department over so the record matches the filter.
+     */
+    private void fillMissingDepartment(String eventId, String userId, DocumentSnapshot userDoc) {
+        try {
+            DocumentSnapshot attendeeDoc = attendeeRef(eventId, userId).get().get();
+            if (attendeeDoc.exists() && !attendeeDoc.contains("departmentId")) {
+                attendeeRef(eventId, userId).update("departmentId", userDoc.getString("departmentId")).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("[AttendanceService] Could not set department on " + eventId + "/" + userId + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private String encodeCursor(String timestamp, String docId) {
+        String raw = (timestamp != null ? timestamp : "") + "|" + docId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] position = raw.split("\\|", 2);
+            if (position.length != 2 || position[1].isEmpty()) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return position;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    // Old structure uses the document ID as the userId, new structure stores it as a field
+    private String attendeeUserId(DocumentSnapshot doc) {
+        if (doc.contains("attended")) {
+            return doc.getId();
+        }
+        Object userId = doc.get("userId");
+        return userId != null ? userId.toString() : "";
+    }
+
+    private String departmentName(DocumentSnapshot userDoc, Map<String, String> departmentNames) {
+        String departmentId = userDoc.getString("departmentId");
+        if (departmentId != null && departmentNames.containsKey(departmentId)) {
+            return departmentNames.get(departmentId);
+        }
+        return "N/A";
+    }
+
+    // Handle manualEntry and checkinMethod with proper fallbacks
+    private void putCheckinFields(Map<String, String> attendee, Map<String, Object> data) {
+        Object manualEntryValue = data.get("manualEntry");
+        boolean isManualEntry = manualEntryValue instanceof Boolean ? (Boolean) manualEntryValue
+                : (manualEntryValue != null && "true".equals(manualEntryValue.toString()));
+
+        Object checkinMethodValue = data.get("checkinMethod");
+        boolean checkinMethodBool;
+
+        if (checkinMethodValue != null) {
+            // If checkinMethod exists, use it
+            checkinMethodBool = checkinMethodValue instanceof Boolean ? (Boolean) checkinMethodValue
+                    : "true".equals(checkinMethodValue.toString());
+        } else {
+            // If checkinMethod doesn't exist, fall back to manualEntry logic
+            checkinMethodBool = isManualEntry;
+        }
+
+        attendee.put("manualEntry", String.valueOf(isManualEntry));
+        attendee.put("checkinMethod", String.valueOf(checkinMethodBool));
+    }
+
+    /**
+     * Fetch user documents with batched getAll calls instead of one read per user.
+     * Missing users are returned as non-existent snapshots.
+     */
+    Map<String, DocumentSnapshot> getUsersById(Collection<String> userIds)
+            throws ExecutionException, InterruptedException {
+        List<DocumentReference> userRefs = new ArrayList<>();
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            if (userId != null && !userId.isEmpty()) {
+                userRefs.add(firestore.collection("users").document(userId));
+            }
+        }
+
+        List<ApiFuture<List<DocumentSnapshot>>> batches = new ArrayList<>();
+        for (int i = 0; i < userRefs.size(); i += USER_BATCH_SIZE) {
+            List<DocumentReference> batch = userRefs.subList(i, Math.min(i + USER_BATCH_SIZE, userRefs.size()));
+            batches.add(firestore.getAll(batch.toArray(new DocumentReference[0])));
+        }
+
+        Map<String, DocumentSnapshot> usersById = new HashMap<>();
+        for (List<DocumentSnapshot> batch : ApiFutures.allAsList(batches).get()) {
+            for (DocumentSnapshot userDoc : batch) {
+                usersById.put(userDoc.getId(), userDoc);
+            }
+        }
+        return usersById;
+    }
+
     public String refreshSelfie(String eventId, String userId) {
         try {
             // Get user details first to have profile pic fallback
@@ -519,82 +1083,32 @@ public class AttendanceService {
 
     private String findSelfieUrl(String userId, String eventId, DocumentSnapshot userDoc) {
         String selfieUrl = null;
-        int maxRetries = 3;
-        int retryDelayMs = 1500; // 1.5 seconds
-
-        for (int i = 0; i < maxRetries; i++) {
-            try {
-                System.out.println("[AttendanceService] Attempt " + (i + 1) + " to find selfie for user: " + userId
-                        + ", event: " + eventId);
-
-                Bucket bucket = StorageClient.getInstance().bucket("timed-system.firebasestorage.app");
-                String prefix = "event_selfies/" + userId + "/";
-
-                // List blobs in the directory
-                Iterable<Blob> blobs = bucket.list(Storage.BlobListOption.prefix(prefix)).iterateAll();
-                Blob mostRecentBlob = null;
-                long maxTime = 0;
-
-                String searchPattern = "selfie_event_" + eventId;
-                String manualSearchPattern = "manual_selfie_" + eventId;
-                boolean foundMatch = false;
-
-                for (Blob blob : blobs) {
-                    String blobName = blob.getName();
-                    if (blobName.contains(searchPattern) || blobName.contains(manualSearchPattern)) {
-                        foundMatch = true;
-                        if (blob.getUpdateTime() > maxTime) {
-                            maxTime = blob.getUpdateTime();
-                            mostRecentBlob = blob;
-                        }
-                    }
-                }
-
-                if (mostRecentBlob != null) {
-                    String encodedName = URLEncoder.encode(mostRecentBlob.getName(), StandardCharsets.UTF_8.toString());
-                    selfieUrl = "https://firebasestorage.googleapis.com/v0/b/timed-system.firebasestorage.app/o/"
-                            + encodedName + "?alt=media";
-
-                    // Add token if available
-                    Map<String, String> metadata = mostRecentBlob.getMetadata();
-                    if (metadata != null && metadata.containsKey("firebaseStorageDownloadTokens")) {
-                        String token = metadata.get("firebaseStorageDownloadTokens");
-                        // If multiple tokens, take the first one
-                        if (token.contains(",")) {
-                            token = token.split(",")[0];
-                        }
-                        selfieUrl += "&token=" + token;
-                    }
-
-                    System.out.println("[AttendanceService] Found selfie URL: " + selfieUrl);
-                    return selfieUrl; // Return immediately if found
-                }
-
-                if (!foundMatch) {
-                    System.out.println("[AttendanceService] No matching selfie found in attempt " + (i + 1));
-                }
-
-                // If not found, wait before retrying (unless it's the last attempt)
-                if (i < maxRetries - 1) {
-                    Thread.sleep(retryDelayMs);
-                }
+        try {
+            selfieUrl = selfieService.findSelfieUrl(userId, eventId);
+        } catch (Exception e) {
+            System.err.println("[AttendanceService] Error looking up selfie: " + e.getMessage());
+        }
+        return selfieOrProfilePicture(selfieUrl, userId, eventId, userDoc);
+    }
 
-            } catch (Exception e) {
-                System.err.println("[AttendanceService] Error fetching selfie from storage (Attempt " + (i + 1) + "): "
-                        + e.getMessage());
-                if (i < maxRetries - 1) {
-                    try {
-                        Thread.sleep(retryDelayMs);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                    }
-                }
-            }
+    private String selfieOrProfilePicture(String selfieUrl, String userId, String eventId, DocumentSnapshot userDoc) {
+        if (selfieUrl != null) {
+            System.out.println("[AttendanceService] Found selfie URL: " + selfieUrl);
+            return selfieUrl;
         }
 
-        // Fallback to profile picture if no event selfie found after all retries
-        System.out.println("[AttendanceService] Failed to find selfie after " + maxRetries
-                + " attempts. Falling back to profile picture.");
+        // Fallback to profile picture if no event selfie was uploaded
+        System.out.println("[AttendanceService] No selfie found for user: " + userId + ", event: " + eventId
+                + ". Falling back to profile picture.");
         return userDoc.getString("profilePictureUrl");
     }
-}
\ No newline at end of file
+
+    // Per-phase time-in latency, exposed at /actuator/metrics/attendance.timein.latency
+    private Timer timeInTimer(String path, String phase) {
+        return Timer.builder("attendance.timein.latency")
+                .description("Time-in latency by phase")
+                .tags("path", path, "phase", phase)
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+}
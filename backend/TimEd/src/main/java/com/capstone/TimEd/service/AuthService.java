@@ -176,6 +176,22 @@ public class AuthService {
         }
     }
 
+    /**
+     * True if the Authorization header carries a valid Firebase ID token whose role claim is ADMIN.
+     */
+    public boolean isAdmin(String authorization) {
+        if (isNullOrBlank(authorization)) {
+            return false;
+        }
+        String idToken = authorization.startsWith("Bearer ") ? authorization.substring(7) : authorization;
+        try {
+            Object role = firebaseAuth.verifyIdToken(idToken).getClaims().get("role");
+            return role != null && "ADMIN".equalsIgnoreCase(role.toString());
+        } catch (FirebaseAuthException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
     private boolean isNullOrBlank(String str) {
         return str == null || str.trim().isEmpty();
     }
@@ -0,0 +1,20 @@
+package com.capstone.TimEd.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retry delays for calls to other services
+ */
+public final class Backoff {
+
+    private Backoff() {}
+
+    /**
+     * Exponential delay for a 1-based attempt number, capped at maxMs. Half of the delay is random,
+     * so callers that failed together don't all retry at the same moment.
+     */
+    public static long jittered(long baseMs, long maxMs, int attempt) {
+        long exponential = Math.min(baseMs << Math.min(Math.max(attempt - 1, 0), 16), maxMs);
+        return exponential / 2 + ThreadLocalRandom.current().nextLong(exponential / 2 + 1);
+    }
+}
@@ -0,0 +1,38 @@
+package com.capstone.TimEd.service;
+
+import java.io.IOException;
+
+/**
+ * Byte storage addressed by path. Writers use content-derived paths, so an object is never rewritten
+ * once it exists.
+ */
+public interface BlobStore {
+
+    /**
+     * Returns the object's bytes, or null if there is no object at that path.
+     */
+    byte[] get(String path) throws IOException;
+
+    /**
+     * Store an object unless one already exists at that path. Returns false if it already existed.
+     */
+    boolean putIfAbsent(String path, byte[] content, String contentType) throws IOException;
+
+    /**
+     * Delete the object at exactly this path. Returns false if there was none.
+     */
+    boolean delete(String path) throws IOException;
+
+    /**
+     * Delete every object whose path starts with the prefix. Returns the number deleted.
+     */
+    int deletePrefix(String prefix) throws IOException;
+
+    /**
+     * A URL that lets anyone holding it read the object until it expires,
+     * or null if this store can't hand out URLs.
+     */
+    default String signedUrl(String path, long ttlMillis) throws IOException {
+        return null;
+    }
+}
@@ -0,0 +1,47 @@
+package com.capstone.TimEd.service;
+
+import java.io.IOException;
+
+/**
+ * A non-2xx response from the Brevo API
+ */
+public class BrevoApiException extends IOException {
+
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    public BrevoApiException(int statusCode, String body, long retryAfterMillis) {
+        super("Brevo API returned " + statusCode + ": " + body);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * How long Brevo asked us to wait before the next request, or 0 if it didn't say
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Brevo failed on its side, so the request can be tried again or sent through another provider
+     */
+    public boolean isServerError() {
+        return statusCode >= 500;
+    }
+
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+
+    /**
+     * Errors caused by the request itself (bad address, bad payload) that will fail again if retried unchanged
+     */
+    public boolean isPermanent() {
+        return statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429;
+    }
+}
@@ -0,0 +1,144 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal client for Brevo's transactional email endpoint (POST /smtp/email).
+ * Several emails can go out in one request as message versions, each with its own recipient,
+ * subject and content; attachments can only be set for the whole request.
+ */
+@Component
+public class BrevoClient {
+
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    static final String SENDER_NAME = "TimEd System";
+    static final String SENDER_EMAIL = "timeedsystem@gmail.com";
+
+    private final String baseUrl;
+    private final String apiKey;
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public BrevoClient(@Value("${app.brevo.base-url:https://api.brevo.com/v3}") String baseUrl,
+                       @Value("${BREVO_API_KEY:}") String apiKey,
+                       @Qualifier("brevoHttpClient") OkHttpClient httpClient) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.apiKey = apiKey;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Send one email, with its attachment if it has one
+     */
+    public void send(OutboxEmail email, byte[] attachment) throws IOException {
+        Map<String, Object> payload = basePayload(email.getTags());
+        payload.put("to", List.of(Map.of("email", email.getToEmail())));
+        payload.put("subject", email.getSubject());
+        putContent(payload, email);
+        if (attachment != null && attachment.length > 0) {
+            payload.put("attachment", List.of(Map.of(
+                    "name", email.getAttachmentName() != null ? email.getAttachmentName() : "attachment",
+                    "content", Base64.getEncoder().encodeToString(attachment))));
+        }
+        post(payload);
+    }
+
+    /**
+     * Send several emails without attachments in a single request, one message version per email.
+     * All of them must share the same tags.
+     */
+    public void sendVersions(List<OutboxEmail> emails) throws IOException {
+        if (emails.size() == 1) {
+            send(emails.get(0), null);
+            return;
+        }
+        OutboxEmail first = emails.get(0);
+        Map<String, Object> payload = basePayload(first.getTags());
+        // Brevo only lets versions override subject and content that are also set on the request itself
+        payload.put("subject", first.getSubject());
+        putContent(payload, first);
+
+        List<Map<String, Object>> versions = new ArrayList<>();
+        for (OutboxEmail email : emails) {
+            Map<String, Object> version = new LinkedHashMap<>();
+            version.put("to", List.of(Map.of("email", email.getToEmail())));
+            version.put("subject", email.getSubject());
+            putContent(version, email);
+            versions.add(version);
+        }
+        payload.put("messageVersions", versions);
+        post(payload);
+    }
+
+    private Map<String, Object> basePayload(List<String> tags) {
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("sender", Map.of("name", SENDER_NAME, "email", SENDER_EMAIL));
+        payload.put("replyTo", Map.of("name", SENDER_NAME, "email", SENDER_EMAIL));
+        if (tags != null && !tags.isEmpty()) {
+            payload.put("tags", tags);
+        }
+        return payload;
+    }
+
+    private static void putContent(Map<String, Object> target, OutboxEmail email) {
+        if (email.getHtmlContent() != null) {
+            target.put("htmlContent", email.getHtmlContent());
+        }
+        if (email.getTextContent() != null) {
+            target.put("textContent", email.getTextContent());
+        }
+    }
+
+    private void post(Map<String, Object> payload) throws IOException {
+        Request request = new Request.Builder()
+                .url(baseUrl + "/smtp/email")
+                .header("api-key", apiKey)
+                .header("accept", "application/json")
+                .post(RequestBody.create(objectMapper.writeValueAsBytes(payload), JSON))
+                .build();
+
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.isSuccessful()) {
+                return;
+            }
+            ResponseBody body = response.body();
+            throw new BrevoApiException(response.code(), body != null ? body.string() : "",
+                    retryAfterMillis(response));
+        }
+    }
+
+    /**
+     * Brevo reports the seconds until its rate limit window resets in x-sib-ratelimit-reset
+     */
+    private static long retryAfterMillis(Response response) {
+        for (String header : new String[] {"x-sib-ratelimit-reset", "Retry-After"}) {
+            String value = response.header(header);
+            if (value != null) {
+                try {
+                    return (long) (Double.parseDouble(value.trim()) * 1000);
+                } catch (NumberFormatException e) {
+                    // Not a number of seconds; fall through to the next header
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,427 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.capstone.TimEd.model.CertificateBatch;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.itextpdf.kernel.exceptions.PdfException;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Renders certificates for a whole event on a pool sized to the CPU count.
+ * Starting a send returns a batch right away and its counters can be polled while it runs;
+ * archives stream a ZIP of the rendered PDFs as they complete.
+ */
+@Service
+public class CertificateBatchService {
+
+    @FunctionalInterface
+    private interface RecipientLoader {
+        List<Map<String, String>> load() throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface CertificateSender {
+        void send(String email, String eventId, CertificateService.GeneratedCertificate certificate) throws Exception;
+    }
+
+    static final String BATCH_COLLECTION = "certificateBatches";
+
+    // How often a running batch's counters are saved
+    private static final long PROGRESS_SAVE_MS = 2000;
+
+    private final Firestore firestore;
+    private final CertificateService certificateService;
+    private final AttendanceService attendanceService;
+    private final BrevoEmailService brevoEmailService;
+    private final FirebaseEmailService firebaseEmailService;
+    private final MeterRegistry meterRegistry;
+
+    // 0 means one render thread per available processor
+    @Value("${app.certificate-batch.threads:0}")
+    private int threadCount;
+
+    // How long finished batches stay pollable
+    @Value("${app.certificate-batch.retention-ms:3600000}")
+    private long retentionMs;
+
+    private ExecutorService coordinators;
+    private ExecutorService renderers;
+    private int renderThreads;
+
+    private final Map<String, CertificateBatch> batches = new ConcurrentHashMap<>();
+    private final Map<String, String> runningBatchByEvent = new ConcurrentHashMap<>();
+    private final Map<String, String> latestBatchByEvent = new ConcurrentHashMap<>();
+
+    private Counter sentCounter;
+    private Counter failedCounter;
+
+    public CertificateBatchService(Firestore firestore, CertificateService certificateService,
+                                   AttendanceService attendanceService, BrevoEmailService brevoEmailService,
+                                   FirebaseEmailService firebaseEmailService, MeterRegistry meterRegistry) {
+        this.firestore = firestore;
+        this.certificateService = certificateService;
+        this.attendanceService = attendanceService;
+        this.brevoEmailService = brevoEmailService;
+        this.firebaseEmailService = firebaseEmailService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        renderThreads = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+
+        AtomicInteger renderNumber = new AtomicInteger();
+        renderers = Executors.newFixedThreadPool(renderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "certificate-batch-render-" + renderNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Coordinators only load attendees and feed the render pool
+        AtomicInteger coordinatorNumber = new AtomicInteger();
+        coordinators = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "certificate-batch-" + coordinatorNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        sentCounter = Counter.builder("certificate.batch.certificates").tag("result", "sent").register(meterRegistry);
+        failedCounter = Counter.builder("certificate.batch.certificates").tag("result", "failed").register(meterRegistry);
+        Gauge.builder("certificate.batch.running", runningBatchByEvent, Map::size)
+                .description("Bulk certificate sends in progress")
+                .register(meterRegistry);
+
+        System.out.println("[CertificateBatchService] Using " + renderThreads + " certificate render threads");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (coordinators != null) {
+            coordinators.shutdownNow();
+        }
+        if (renderers != null) {
+            renderers.shutdownNow();
+        }
+    }
+
+    /**
+     * Send the event's certificates through Brevo to every recipient with an email.
+     * Throws IllegalArgumentException if the certificate template doesn't exist.
+     */
+    public CertificateBatch startTemplateSend(String certificateId, String eventId)
+            throws ExecutionException, InterruptedException {
+        Certificate template = certificateService.getCertificate(certificateId);
+        if (template == null) {
+            throw new IllegalArgumentException("Certificate template not found with ID: " + certificateId);
+        }
+        return start(eventId, () -> certificateService.getEmailRecipients(eventId),
+                (email, id, certificate) ->
+                        brevoEmailService.sendCertificateEmail(email, id, certificate.getPdf()));
+    }
+
+    /**
+     * Send the event's certificates to everyone in the attendance list with an email, through the Firebase mail queue.
+     */
+    public CertificateBatch startAttendanceSend(String eventId) {
+        return start(eventId, () -> CertificateService.withEmail(attendanceService.getAttendees(eventId)),
+                firebaseEmailService::sendCertificateEmail);
+    }
+
+    /**
+     * A batch from this instance, or the saved copy when it ran elsewhere or before a restart
+     */
+    public CertificateBatch getBatch(String batchId) {
+        CertificateBatch batch = batches.get(batchId);
+        if (batch != null) {
+            return batch;
+        }
+        try {
+            DocumentSnapshot doc = firestore.collection(BATCH_COLLECTION).document(batchId).get().get();
+            return doc.exists() ? CertificateBatch.fromMap(doc.getId(), doc.getData()) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("[CertificateBatchService] Error loading batch " + batchId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The running batch for an event, or the most recent finished one
+     */
+    public CertificateBatch getLatestBatch(String eventId) {
+        String batchId = latestBatchByEvent.get(eventId);
+        CertificateBatch batch = batchId != null ? batches.get(batchId) : null;
+        if (batch != null) {
+            return batch;
+        }
+        try {
+            // An event only has a handful of batches, so pick the newest here rather than need an index
+            CertificateBatch latest = null;
+            for (QueryDocumentSnapshot doc : firestore.collection(BATCH_COLLECTION).whereEqualTo("eventId", eventId)
+                    .get().get().getDocuments()) {
+                CertificateBatch saved = CertificateBatch.fromMap(doc.getId(), doc.getData());
+                if (latest == null || saved.getStartedAt() > latest.getStartedAt()) {
+                    latest = saved;
+                }
+            }
+            return latest;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.err.println("[CertificateBatchService] Error loading batches for event " + eventId + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    private CertificateBatch start(String eventId, RecipientLoader loader, CertificateSender sender) {
+        purgeFinishedBatches();
+
+        CertificateBatch batch = new CertificateBatch(UUID.randomUUID().toString(), eventId,
+                System.currentTimeMillis());
+        batches.put(batch.getId(), batch);
+        // Only one send per event at a time, so a double click doesn't email everyone twice
+        String runningId = runningBatchByEvent.putIfAbsent(eventId, batch.getId());
+        if (runningId != null) {
+            batches.remove(batch.getId());
+            System.out.println("[CertificateBatchService] Batch " + runningId + " already running for event " + eventId);
+            return batches.get(runningId);
+        }
+        latestBatchByEvent.put(eventId, batch.getId());
+
+        try {
+            coordinators.execute(() -> run(batch, loader, sender));
+        } catch (RejectedExecutionException e) {
+            runningBatchByEvent.remove(eventId, batch.getId());
+            batch.recordFailure("Certificate batches are shutting down");
+            batch.finish(CertificateBatch.STATUS_FAILED, System.currentTimeMillis());
+            save(batch);
+        }
+        System.out.println("[CertificateBatchService] Started certificate batch " + batch.getId()
+                + " for event " + eventId);
+        return batch;
+    }
+
+    private void run(CertificateBatch batch, RecipientLoader loader, CertificateSender sender) {
+        String eventId = batch.getEventId();
+        // Only this thread saves the batch, so the writes land in order
+        save(batch);
+        try {
+            List<Map<String, String>> recipients = loader.load();
+            batch.setTotal(recipients.size());
+            save(batch);
+            long savedAt = System.currentTimeMillis();
+            System.out.println("[CertificateBatchService] Batch " + batch.getId() + ": " + recipients.size()
+                    + " certificates to send");
+
+            // Bound queued work to a couple of certificates per thread so large events don't pile up in memory
+            Semaphore window = new Semaphore(renderThreads * 2);
+            CountDownLatch remaining = new CountDownLatch(recipients.size());
+            for (Map<String, String> attendee : recipients) {
+                if (System.currentTimeMillis() - savedAt >= PROGRESS_SAVE_MS) {
+                    save(batch);
+                    savedAt = System.currentTimeMillis();
+                }
+                window.acquire();
+                try {
+                    renderers.execute(() -> {
+                        try {
+                            renderAndSend(batch, attendee, sender);
+                        } finally {
+                            window.release();
+                            remaining.countDown();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    window.release();
+                    remaining.countDown();
+                    batch.recordFailure("Certificate batches are shutting down");
+                    failedCounter.increment();
+                }
+            }
+            while (!remaining.await(PROGRESS_SAVE_MS, TimeUnit.MILLISECONDS)) {
+                save(batch);
+            }
+
+            batch.finish(CertificateBatch.STATUS_DONE, System.currentTimeMillis());
+            System.out.println("[CertificateBatchService] Batch " + batch.getId() + " finished: "
+                    + batch.getSucceeded() + " sent, " + batch.getFailed() + " failed");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            batch.recordFailure("Interrupted");
+            batch.finish(CertificateBatch.STATUS_FAILED, System.currentTimeMillis());
+        } catch (Exception e) {
+            System.err.println("[CertificateBatchService] Batch " + batch.getId() + " failed: " + e.getMessage());
+            e.printStackTrace();
+            batch.recordFailure(e.getMessage());
+            batch.finish(CertificateBatch.STATUS_FAILED, System.currentTimeMillis());
+        } finally {
+            save(batch);
+            runningBatchByEvent.remove(eventId, batch.getId());
+        }
+    }
+
+    private void save(CertificateBatch batch) {
+        try {
+            firestore.collection(BATCH_COLLECTION).document(batch.getId()).set(batch.toMap()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The in-memory batch is still accurate; only other instances see stale counts
+            System.err.println("[CertificateBatchService] Error saving batch " + batch.getId() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private void renderAndSend(CertificateBatch batch, Map<String, String> attendee, CertificateSender sender) {
+        String email = attendee.get("email");
+        try {
+            CertificateService.GeneratedCertificate certificate =
+                    certificateService.generateStoredCertificate(attendee, batch.getEventId());
+            sender.send(email, batch.getEventId(), certificate);
+            batch.recordSuccess();
+            sentCounter.increment();
+        } catch (Exception e) {
+            System.err.println("[CertificateBatchService] Error sending certificate to " + email + ": "
+                    + e.getMessage());
+            batch.recordFailure(e.getMessage());
+            failedCounter.increment();
+        }
+    }
+
+    /**
+     * Write a ZIP with one PDF per recipient to the stream, in recipient order.
+     * Certificates render in parallel on the batch pool, but at most a couple per thread are held
+     * at once: the writer waits for the oldest render, writes it, then queues the next.
+     */
+    public void writeCertificateArchive(String eventId, List<Map<String, String>> recipients, OutputStream out)
+            throws IOException, InterruptedException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        Deque<Future<byte[]>> window = new ArrayDeque<>();
+        Set<String> entryNames = new HashSet<>();
+        Iterator<Map<String, String>> pending = recipients.iterator();
+        Deque<Map<String, String>> inFlight = new ArrayDeque<>();
+        int windowSize = renderThreads * 2;
+        int written = 0;
+
+        try {
+            while (pending.hasNext() || !window.isEmpty()) {
+                while (pending.hasNext() && window.size() < windowSize) {
+                    Map<String, String> recipient = pending.next();
+                    inFlight.add(recipient);
+                    window.add(renderers.submit(() -> checkedPdf(certificateService.generateCertificate(recipient,
+                            eventId))));
+                }
+
+                Map<String, String> recipient = inFlight.poll();
+                byte[] certificatePdf;
+                try {
+                    certificatePdf = window.poll().get();
+                } catch (ExecutionException e) {
+                    // Leave the attendee out rather than abort an archive that is already half sent
+                    System.err.println("[CertificateBatchService] Error rendering certificate for "
+                            + recipient.get("email") + ": " + e.getCause().getMessage());
+                    continue;
+                }
+
+                ZipEntry entry = new ZipEntry(archiveEntryName(recipient, entryNames));
+                // PDFs are already compressed, so store them instead of deflating again
+                CRC32 crc = new CRC32();
+                crc.update(certificatePdf);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(certificatePdf.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(certificatePdf);
+                zip.closeEntry();
+                zip.flush();
+                written++;
+            }
+            zip.finish();
+            System.out.println("[CertificateBatchService] Archived " + written + " certificates for event " + eventId);
+        } finally {
+            // The client may have gone away; don't keep rendering for nobody
+            for (Future<byte[]> future : window) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Parse a rendered certificate before it goes into the archive, on the render thread,
+     * so a corrupt PDF is left out like a failed render instead of being shipped
+     */
+    static byte[] checkedPdf(byte[] certificatePdf) throws IOException {
+        if (certificatePdf == null || certificatePdf.length == 0) {
+            throw new IOException("Certificate PDF is empty");
+        }
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(certificatePdf)))) {
+            if (pdf.getNumberOfPages() < 1) {
+                throw new IOException("Certificate PDF has no pages");
+            }
+        } catch (PdfException e) {
+            throw new IOException("Certificate PDF is invalid: " + e.getMessage(), e);
+        }
+        return certificatePdf;
+    }
+
+    static String archiveEntryName(Map<String, String> recipient, Set<String> usedNames) {
+        String lastName = recipient.getOrDefault("lastName", "");
+        String firstName = recipient.getOrDefault("firstName", "");
+        // Keep letters and digits in any script (entry names are written as UTF-8); only separators become _
+        String base = Normalizer.normalize(lastName + "_" + firstName, Normalizer.Form.NFC)
+                .replaceAll("[^\\p{L}\\p{M}\\p{N}]+", "_").replaceAll("^_+|_+$", "");
+        if (base.isEmpty()) {
+            base = "certificate";
+        }
+        String name = base + ".pdf";
+        for (int i = 2; !usedNames.add(name); i++) {
+            name = base + "_" + i + ".pdf";
+        }
+        return name;
+    }
+
+    private void purgeFinishedBatches() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        batches.values().removeIf(batch -> !batch.isRunning() && batch.getCompletedAt() < cutoff);
+        latestBatchByEvent.values().removeIf(batchId -> !batches.containsKey(batchId));
+    }
+}
@@ -0,0 +1,304 @@
+package com.capstone.TimEd.service;
+
+import com.itextpdf.kernel.geom.PageSize;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataFormatImpl;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Prepares uploaded certificate images for storage. Each image is downsampled to the print DPI of the area
+ * it is drawn into, re-encoded without its metadata, and written as PNG when it uses transparency
+ * and as JPEG or PNG (whichever is smaller) when it is opaque.
+ */
+@Service
+public class CertificateImageOptimizer {
+
+    // Signatures are scaled to fit this box (points) when the certificate is rendered
+    static final float SIGNATURE_WIDTH = 100;
+    static final float SIGNATURE_HEIGHT = 50;
+
+    // Logos are drawn at the template's logo size; leave room to enlarge it without uploading again
+    static final float MIN_LOGO_SIZE = 300;
+
+    @Value("${app.certificates.image-dpi:300}")
+    private int dpi = 300;
+
+    @Value("${app.certificates.image-jpeg-quality:0.85}")
+    private float jpegQuality = 0.85f;
+
+    public static final class OptimizedImage {
+        private final byte[] bytes;
+        private final String format;
+        private final int width;
+        private final int height;
+        private final int originalSize;
+
+        OptimizedImage(byte[] bytes, String format, int width, int height, int originalSize) {
+            this.bytes = bytes;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.originalSize = originalSize;
+        }
+
+        public byte[] getBytes() { return bytes; }
+
+        public String getFormat() { return format; }
+
+        public int getWidth() { return width; }
+
+        public int getHeight() { return height; }
+
+        public int getOriginalSize() { return originalSize; }
+
+        public int getBytesSaved() { return originalSize - bytes.length; }
+
+        public Map<String, Object> toReport() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("format", format);
+            report.put("width", width);
+            report.put("height", height);
+            report.put("originalBytes", originalSize);
+            report.put("storedBytes", bytes.length);
+            report.put("bytesSaved", getBytesSaved());
+            return report;
+        }
+    }
+
+    /**
+     * Backgrounds are stretched over the whole page and drawn over white, so each axis is reduced
+     * separately and transparency is flattened.
+     */
+    public OptimizedImage optimizeBackground(byte[] original) throws IOException {
+        return optimize(original, toPixels(PageSize.A4.getWidth()), toPixels(PageSize.A4.getHeight()), false, true);
+    }
+
+    public OptimizedImage optimizeLogo(byte[] original, float logoWidth, float logoHeight) throws IOException {
+        return optimize(original, toPixels(Math.max(logoWidth, MIN_LOGO_SIZE)),
+                toPixels(Math.max(logoHeight, MIN_LOGO_SIZE)), true, false);
+    }
+
+    public OptimizedImage optimizeSignature(byte[] original) throws IOException {
+        return optimize(original, toPixels(SIGNATURE_WIDTH), toPixels(SIGNATURE_HEIGHT), true, false);
+    }
+
+    /**
+     * Watermarks are drawn at their pixel size, so they are re-encoded but never resized.
+     */
+    public OptimizedImage optimizeWatermark(byte[] original) throws IOException {
+        return optimize(original, Integer.MAX_VALUE, Integer.MAX_VALUE, true, false);
+    }
+
+    /**
+     * Returns the original bytes unchanged for CMYK and YCCK JPEGs, when ImageIO can't decode or re-encode
+     * the image, and when the optimized image would be no smaller.
+     */
+    OptimizedImage optimize(byte[] original, int maxWidth, int maxHeight, boolean keepAspectRatio, boolean flatten)
+            throws IOException {
+        if (isFourChannelJpeg(original)) {
+            // ImageIO decodes these as if they were RGB, or not at all, so re-encoding would wreck the colours
+            System.out.println("[CertificateImageOptimizer] CMYK JPEG, storing " + original.length
+                    + " bytes unchanged");
+            return unchanged(original, -1, -1);
+        }
+
+        BufferedImage image;
+        try {
+            image = ImageIO.read(new ByteArrayInputStream(original));
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[CertificateImageOptimizer] Can't decode image (" + e.getMessage() + "), storing "
+                    + original.length + " bytes unchanged");
+            return unchanged(original, -1, -1);
+        }
+        if (image == null) {
+            System.out.println("[CertificateImageOptimizer] Unreadable image format, storing " + original.length
+                    + " bytes unchanged");
+            return unchanged(original, -1, -1);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int targetWidth = Math.min(width, maxWidth);
+        int targetHeight = Math.min(height, maxHeight);
+        if (keepAspectRatio) {
+            double scale = Math.min(1.0, Math.min((double) maxWidth / width, (double) maxHeight / height));
+            targetWidth = Math.max(1, (int) Math.round(width * scale));
+            targetHeight = Math.max(1, (int) Math.round(height * scale));
+        }
+
+        boolean transparent = !flatten && usesAlpha(image);
+        byte[] bytes;
+        String format;
+        try {
+            BufferedImage optimized = resize(image, targetWidth, targetHeight, transparent);
+            if (transparent) {
+                bytes = encodePng(optimized);
+                format = "png";
+            } else {
+                byte[] jpeg = encodeJpeg(optimized);
+                byte[] png = encodePng(optimized);
+                // Flat artwork such as logos on a solid background is usually smaller, and sharper, as PNG
+                if (png.length <= jpeg.length) {
+                    bytes = png;
+                    format = "png";
+                } else {
+                    bytes = jpeg;
+                    format = "jpeg";
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[CertificateImageOptimizer] Can't re-encode " + width + "x" + height + " image ("
+                    + e.getMessage() + "), storing " + original.length + " bytes unchanged");
+            return unchanged(original, width, height);
+        }
+
+        if (bytes.length >= original.length) {
+            // Already well compressed; re-encoding would only cost quality
+            System.out.println("[CertificateImageOptimizer] " + width + "x" + height + " (" + original.length
+                    + " bytes) would grow to " + bytes.length + " bytes, storing it unchanged");
+            return unchanged(original, width, height);
+        }
+
+        System.out.println("[CertificateImageOptimizer] " + width + "x" + height + " (" + original.length
+                + " bytes) -> " + targetWidth + "x" + targetHeight + " " + format + " (" + bytes.length + " bytes)");
+        return new OptimizedImage(bytes, format, targetWidth, targetHeight, original.length);
+    }
+
+    /**
+     * True for JPEGs with four colour components (CMYK or YCCK), read from the header without decoding the image
+     */
+    static boolean isFourChannelJpeg(byte[] bytes) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                if (!"jpeg".equalsIgnoreCase(reader.getFormatName())) {
+                    return false;
+                }
+                reader.setInput(input, true, true);
+                IIOMetadata metadata = reader.getImageMetadata(0);
+                Node channels = findNode(metadata.getAsTree(IIOMetadataFormatImpl.standardMetadataFormatName),
+                        "NumChannels");
+                return channels != null
+                        && "4".equals(channels.getAttributes().getNamedItem("value").getNodeValue());
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            return false; // left to ImageIO.read, which stores undecodable images unchanged
+        }
+    }
+
+    private static Node findNode(Node node, String name) {
+        if (name.equals(node.getNodeName())) {
+            return node;
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            Node found = findNode(child, name);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private static OptimizedImage unchanged(byte[] original, int width, int height) {
+        return new OptimizedImage(original, "original", width, height, original.length);
+    }
+
+    int toPixels(float points) {
+        return Math.round(points / 72f * dpi);
+    }
+
+    private static boolean usesAlpha(BufferedImage image) {
+        if (!image.getColorModel().hasAlpha()) {
+            return false;
+        }
+        int[] row = new int[image.getWidth()];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, row.length, 1, row, 0, row.length);
+            for (int argb : row) {
+                if ((argb >>> 24) != 0xFF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resize in halving steps so large reductions don't skip most source pixels, drawing onto white
+     * unless the transparency is kept.
+     */
+    private static BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight, boolean transparent) {
+        int type = transparent ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage next = new BufferedImage(width, height, type);
+            Graphics2D g2d = next.createGraphics();
+            if (!transparent) {
+                g2d.setColor(java.awt.Color.WHITE);
+                g2d.fillRect(0, 0, width, height);
+            }
+            g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g2d.drawImage(current, 0, 0, width, height, null);
+            g2d.dispose();
+            current = next;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, "png", out)) {
+            throw new IOException("No PNG writer available");
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
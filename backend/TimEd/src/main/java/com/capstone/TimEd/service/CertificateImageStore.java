@@ -0,0 +1,69 @@
+package com.capstone.TimEd.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Certificate template images (backgrounds, logos, watermarks and signatures), stored by the SHA-256 of
+ * their bytes. Certificate documents keep only the hash, so an image shared by several templates is stored once
+ * and saving an unchanged template does not upload anything.
+ */
+@Service
+public class CertificateImageStore {
+
+    private static final String ROOT = "certificate-images/";
+
+    private final BlobStore blobStore;
+
+    public CertificateImageStore(BlobStore blobStore) {
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Store an image and return its reference
+     */
+    public String put(byte[] image) throws IOException {
+        String ref = hash(image);
+        blobStore.putIfAbsent(path(ref), image, contentType(image));
+        return ref;
+    }
+
+    /**
+     * Returns the image bytes, or null if nothing is stored under the reference
+     */
+    public byte[] get(String ref) throws IOException {
+        if (ref == null || !ref.matches("[0-9a-f]{64}")) {
+            return null;
+        }
+        return blobStore.get(path(ref));
+    }
+
+    String path(String ref) {
+        return ROOT + ref;
+    }
+
+    static String hash(byte[] image) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(image));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public static String contentType(byte[] image) {
+        if (image.length >= 8 && (image[0] & 0xFF) == 0x89 && image[1] == 'P' && image[2] == 'N' && image[3] == 'G') {
+            return "image/png";
+        }
+        if (image.length >= 3 && (image[0] & 0xFF) == 0xFF && (image[1] & 0xFF) == 0xD8) {
+            return "image/jpeg";
+        }
+        if (image.length >= 6 && image[0] == 'G' && image[1] == 'I' && image[2] == 'F') {
+            return "image/gif";
+        }
+        return "application/octet-stream";
+    }
+}
@@ -0,0 +1,277 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.CertificateJob;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates and emails certificates off the request thread.
+ * Time-in endpoints only enqueue a job; a poller hands ready jobs to a bounded worker pool.
+ */
+@Service
+public class CertificateJobService {
+
+    private static final long BASE_RETRY_DELAY_MS = 5_000;
+    private static final long MAX_RETRY_DELAY_MS = 10 * 60 * 1000;
+
+    private final CertificateJobStore jobStore;
+    private final CertificateService certificateService;
+    private final FirebaseEmailService firebaseEmailService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.certificate-jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.certificate-jobs.workers:4}")
+    private int workerCount;
+
+    @Value("${app.certificate-jobs.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${app.certificate-jobs.lease-ms:120000}")
+    private long leaseMs;
+
+    @Value("${app.certificate-jobs.max-attempts:5}")
+    private int maxAttempts;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService workers;
+    private Semaphore freeWorkers;
+
+    // Set while a poll requested by enqueue is waiting to run, so a burst of enqueues adds one poll
+    private final AtomicBoolean pollQueued = new AtomicBoolean();
+
+    // Cached so metric scrapes never hit Firestore
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong queueLagMs = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    public CertificateJobService(CertificateJobStore jobStore, CertificateService certificateService,
+                                 FirebaseEmailService firebaseEmailService, MeterRegistry meterRegistry) {
+        this.jobStore = jobStore;
+        this.certificateService = certificateService;
+        this.firebaseEmailService = firebaseEmailService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("certificate.jobs.depth", queueDepth, AtomicLong::get)
+                .description("Certificate jobs waiting or running")
+                .register(meterRegistry);
+        Gauge.builder("certificate.jobs.lag", queueLagMs, value -> value.get() / 1000.0)
+                .description("Age of the oldest unfinished certificate job")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("certificate.jobs.in_flight", inFlight, AtomicInteger::get)
+                .register(meterRegistry);
+
+        if (!enabled) {
+            System.out.println("[CertificateJobService] Certificate workers disabled");
+            return;
+        }
+
+        int poolSize = Math.max(1, workerCount);
+        freeWorkers = new Semaphore(poolSize);
+        AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "certificate-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "certificate-job-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::refreshQueueMetrics, 0, 15, TimeUnit.SECONDS);
+        System.out.println("[CertificateJobService] Started " + poolSize + " certificate workers");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (workers != null) {
+            // Unfinished jobs keep their lease and are picked up again after a restart
+            workers.shutdown();
+            try {
+                workers.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queue certificate generation and email for an attendee.
+     * Returns false if a job for this event and user was already queued. Store errors are thrown so the
+     * caller can undo the time-in instead of keeping an attendance record that never gets a certificate.
+     */
+    public boolean enqueue(String eventId, String userId, String email, String firstName, String lastName,
+                           String timeIn, boolean manualEntry) throws ExecutionException, InterruptedException {
+        CertificateJob job = new CertificateJob(eventId, userId, email, firstName, lastName, timeIn, manualEntry);
+        long now = System.currentTimeMillis();
+        job.setStatus(CertificateJob.STATUS_PENDING);
+        job.setEnqueuedAt(now);
+        job.setAvailableAt(now);
+
+        boolean created = jobStore.enqueue(job);
+        if (created) {
+            System.out.println("[CertificateJobService] Queued certificate job " + job.getId());
+            queueDepth.incrementAndGet();
+            requestPoll(); // pick it up now instead of waiting for the next tick
+        } else {
+            System.out.println("[CertificateJobService] Certificate job already exists: " + job.getId());
+        }
+        return created;
+    }
+
+    /**
+     * Queue several jobs in one batch, e.g. for kiosk bulk time-in. Returns how many were newly queued.
+     * Store errors are thrown, as in enqueue().
+     */
+    public int enqueueAll(List<CertificateJob> jobs) throws ExecutionException, InterruptedException {
+        long now = System.currentTimeMillis();
+        for (CertificateJob job : jobs) {
+            job.setStatus(CertificateJob.STATUS_PENDING);
+            job.setEnqueuedAt(now);
+            job.setAvailableAt(now);
+        }
+
+        int created = jobStore.enqueueAll(jobs);
+        System.out.println("[CertificateJobService] Queued " + created + " of " + jobs.size() + " certificate jobs");
+        queueDepth.addAndGet(created);
+        if (created > 0) {
+            requestPoll();
+        }
+        return created;
+    }
+
+    /**
+     * Run a poll soon. One queued poll covers every job enqueued before it runs.
+     */
+    private void requestPoll() {
+        if (scheduler != null && pollQueued.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                pollQueued.set(false);
+                poll();
+            });
+        }
+    }
+
+    public CertificateJob getJob(String eventId, String userId) throws Exception {
+        return jobStore.get(CertificateJob.idFor(eventId, userId));
+    }
+
+    /**
+     * Queue depth and lag, as last sampled from the store
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("depth", queueDepth.get());
+        stats.put("lagSeconds", queueLagMs.get() / 1000.0);
+        stats.put("inFlight", inFlight.get());
+        stats.put("workers", Math.max(1, workerCount));
+        stats.put("completed", completedCount.get());
+        stats.put("failed", failedCount.get());
+        return stats;
+    }
+
+    void poll() {
+        try {
+            int free = freeWorkers.availablePermits();
+            if (free == 0) {
+                return;
+            }
+
+            List<CertificateJob> jobs = jobStore.claim(free, System.currentTimeMillis(), leaseMs);
+            for (CertificateJob job : jobs) {
+                freeWorkers.acquire();
+                inFlight.incrementAndGet();
+                workers.execute(() -> {
+                    try {
+                        process(job);
+                    } finally {
+                        inFlight.decrementAndGet();
+                        freeWorkers.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("[CertificateJobService] Error polling certificate jobs: " + e.getMessage());
+        }
+    }
+
+    void process(CertificateJob job) {
+        try {
+            if (job.getEmail() == null || job.getEmail().isEmpty()) {
+                System.err.println("[CertificateJobService] Email is missing for job " + job.getId());
+                jobStore.fail(job.getId(), System.currentTimeMillis(), "Email not found");
+                failedCount.incrementAndGet();
+                return;
+            }
+
+            System.out.println("[CertificateJobService] Generating certificate for job " + job.getId()
+                    + " (attempt " + job.getAttempts() + ")");
+            CertificateService.GeneratedCertificate certificate =
+                    certificateService.generateStoredCertificate(job.toAttendeeMap(), job.getEventId());
+            firebaseEmailService.queueCertificateEmail(job.getEmail(), job.getEventId(), certificate);
+
+            jobStore.complete(job.getId(), System.currentTimeMillis());
+            completedCount.incrementAndGet();
+            System.out.println("[CertificateJobService] Certificate job completed: " + job.getId());
+        } catch (Exception e) {
+            System.err.println("[CertificateJobService] Certificate job " + job.getId() + " failed: " + e.getMessage());
+            try {
+                if (job.getAttempts() >= maxAttempts) {
+                    jobStore.fail(job.getId(), System.currentTimeMillis(), e.getMessage());
+                    failedCount.incrementAndGet();
+                } else {
+                    long delay = Backoff.jittered(BASE_RETRY_DELAY_MS, MAX_RETRY_DELAY_MS, job.getAttempts());
+                    jobStore.retry(job.getId(), System.currentTimeMillis() + delay, e.getMessage());
+                }
+            } catch (Exception storeError) {
+                // The lease will expire and another poll will pick the job up again
+                System.err.println("[CertificateJobService] Could not record failure for job " + job.getId() + ": "
+                        + storeError.getMessage());
+            }
+        }
+    }
+
+    private void refreshQueueMetrics() {
+        try {
+            queueDepth.set(jobStore.countActive());
+            Long oldest = jobStore.oldestActiveEnqueuedAt();
+            queueLagMs.set(oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("[CertificateJobService] Error sampling queue metrics: " + e.getMessage());
+        }
+    }
+}
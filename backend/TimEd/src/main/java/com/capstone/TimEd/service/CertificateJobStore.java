@@ -0,0 +1,50 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.CertificateJob;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Durable storage for certificate jobs. Implementations must treat the job ID
+ * ({eventId}_{userId}) as an idempotency key.
+ */
+public interface CertificateJobStore {
+
+    /**
+     * Store a new PENDING job. Returns false if a job for the same event and user already exists.
+     */
+    boolean enqueue(CertificateJob job) throws ExecutionException, InterruptedException;
+
+    /**
+     * Store several new PENDING jobs at once. Returns how many were created; existing jobs are skipped.
+     */
+    int enqueueAll(List<CertificateJob> jobs) throws ExecutionException, InterruptedException;
+
+    /**
+     * Claim up to {@code limit} jobs that are ready to run (PENDING, or PROCESSING with an expired lease)
+     * and mark them PROCESSING until {@code now + leaseMillis}.
+     */
+    List<CertificateJob> claim(int limit, long now, long leaseMillis) throws ExecutionException, InterruptedException;
+
+    void complete(String jobId, long now) throws ExecutionException, InterruptedException;
+
+    /**
+     * Put a job back to PENDING so it is retried at {@code availableAt}.
+     */
+    void retry(String jobId, long availableAt, String error) throws ExecutionException, InterruptedException;
+
+    void fail(String jobId, long now, String error) throws ExecutionException, InterruptedException;
+
+    CertificateJob get(String jobId) throws ExecutionException, InterruptedException;
+
+    /**
+     * Number of jobs that are PENDING or PROCESSING.
+     */
+    long countActive() throws ExecutionException, InterruptedException;
+
+    /**
+     * Enqueue time of the oldest PENDING or PROCESSING job, or null when the queue is empty.
+     */
+    Long oldestActiveEnqueuedAt() throws ExecutionException, InterruptedException;
+}
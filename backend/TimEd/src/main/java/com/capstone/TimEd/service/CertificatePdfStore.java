@@ -0,0 +1,111 @@
+package com.capstone.TimEd.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Generated certificate PDFs, stored under a hash of everything that goes into them:
+ * the template version, the event name and date, and the recipient name.
+ * A resend with unchanged inputs is served from the store instead of being rendered again,
+ * and saving a template changes its version, so stale PDFs are never served.
+ */
+@Service
+public class CertificatePdfStore {
+
+    private static final String ROOT = "generated-certificates/";
+
+    // Bump when the certificate layout changes so PDFs rendered by older code are not served
+    private static final String RENDER_VERSION = "1";
+
+    private final BlobStore blobStore;
+    private final Counter hitCounter;
+    private final Counter missCounter;
+
+    public CertificatePdfStore(BlobStore blobStore, MeterRegistry meterRegistry) {
+        this.blobStore = blobStore;
+        this.hitCounter = Counter.builder("certificate.pdf.store").tag("result", "hit").register(meterRegistry);
+        this.missCounter = Counter.builder("certificate.pdf.store").tag("result", "miss").register(meterRegistry);
+    }
+
+    public String keyFor(CompiledCertificateTemplate compiled, String eventName, String eventDate,
+                         String recipientName) {
+        String version = compiled.getVersion() != null ? compiled.getVersion().toString() : "none";
+        String templateId = compiled.getTemplate() != null ? compiled.getTemplate().getId() : "default";
+        String input = String.join("\u0000", RENDER_VERSION, templateId, version,
+                String.valueOf(eventName), String.valueOf(eventDate), String.valueOf(recipientName));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Returns the stored PDF, or null if it hasn't been generated yet or the store can't be read.
+     */
+    public byte[] get(String eventId, String key) {
+        try {
+            byte[] pdf = blobStore.get(path(eventId, key));
+            (pdf != null ? hitCounter : missCounter).increment();
+            return pdf;
+        } catch (IOException e) {
+            System.err.println("[CertificatePdfStore] Error reading certificate " + key + ": " + e.getMessage());
+            missCounter.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Store a generated PDF. Returns false if it couldn't be stored; failures are logged and otherwise ignored,
+     * and the PDF is simply rendered again next time.
+     */
+    public boolean put(String eventId, String key, byte[] pdf) {
+        try {
+            blobStore.putIfAbsent(path(eventId, key), pdf, "application/pdf");
+            return true;
+        } catch (IOException e) {
+            System.err.println("[CertificatePdfStore] Error storing certificate " + key + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * A URL for downloading a stored PDF until it expires, or null if the store can't hand one out
+     */
+    public String signedUrl(String eventId, String key, long ttlMillis) {
+        try {
+            return blobStore.signedUrl(path(eventId, key), ttlMillis);
+        } catch (IOException e) {
+            System.err.println("[CertificatePdfStore] Error signing URL for certificate " + key + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Delete every stored PDF for an event
+     */
+    public int evictEvent(String eventId) {
+        try {
+            int deleted = blobStore.deletePrefix(ROOT + eventId + "/");
+            System.out.println("[CertificatePdfStore] Evicted " + deleted + " certificates for event " + eventId);
+            return deleted;
+        } catch (IOException e) {
+            System.err.println("[CertificatePdfStore] Error evicting certificates for event " + eventId + ": "
+                    + e.getMessage());
+            return 0;
+        }
+    }
+
+    String path(String eventId, String key) {
+        return ROOT + eventId + "/" + key + ".pdf";
+    }
+}
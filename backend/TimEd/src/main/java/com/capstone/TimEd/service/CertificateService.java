@@ -1,18 +1,24 @@
 package com.capstone.TimEd.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.capstone.TimEd.model.Certificate;
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
 import com.google.cloud.firestore.*;
 import com.google.firebase.cloud.FirestoreClient;
 import com.itextpdf.kernel.pdf.*;
 import com.itextpdf.kernel.pdf.canvas.draw.SolidLine;
 import com.itextpdf.kernel.pdf.xobject.PdfFormXObject;
+import com.itextpdf.layout.Canvas;
 import com.itextpdf.layout.Document;
 import com.itextpdf.layout.element.*;
 import com.itextpdf.layout.properties.*;
+import com.itextpdf.layout.renderer.DrawContext;
+import com.itextpdf.layout.renderer.IRenderer;
+import com.itextpdf.layout.renderer.ParagraphRenderer;
 import com.itextpdf.kernel.font.*;
 import com.itextpdf.io.font.constants.StandardFonts;
 import com.itextpdf.io.image.ImageData;
@@ -26,12 +32,17 @@ import javax.imageio.ImageIO;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.format.DateTimeFormatter;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.awt.Graphics2D;
+import com.itextpdf.kernel.geom.PageSize;
 import com.itextpdf.kernel.geom.Rectangle;
 import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
 
@@ -47,7 +58,80 @@ public class CertificateService {
     private Firestore firestore;
 
     @Autowired
-    private BrevoEmailService brevoEmailService;
+    private EventMetadataCache eventMetadataCache;
+
+    @Autowired
+    private CertificatePdfStore certificatePdfStore;
+
+    @Autowired
+    private CertificateImageStore certificateImageStore;
+
+    // How long a compiled template is trusted before its version is checked against Firestore again
+    private static final long TEMPLATE_REVALIDATE_MS = 30_000;
+
+    private static final int IMAGE_MIGRATION_PAGE_SIZE = 20;
+
+    // getAll batch size for recipient user docs, and Firestore's limit on values in a whereIn filter
+    private static final int RECIPIENT_USER_BATCH_SIZE = 300;
+    private static final int EMAIL_QUERY_BATCH_SIZE = 30;
+
+    @Value("${app.certificates.template-cache-size:100}")
+    private int templateCacheSize;
+
+    private final Map<String, CachedTemplate> compiledTemplates = new ConcurrentHashMap<>();
+    private final Map<String, Object> compileLocks = new ConcurrentHashMap<>();
+
+    // Render the parts shared by every attendee once per event and stamp only the name and QR code
+    @Value("${app.certificates.static-layer:true}")
+    private boolean staticLayerEnabled;
+
+    private final Map<String, StaticLayer> staticLayers = new ConcurrentHashMap<>();
+
+    public CertificateService() {
+    }
+
+    /**
+     * A service wired by hand, for the render benchmark
+     */
+    CertificateService(Firestore firestore, EventMetadataCache eventMetadataCache,
+            CertificatePdfStore certificatePdfStore, boolean staticLayerEnabled, int templateCacheSize) {
+        this.firestore = firestore;
+        this.eventMetadataCache = eventMetadataCache;
+        this.certificatePdfStore = certificatePdfStore;
+        this.staticLayerEnabled = staticLayerEnabled;
+        this.templateCacheSize = templateCacheSize;
+    }
+
+    /**
+     * A generated certificate PDF. storeKey is its key in the CertificatePdfStore, or null if it isn't stored there.
+     */
+    public static class GeneratedCertificate {
+        private final byte[] pdf;
+        private final String storeKey;
+
+        public GeneratedCertificate(byte[] pdf, String storeKey) {
+            this.pdf = pdf;
+            this.storeKey = storeKey;
+        }
+
+        public byte[] getPdf() {
+            return pdf;
+        }
+
+        public String getStoreKey() {
+            return storeKey;
+        }
+    }
+
+    private static final class CachedTemplate {
+        final CompiledCertificateTemplate compiled;
+        volatile long checkedAt;
+
+        CachedTemplate(CompiledCertificateTemplate compiled, long checkedAt) {
+            this.compiled = compiled;
+            this.checkedAt = checkedAt;
+        }
+    }
 
     /**
      * Save a certificate (create new or update existing)
@@ -77,15 +161,18 @@ public class CertificateService {
 
         // Set the generated ID to the certificate
         certificate.setId(newCertRef.getId());
+        externalizeImages(certificate);
 
         // Write to Firestore
         ApiFuture<WriteResult> writeResult = newCertRef.set(certificate);
 
         // Wait for the operation to complete
-        writeResult.get();
+        WriteResult result = writeResult.get();
 
         System.out.println(
                 "Certificate created with ID: " + certificate.getId() + " for eventId: " + certificate.getEventId());
+        evictStoredCertificates(certificate.getEventId());
+        precompileTemplate(certificate, result.getUpdateTime());
 
         return certificate;
     }
@@ -112,13 +199,16 @@ public class CertificateService {
             throws ExecutionException, InterruptedException {
         // Set the ID in case it's not already set
         certificate.setId(id);
+        externalizeImages(certificate);
 
         // Update in Firestore
         DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
         ApiFuture<WriteResult> writeResult = docRef.set(certificate);
 
         // Wait for the operation to complete
-        writeResult.get();
+        WriteResult result = writeResult.get();
+        evictStoredCertificates(certificate.getEventId());
+        precompileTemplate(certificate, result.getUpdateTime());
 
         return certificate;
     }
@@ -127,15 +217,37 @@ public class CertificateService {
      * Delete a certificate
      */
     public String deleteCertificate(String id) throws ExecutionException, InterruptedException {
+        Certificate existing = getCertificate(id);
         DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
         ApiFuture<WriteResult> writeResult = docRef.delete();
 
         // Wait for the operation to complete
         writeResult.get();
+        if (existing != null) {
+            evictStoredCertificates(existing.getEventId());
+        }
+
+        // Only the id is known here, so find the events that were compiled from it
+        for (Map.Entry<String, CachedTemplate> entry : compiledTemplates.entrySet()) {
+            Certificate template = entry.getValue().compiled.getTemplate();
+            if (template != null && id.equals(template.getId())) {
+                evictTemplate(entry.getKey());
+            }
+        }
 
         return "Certificate successfully deleted";
     }
 
+    /**
+     * Drop an event's stored PDFs once its template changes. Their keys include the old template version,
+     * so they would never be served again and would otherwise stay in the bucket for good.
+     */
+    private void evictStoredCertificates(String eventId) {
+        if (eventId != null && !eventId.isEmpty()) {
+            certificatePdfStore.evictEvent(eventId);
+        }
+    }
+
     /**
      * Get all certificates
      */
@@ -207,146 +319,459 @@ public class CertificateService {
     }
 
     /**
-     * Send certificates to event attendees
+     * Get the compiled template for an event, compiling it at most once per template version.
+     * A cached entry is trusted for TEMPLATE_REVALIDATE_MS, after which a projection query checks
+     * whether the template document has changed.
      */
-    public String sendCertificates(String certificateId, String eventId)
+    public CompiledCertificateTemplate getCompiledTemplate(String eventId)
             throws ExecutionException, InterruptedException {
-        System.out.println("Starting to send certificates for eventId: " + eventId);
+        CachedTemplate cached = compiledTemplates.get(eventId);
+        if (cached != null && System.currentTimeMillis() - cached.checkedAt < TEMPLATE_REVALIDATE_MS) {
+            return cached.compiled;
+        }
 
-        try {
-            // Get the certificate template
-            Certificate template = getCertificate(certificateId);
-            if (template == null) {
-                throw new RuntimeException("Certificate template not found with ID: " + certificateId);
+        synchronized (compileLocks.computeIfAbsent(eventId, k -> new Object())) {
+            // Another thread may have refreshed the entry while this one waited
+            cached = compiledTemplates.get(eventId);
+            long now = System.currentTimeMillis();
+            if (cached != null && now - cached.checkedAt < TEMPLATE_REVALIDATE_MS) {
+                return cached.compiled;
             }
 
-            // Get all attendees for this event from Firestore
-            CollectionReference attendeesRef = firestore.collection("events").document(eventId).collection("attendees");
-            ApiFuture<QuerySnapshot> attendeesFuture = attendeesRef.get();
-            List<QueryDocumentSnapshot> attendeeDocs = attendeesFuture.get().getDocuments();
+            List<QueryDocumentSnapshot> versionDocs = firestore.collection(COLLECTION_NAME)
+                    .whereEqualTo("eventId", eventId)
+                    .select("eventId")
+                    .limit(1)
+                    .get().get().getDocuments();
+            Object version = versionDocs.isEmpty() ? null : versionDocs.get(0).getUpdateTime();
 
-            if (attendeeDocs.isEmpty()) {
-                return "No attendees found for this event";
+            if (cached != null && Objects.equals(cached.compiled.getVersion(), version)) {
+                cached.checkedAt = now;
+                return cached.compiled;
             }
 
-            System.out.println("Found " + attendeeDocs.size() + " attendees");
+            Certificate template;
+            if (versionDocs.isEmpty()) {
+                // Covers the legacy eventId format, which getCertificateByEventId also rewrites
+                template = getCertificateByEventId(eventId);
+            } else {
+                template = getCertificate(versionDocs.get(0).getId());
+            }
+
+            CompiledCertificateTemplate compiled = compileTemplate(template, version);
+            cacheTemplate(eventId, compiled, now);
+            System.out.println("[CertificateService] Compiled certificate template for event " + eventId
+                    + " (version " + version + ")");
+            return compiled;
+        }
+    }
+
+    /**
+     * Compile a template as it is saved, so image normalization happens on upload rather than on the first send.
+     * The write's update time is the version the revalidation query will see.
+     */
+    private void precompileTemplate(Certificate certificate, Object version) {
+        String eventId = certificate.getEventId();
+        if (eventId == null) {
+            return;
+        }
+        try {
+            cacheTemplate(eventId, compileTemplate(certificate, version), System.currentTimeMillis());
+        } catch (Exception e) {
+            System.err.println("[CertificateService] Error precompiling template for event " + eventId + ": "
+                    + e.getMessage());
+            evictTemplate(eventId);
+        }
+    }
 
-            // Get all users to lookup firstName/lastName by email or userId
-            CollectionReference usersRef = firestore.collection("users");
-            ApiFuture<QuerySnapshot> usersFuture = usersRef.get();
-            List<QueryDocumentSnapshot> userDocs = usersFuture.get().getDocuments();
+    void cacheTemplate(String eventId, CompiledCertificateTemplate compiled, long now) {
+        compiledTemplates.put(eventId, new CachedTemplate(compiled, now));
+        while (compiledTemplates.size() > templateCacheSize) {
+            String oldest = null;
+            long oldestCheck = Long.MAX_VALUE;
+            for (Map.Entry<String, CachedTemplate> entry : compiledTemplates.entrySet()) {
+                if (!entry.getKey().equals(eventId) && entry.getValue().checkedAt < oldestCheck) {
+                    oldest = entry.getKey();
+                    oldestCheck = entry.getValue().checkedAt;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            evictTemplate(oldest);
+        }
+    }
 
-            // Create lookup maps keyed by email and by userId
-            Map<String, Map<String, Object>> usersByEmail = new HashMap<>();
-            Map<String, Map<String, Object>> usersByUserId = new HashMap<>();
-            for (QueryDocumentSnapshot userDoc : userDocs) {
-                String email = userDoc.getString("email");
-                String userId = userDoc.getString("userId");
-                Map<String, Object> data = userDoc.getData();
-                if (email != null) {
-                    usersByEmail.put(email.toLowerCase(), data);
+    CompiledCertificateTemplate cachedTemplate(String eventId) {
+        CachedTemplate cached = compiledTemplates.get(eventId);
+        return cached != null ? cached.compiled : null;
+    }
+
+    /**
+     * Drop an event's compiled template and the static layer rendered from it
+     */
+    void evictTemplate(String eventId) {
+        compiledTemplates.remove(eventId);
+        removeStaticLayer(eventId);
+    }
+
+    private void removeStaticLayer(String eventId) {
+        StaticLayer layer = staticLayers.remove(eventId);
+        if (layer != null) {
+            layer.close();
+        }
+    }
+
+    /**
+     * Decode images, resolve colors and fonts and lay out the fixed elements of a template.
+     * Everything here is the same for every attendee; a null template compiles to the defaults.
+     */
+    CompiledCertificateTemplate compileTemplate(Certificate template, Object version) {
+        CompiledCertificateTemplate compiled = new CompiledCertificateTemplate(template, version);
+        float pageWidth = PageSize.A4.getWidth();
+        float pageHeight = PageSize.A4.getHeight();
+
+        String fontFamily = template != null && template.getFontFamily() != null
+                ? template.getFontFamily().toLowerCase()
+                : "times new roman";
+        switch (fontFamily) {
+            case "helvetica":
+                compiled.setFontNames(StandardFonts.HELVETICA_BOLD, StandardFonts.HELVETICA,
+                        StandardFonts.HELVETICA_OBLIQUE);
+                break;
+            case "courier":
+                compiled.setFontNames(StandardFonts.COURIER_BOLD, StandardFonts.COURIER,
+                        StandardFonts.COURIER_OBLIQUE);
+                break;
+            default:
+                if (!"times new roman".equals(fontFamily)) {
+                    System.out.println("Unsupported font family: " + fontFamily + ". Using Times Roman instead.");
+                }
+                compiled.setFontNames(StandardFonts.TIMES_BOLD, StandardFonts.TIMES_ROMAN,
+                        StandardFonts.TIMES_ITALIC);
+        }
+
+        compiled.setTitleColor(template != null && template.getHeaderColor() != null
+                ? parseColor(template.getHeaderColor())
+                : ColorConstants.BLACK);
+        compiled.setTextColor(template != null && template.getTextColor() != null
+                ? parseColor(template.getTextColor())
+                : ColorConstants.BLACK);
+
+        if (template == null) {
+            return compiled;
+        }
+
+        byte[] originalBackground = template.getBackgroundImage() != null
+                ? decodeBackgroundImage(template.getBackgroundImage())
+                : template.getBackgroundImageRef() != null ? loadImage(template.getBackgroundImageRef()) : null;
+        if (originalBackground != null) {
+            byte[] backgroundBytes = normalizeBackgroundImage(originalBackground);
+            if (backgroundBytes != null) {
+                try {
+                    ImageDataFactory.create(backgroundBytes); // fail here rather than on every render
+                    compiled.setBackgroundImage(backgroundBytes);
+                } catch (Exception e) {
+                    System.err.println("Error decoding background image: " + e.getMessage());
                 }
-                if (userId != null) {
-                    usersByUserId.put(userId, data);
+            }
+        }
+
+        byte[] logoBytes = imageBytes(template.getLogoImage(), template.getLogoImageRef());
+        if (logoBytes != null) {
+            try {
+                ImageDataFactory.create(logoBytes);
+                float logoX;
+                float logoY = pageHeight - template.getLogoHeight() - 20;
+                switch (String.valueOf(template.getLogoPosition())) {
+                    case "top-center":
+                        logoX = (pageWidth - template.getLogoWidth()) / 2;
+                        break;
+                    case "top-right":
+                        logoX = pageWidth - template.getLogoWidth() - 20;
+                        break;
+                    case "top-left":
+                    default:
+                        logoX = 20;
+                        break;
                 }
+                compiled.setLogo(logoBytes, logoX, logoY);
+            } catch (Exception e) {
+                System.err.println("Error decoding logo: " + e.getMessage());
             }
+        }
 
-            int successCount = 0;
-            int failCount = 0;
+        byte[] watermarkBytes = imageBytes(template.getWatermarkImage(), template.getWatermarkImageRef());
+        if (watermarkBytes != null) {
+            try {
+                ImageDataFactory.create(watermarkBytes);
+                compiled.setWatermarkImage(watermarkBytes);
+            } catch (Exception e) {
+                System.err.println("Error decoding watermark: " + e.getMessage());
+            }
+        }
 
-            // Process each attendee
-            for (QueryDocumentSnapshot attendeeDoc : attendeeDocs) {
+        if (template.getSignatureImages() != null) {
+            for (Map.Entry<String, String> signature : template.getSignatureImages().entrySet()) {
                 try {
-                    String email = attendeeDoc.getString("email");
-                    String attendeeUserId = attendeeDoc.getString("userId");
-                    if (email == null || email.isEmpty()) {
-                        // Try to backfill email from user record via userId
-                        if (attendeeUserId != null && usersByUserId.containsKey(attendeeUserId)) {
-                            Map<String, Object> userData = usersByUserId.get(attendeeUserId);
-                            email = (String) userData.getOrDefault("email", "");
-                        }
-                    }
-                    if (email == null || email.isEmpty()) {
-                        System.out.println("Skipping attendee with no email");
-                        failCount++;
-                        continue;
-                    }
+                    byte[] signatureBytes = Base64.getDecoder().decode(signature.getValue());
+                    ImageDataFactory.create(signatureBytes);
+                    compiled.putSignatureImage(signature.getKey(), signatureBytes);
+                } catch (Exception e) {
+                    System.err.println("Error decoding signature image for " + signature.getKey() + ": "
+                            + e.getMessage());
+                }
+            }
+        }
+        if (template.getSignatureImageRefs() != null) {
+            for (Map.Entry<String, String> signature : template.getSignatureImageRefs().entrySet()) {
+                if (template.getSignatureImages() != null
+                        && template.getSignatureImages().containsKey(signature.getKey())) {
+                    continue; // the inline image is newer
+                }
+                byte[] signatureBytes = loadImage(signature.getValue());
+                if (signatureBytes == null) {
+                    continue;
+                }
+                try {
+                    ImageDataFactory.create(signatureBytes);
+                    compiled.putSignatureImage(signature.getKey(), signatureBytes);
+                } catch (Exception e) {
+                    System.err.println("Error decoding signature image for " + signature.getKey() + ": "
+                            + e.getMessage());
+                }
+            }
+        }
 
-                    // Look up user data by userId first, then email to get firstName and lastName
-                    Map<String, Object> userData = null;
-                    if (attendeeUserId != null && usersByUserId.containsKey(attendeeUserId)) {
-                        userData = usersByUserId.get(attendeeUserId);
-                    }
-                    if (userData == null) {
-                        userData = usersByEmail.get(email.toLowerCase());
-                    }
+        switch (String.valueOf(template.getQrCodePosition())) {
+            case "bottom-left":
+                compiled.setQrPosition(20, 20);
+                break;
+            case "top-right":
+                compiled.setQrPosition(pageWidth - 100 - 20, pageHeight - 100 - 20);
+                break;
+            case "top-left":
+                compiled.setQrPosition(20, pageHeight - 100 - 20);
+                break;
+            case "bottom-right":
+            default:
+                compiled.setQrPosition(pageWidth - 100 - 20, 20);
+                break;
+        }
 
-                    String firstName = "";
-                    String lastName = "";
+        return compiled;
+    }
 
-                    if (userData != null) {
-                        firstName = (String) userData.getOrDefault("firstName", "");
-                        lastName = (String) userData.getOrDefault("lastName", "");
-                    }
+    /**
+     * Recipients for an email send: getCertificateRecipients without the attendees that have no email
+     */
+    public List<Map<String, String>> getEmailRecipients(String eventId)
+            throws ExecutionException, InterruptedException {
+        return withEmail(getCertificateRecipients(eventId));
+    }
 
-                    // Fallback to attendee data if user not found
-                    if (firstName.isEmpty()) {
-                        firstName = attendeeDoc.getString("firstName");
-                        if (firstName == null)
-                            firstName = "";
-                    }
-                    if (lastName.isEmpty()) {
-                        lastName = attendeeDoc.getString("lastName");
-                        if (lastName == null)
-                            lastName = "";
-                    }
+    static List<Map<String, String>> withEmail(List<Map<String, String>> recipients) {
+        List<Map<String, String>> withEmail = new ArrayList<>();
+        for (Map<String, String> recipient : recipients) {
+            String email = recipient.get("email");
+            if (email != null && !email.isEmpty()) {
+                withEmail.add(recipient);
+            }
+        }
+        if (withEmail.size() < recipients.size()) {
+            System.out.println("Skipping " + (recipients.size() - withEmail.size()) + " attendees with no email");
+        }
+        return withEmail;
+    }
 
-                    // Format name as "FirstName LastName"
-                    String fullName;
-                    if (!firstName.isEmpty() && !lastName.isEmpty()) {
-                        fullName = firstName + " " + lastName;
-                    } else if (!firstName.isEmpty()) {
-                        fullName = firstName;
-                    } else if (!lastName.isEmpty()) {
-                        fullName = lastName;
-                    } else {
-                        fullName = "Attendee";
-                    }
+    /**
+     * Build the attendee maps used for certificate generation, with names and emails filled in from the user records.
+     * Attendees without any email are included with an empty email so they still get a printed certificate;
+     * email sends use getEmailRecipients.
+     */
+    public List<Map<String, String>> getCertificateRecipients(String eventId)
+            throws ExecutionException, InterruptedException {
+        // Get all attendees for this event from Firestore
+        CollectionReference attendeesRef = firestore.collection("events").document(eventId).collection("attendees");
+        ApiFuture<QuerySnapshot> attendeesFuture = attendeesRef.get();
+        List<QueryDocumentSnapshot> attendeeDocs = attendeesFuture.get().getDocuments();
+
+        List<Map<String, String>> recipients = new ArrayList<>();
+        if (attendeeDocs.isEmpty()) {
+            return recipients;
+        }
 
-                    System.out.println("Processing certificate for: " + fullName + " (" + email + ")");
+        System.out.println("Found " + attendeeDocs.size() + " attendees");
 
-                    // Create attendee map for certificate generation
-                    Map<String, String> attendeeMap = new HashMap<>();
-                    attendeeMap.put("name", fullName);
-                    attendeeMap.put("email", email);
-                    attendeeMap.put("firstName", firstName);
-                    attendeeMap.put("lastName", lastName);
+        // Read only the users these attendees reference, by id in batched getAll calls
+        Set<String> userIds = new LinkedHashSet<>();
+        for (QueryDocumentSnapshot attendeeDoc : attendeeDocs) {
+            String userId = attendeeDoc.getString("userId");
+            if (userId != null && !userId.isEmpty()) {
+                userIds.add(userId);
+            }
+        }
+        Map<String, Map<String, Object>> usersByUserId = readUsersById(userIds);
+
+        // Attendees with no matching user by id (legacy records) are looked up by email
+        Set<String> unmatchedEmails = new LinkedHashSet<>();
+        for (QueryDocumentSnapshot attendeeDoc : attendeeDocs) {
+            String email = attendeeDoc.getString("email");
+            String userId = attendeeDoc.getString("userId");
+            if (email != null && !email.isEmpty() && (userId == null || !usersByUserId.containsKey(userId))) {
+                unmatchedEmails.add(email);
+            }
+        }
+        Map<String, Map<String, Object>> usersByEmail = readUsersByEmail(unmatchedEmails);
 
-                    // Generate certificate PDF
-                    byte[] certificatePdf = generateCertificate(attendeeMap, eventId);
+        for (QueryDocumentSnapshot attendeeDoc : attendeeDocs) {
+            recipients.add(toRecipient(attendeeDoc, usersByUserId, usersByEmail));
+        }
 
-                    // Send email with certificate
-                    brevoEmailService.sendCertificateEmail(email, eventId, certificatePdf);
+        return recipients;
+    }
 
-                    successCount++;
-                    System.out.println("Certificate sent successfully to: " + email);
+    /**
+     * One attendee's recipient map, built exactly as getCertificateRecipients builds it, so the certificate store
+     * key matches the one used by sends. Reads only that attendee and their user record.
+     * Returns null if the user is not an attendee of the event.
+     */
+    public Map<String, String> getCertificateRecipient(String eventId, String userId)
+            throws ExecutionException, InterruptedException {
+        // Attendee documents are keyed by user id
+        DocumentSnapshot attendeeDoc = firestore.collection("events").document(eventId)
+                .collection("attendees").document(userId).get().get();
+        if (!attendeeDoc.exists()) {
+            return null;
+        }
 
-                } catch (Exception e) {
-                    System.err.println("Error sending certificate to attendee: " + e.getMessage());
-                    e.printStackTrace();
-                    failCount++;
+        String attendeeUserId = attendeeDoc.getString("userId");
+        Map<String, Map<String, Object>> usersByUserId = attendeeUserId != null && !attendeeUserId.isEmpty()
+                ? readUsersById(Set.of(attendeeUserId))
+                : new HashMap<>();
+        Map<String, Map<String, Object>> usersByEmail = new HashMap<>();
+        String email = attendeeDoc.getString("email");
+        if (email != null && !email.isEmpty()
+                && (attendeeUserId == null || !usersByUserId.containsKey(attendeeUserId))) {
+            usersByEmail = readUsersByEmail(Set.of(email));
+        }
+        return toRecipient(attendeeDoc, usersByUserId, usersByEmail);
+    }
+
+    private Map<String, Map<String, Object>> readUsersById(Collection<String> userIds)
+            throws ExecutionException, InterruptedException {
+        Map<String, Map<String, Object>> usersByUserId = new HashMap<>();
+        List<DocumentReference> userRefs = new ArrayList<>();
+        for (String userId : userIds) {
+            userRefs.add(firestore.collection("users").document(userId));
+        }
+        List<ApiFuture<List<DocumentSnapshot>>> userReads = new ArrayList<>();
+        for (int i = 0; i < userRefs.size(); i += RECIPIENT_USER_BATCH_SIZE) {
+            List<DocumentReference> batch = userRefs.subList(i,
+                    Math.min(i + RECIPIENT_USER_BATCH_SIZE, userRefs.size()));
+            userReads.add(firestore.getAll(batch.toArray(new DocumentReference[0])));
+        }
+        for (List<DocumentSnapshot> batch : ApiFutures.allAsList(userReads).get()) {
+            for (DocumentSnapshot userDoc : batch) {
+                if (userDoc.exists()) {
+                    usersByUserId.put(userDoc.getId(), userDoc.getData());
                 }
             }
+        }
+        return usersByUserId;
+    }
 
-            String result = String.format("Certificates sent: %d successful, %d failed", successCount, failCount);
-            System.out.println(result);
-            return result;
+    /**
+     * Users with the given emails, keyed by lower-cased email
+     */
+    private Map<String, Map<String, Object>> readUsersByEmail(Collection<String> emailSet)
+            throws ExecutionException, InterruptedException {
+        Map<String, Map<String, Object>> usersByEmail = new HashMap<>();
+        List<String> emails = new ArrayList<>(emailSet);
+        List<ApiFuture<QuerySnapshot>> emailReads = new ArrayList<>();
+        for (int i = 0; i < emails.size(); i += EMAIL_QUERY_BATCH_SIZE) {
+            emailReads.add(firestore.collection("users")
+                    .whereIn("email", new ArrayList<>(emails.subList(i, Math.min(i + EMAIL_QUERY_BATCH_SIZE,
+                            emails.size()))))
+                    .get());
+        }
+        for (QuerySnapshot snapshot : ApiFutures.allAsList(emailReads).get()) {
+            for (QueryDocumentSnapshot userDoc : snapshot.getDocuments()) {
+                String email = userDoc.getString("email");
+                if (email != null) {
+                    usersByEmail.put(email.toLowerCase(), userDoc.getData());
+                }
+            }
+        }
+        return usersByEmail;
+    }
 
-        } catch (Exception e) {
-            System.err.println("Error in sendCertificates: " + e.getMessage());
-            e.printStackTrace();
-            throw new RuntimeException("Failed to send certificates: " + e.getMessage());
+    private Map<String, String> toRecipient(DocumentSnapshot attendeeDoc,
+            Map<String, Map<String, Object>> usersByUserId, Map<String, Map<String, Object>> usersByEmail) {
+        String email = attendeeDoc.getString("email");
+        String attendeeUserId = attendeeDoc.getString("userId");
+        if (email == null || email.isEmpty()) {
+            // Try to backfill email from user record via userId
+            if (attendeeUserId != null && usersByUserId.containsKey(attendeeUserId)) {
+                Map<String, Object> userData = usersByUserId.get(attendeeUserId);
+                email = (String) userData.getOrDefault("email", "");
+            }
+        }
+        if (email == null) {
+            email = "";
+        }
+
+        // Look up user data by userId first, then email to get firstName and lastName
+        Map<String, Object> userData = null;
+        if (attendeeUserId != null && usersByUserId.containsKey(attendeeUserId)) {
+            userData = usersByUserId.get(attendeeUserId);
+        }
+        if (userData == null && !email.isEmpty()) {
+            userData = usersByEmail.get(email.toLowerCase());
+        }
+
+        String firstName = "";
+        String lastName = "";
+
+        if (userData != null) {
+            firstName = (String) userData.getOrDefault("firstName", "");
+            lastName = (String) userData.getOrDefault("lastName", "");
+        }
+
+        // Fallback to attendee data if user not found
+        if (firstName.isEmpty()) {
+            firstName = attendeeDoc.getString("firstName");
+            if (firstName == null)
+                firstName = "";
+        }
+        if (lastName.isEmpty()) {
+            lastName = attendeeDoc.getString("lastName");
+            if (lastName == null)
+                lastName = "";
+        }
+
+        // Format name as "FirstName LastName"
+        String fullName;
+        if (!firstName.isEmpty() && !lastName.isEmpty()) {
+            fullName = firstName + " " + lastName;
+        } else if (!firstName.isEmpty()) {
+            fullName = firstName;
+        } else if (!lastName.isEmpty()) {
+            fullName = lastName;
+        } else {
+            fullName = "Attendee";
+        }
+
+        // Create attendee map for certificate generation
+        Map<String, String> attendeeMap = new HashMap<>();
+        attendeeMap.put("name", fullName);
+        attendeeMap.put("email", email);
+        attendeeMap.put("firstName", firstName);
+        attendeeMap.put("lastName", lastName);
+        if (attendeeUserId != null) {
+            attendeeMap.put("userId", attendeeUserId);
         }
+        return attendeeMap;
     }
 
     private Color parseColor(String hexColor) {
@@ -449,6 +874,83 @@ public class CertificateService {
     }
 
     public byte[] generateCertificate(Map<String, String> attendee, String eventId) throws IOException {
+        return generateStoredCertificate(attendee, eventId).getPdf();
+    }
+
+    /**
+     * Generate a certificate, along with its key in the CertificatePdfStore when it is stored there,
+     * so emails can link to the stored copy instead of carrying the PDF
+     */
+    public GeneratedCertificate generateStoredCertificate(Map<String, String> attendee, String eventId)
+            throws IOException {
+        System.out.println("Starting certificate generation for event: " + eventId);
+
+        // Get the compiled certificate template for this event (decoded once per template version)
+        CompiledCertificateTemplate compiled;
+        try {
+            compiled = getCompiledTemplate(eventId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading certificate template for event " + eventId, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Error loading certificate template for event " + eventId + ": " + e.getMessage(), e);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        System.out.println("Template found: " + (compiled.getTemplate() != null ? "yes" : "no"));
+
+        String recipientName = getRecipientName(attendee);
+        String[] eventDetails = resolveEventDetails(eventId, compiled.getTemplate());
+
+        // Resends of an unchanged certificate are served from the store
+        String storeKey = certificatePdfStore.keyFor(compiled, eventDetails[0], eventDetails[1], recipientName);
+        byte[] stored = certificatePdfStore.get(eventId, storeKey);
+        if (stored != null) {
+            System.out.println("Using stored certificate " + storeKey);
+            return new GeneratedCertificate(stored, storeKey);
+        }
+
+        byte[] pdfBytes = null;
+        if (staticLayerEnabled) {
+            try {
+                pdfBytes = stampCertificate(eventId, compiled, eventDetails[0], eventDetails[1], recipientName);
+            } catch (Exception e) {
+                System.err.println("[CertificateService] Static layer failed for event " + eventId
+                        + ", rendering in full: " + e.getMessage());
+            }
+        }
+        if (pdfBytes == null) {
+            try {
+                pdfBytes = renderCertificatePdf(compiled, eventDetails[0], eventDetails[1], recipientName);
+            } catch (Exception e) {
+                // Keep the old behaviour of sending whatever rendered, but don't store an incomplete certificate
+                System.err.println("Error generating certificate: " + e.getMessage());
+                return new GeneratedCertificate(
+                        renderFullCertificate(compiled, eventDetails[0], eventDetails[1], recipientName), null);
+            }
+        }
+
+        boolean storedNow = certificatePdfStore.put(eventId, storeKey, pdfBytes);
+        return new GeneratedCertificate(pdfBytes, storedNow ? storeKey : null);
+    }
+
+    private byte[] renderCertificatePdf(CompiledCertificateTemplate compiled, String eventName, String eventDate,
+            String recipientName) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PdfDocument pdf = new PdfDocument(new PdfWriter(baos));
+        Document document = new Document(pdf);
+        renderCertificate(document, pdf, compiled, eventName, eventDate, recipientName, null);
+        document.close();
+        byte[] pdfBytes = baos.toByteArray();
+        System.out.println("Generated PDF size: " + pdfBytes.length + " bytes");
+        return pdfBytes;
+    }
+
+    /**
+     * Lay out and render a whole certificate, as generateCertificate always did before the static layer
+     */
+    byte[] renderFullCertificate(CompiledCertificateTemplate compiled, String eventName, String eventDate,
+            String recipientName) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
 
         // Create PDF with landscape orientation
@@ -462,456 +964,640 @@ public class CertificateService {
         Document document = new Document(pdf);
 
         try {
-            System.out.println("Starting certificate generation for event: " + eventId);
+            renderCertificate(document, pdf, compiled, eventName, eventDate, recipientName, null);
 
-            // Get the certificate template for this event
-            Certificate template = getCertificateByEventId(eventId);
-            System.out.println("Template found: " + (template != null ? "yes" : "no"));
+            document.close();
+            byte[] pdfBytes = baos.toByteArray();
+            System.out.println("Generated PDF size: " + pdfBytes.length + " bytes");
+            return pdfBytes;
 
-            if (template != null) {
-                System.out.println("Using template settings:");
-                System.out.println("- Title: " + template.getTitle());
-                System.out.println("- Background image: " + (template.getBackgroundImage() != null));
-                System.out.println("- Logo image: " + (template.getLogoImage() != null));
-                System.out.println("- Watermark: " + (template.getWatermarkImage() != null));
-            }
+        } catch (Exception e) {
+            System.err.println("Error generating certificate: " + e.getMessage());
+            e.printStackTrace();
+            document.close();
+            byte[] pdfBytes = baos.toByteArray();
+            System.out.println("Generated PDF size (after error): " + pdfBytes.length + " bytes");
+            return pdfBytes;
+        }
+    }
 
-            // Set up fonts based on template or defaults
-            PdfFont titleFont;
-            PdfFont normalFont;
-            PdfFont italicFont;
+    /**
+     * Lay out a certificate into the document. With a null recipientName this renders the static layer:
+     * the name's space is reserved but left blank, its area is stored in nameSlot[0], and the QR code,
+     * which embeds the name, is left out.
+     */
+    private void renderCertificate(Document document, PdfDocument pdf, CompiledCertificateTemplate compiled,
+            String eventName, String eventDate, String recipientName, Rectangle[] nameSlot) throws IOException {
+        Certificate template = compiled.getTemplate();
 
-            try {
-                // Try to use the template font if specified
-                if (template != null && template.getFontFamily() != null) {
-                    String fontFamily = template.getFontFamily().toLowerCase();
-                    switch (fontFamily) {
-                        case "times new roman":
-                            titleFont = PdfFontFactory.createFont(StandardFonts.TIMES_BOLD);
-                            normalFont = PdfFontFactory.createFont(StandardFonts.TIMES_ROMAN);
-                            italicFont = PdfFontFactory.createFont(StandardFonts.TIMES_ITALIC);
-                            break;
-                        case "helvetica":
-                            titleFont = PdfFontFactory.createFont(StandardFonts.HELVETICA_BOLD);
-                            normalFont = PdfFontFactory.createFont(StandardFonts.HELVETICA);
-                            italicFont = PdfFontFactory.createFont(StandardFonts.HELVETICA_OBLIQUE);
-                            break;
-                        case "courier":
-                            titleFont = PdfFontFactory.createFont(StandardFonts.COURIER_BOLD);
-                            normalFont = PdfFontFactory.createFont(StandardFonts.COURIER);
-                            italicFont = PdfFontFactory.createFont(StandardFonts.COURIER_OBLIQUE);
-                            break;
-                        default:
-                            // Default to Times Roman if font not recognized
-                            System.out
-                                    .println("Unsupported font family: " + fontFamily + ". Using Times Roman instead.");
-                            titleFont = PdfFontFactory.createFont(StandardFonts.TIMES_BOLD);
-                            normalFont = PdfFontFactory.createFont(StandardFonts.TIMES_ROMAN);
-                            italicFont = PdfFontFactory.createFont(StandardFonts.TIMES_ITALIC);
-                    }
-                } else {
-                    // Default fonts if no template or font specified
-                    titleFont = PdfFontFactory.createFont(StandardFonts.TIMES_BOLD);
-                    normalFont = PdfFontFactory.createFont(StandardFonts.TIMES_ROMAN);
-                    italicFont = PdfFontFactory.createFont(StandardFonts.TIMES_ITALIC);
-                }
-            } catch (Exception e) {
-                System.err.println("Error loading fonts: " + e.getMessage() + ". Using default fonts.");
-                titleFont = PdfFontFactory.createFont(StandardFonts.TIMES_BOLD);
-                normalFont = PdfFontFactory.createFont(StandardFonts.TIMES_ROMAN);
-                italicFont = PdfFontFactory.createFont(StandardFonts.TIMES_ITALIC);
-            }
+        // Fonts are bound to a single PdfDocument, so only their names are cached
+        PdfFont titleFont = PdfFontFactory.createFont(compiled.getTitleFontName());
+        PdfFont normalFont = PdfFontFactory.createFont(compiled.getNormalFontName());
+        PdfFont italicFont = PdfFontFactory.createFont(compiled.getItalicFontName());
 
-            System.out.println("Fonts initialized successfully");
+        System.out.println("Fonts initialized successfully");
 
-            // Apply background image if available
-            if (template != null && template.getBackgroundImage() != null) {
-                System.out.println("[DEBUG] generateCertificate: Background image found in template");
+        // Apply background image if available
+        if (template != null && (template.getBackgroundImageRef() != null || template.getBackgroundImage() != null)) {
+            System.out.println("[DEBUG] generateCertificate: Background image found in template");
 
-                // Use a dedicated method to handle background image with multiple fallbacks
-                handleBackgroundImage(document, pdf, template);
+            ImageData backgroundImageData = compiled.getBackgroundImage();
+            if (backgroundImageData != null) {
+                addBackgroundImage(document, pdf, compiled, backgroundImageData);
             } else {
-                System.out.println("[DEBUG] generateCertificate: No background image in template");
+                // The image couldn't be normalized when the template was compiled
+                addColoredBackground(document, pdf, template);
             }
+        } else {
+            System.out.println("[DEBUG] generateCertificate: No background image in template");
+        }
 
-            // Add logo if available
-            if (template != null && template.getLogoImage() != null) {
-                try {
-                    byte[] logoImageBytes = Base64.getDecoder().decode(template.getLogoImage());
-                    ImageData logoImageData = ImageDataFactory.create(logoImageBytes);
-                    Image logoImage = new Image(logoImageData);
-
-                    // Calculate logo position
-                    float pageWidth = pdf.getDefaultPageSize().getWidth();
-                    float pageHeight = pdf.getDefaultPageSize().getHeight();
-                    float logoX = 0, logoY = 0;
-
-                    switch (template.getLogoPosition()) {
-                        case "top-center":
-                            logoX = (pageWidth - template.getLogoWidth()) / 2;
-                            logoY = pageHeight - template.getLogoHeight() - 20;
-                            break;
-                        case "top-right":
-                            logoX = pageWidth - template.getLogoWidth() - 20;
-                            logoY = pageHeight - template.getLogoHeight() - 20;
-                            break;
-                        case "top-left":
-                        default:
-                            logoX = 20;
-                            logoY = pageHeight - template.getLogoHeight() - 20;
-                            break;
-                    }
-
-                    logoImage.setFixedPosition(logoX, logoY);
-                    logoImage.setWidth(template.getLogoWidth());
-                    logoImage.setHeight(template.getLogoHeight());
-                    document.add(logoImage);
-                    System.out.println("Logo added successfully");
-                } catch (Exception e) {
-                    System.err.println("Error adding logo: " + e.getMessage());
-                }
+        // Add logo if available
+        ImageData logoImageData = compiled.getLogoImage();
+        if (logoImageData != null) {
+            try {
+                Image logoImage = new Image(logoImageData);
+                logoImage.setFixedPosition(compiled.getLogoX(), compiled.getLogoY());
+                logoImage.setWidth(template.getLogoWidth());
+                logoImage.setHeight(template.getLogoHeight());
+                document.add(logoImage);
+                System.out.println("Logo added successfully");
+            } catch (Exception e) {
+                System.err.println("Error adding logo: " + e.getMessage());
             }
+        }
 
-            // Add watermark if available
-            if (template != null && template.getWatermarkImage() != null) {
-                try {
-                    byte[] watermarkImageBytes = Base64.getDecoder().decode(template.getWatermarkImage());
-                    ImageData watermarkImageData = ImageDataFactory.create(watermarkImageBytes);
-                    Image watermarkImage = new Image(watermarkImageData);
-
-                    float pageWidth = pdf.getDefaultPageSize().getWidth();
-                    float pageHeight = pdf.getDefaultPageSize().getHeight();
-                    watermarkImage.setFixedPosition((pageWidth - watermarkImage.getImageWidth()) / 2,
-                            (pageHeight - watermarkImage.getImageHeight()) / 2);
-                    watermarkImage.setOpacity(template.getWatermarkImageOpacity());
-                    document.add(watermarkImage);
-                    System.out.println("Watermark added successfully");
-                } catch (Exception e) {
-                    System.err.println("Error adding watermark: " + e.getMessage());
-                }
+        // Add watermark if available
+        ImageData watermarkImageData = compiled.getWatermarkImage();
+        if (watermarkImageData != null) {
+            try {
+                Image watermarkImage = new Image(watermarkImageData);
+
+                float pageWidth = pdf.getDefaultPageSize().getWidth();
+                float pageHeight = pdf.getDefaultPageSize().getHeight();
+                watermarkImage.setFixedPosition((pageWidth - watermarkImage.getImageWidth()) / 2,
+                        (pageHeight - watermarkImage.getImageHeight()) / 2);
+                watermarkImage.setOpacity(template.getWatermarkImageOpacity());
+                document.add(watermarkImage);
+                System.out.println("Watermark added successfully");
+            } catch (Exception e) {
+                System.err.println("Error adding watermark: " + e.getMessage());
             }
+        }
 
-            // Add certificate content
-            // Title
-            String titleText = template != null && template.getTitle() != null ? template.getTitle() : "CERTIFICATE";
-            Color titleColor = template != null && template.getHeaderColor() != null
-                    ? parseColor(template.getHeaderColor())
-                    : ColorConstants.BLACK;
-            Paragraph title = new Paragraph(titleText)
-                    .setFont(titleFont)
-                    .setFontSize(36)
-                    .setFontColor(titleColor)
-                    .setTextAlignment(TextAlignment.CENTER)
-                    .setMarginTop(50);
-            document.add(title);
-
-            // Subtitle
-            String subtitleText = template != null && template.getSubtitle() != null ? template.getSubtitle()
-                    : "OF ACHIEVEMENT";
-            Paragraph subtitle = new Paragraph(subtitleText)
-                    .setFont(titleFont)
-                    .setFontSize(24)
-                    .setFontColor(titleColor)
-                    .setTextAlignment(TextAlignment.CENTER)
-                    .setMarginBottom(50);
-            document.add(subtitle);
-
-            // Recipient intro
-            Color textColor = template != null && template.getTextColor() != null ? parseColor(template.getTextColor())
-                    : ColorConstants.BLACK;
-            String recipientText = template != null && template.getRecipientText() != null ? template.getRecipientText()
-                    : "THIS CERTIFICATE IS PROUDLY PRESENTED TO";
-            document.add(new Paragraph(recipientText)
-                    .setFont(normalFont)
-                    .setFontSize(14)
-                    .setFontColor(textColor)
-                    .setTextAlignment(TextAlignment.CENTER)
-                    .setMarginBottom(20));
-
-            // Recipient name - format as "FirstName LastName"
-            String lastName = attendee.get("lastName") != null ? attendee.get("lastName") : "";
-            String firstName = attendee.get("firstName") != null ? attendee.get("firstName") : "";
-            String recipientName;
-            if (!firstName.isEmpty() && !lastName.isEmpty()) {
-                recipientName = firstName + " " + lastName;
-            } else if (!firstName.isEmpty()) {
-                recipientName = firstName;
-            } else if (!lastName.isEmpty()) {
-                recipientName = lastName;
-            } else {
-                recipientName = attendee.get("name") != null ? attendee.get("name") : "Attendee";
-            }
-            document.add(new Paragraph(recipientName)
-                    .setFont(titleFont)
-                    .setFontSize(28)
-                    .setFontColor(titleColor)
+        // Add certificate content
+        // Title
+        String titleText = template != null && template.getTitle() != null ? template.getTitle() : "CERTIFICATE";
+        Color titleColor = compiled.getTitleColor();
+        Paragraph title = new Paragraph(titleText)
+                .setFont(titleFont)
+                .setFontSize(36)
+                .setFontColor(titleColor)
+                .setTextAlignment(TextAlignment.CENTER)
+                .setMarginTop(50);
+        document.add(title);
+
+        // Subtitle
+        String subtitleText = template != null && template.getSubtitle() != null ? template.getSubtitle()
+                : "OF ACHIEVEMENT";
+        Paragraph subtitle = new Paragraph(subtitleText)
+                .setFont(titleFont)
+                .setFontSize(24)
+                .setFontColor(titleColor)
+                .setTextAlignment(TextAlignment.CENTER)
+                .setMarginBottom(50);
+        document.add(subtitle);
+
+        // Recipient intro
+        Color textColor = compiled.getTextColor();
+        String recipientText = template != null && template.getRecipientText() != null ? template.getRecipientText()
+                : "THIS CERTIFICATE IS PROUDLY PRESENTED TO";
+        document.add(new Paragraph(recipientText)
+                .setFont(normalFont)
+                .setFontSize(14)
+                .setFontColor(textColor)
+                .setTextAlignment(TextAlignment.CENTER)
+                .setMarginBottom(20));
+
+        // Recipient name
+        Paragraph nameParagraph = recipientNameParagraph(recipientName != null ? recipientName : "Attendee",
+                titleFont, titleColor);
+        if (recipientName == null) {
+            nameParagraph.setNextRenderer(new NameSlotRenderer(nameParagraph, nameSlot));
+        }
+        document.add(nameParagraph);
+
+        // Description
+        String description = template != null && template.getDescription() != null ? template.getDescription()
+                : "For actively participating in";
+        document.add(new Paragraph(description)
+                .setFont(italicFont)
+                .setFontSize(16)
+                .setFontColor(textColor)
+                .setTextAlignment(TextAlignment.CENTER));
+
+        // Event name
+        document.add(new Paragraph(eventName)
+                .setFont(titleFont)
+                .setFontSize(24)
+                .setTextAlignment(TextAlignment.CENTER)
+                .setMarginBottom(10));
+
+        // Add event date with more prominence
+        if (eventDate != null && !eventDate.isEmpty()) {
+            // Create a styled date section
+            Paragraph dateSection = new Paragraph()
                     .setTextAlignment(TextAlignment.CENTER)
-                    .setMarginBottom(30));
+                    .setMarginBottom(20);
 
-            // Description
-            String description = template != null && template.getDescription() != null ? template.getDescription()
-                    : "For actively participating in";
-            document.add(new Paragraph(description)
-                    .setFont(italicFont)
-                    .setFontSize(16)
-                    .setFontColor(textColor)
-                    .setTextAlignment(TextAlignment.CENTER));
-
-            // Get event details from Firestore
-            String eventName;
-            String eventDate = "";
-            try {
-                System.out.println("Fetching event details for ID: " + eventId);
+            // Add "Date:" text with normal font
+            Text dateLabel = new Text("Date: ").setFont(normalFont).setFontSize(14);
 
-                // First attempt: direct lookup with the provided ID
-                DocumentSnapshot eventDoc = FirestoreClient.getFirestore()
-                        .collection("events")
-                        .document(eventId)
-                        .get()
-                        .get();
+            // Add the actual date with italic/bold font for emphasis
+            Text dateValue = new Text(eventDate).setFont(italicFont).setFontSize(14);
 
-                // If document doesn't exist or doesn't have eventName, try a query approach
-                if (!eventDoc.exists() || eventDoc.getString("eventName") == null) {
-                    System.out.println("Direct lookup failed. Trying to find event by eventId field...");
+            // Combine the label and value in the paragraph
+            dateSection.add(dateLabel).add(dateValue);
 
-                    // Try to find events where eventId field matches our input
-                    ApiFuture<QuerySnapshot> queryFuture = FirestoreClient.getFirestore()
-                            .collection("events")
-                            .whereEqualTo("eventId", eventId)
-                            .limit(1)
-                            .get();
+            // Add to document
+            document.add(dateSection);
 
-                    List<QueryDocumentSnapshot> documents = queryFuture.get().getDocuments();
+            System.out.println("Added event date to certificate: " + eventDate);
+        } else {
+            System.out.println("No event date available to display");
+        }
 
-                    if (!documents.isEmpty()) {
-                        eventDoc = documents.get(0);
-                        System.out.println("Found event through query by eventId field");
-                    } else {
-                        System.out.println("No event found with eventId field = " + eventId);
+        // Add signatories if available
+        if (template != null && template.getSignatories() != null && !template.getSignatories().isEmpty()) {
+            float signatureY = 150f;
+            for (Map<String, String> signatory : template.getSignatories()) {
+                // Add signature image if available
+                ImageData signatureImageData = compiled.getSignatureImage(signatory.get("name"));
+                if (signatureImageData != null) {
+                    try {
+                        Image signatureImage = new Image(signatureImageData);
+                        float signatureX = (pdf.getDefaultPageSize().getWidth() - 100) / 2;
+                        signatureImage.setFixedPosition(signatureX, signatureY);
+                        signatureImage.scaleToFit(100, 50);
+                        document.add(signatureImage);
+                        signatureY -= 20;
+                    } catch (Exception e) {
+                        System.err.println("Error adding signature image: " + e.getMessage());
                     }
                 }
 
-                // Get event name with fallbacks
-                if (eventDoc.exists()) {
-                    System.out.println("Event document data: " + eventDoc.getData());
+                // Add signatory name and title
+                document.add(new Paragraph(signatory.get("name"))
+                        .setFont(titleFont)
+                        .setFontSize(12)
+                        .setTextAlignment(TextAlignment.CENTER));
 
-                    eventName = eventDoc.getString("eventName");
-                    System.out.println("Extracted eventName: " + eventName);
+                document.add(new Paragraph(signatory.get("title"))
+                        .setFont(normalFont)
+                        .setFontSize(10)
+                        .setTextAlignment(TextAlignment.CENTER)
+                        .setMarginBottom(20));
+            }
+        } else {
+            // Default signature line
+            LineSeparator line = new LineSeparator(new SolidLine());
+            line.setWidth(UnitValue.createPercentValue(40));
+            line.setHorizontalAlignment(HorizontalAlignment.CENTER);
+            line.setMarginBottom(5);
+            document.add(line);
+
+            document.add(new Paragraph("Event Representative")
+                    .setFont(normalFont)
+                    .setFontSize(12)
+                    .setTextAlignment(TextAlignment.CENTER)
+                    .setMarginBottom(30));
+        }
 
-                    if (eventName == null || eventName.isEmpty()) {
-                        eventName = eventDoc.getString("name");
-                        if (eventName == null || eventName.isEmpty()) {
-                            eventName = eventDoc.getString("title");
-                            if (eventName == null || eventName.isEmpty()) {
-                                // Last resort - try to get any field that might have event name info
-                                Map<String, Object> eventData = eventDoc.getData();
-                                for (String key : eventData.keySet()) {
-                                    if (key.toLowerCase().contains("name") || key.toLowerCase().contains("title")) {
-                                        Object value = eventData.get(key);
-                                        if (value != null && value instanceof String) {
-                                            eventName = (String) value;
-                                            System.out.println("Using alternative field for event name: " + key);
-                                            break;
-                                        }
-                                    }
-                                }
+        // Add QR code if enabled
+        if (recipientName != null && template != null && template.isShowQRCode()) {
+            try {
+                document.add(qrCodeImage(pdf, compiled, recipientName, eventName));
+                System.out.println("QR code added successfully");
+            } catch (Exception e) {
+                System.err.println("Error adding QR code: " + e.getMessage());
+            }
+        }
+    }
 
-                                // If we still don't have a name, use a friendly format
-                                if (eventName == null || eventName.isEmpty()) {
-                                    // Check if the certificate template has an eventName field
-                                    if (template != null && template.getEventName() != null
-                                            && !template.getEventName().isEmpty()) {
-                                        eventName = template.getEventName();
-                                        System.out.println("Using certificate template's eventName: " + eventName);
-                                    } else {
-                                        eventName = "Event #" + eventId.substring(0, Math.min(8, eventId.length()));
-                                        System.out.println("No event name found, using formatted ID: " + eventName);
-                                    }
-                                }
-                            }
-                        }
-                    }
+    /**
+     * Format the recipient as "FirstName LastName", falling back to the attendee's name field
+     */
+    private String getRecipientName(Map<String, String> attendee) {
+        String lastName = attendee.get("lastName") != null ? attendee.get("lastName") : "";
+        String firstName = attendee.get("firstName") != null ? attendee.get("firstName") : "";
+        if (!firstName.isEmpty() && !lastName.isEmpty()) {
+            return firstName + " " + lastName;
+        } else if (!firstName.isEmpty()) {
+            return firstName;
+        } else if (!lastName.isEmpty()) {
+            return lastName;
+        }
+        return attendee.get("name") != null ? attendee.get("name") : "Attendee";
+    }
 
-                    System.out.println("Final event name to use: " + eventName);
+    private Paragraph recipientNameParagraph(String recipientName, PdfFont titleFont, Color titleColor) {
+        return new Paragraph(recipientName)
+                .setFont(titleFont)
+                .setFontSize(28)
+                .setFontColor(titleColor)
+                .setTextAlignment(TextAlignment.CENTER)
+                .setMarginBottom(30);
+    }
 
-                    // Get event date
-                    if (eventDoc.contains("date")) {
-                        eventDate = eventDoc.getString("date");
-                        System.out.println("Found event date: " + eventDate);
-                    } else if (eventDoc.contains("eventDate")) {
-                        eventDate = eventDoc.getString("eventDate");
-                        System.out.println("Found event date: " + eventDate);
-                    } else {
-                        // Try to find date in timestamp fields
-                        Object timestamp = eventDoc.get("timestamp");
-                        if (timestamp != null) {
-                            if (timestamp instanceof com.google.cloud.Timestamp) {
-                                com.google.cloud.Timestamp ts = (com.google.cloud.Timestamp) timestamp;
-                                eventDate = java.time.format.DateTimeFormatter.ofPattern("MMMM dd, yyyy")
-                                        .format(java.time.LocalDateTime.ofInstant(
-                                                ts.toDate().toInstant(),
-                                                java.time.ZoneId.systemDefault()));
-                                System.out.println("Converted timestamp to date: " + eventDate);
-                            } else {
-                                eventDate = timestamp.toString();
-                            }
-                        } else {
-                            System.out.println("No date field found in event document");
-                        }
-                    }
+    private Image qrCodeImage(PdfDocument pdf, CompiledCertificateTemplate compiled, String recipientName,
+            String eventName) {
+        BarcodeQRCode qrCode = new BarcodeQRCode("Certificate for " + recipientName +
+                " - Event: " + eventName);
+        PdfFormXObject qrCodeXObject = qrCode.createFormXObject(ColorConstants.BLACK, pdf);
+        Image qrCodeImg = new Image(qrCodeXObject);
+        qrCodeImg.setFixedPosition(compiled.getQrX(), compiled.getQrY());
+        qrCodeImg.scaleToFit(100, 100);
+        return qrCodeImg;
+    }
+
+    /**
+     * Stamp the recipient name and QR code onto the event's static layer.
+     * Returns null when the certificate has to be rendered in full instead: the layer couldn't be built,
+     * or the name wouldn't fit on one line in the space the layer reserved for it.
+     */
+    byte[] stampCertificate(String eventId, CompiledCertificateTemplate compiled, String eventName, String eventDate,
+            String recipientName) throws IOException {
+        StaticLayer layer = getStaticLayer(eventId, compiled, eventName, eventDate);
+        if (layer == null) {
+            return null;
+        }
+
+        PdfFont titleFont = PdfFontFactory.createFont(compiled.getTitleFontName());
+        if (!fitsNameSlot(layer, titleFont, recipientName)) {
+            return null;
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PdfDocument source = layer.borrowSource();
+        try (PdfDocument pdf = new PdfDocument(new PdfWriter(baos))) {
+            PdfFormXObject layerXObject = source.getFirstPage().copyAsFormXObject(pdf);
+            stampPage(pdf, layerXObject, layer, titleFont, compiled, recipientName, eventName);
+        } finally {
+            layer.returnSource(source);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Write one certificate per recipient into a single PDF for printing.
+     * Pages are flushed to the stream as they are finished, and the static layer, fonts and images
+     * are written once and shared by every page.
+     */
+    public void writeCertificateBook(String eventId, List<Map<String, String>> recipients, OutputStream out)
+            throws IOException, ExecutionException, InterruptedException {
+        CompiledCertificateTemplate compiled = getCompiledTemplate(eventId);
+        String[] eventDetails = resolveEventDetails(eventId, compiled.getTemplate());
+        String eventName = eventDetails[0];
+        StaticLayer layer = staticLayerEnabled
+                ? getStaticLayer(eventId, compiled, eventName, eventDetails[1])
+                : null;
+
+        PdfDocument source = layer != null ? layer.borrowSource() : null;
+        PdfWriter writer = new PdfWriter(out);
+        // The response stream belongs to the servlet container
+        writer.setCloseStream(false);
+        try (PdfDocument pdf = new PdfDocument(writer)) {
+            PdfFormXObject layerXObject = source != null ? source.getFirstPage().copyAsFormXObject(pdf) : null;
+            PdfFont titleFont = PdfFontFactory.createFont(compiled.getTitleFontName());
+
+            for (Map<String, String> recipient : recipients) {
+                String recipientName = getRecipientName(recipient);
+                PdfPage page;
+                if (layerXObject != null && fitsNameSlot(layer, titleFont, recipientName)) {
+                    page = stampPage(pdf, layerXObject, layer, titleFont, compiled, recipientName, eventName);
                 } else {
-                    // No event document found, check if certificate template has event name
-                    if (template != null && template.getEventName() != null && !template.getEventName().isEmpty()) {
-                        eventName = template.getEventName();
-                        System.out.println("Using certificate template's eventName instead: " + eventName);
-                    } else {
-                        throw new Exception(
-                                "Could not find event document or certificate eventName for ID: " + eventId);
+                    byte[] full = renderFullCertificate(compiled, eventName, eventDetails[1], recipientName);
+                    try (PdfDocument single = new PdfDocument(new PdfReader(new ByteArrayInputStream(full)))) {
+                        single.copyPagesTo(1, single.getNumberOfPages(), pdf);
                     }
+                    page = pdf.getLastPage();
                 }
-            } catch (Exception e) {
-                System.err.println("Error fetching event details: " + e.getMessage());
-                // First check if the certificate template has an eventName field
-                if (template != null && template.getEventName() != null && !template.getEventName().isEmpty()) {
-                    eventName = template.getEventName();
-                    System.out.println("Using certificate template's eventName as fallback: " + eventName);
-                } else {
-                    // Use a more user-friendly fallback instead of just the raw ID
-                    eventName = "Event #" + eventId.substring(0, Math.min(8, eventId.length()));
+                page.flush();
+            }
+        } finally {
+            if (source != null) {
+                layer.returnSource(source);
+            }
+        }
+        System.out.println("[CertificateService] Wrote " + recipients.size() + " certificates for event " + eventId);
+    }
+
+    private boolean fitsNameSlot(StaticLayer layer, PdfFont titleFont, String recipientName) {
+        return titleFont.getWidth(recipientName, 28) <= layer.nameSlot.getWidth() - 1;
+    }
+
+    /**
+     * Add a page showing the static layer with the recipient name and QR code stamped on top
+     */
+    private PdfPage stampPage(PdfDocument pdf, PdfFormXObject layerXObject, StaticLayer layer, PdfFont titleFont,
+            CompiledCertificateTemplate compiled, String recipientName, String eventName) {
+        // The static layer is rendered on the default page size, so a default page lines up with it
+        PdfPage page = pdf.addNewPage();
+        PdfCanvas pdfCanvas = new PdfCanvas(page);
+        pdfCanvas.addXObjectAt(layerXObject, 0, 0);
+
+        // Extend the slot downwards a little so rounding can't push the line out of the area
+        Rectangle slot = layer.nameSlot;
+        Canvas nameCanvas = new Canvas(pdfCanvas,
+                new Rectangle(slot.getX(), slot.getY() - 10, slot.getWidth(), slot.getHeight() + 10));
+        nameCanvas.add(recipientNameParagraph(recipientName, titleFont, compiled.getTitleColor()));
+        nameCanvas.close();
+
+        Certificate template = compiled.getTemplate();
+        if (template != null && template.isShowQRCode()) {
+            Canvas pageCanvas = new Canvas(pdfCanvas, page.getPageSize());
+            pageCanvas.add(qrCodeImage(pdf, compiled, recipientName, eventName));
+            pageCanvas.close();
+        }
+        return page;
+    }
+
+    private StaticLayer getStaticLayer(String eventId, CompiledCertificateTemplate compiled, String eventName,
+            String eventDate) throws IOException {
+        StaticLayer layer = staticLayers.get(eventId);
+        if (layer != null && layer.matches(compiled, eventName, eventDate)) {
+            return layer.pdf != null ? layer : null;
+        }
+
+        synchronized (compileLocks.computeIfAbsent(eventId, k -> new Object())) {
+            layer = staticLayers.get(eventId);
+            if (layer == null || !layer.matches(compiled, eventName, eventDate)) {
+                removeStaticLayer(eventId);
+                layer = buildStaticLayer(compiled, eventName, eventDate);
+                staticLayers.put(eventId, layer);
+                trimStaticLayers(eventId);
+                System.out.println("[CertificateService] Built static certificate layer for event " + eventId
+                        + (layer.pdf != null ? " (" + layer.pdf.length + " bytes)" : " (not usable, rendering in full)"));
+            }
+        }
+        return layer.pdf != null ? layer : null;
+    }
+
+    /**
+     * Layers are normally dropped with their compiled template, but renders can also come from templates
+     * that were never cached, so hold the layers to the same limit.
+     */
+    private void trimStaticLayers(String keepEventId) {
+        while (staticLayers.size() > templateCacheSize) {
+            String oldest = null;
+            long oldestBuild = Long.MAX_VALUE;
+            for (Map.Entry<String, StaticLayer> entry : staticLayers.entrySet()) {
+                if (!entry.getKey().equals(keepEventId) && entry.getValue().builtAt < oldestBuild) {
+                    oldest = entry.getKey();
+                    oldestBuild = entry.getValue().builtAt;
                 }
-                eventDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMMM dd, yyyy"));
-                System.out.println("Using fallback event name: " + eventName);
             }
+            if (oldest == null) {
+                return;
+            }
+            removeStaticLayer(oldest);
+        }
+    }
 
-            // Event name
-            document.add(new Paragraph(eventName)
-                    .setFont(titleFont)
-                    .setFontSize(24)
-                    .setTextAlignment(TextAlignment.CENTER)
-                    .setMarginBottom(10));
+    /**
+     * Render everything but the recipient name and QR code once. A layout that doesn't fit on one page
+     * is remembered as unusable so each certificate doesn't try again.
+     */
+    private StaticLayer buildStaticLayer(CompiledCertificateTemplate compiled, String eventName, String eventDate)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PdfDocument pdf = new PdfDocument(new PdfWriter(baos));
+        Document document = new Document(pdf);
+        Rectangle[] nameSlot = new Rectangle[1];
+        renderCertificate(document, pdf, compiled, eventName, eventDate, null, nameSlot);
+        document.close();
+
+        byte[] layerPdf = baos.toByteArray();
+        int pageCount;
+        try (PdfDocument check = new PdfDocument(new PdfReader(new ByteArrayInputStream(layerPdf)))) {
+            pageCount = check.getNumberOfPages();
+        }
+        if (nameSlot[0] == null || pageCount != 1) {
+            return new StaticLayer(compiled, eventName, eventDate, null, null);
+        }
+        return new StaticLayer(compiled, eventName, eventDate, layerPdf, nameSlot[0]);
+    }
 
-            // Add event date with more prominence
-            if (eventDate != null && !eventDate.isEmpty()) {
-                // Create a styled date section
-                Paragraph dateSection = new Paragraph()
-                        .setTextAlignment(TextAlignment.CENTER)
-                        .setMarginBottom(20);
+    private static final class StaticLayer {
+        // A parsed PdfDocument can't be read by two threads at once, so each stamp borrows its own
+        private static final int MAX_IDLE_SOURCES = Runtime.getRuntime().availableProcessors();
+
+        final CompiledCertificateTemplate compiled;
+        final String eventName;
+        final String eventDate;
+        final byte[] pdf; // null when the static layer can't be used for this template
+        final Rectangle nameSlot;
+        final long builtAt = System.currentTimeMillis();
+
+        // Parsed copies of pdf, so a certificate only copies the page into its own document
+        private final Queue<PdfDocument> idleSources = new ConcurrentLinkedQueue<>();
+        private volatile boolean closed;
+
+        StaticLayer(CompiledCertificateTemplate compiled, String eventName, String eventDate, byte[] pdf,
+                Rectangle nameSlot) {
+            this.compiled = compiled;
+            this.eventName = eventName;
+            this.eventDate = eventDate;
+            this.pdf = pdf;
+            this.nameSlot = nameSlot;
+        }
 
-                // Add "Date:" text with normal font
-                Text dateLabel = new Text("Date: ").setFont(normalFont).setFontSize(14);
+        boolean matches(CompiledCertificateTemplate compiled, String eventName, String eventDate) {
+            return this.compiled == compiled && Objects.equals(this.eventName, eventName)
+                    && Objects.equals(this.eventDate, eventDate);
+        }
 
-                // Add the actual date with italic/bold font for emphasis
-                Text dateValue = new Text(eventDate).setFont(italicFont).setFontSize(14);
+        PdfDocument borrowSource() throws IOException {
+            PdfDocument source = idleSources.poll();
+            return source != null ? source : new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)));
+        }
 
-                // Combine the label and value in the paragraph
-                dateSection.add(dateLabel).add(dateValue);
+        void returnSource(PdfDocument source) {
+            if (idleSources.size() >= MAX_IDLE_SOURCES) {
+                source.close();
+                return;
+            }
+            idleSources.offer(source);
+            // A layer evicted while this source was out must not keep it
+            if (closed) {
+                close();
+            }
+        }
 
-                // Add to document
-                document.add(dateSection);
+        void close() {
+            closed = true;
+            PdfDocument source;
+            while ((source = idleSources.poll()) != null) {
+                source.close();
+            }
+        }
+    }
 
-                System.out.println("Added event date to certificate: " + eventDate);
-            } else {
-                System.out.println("No event date available to display");
-            }
-
-            // Add signatories if available
-            if (template != null && template.getSignatories() != null && !template.getSignatories().isEmpty()) {
-                float signatureY = 150f;
-                for (Map<String, String> signatory : template.getSignatories()) {
-                    // Add signature image if available
-                    if (template.getSignatureImages() != null &&
-                            template.getSignatureImages().containsKey(signatory.get("name"))) {
-                        try {
-                            byte[] signatureBytes = Base64.getDecoder().decode(
-                                    template.getSignatureImages().get(signatory.get("name")));
-                            ImageData signatureImageData = ImageDataFactory.create(signatureBytes);
-                            Image signatureImage = new Image(signatureImageData);
-                            float signatureX = (pdf.getDefaultPageSize().getWidth() - 100) / 2;
-                            signatureImage.setFixedPosition(signatureX, signatureY);
-                            signatureImage.scaleToFit(100, 50);
-                            document.add(signatureImage);
-                            signatureY -= 20;
-                        } catch (Exception e) {
-                            System.err.println("Error adding signature image: " + e.getMessage());
-                        }
-                    }
+    /**
+     * Lays out the recipient name paragraph without drawing it, recording where it would have gone
+     */
+    private static final class NameSlotRenderer extends ParagraphRenderer {
+        private final Rectangle[] slot;
+
+        NameSlotRenderer(Paragraph paragraph, Rectangle[] slot) {
+            super(paragraph);
+            this.slot = slot;
+        }
 
-                    // Add signatory name and title
-                    document.add(new Paragraph(signatory.get("name"))
-                            .setFont(titleFont)
-                            .setFontSize(12)
-                            .setTextAlignment(TextAlignment.CENTER));
-
-                    document.add(new Paragraph(signatory.get("title"))
-                            .setFont(normalFont)
-                            .setFontSize(10)
-                            .setTextAlignment(TextAlignment.CENTER)
-                            .setMarginBottom(20));
+        @Override
+        public void draw(DrawContext drawContext) {
+            slot[0] = getOccupiedAreaBBox();
+        }
+
+        @Override
+        public IRenderer getNextRenderer() {
+            return new NameSlotRenderer((Paragraph) modelElement, slot);
+        }
+    }
+
+    /**
+     * Look up the event name and date shown on the certificate, with the template's eventName as a fallback.
+     * Returns {eventName, eventDate}.
+     */
+    private String[] resolveEventDetails(String eventId, Certificate template) {
+        String eventName;
+        String eventDate = "";
+        try {
+            System.out.println("Fetching event details for ID: " + eventId);
+
+            // First attempt: direct lookup with the provided ID (cached across attendees)
+            DocumentSnapshot eventDoc = eventMetadataCache.get(eventId).getSnapshot();
+
+            // If document doesn't exist or doesn't have eventName, try a query approach
+            if (!eventDoc.exists() || eventDoc.getString("eventName") == null) {
+                System.out.println("Direct lookup failed. Trying to find event by eventId field...");
+
+                // Try to find events where eventId field matches our input
+                ApiFuture<QuerySnapshot> queryFuture = FirestoreClient.getFirestore()
+                        .collection("events")
+                        .whereEqualTo("eventId", eventId)
+                        .limit(1)
+                        .get();
+
+                List<QueryDocumentSnapshot> documents = queryFuture.get().getDocuments();
+
+                if (!documents.isEmpty()) {
+                    eventDoc = documents.get(0);
+                    System.out.println("Found event through query by eventId field");
+                } else {
+                    System.out.println("No event found with eventId field = " + eventId);
                 }
-            } else {
-                // Default signature line
-                LineSeparator line = new LineSeparator(new SolidLine());
-                line.setWidth(UnitValue.createPercentValue(40));
-                line.setHorizontalAlignment(HorizontalAlignment.CENTER);
-                line.setMarginBottom(5);
-                document.add(line);
-
-                document.add(new Paragraph("Event Representative")
-                        .setFont(normalFont)
-                        .setFontSize(12)
-                        .setTextAlignment(TextAlignment.CENTER)
-                        .setMarginBottom(30));
             }
 
-            // Add QR code if enabled
-            if (template != null && template.isShowQRCode()) {
-                try {
-                    BarcodeQRCode qrCode = new BarcodeQRCode("Certificate for " + recipientName +
-                            " - Event: " + eventName);
-                    PdfFormXObject qrCodeImage = qrCode.createFormXObject(ColorConstants.BLACK, pdf);
-                    float qrX = 0, qrY = 0;
-                    switch (template.getQrCodePosition()) {
-                        case "bottom-left":
-                            qrX = 20;
-                            qrY = 20;
-                            break;
-                        case "top-right":
-                            qrX = pdf.getDefaultPageSize().getWidth() - 100 - 20;
-                            qrY = pdf.getDefaultPageSize().getHeight() - 100 - 20;
-                            break;
-                        case "top-left":
-                            qrX = 20;
-                            qrY = pdf.getDefaultPageSize().getHeight() - 100 - 20;
-                            break;
-                        case "bottom-right":
-                        default:
-                            qrX = pdf.getDefaultPageSize().getWidth() - 100 - 20;
-                            qrY = 20;
-                            break;
+            // Get event name with fallbacks
+            if (eventDoc.exists()) {
+                System.out.println("Event document data: " + eventDoc.getData());
+
+                eventName = eventDoc.getString("eventName");
+                System.out.println("Extracted eventName: " + eventName);
+
+                if (eventName == null || eventName.isEmpty()) {
+                    eventName = eventDoc.getString("name");
+                    if (eventName == null || eventName.isEmpty()) {
+                        eventName = eventDoc.getString("title");
+                        if (eventName == null || eventName.isEmpty()) {
+                            // Last resort - try to get any field that might have event name info
+                            Map<String, Object> eventData = eventDoc.getData();
+                            for (String key : eventData.keySet()) {
+                                if (key.toLowerCase().contains("name") || key.toLowerCase().contains("title")) {
+                                    Object value = eventData.get(key);
+                                    if (value != null && value instanceof String) {
+                                        eventName = (String) value;
+                                        System.out.println("Using alternative field for event name: " + key);
+                                        break;
+                                    }
+                                }
+                            }
+
+                            // If we still don't have a name, use a friendly format
+                            if (eventName == null || eventName.isEmpty()) {
+                                // Check if the certificate template has an eventName field
+                                if (template != null && template.getEventName() != null
+                                        && !template.getEventName().isEmpty()) {
+                                    eventName = template.getEventName();
+                                    System.out.println("Using certificate template's eventName: " + eventName);
+                                } else {
+                                    eventName = "Event #" + eventId.substring(0, Math.min(8, eventId.length()));
+                                    System.out.println("No event name found, using formatted ID: " + eventName);
+                                }
+                            }
+                        }
                     }
-                    Image qrCodeImg = new Image(qrCodeImage);
-                    qrCodeImg.setFixedPosition(qrX, qrY);
-                    qrCodeImg.scaleToFit(100, 100);
-                    document.add(qrCodeImg);
-                    System.out.println("QR code added successfully");
-                } catch (Exception e) {
-                    System.err.println("Error adding QR code: " + e.getMessage());
                 }
-            }
-
-            document.close();
-            byte[] pdfBytes = baos.toByteArray();
-            System.out.println("Generated PDF size: " + pdfBytes.length + " bytes");
-            return pdfBytes;
 
+                System.out.println("Final event name to use: " + eventName);
+
+                // Get event date; "date" is a Timestamp on current events and a string on older ones
+                Object rawDate = eventDoc.get("date");
+                if (rawDate instanceof com.google.cloud.Timestamp) {
+                    eventDate = DateTimeFormatter.ofPattern("MMMM dd, yyyy")
+                            .format(((com.google.cloud.Timestamp) rawDate).toDate().toInstant()
+                                    .atZone(java.time.ZoneId.of("Asia/Manila")));
+                    System.out.println("Found event date: " + eventDate);
+                } else if (rawDate != null) {
+                    eventDate = rawDate.toString();
+                    System.out.println("Found event date: " + eventDate);
+                } else if (eventDoc.contains("eventDate")) {
+                    eventDate = eventDoc.getString("eventDate");
+                    System.out.println("Found event date: " + eventDate);
+                } else {
+                    // Try to find date in timestamp fields
+                    Object timestamp = eventDoc.get("timestamp");
+                    if (timestamp != null) {
+                        if (timestamp instanceof com.google.cloud.Timestamp) {
+                            com.google.cloud.Timestamp ts = (com.google.cloud.Timestamp) timestamp;
+                            eventDate = java.time.format.DateTimeFormatter.ofPattern("MMMM dd, yyyy")
+                                    .format(java.time.LocalDateTime.ofInstant(
+                                            ts.toDate().toInstant(),
+                                            java.time.ZoneId.systemDefault()));
+                            System.out.println("Converted timestamp to date: " + eventDate);
+                        } else {
+                            eventDate = timestamp.toString();
+                        }
+                    } else {
+                        System.out.println("No date field found in event document");
+                    }
+                }
+            } else {
+                // No event document found, check if certificate template has event name
+                if (template != null && template.getEventName() != null && !template.getEventName().isEmpty()) {
+                    eventName = template.getEventName();
+                    System.out.println("Using certificate template's eventName instead: " + eventName);
+                } else {
+                    throw new Exception(
+                            "Could not find event document or certificate eventName for ID: " + eventId);
+                }
+            }
         } catch (Exception e) {
-            System.err.println("Error generating certificate: " + e.getMessage());
-            e.printStackTrace();
-            document.close();
-            byte[] pdfBytes = baos.toByteArray();
-            System.out.println("Generated PDF size (after error): " + pdfBytes.length + " bytes");
-            return pdfBytes;
+            System.err.println("Error fetching event details: " + e.getMessage());
+            // First check if the certificate template has an eventName field
+            if (template != null && template.getEventName() != null && !template.getEventName().isEmpty()) {
+                eventName = template.getEventName();
+                System.out.println("Using certificate template's eventName as fallback: " + eventName);
+            } else {
+                // Use a more user-friendly fallback instead of just the raw ID
+                eventName = "Event #" + eventId.substring(0, Math.min(8, eventId.length()));
+            }
+            eventDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("MMMM dd, yyyy"));
+            System.out.println("Using fallback event name: " + eventName);
         }
+
+        return new String[] { eventName, eventDate };
     }
 
     // Helper method to convert any image format to JPEG
@@ -968,318 +1654,158 @@ public class CertificateService {
         }
     }
 
-    private void handleBackgroundImage(Document document, PdfDocument pdf, Certificate template) {
+    /**
+     * Decode an inline base64 background, repairing the data URI prefixes and stray characters
+     * older clients sent. Returns null when nothing usable is left.
+     */
+    private byte[] decodeBackgroundImage(String backgroundImage) {
+        if (backgroundImage == null) {
+            return null;
+        }
         try {
-            System.out.println("[DEBUG] handleBackgroundImage: Starting background image processing");
-
-            // Get the base64 image string and sanitize it
-            String base64Image = template.getBackgroundImage();
-            System.out.println("[DEBUG] handleBackgroundImage: Original base64 image length: " + base64Image.length());
-
             // Sanitize the base64 string to ensure it's properly formatted
-            base64Image = sanitizeBase64(base64Image);
-            System.out.println("[DEBUG] handleBackgroundImage: Sanitized base64 length: " + base64Image.length());
+            String base64Image = sanitizeBase64(backgroundImage);
 
-            // Attempt to decode the base64 data
             byte[] imageBytes;
             try {
                 imageBytes = Base64.getDecoder().decode(base64Image);
-                System.out.println(
-                        "[DEBUG] handleBackgroundImage: Decoded base64 data, size: " + imageBytes.length + " bytes");
-                System.out.println("[DEBUG] handleBackgroundImage: First few bytes: " + bytesToHex(imageBytes, 16));
             } catch (IllegalArgumentException e) {
-                System.err.println("[DEBUG] handleBackgroundImage: Failed to decode base64 data: " + e.getMessage());
-                // If we can't decode, use a default colored rectangle instead
-                addColoredBackground(document, pdf, template);
-                return;
+                System.err.println("[DEBUG] decodeBackgroundImage: Failed to decode base64 data: " + e.getMessage());
+                return null;
             }
 
             // Check if the decoded data actually resembles an image
             if (!isValidImageData(imageBytes)) {
-                System.err.println("[DEBUG] handleBackgroundImage: Decoded data doesn't appear to be a valid image");
-
                 // Try aggressive sanitization - remove non-alphabetic characters
                 String sanitizedAgain = base64Image.replaceAll("[^A-Za-z0-9+/=]", "");
                 if (!sanitizedAgain.equals(base64Image)) {
-                    System.out.println("[DEBUG] handleBackgroundImage: Attempting more aggressive base64 sanitization");
                     try {
                         byte[] newImageBytes = Base64.getDecoder().decode(sanitizedAgain);
                         if (isValidImageData(newImageBytes)) {
-                            System.out.println("[DEBUG] handleBackgroundImage: Aggressive sanitization worked!");
+                            System.out.println("[DEBUG] decodeBackgroundImage: Aggressive sanitization worked!");
                             imageBytes = newImageBytes;
                         }
                     } catch (Exception e) {
-                        System.err.println("[DEBUG] handleBackgroundImage: Aggressive sanitization failed");
+                        System.err.println("[DEBUG] decodeBackgroundImage: Aggressive sanitization failed");
                     }
                 }
             }
 
             // If image data is too small, use colored background
             if (imageBytes.length < 8) {
-                System.err.println("[DEBUG] handleBackgroundImage: Image data too small to be valid");
-                addColoredBackground(document, pdf, template);
-                return;
+                System.err.println("[DEBUG] decodeBackgroundImage: Image data too small to be valid");
+                return null;
             }
-
-            // Try different approaches in sequence
-            boolean success = false;
-
-            // Approach 1: Try to create a Java BufferedImage and convert to PNG
-            success = tryBufferedImageApproach(document, pdf, template, imageBytes);
-            if (success)
-                return;
-
-            // Approach 2: Try creating a new solid-color image with the right dimensions
-            success = tryCreateNewImageApproach(document, pdf, template);
-            if (success)
-                return;
-
-            // Approach 3: Try with explicit format type
-            success = tryExplicitFormatApproach(document, pdf, template, imageBytes);
-            if (success)
-                return;
-
-            // Approach 4: Create a solid color background as last resort
-            addColoredBackground(document, pdf, template);
-
+            return imageBytes;
         } catch (Exception e) {
-            System.err.println("[DEBUG] handleBackgroundImage: Unexpected error: " + e.getMessage());
-            e.printStackTrace();
-            // Fallback to colored background
-            try {
-                addColoredBackground(document, pdf, template);
-            } catch (Exception e2) {
-                System.err.println("[DEBUG] handleBackgroundImage: Even fallback failed: " + e2.getMessage());
-            }
+            System.err.println("[DEBUG] decodeBackgroundImage: Error: " + e.getMessage());
+            return null;
         }
     }
 
-    private boolean tryBufferedImageApproach(Document document, PdfDocument pdf, Certificate template,
-            byte[] imageBytes) {
-        try {
-            System.out.println("[DEBUG] tryBufferedImageApproach: Converting image using BufferedImage");
-
-            // Create a new image from scratch
-            int width = 800; // Default width if can't determine
-            int height = 600; // Default height if can't determine
-
-            // Try to read the image data
-            BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
-            if (originalImage != null) {
-                width = originalImage.getWidth();
-                height = originalImage.getHeight();
-                System.out
-                        .println("[DEBUG] tryBufferedImageApproach: Successfully read image: " + width + "x" + height);
-            } else {
-                System.out.println("[DEBUG] tryBufferedImageApproach: Could not read image, using default dimensions");
-                return false;
-            }
-
-            // Create a new image with RGB format
-            BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-            Graphics2D g2d = newImage.createGraphics();
-            g2d.setColor(java.awt.Color.WHITE); // White background
-            g2d.fillRect(0, 0, width, height);
-            g2d.drawImage(originalImage, 0, 0, null);
-            g2d.dispose();
-
-            // Save as PNG
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            boolean writeSuccess = ImageIO.write(newImage, "png", baos);
-            if (!writeSuccess) {
-                System.err.println("[DEBUG] tryBufferedImageApproach: Failed to write PNG");
-                return false;
-            }
+    /**
+     * Image bytes for a template image, from the image store when the template holds a reference
+     * and from the inline base64 field otherwise.
+     */
+    private byte[] imageBytes(String inlineImage, String ref) {
+        // Inline data is only left on a document when storing it failed, so it is newer than any reference
+        if (inlineImage != null) {
+            return decodeInlineImage(inlineImage);
+        }
+        return ref != null ? loadImage(ref) : null;
+    }
 
-            // Create temp file for more reliable handling
-            java.nio.file.Path tempFile = java.nio.file.Files.createTempFile("certificate_bg_", ".png");
-            java.nio.file.Files.write(tempFile, baos.toByteArray());
-            System.out.println("[DEBUG] tryBufferedImageApproach: Created temp file: " + tempFile);
+    private byte[] decodeInlineImage(String inlineImage) {
+        if (inlineImage == null) {
+            return null;
+        }
+        try {
+            return Base64.getDecoder().decode(inlineImage);
+        } catch (IllegalArgumentException e) {
+            System.err.println("[CertificateService] Invalid base64 image data: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // Add to PDF
-            try {
-                ImageData imageData = ImageDataFactory.create(tempFile.toUri().toURL());
-                Image image = new Image(imageData);
-                image.setFixedPosition(0, 0);
-                image.setWidth(pdf.getDefaultPageSize().getWidth());
-                image.setHeight(pdf.getDefaultPageSize().getHeight());
-
-                // Set opacity
-                float opacity = template.getBackgroundImageOpacity();
-                if (opacity <= 0 || opacity > 1)
-                    opacity = 0.3f;
-                image.setOpacity(opacity);
-
-                document.add(image);
-                java.nio.file.Files.deleteIfExists(tempFile);
-                System.out.println("[DEBUG] tryBufferedImageApproach: Success!");
-                return true;
-            } catch (Exception e) {
-                System.err.println("[DEBUG] tryBufferedImageApproach: Failed: " + e.getMessage());
-                java.nio.file.Files.deleteIfExists(tempFile);
-                return false;
+    /**
+     * Load a stored template image. A missing image is logged and skipped like undecodable inline data,
+     * but a store error fails the compile so a template without its images is never cached.
+     */
+    private byte[] loadImage(String ref) {
+        try {
+            byte[] image = certificateImageStore.get(ref);
+            if (image == null) {
+                System.err.println("[CertificateService] Certificate image " + ref + " not found");
             }
-        } catch (Exception e) {
-            System.err.println("[DEBUG] tryBufferedImageApproach: Error: " + e.getMessage());
-            return false;
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error loading certificate image " + ref, e);
         }
     }
 
-    private boolean tryCreateNewImageApproach(Document document, PdfDocument pdf, Certificate template) {
+    /**
+     * Normalize a background to an opaque RGB PNG, entirely in memory.
+     * Runs once per template version; returns null when the data can't be used as an image.
+     */
+    private byte[] normalizeBackgroundImage(byte[] imageBytes) {
         try {
-            System.out.println("[DEBUG] tryCreateNewImageApproach: Creating a new image from scratch");
+            BufferedImage originalImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
+            if (originalImage == null) {
+                // Formats ImageIO can't read may still be readable by iText directly
+                ImageDataFactory.create(imageBytes);
+                System.out.println("[DEBUG] normalizeBackgroundImage: Using original bytes as-is");
+                return imageBytes;
+            }
 
-            // Create a new RGB image with dimensions matching the PDF page
-            int width = (int) pdf.getDefaultPageSize().getWidth();
-            int height = (int) pdf.getDefaultPageSize().getHeight();
+            // JPEGs are always opaque and iText embeds them without re-encoding, which keeps
+            // optimized uploads small in every generated PDF
+            if (isJpeg(imageBytes)) {
+                return imageBytes;
+            }
 
+            // Flatten onto white so transparency doesn't depend on the PDF viewer
+            int width = originalImage.getWidth();
+            int height = originalImage.getHeight();
             BufferedImage newImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
             Graphics2D g2d = newImage.createGraphics();
-
-            // Fill with background color from template
-            java.awt.Color bgColor = java.awt.Color.WHITE; // Default
-            if (template.getBackgroundColor() != null && !template.getBackgroundColor().isEmpty()) {
-                try {
-                    bgColor = java.awt.Color.decode(template.getBackgroundColor());
-                } catch (Exception e) {
-                    System.err.println("[DEBUG] tryCreateNewImageApproach: Invalid color format: "
-                            + template.getBackgroundColor());
-                }
-            }
-
-            g2d.setColor(bgColor);
+            g2d.setColor(java.awt.Color.WHITE);
             g2d.fillRect(0, 0, width, height);
-
-            // Add some visual elements to make it look nice
-            int margin = width / 20;
-            g2d.setColor(new java.awt.Color(bgColor.getRed(),
-                    bgColor.getGreen(),
-                    bgColor.getBlue(),
-                    50)); // Transparent version of bg color
-
-            // Draw a decorative border
-            g2d.fillRect(margin, margin, width - 2 * margin, height - 2 * margin);
-
+            g2d.drawImage(originalImage, 0, 0, null);
             g2d.dispose();
 
-            // Save as PNG
             ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            boolean writeSuccess = ImageIO.write(newImage, "png", baos);
-            if (!writeSuccess) {
-                System.err.println("[DEBUG] tryCreateNewImageApproach: Failed to write PNG");
-                return false;
-            }
-
-            // Create temp file for more reliable handling
-            java.nio.file.Path tempFile = java.nio.file.Files.createTempFile("certificate_bg_new_", ".png");
-            java.nio.file.Files.write(tempFile, baos.toByteArray());
-            System.out.println("[DEBUG] tryCreateNewImageApproach: Created temp file: " + tempFile);
-
-            // Add to PDF
-            try {
-                ImageData imageData = ImageDataFactory.create(tempFile.toUri().toURL());
-                Image image = new Image(imageData);
-                image.setFixedPosition(0, 0);
-                image.setWidth(pdf.getDefaultPageSize().getWidth());
-                image.setHeight(pdf.getDefaultPageSize().getHeight());
-
-                // Set opacity
-                float opacity = template.getBackgroundImageOpacity();
-                if (opacity <= 0 || opacity > 1)
-                    opacity = 0.3f;
-                image.setOpacity(opacity);
-
-                document.add(image);
-                java.nio.file.Files.deleteIfExists(tempFile);
-                System.out.println("[DEBUG] tryCreateNewImageApproach: Success!");
-                return true;
-            } catch (Exception e) {
-                System.err.println("[DEBUG] tryCreateNewImageApproach: Failed: " + e.getMessage());
-                java.nio.file.Files.deleteIfExists(tempFile);
-                return false;
+            if (!ImageIO.write(newImage, "png", baos)) {
+                System.err.println("[DEBUG] normalizeBackgroundImage: Failed to write PNG");
+                return null;
             }
+            System.out.println("[DEBUG] normalizeBackgroundImage: Normalized " + width + "x" + height
+                    + " background to " + baos.size() + " bytes");
+            return baos.toByteArray();
         } catch (Exception e) {
-            System.err.println("[DEBUG] tryCreateNewImageApproach: Error: " + e.getMessage());
-            return false;
+            System.err.println("[DEBUG] normalizeBackgroundImage: Error: " + e.getMessage());
+            return null;
         }
     }
 
-    private boolean tryExplicitFormatApproach(Document document, PdfDocument pdf, Certificate template,
-            byte[] imageBytes) {
-        try {
-            System.out.println("[DEBUG] tryExplicitFormatApproach: Trying with explicit format types");
-
-            // List of common image formats to try
-            String[] formatTypes = {
-                    "JPEG", "PNG", "GIF", "BMP", "TIFF"
-            };
-
-            // Try each format
-            for (String formatName : formatTypes) {
-                try {
-                    System.out.println("[DEBUG] tryExplicitFormatApproach: Trying " + formatName + " format");
-
-                    // Create temporary file with the specific extension
-                    java.nio.file.Path tempFile = java.nio.file.Files.createTempFile("certificate_bg_",
-                            "." + formatName.toLowerCase());
-                    java.nio.file.Files.write(tempFile, imageBytes);
-
-                    // Try to create an image from the temp file
-                    ImageData imageData = ImageDataFactory.create(tempFile.toUri().toURL());
-                    Image image = new Image(imageData);
-                    image.setFixedPosition(0, 0);
-                    image.setWidth(pdf.getDefaultPageSize().getWidth());
-                    image.setHeight(pdf.getDefaultPageSize().getHeight());
-
-                    // Set opacity
-                    float opacity = template.getBackgroundImageOpacity();
-                    if (opacity <= 0 || opacity > 1)
-                        opacity = 0.3f;
-                    image.setOpacity(opacity);
+    private static boolean isJpeg(byte[] imageBytes) {
+        return imageBytes.length > 3 && (imageBytes[0] & 0xFF) == 0xFF && (imageBytes[1] & 0xFF) == 0xD8
+                && (imageBytes[2] & 0xFF) == 0xFF;
+    }
 
-                    document.add(image);
+    private void addBackgroundImage(Document document, PdfDocument pdf, CompiledCertificateTemplate compiled,
+            ImageData backgroundImageData) {
+        Image image = new Image(backgroundImageData);
+        image.setFixedPosition(0, 0);
+        image.setWidth(pdf.getDefaultPageSize().getWidth());
+        image.setHeight(pdf.getDefaultPageSize().getHeight());
 
-                    // Clean up the temp file
-                    java.nio.file.Files.deleteIfExists(tempFile);
+        // Set opacity
+        float opacity = compiled.getTemplate().getBackgroundImageOpacity();
+        if (opacity <= 0 || opacity > 1)
+            opacity = 0.3f;
+        image.setOpacity(opacity);
 
-                    System.out.println("[DEBUG] tryExplicitFormatApproach: Success with " + formatName + " format!");
-                    return true;
-                } catch (Exception e) {
-                    System.err.println("[DEBUG] tryExplicitFormatApproach: Failed with format " + formatName + ": "
-                            + e.getMessage());
-                    // Continue to next format
-                }
-            }
-
-            // Direct approach using raw bytes
-            try {
-                System.out.println("[DEBUG] tryExplicitFormatApproach: Trying direct byte array approach");
-                ImageData imageData = ImageDataFactory.create(imageBytes);
-                Image image = new Image(imageData);
-                image.setFixedPosition(0, 0);
-                image.setWidth(pdf.getDefaultPageSize().getWidth());
-                image.setHeight(pdf.getDefaultPageSize().getHeight());
-
-                // Set opacity
-                float opacity = template.getBackgroundImageOpacity();
-                if (opacity <= 0 || opacity > 1)
-                    opacity = 0.3f;
-                image.setOpacity(opacity);
-
-                document.add(image);
-                System.out.println("[DEBUG] tryExplicitFormatApproach: Success with direct byte array approach!");
-                return true;
-            } catch (Exception e) {
-                System.err.println(
-                        "[DEBUG] tryExplicitFormatApproach: Failed with direct byte array approach: " + e.getMessage());
-            }
-
-            // If we've tried all formats and none worked
-            return false;
-        } catch (Exception e) {
-            System.err.println("[DEBUG] tryExplicitFormatApproach: Error: " + e.getMessage());
-            return false;
-        }
+        document.add(image);
     }
 
     private void addColoredBackground(Document document, PdfDocument pdf, Certificate template) {
@@ -1412,6 +1938,175 @@ public class CertificateService {
         }
     }
 
+    /**
+     * Move inline base64 images into the image store, leaving only their references in the document.
+     * An image that can't be decoded or stored stays inline so nothing is lost, and its old reference is
+     * dropped so the new image isn't shadowed by the one it replaced.
+     */
+    private void externalizeImages(Certificate certificate) {
+        if (certificate.getBackgroundImage() != null) {
+            String ref = storeImage(decodeBackgroundImage(certificate.getBackgroundImage()));
+            certificate.setBackgroundImageRef(ref);
+            if (ref != null) {
+                certificate.setBackgroundImage(null);
+            }
+        }
+        if (certificate.getLogoImage() != null) {
+            String ref = storeImage(decodeInlineImage(certificate.getLogoImage()));
+            certificate.setLogoImageRef(ref);
+            if (ref != null) {
+                certificate.setLogoImage(null);
+            }
+        }
+        if (certificate.getWatermarkImage() != null) {
+            String ref = storeImage(decodeInlineImage(certificate.getWatermarkImage()));
+            certificate.setWatermarkImageRef(ref);
+            if (ref != null) {
+                certificate.setWatermarkImage(null);
+            }
+        }
+        if (certificate.getSignatureImages() != null) {
+            Iterator<Map.Entry<String, String>> signatures = certificate.getSignatureImages().entrySet().iterator();
+            while (signatures.hasNext()) {
+                Map.Entry<String, String> signature = signatures.next();
+                String ref = storeImage(decodeInlineImage(signature.getValue()));
+                if (ref != null) {
+                    if (certificate.getSignatureImageRefs() == null) {
+                        certificate.setSignatureImageRefs(new HashMap<>());
+                    }
+                    certificate.getSignatureImageRefs().put(signature.getKey(), ref);
+                    signatures.remove();
+                } else if (certificate.getSignatureImageRefs() != null) {
+                    certificate.getSignatureImageRefs().remove(signature.getKey());
+                }
+            }
+        }
+    }
+
+    private String storeImage(byte[] image) {
+        if (image == null) {
+            return null;
+        }
+        try {
+            return certificateImageStore.put(image);
+        } catch (IOException e) {
+            System.err.println("[CertificateService] Error storing certificate image, keeping it inline: "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean hasInlineImages(Certificate certificate) {
+        return certificate.getBackgroundImage() != null
+                || certificate.getLogoImage() != null
+                || certificate.getWatermarkImage() != null
+                || (certificate.getSignatureImages() != null && !certificate.getSignatureImages().isEmpty());
+    }
+
+    /**
+     * Fill in the inline base64 images from the image store and drop the references, for clients that
+     * edit templates and send the images back on save. References whose image can't be loaded are kept,
+     * and an image that is already inline is left as it is.
+     */
+    public Certificate inlineImages(Certificate certificate) {
+        if (certificate == null) {
+            return null;
+        }
+        byte[] background = certificate.getBackgroundImage() == null
+                ? readImageQuietly(certificate.getBackgroundImageRef())
+                : null;
+        if (background != null) {
+            certificate.setBackgroundImage(Base64.getEncoder().encodeToString(background));
+            certificate.setBackgroundImageRef(null);
+        }
+        byte[] logo = certificate.getLogoImage() == null
+                ? readImageQuietly(certificate.getLogoImageRef())
+                : null;
+        if (logo != null) {
+            certificate.setLogoImage(Base64.getEncoder().encodeToString(logo));
+            certificate.setLogoImageRef(null);
+        }
+        byte[] watermark = certificate.getWatermarkImage() == null
+                ? readImageQuietly(certificate.getWatermarkImageRef())
+                : null;
+        if (watermark != null) {
+            certificate.setWatermarkImage(Base64.getEncoder().encodeToString(watermark));
+            certificate.setWatermarkImageRef(null);
+        }
+        if (certificate.getSignatureImageRefs() != null) {
+            Iterator<Map.Entry<String, String>> refs = certificate.getSignatureImageRefs().entrySet().iterator();
+            while (refs.hasNext()) {
+                Map.Entry<String, String> ref = refs.next();
+                if (certificate.getSignatureImages() != null
+                        && certificate.getSignatureImages().containsKey(ref.getKey())) {
+                    continue;
+                }
+                byte[] signature = readImageQuietly(ref.getValue());
+                if (signature != null) {
+                    if (certificate.getSignatureImages() == null) {
+                        certificate.setSignatureImages(new HashMap<>());
+                    }
+                    certificate.getSignatureImages().put(ref.getKey(), Base64.getEncoder().encodeToString(signature));
+                    refs.remove();
+                }
+            }
+        }
+        return certificate;
+    }
+
+    private byte[] readImageQuietly(String ref) {
+        if (ref == null) {
+            return null;
+        }
+        try {
+            return loadImage(ref);
+        } catch (UncheckedIOException e) {
+            System.err.println("[CertificateService] " + e.getMessage() + ": " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Move the inline images of certificates saved before the image store existed.
+     * Documents are read a page at a time since each one can hold megabytes of base64.
+     */
+    public String migrateInlineImages() throws ExecutionException, InterruptedException {
+        int migrated = 0;
+        int keptInline = 0;
+        String lastId = null;
+
+        while (true) {
+            Query page = firestore.collection(COLLECTION_NAME)
+                    .orderBy(FieldPath.documentId())
+                    .limit(IMAGE_MIGRATION_PAGE_SIZE);
+            if (lastId != null) {
+                page = page.startAfter(lastId);
+            }
+            List<QueryDocumentSnapshot> documents = page.get().get().getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                Certificate certificate = document.toObject(Certificate.class);
+                if (!hasInlineImages(certificate)) {
+                    continue;
+                }
+                updateCertificate(document.getId(), certificate);
+                if (hasInlineImages(certificate)) {
+                    keptInline++;
+                } else {
+                    migrated++;
+                }
+            }
+            if (documents.size() < IMAGE_MIGRATION_PAGE_SIZE) {
+                break;
+            }
+            lastId = documents.get(documents.size() - 1).getId();
+        }
+
+        System.out.println("[CertificateService] Moved images of " + migrated + " certificates to the image store, "
+                + keptInline + " still have inline images");
+        return "Moved images of " + migrated + " certificates to the image store"
+                + (keptInline > 0 ? "; " + keptInline + " kept inline images that could not be stored" : "");
+    }
+
     /**
      * Clean up orphaned certificates - certificates with non-existent events
      * This can be called manually or periodically to ensure database consistency
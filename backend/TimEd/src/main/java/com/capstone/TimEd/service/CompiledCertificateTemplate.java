@@ -0,0 +1,151 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.itextpdf.io.image.ImageData;
+import com.itextpdf.io.image.ImageDataFactory;
+import com.itextpdf.kernel.colors.Color;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A certificate template with everything that doesn't depend on the attendee already worked out:
+ * checked image bytes, resolved colors, font names and fixed positions. Shared across threads and PDFs, so the
+ * getters hand out a fresh ImageData or Color each time; iText mutates both while writing them into a document.
+ */
+public class CompiledCertificateTemplate {
+
+    private final Certificate template; // null when the event has no template
+    private final Object version; // update time of the template document
+
+    private String titleFontName;
+    private String normalFontName;
+    private String italicFontName;
+
+    private Color titleColor;
+    private Color textColor;
+
+    private byte[] backgroundImageBytes; // normalized PNG, or the original bytes when ImageIO can't read them
+    private byte[] logoImageBytes;
+    private float logoX;
+    private float logoY;
+    private byte[] watermarkImageBytes;
+    private final Map<String, byte[]> signatureImageBytes = new HashMap<>();
+
+    private float qrX;
+    private float qrY;
+
+    public CompiledCertificateTemplate(Certificate template, Object version) {
+        this.template = template;
+        this.version = version;
+    }
+
+    public Certificate getTemplate() {
+        return template;
+    }
+
+    public Object getVersion() {
+        return version;
+    }
+
+    public String getTitleFontName() {
+        return titleFontName;
+    }
+
+    public String getNormalFontName() {
+        return normalFontName;
+    }
+
+    public String getItalicFontName() {
+        return italicFontName;
+    }
+
+    void setFontNames(String titleFontName, String normalFontName, String italicFontName) {
+        this.titleFontName = titleFontName;
+        this.normalFontName = normalFontName;
+        this.italicFontName = italicFontName;
+    }
+
+    public Color getTitleColor() {
+        return copy(titleColor);
+    }
+
+    void setTitleColor(Color titleColor) {
+        this.titleColor = titleColor;
+    }
+
+    public Color getTextColor() {
+        return copy(textColor);
+    }
+
+    void setTextColor(Color textColor) {
+        this.textColor = textColor;
+    }
+
+    public ImageData getBackgroundImage() {
+        return image(backgroundImageBytes);
+    }
+
+    public byte[] getBackgroundImageBytes() {
+        return backgroundImageBytes;
+    }
+
+    void setBackgroundImage(byte[] backgroundImageBytes) {
+        this.backgroundImageBytes = backgroundImageBytes;
+    }
+
+    public ImageData getLogoImage() {
+        return image(logoImageBytes);
+    }
+
+    public float getLogoX() {
+        return logoX;
+    }
+
+    public float getLogoY() {
+        return logoY;
+    }
+
+    void setLogo(byte[] logoImageBytes, float logoX, float logoY) {
+        this.logoImageBytes = logoImageBytes;
+        this.logoX = logoX;
+        this.logoY = logoY;
+    }
+
+    public ImageData getWatermarkImage() {
+        return image(watermarkImageBytes);
+    }
+
+    void setWatermarkImage(byte[] watermarkImageBytes) {
+        this.watermarkImageBytes = watermarkImageBytes;
+    }
+
+    public ImageData getSignatureImage(String signatoryName) {
+        return image(signatureImageBytes.get(signatoryName));
+    }
+
+    void putSignatureImage(String signatoryName, byte[] imageBytes) {
+        signatureImageBytes.put(signatoryName, imageBytes);
+    }
+
+    public float getQrX() {
+        return qrX;
+    }
+
+    public float getQrY() {
+        return qrY;
+    }
+
+    void setQrPosition(float qrX, float qrY) {
+        this.qrX = qrX;
+        this.qrY = qrY;
+    }
+
+    private static ImageData image(byte[] bytes) {
+        return bytes != null ? ImageDataFactory.create(bytes) : null;
+    }
+
+    private static Color copy(Color color) {
+        return color != null ? Color.makeColor(color.getColorSpace(), color.getColorValue().clone()) : null;
+    }
+}
@@ -0,0 +1,103 @@
+package com.capstone.TimEd.service;
+
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Shared in-memory map of department ID to department name.
+ * A snapshot listener on the departments collection keeps it current, so lookups normally cost no reads.
+ */
+@Service
+public class DepartmentCache {
+
+    private static final String COLLECTION_NAME = "departments";
+
+    private final Firestore firestore;
+
+    // Optional.empty() marks a department document that exists but has no name
+    private final Map<String, Optional<String>> namesById = new ConcurrentHashMap<>();
+    private volatile boolean listening = false;
+    private ListenerRegistration registration;
+
+    public DepartmentCache(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @PostConstruct
+    public void start() {
+        registration = firestore.collection(COLLECTION_NAME).addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                // Stop trusting the cache; lookups fall back to direct reads
+                System.err.println("[DepartmentCache] Department listener failed: " + error.getMessage());
+                listening = false;
+                namesById.clear();
+                return;
+            }
+            if (snapshot == null) {
+                return;
+            }
+
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                QueryDocumentSnapshot doc = change.getDocument();
+                if (change.getType() == DocumentChange.Type.REMOVED) {
+                    namesById.remove(doc.getId());
+                } else {
+                    namesById.put(doc.getId(), Optional.ofNullable(doc.getString("name")));
+                }
+            }
+            listening = true;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (registration != null) {
+            registration.remove();
+        }
+    }
+
+    /**
+     * Resolve department names for the given IDs. Unknown departments are left out of the result;
+     * departments without a name map to null.
+     */
+    public Map<String, String> getNames(Collection<String> departmentIds) throws ExecutionException, InterruptedException {
+        Map<String, String> names = new HashMap<>();
+        List<DocumentReference> misses = new ArrayList<>();
+
+        for (String departmentId : new HashSet<>(departmentIds)) {
+            if (departmentId == null || departmentId.isEmpty()) {
+                continue;
+            }
+            Optional<String> cached = namesById.get(departmentId);
+            if (cached != null) {
+                names.put(departmentId, cached.orElse(null));
+            } else if (!listening) {
+                misses.add(firestore.collection(COLLECTION_NAME).document(departmentId));
+            }
+        }
+
+        // Only reached before the first snapshot arrives or after the listener failed
+        if (!misses.isEmpty()) {
+            for (DocumentSnapshot doc : firestore.getAll(misses.toArray(new DocumentReference[0])).get()) {
+                if (doc.exists()) {
+                    names.put(doc.getId(), doc.getString("name"));
+                }
+            }
+        }
+
+        return names;
+    }
+
+    public String getName(String departmentId) throws ExecutionException, InterruptedException {
+        if (departmentId == null) {
+            return null;
+        }
+        return getNames(Collections.singleton(departmentId)).get(departmentId);
+    }
+}
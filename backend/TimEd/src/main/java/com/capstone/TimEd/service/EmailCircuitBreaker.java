@@ -0,0 +1,84 @@
+package com.capstone.TimEd.service;
+
+/**
+ * Circuit breaker for one email provider. After failureThreshold consecutive failures it opens and
+ * rejects calls for openMillis, then lets a single probe call through: success closes it again,
+ * failure reopens it.
+ */
+public class EmailCircuitBreaker {
+
+    public enum State { CLOSED, HALF_OPEN, OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    public EmailCircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Returns false if the call must not go to the provider right now
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+        }
+        return true;
+    }
+
+    /**
+     * Give back a permission from tryAcquire() that was never used for a call
+     */
+    public synchronized void release() {
+        probeInFlight = false;
+    }
+
+    public synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            System.out.println("[EmailCircuitBreaker] " + name + " circuit closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            System.err.println("[EmailCircuitBreaker] " + name + " circuit opened after " + consecutiveFailures
+                    + " consecutive failures");
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * How long until an open circuit lets a probe through, or 0 if it isn't open
+     */
+    public synchronized long remainingOpenMillis() {
+        return state == State.OPEN ? Math.max(0, openedAt + openMillis - System.currentTimeMillis()) : 0;
+    }
+}
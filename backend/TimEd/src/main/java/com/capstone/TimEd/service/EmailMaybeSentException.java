@@ -0,0 +1,14 @@
+package com.capstone.TimEd.service;
+
+import java.io.IOException;
+
+/**
+ * Brevo took the request but the response never arrived (a read timeout or dropped connection). The email may
+ * already be on its way, so sending it again could deliver it twice.
+ */
+public class EmailMaybeSentException extends IOException {
+
+    public EmailMaybeSentException(String provider, IOException cause) {
+        super(provider + " may have sent the email: " + cause.getMessage(), cause);
+    }
+}
@@ -0,0 +1,556 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transactional email outbox. Callers only record the email; a dispatcher drains the outbox in the background,
+ * combining emails without attachments into multi-version Brevo requests. Requests run on at most
+ * {@code concurrency} threads and are spaced to {@code requests-per-second}; a 429 from Brevo pauses
+ * dispatch until its rate limit window resets. ResilientEmailSender falls back to SMTP when Brevo is down.
+ * Priority emails (OTPs) are claimed first and one sender is always kept free for them, so they never wait
+ * behind a bulk send. Finished emails are deleted after {@code retention-ms}.
+ */
+@Service
+public class EmailOutboxService {
+
+    private static final long BASE_RETRY_DELAY_MS = 5_000;
+    private static final long MAX_RETRY_DELAY_MS = 10 * 60 * 1000;
+    private static final long DEFAULT_RATE_LIMIT_PAUSE_MS = 1_000;
+    private static final long PURGE_INTERVAL_MS = 10 * 60 * 1000;
+    private static final int PURGE_BATCH_SIZE = 200;
+
+    static final String ATTACHMENT_ROOT = "email-attachments/";
+
+    private final EmailOutboxStore outboxStore;
+    private final BlobStore blobStore;
+    private final ResilientEmailSender emailSender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.email-outbox.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.email-outbox.concurrency:4}")
+    private int concurrency;
+
+    @Value("${app.email-outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.email-outbox.requests-per-second:10}")
+    private double requestsPerSecond;
+
+    @Value("${app.email-outbox.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${app.email-outbox.lease-ms:120000}")
+    private long leaseMs;
+
+    @Value("${app.email-outbox.max-attempts:5}")
+    private int maxAttempts;
+
+    // Sent and failed emails, OTP codes included, are deleted once they are this old
+    @Value("${app.email-outbox.retention-ms:86400000}")
+    private long retentionMs;
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService senders;
+    private Semaphore freeSenders;
+    private int reservedSenders;
+
+    // Set while a poll requested by enqueue is waiting to run, so a burst of enqueues adds one poll
+    private final AtomicBoolean pollQueued = new AtomicBoolean();
+
+    // Callers waiting for an email to finish (see enqueueAndWait), completed with its final status
+    private final Map<String, CompletableFuture<String>> deliveries = new ConcurrentHashMap<>();
+
+    // Spacing between Brevo requests, shared by every sender thread
+    private final Object rateLock = new Object();
+    private long nextRequestAt = System.nanoTime();
+    private volatile long pausedUntil; // epoch millis
+
+    // Cached so metric scrapes never hit Firestore
+    private final AtomicLong queueDepth = new AtomicLong();
+    private final AtomicLong queueLagMs = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private Counter sentCounter;
+    private Counter failedCounter;
+    private Counter rateLimitedCounter;
+    private Timer requestTimer;
+
+    public EmailOutboxService(EmailOutboxStore outboxStore, BlobStore blobStore, ResilientEmailSender emailSender,
+                              MeterRegistry meterRegistry) {
+        this.outboxStore = outboxStore;
+        this.blobStore = blobStore;
+        this.emailSender = emailSender;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("email.outbox.depth", queueDepth, AtomicLong::get)
+                .description("Outbox emails waiting or being sent")
+                .register(meterRegistry);
+        Gauge.builder("email.outbox.lag", queueLagMs, value -> value.get() / 1000.0)
+                .description("Age of the oldest unsent outbox email")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("email.outbox.in_flight", inFlight, AtomicInteger::get)
+                .register(meterRegistry);
+        sentCounter = Counter.builder("email.outbox.emails").tag("result", "sent").register(meterRegistry);
+        failedCounter = Counter.builder("email.outbox.emails").tag("result", "failed").register(meterRegistry);
+        rateLimitedCounter = Counter.builder("email.outbox.rate_limited")
+                .description("Brevo requests rejected with 429")
+                .register(meterRegistry);
+        requestTimer = Timer.builder("email.outbox.request")
+                .description("Brevo send requests")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            System.out.println("[EmailOutboxService] Email dispatch disabled");
+            return;
+        }
+
+        int poolSize = Math.max(1, concurrency);
+        freeSenders = new Semaphore(poolSize);
+        reservedSenders = poolSize > 1 ? 1 : 0;
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "email-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-outbox-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        scheduler.scheduleWithFixedDelay(this::poll, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::refreshQueueMetrics, 0, 15, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::purgeFinished, PURGE_INTERVAL_MS, PURGE_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        System.out.println("[EmailOutboxService] Started " + poolSize + " email senders");
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (senders != null) {
+            // Unsent emails keep their lease and are picked up again after a restart
+            senders.shutdown();
+            try {
+                senders.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Record an email for delivery and return its outbox ID.
+     * Throws only if the email could not be recorded; delivery failures are retried by the dispatcher.
+     */
+    public String enqueue(OutboxEmail email, byte[] attachment) throws Exception {
+        if (email.getId() == null) {
+            email.setId(UUID.randomUUID().toString());
+        }
+        if (attachment != null && attachment.length > 0) {
+            String path = ATTACHMENT_ROOT + email.getId();
+            String contentType = email.getAttachmentName() != null && email.getAttachmentName().endsWith(".pdf")
+                    ? "application/pdf"
+                    : "application/octet-stream";
+            blobStore.putIfAbsent(path, attachment, contentType);
+            email.setAttachmentPath(path);
+        }
+
+        long now = System.currentTimeMillis();
+        email.setStatus(OutboxEmail.STATUS_PENDING);
+        email.setEnqueuedAt(now);
+        email.setAvailableAt(now);
+
+        if (outboxStore.enqueue(email)) {
+            queueDepth.incrementAndGet();
+            // Send it now instead of waiting for the next tick; one queued poll covers every email enqueued
+            // before it runs
+            if (scheduler != null && pollQueued.compareAndSet(false, true)) {
+                scheduler.execute(() -> {
+                    pollQueued.set(false);
+                    poll();
+                });
+            }
+        } else {
+            System.out.println("[EmailOutboxService] Email already queued: " + email.getId());
+        }
+        return email.getId();
+    }
+
+    /**
+     * Enqueue an email and wait up to {@code timeoutMs} for it to be sent or to fail.
+     * Returns the email's status at that point: DONE, FAILED, or PENDING/PROCESSING if it is still on its way.
+     */
+    public String enqueueAndWait(OutboxEmail email, byte[] attachment, long timeoutMs) throws Exception {
+        if (email.getId() == null) {
+            email.setId(UUID.randomUUID().toString());
+        }
+        CompletableFuture<String> delivery = new CompletableFuture<>();
+        deliveries.put(email.getId(), delivery);
+        try {
+            enqueue(email, attachment);
+            try {
+                return delivery.get(timeoutMs, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Another instance may have sent it
+                OutboxEmail stored = outboxStore.get(email.getId());
+                return stored != null ? stored.getStatus() : OutboxEmail.STATUS_PENDING;
+            }
+        } finally {
+            deliveries.remove(email.getId());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("depth", queueDepth.get());
+        stats.put("lagSeconds", queueLagMs.get() / 1000.0);
+        stats.put("inFlight", inFlight.get());
+        stats.put("concurrency", Math.max(1, concurrency));
+        stats.put("sent", (long) sentCounter.count());
+        stats.put("failed", (long) failedCounter.count());
+        stats.put("rateLimited", (long) rateLimitedCounter.count());
+        stats.put("pausedUntil", pausedUntil);
+        stats.put("providers", emailSender.getStats());
+        return stats;
+    }
+
+    public OutboxEmail getEmail(String emailId) throws Exception {
+        return outboxStore.get(emailId);
+    }
+
+    void poll() {
+        try {
+            if (System.currentTimeMillis() < pausedUntil) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            claimAndSubmit(OutboxEmail.PRIORITY_HIGH, 0, now);
+            // Normal emails leave a sender free, so a priority email enqueued now never waits for a bulk send
+            claimAndSubmit(OutboxEmail.PRIORITY_NORMAL, reservedSenders, now);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Error polling the email outbox: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Claim what the free senders (less {@code reserve}) can send and hand it to them. Each email needs at most
+     * one request, so only a claim that is all batchable emails is topped up to fill whole batches.
+     */
+    private void claimAndSubmit(int priority, int reserve, long now)
+            throws ExecutionException, InterruptedException {
+        int free = freeSenders.availablePermits() - reserve;
+        if (free <= 0) {
+            return;
+        }
+        List<OutboxEmail> claimed = new ArrayList<>(outboxStore.claim(free, priority, now, leaseMs));
+        if (claimed.size() == free && batchSize > 1 && claimed.stream().allMatch(e -> e.batchKey() != null)) {
+            claimed.addAll(outboxStore.claim(free * (batchSize - 1), priority, now, leaseMs));
+        }
+        submit(claimed, reserve);
+    }
+
+    /**
+     * Start one sender per batch without blocking the poller. Batches that find no free sender go back to the
+     * store straight away instead of sitting on a lease that could expire while they wait.
+     */
+    private void submit(List<OutboxEmail> emails, int reserve) {
+        for (List<OutboxEmail> batch : batches(emails)) {
+            if (freeSenders.availablePermits() <= reserve || !freeSenders.tryAcquire()) {
+                long now = System.currentTimeMillis();
+                for (OutboxEmail email : batch) {
+                    postpone(email, now);
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            senders.execute(() -> {
+                try {
+                    dispatch(batch);
+                } finally {
+                    inFlight.decrementAndGet();
+                    freeSenders.release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Group emails that can share a request, keeping claim order. Emails with attachments go alone.
+     */
+    List<List<OutboxEmail>> batches(List<OutboxEmail> emails) {
+        List<List<OutboxEmail>> batches = new ArrayList<>();
+        Map<String, List<OutboxEmail>> open = new LinkedHashMap<>();
+        for (OutboxEmail email : emails) {
+            String key = email.batchKey();
+            if (key == null) {
+                batches.add(List.of(email));
+                continue;
+            }
+            List<OutboxEmail> batch = open.computeIfAbsent(key, k -> new ArrayList<>());
+            batch.add(email);
+            if (batch.size() >= Math.max(1, batchSize)) {
+                batches.add(batch);
+                open.remove(key);
+            }
+        }
+        batches.addAll(open.values());
+        return batches;
+    }
+
+    void dispatch(List<OutboxEmail> claimed) {
+        List<OutboxEmail> batch = new ArrayList<>();
+        long claimedAt = System.currentTimeMillis();
+        for (OutboxEmail email : claimed) {
+            if (email.getExpiresAt() > 0 && email.getExpiresAt() <= claimedAt) {
+                fail(email, "Expired before it could be sent");
+            } else {
+                batch.add(email);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            byte[] attachment = null;
+            OutboxEmail first = batch.get(0);
+            if (first.getAttachmentPath() != null) {
+                attachment = blobStore.get(first.getAttachmentPath());
+                if (attachment == null) {
+                    fail(first, "Attachment " + first.getAttachmentPath() + " is missing");
+                    return;
+                }
+            }
+
+            awaitRequestSlot();
+            String provider = ResilientEmailSender.BREVO;
+            long start = System.nanoTime();
+            try {
+                if (attachment != null || batch.size() == 1) {
+                    provider = emailSender.send(first, attachment);
+                } else {
+                    emailSender.sendBatch(batch);
+                }
+            } finally {
+                requestTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            long now = System.currentTimeMillis();
+            for (OutboxEmail email : batch) {
+                complete(email, now);
+            }
+            System.out.println("[EmailOutboxService] Sent " + batch.size() + " email(s) in one request via "
+                    + provider);
+        } catch (BrevoApiException e) {
+            if (e.isRateLimited()) {
+                rateLimitedCounter.increment();
+                long resumeAt = System.currentTimeMillis()
+                        + Math.max(e.getRetryAfterMillis(), DEFAULT_RATE_LIMIT_PAUSE_MS);
+                pausedUntil = Math.max(pausedUntil, resumeAt);
+                System.err.println("[EmailOutboxService] Rate limited by Brevo, pausing until " + resumeAt);
+                for (OutboxEmail email : batch) {
+                    postpone(email, resumeAt);
+                }
+            } else if (batch.size() > 1) {
+                // One bad address rejects the whole request, and a failed batch can't fall back to SMTP;
+                // send the emails separately so only the bad one fails and the rest can use SMTP
+                System.err.println("[EmailOutboxService] Batch of " + batch.size() + " rejected, sending separately: "
+                        + e.getMessage());
+                sendSeparately(batch);
+            } else if (e.isPermanent()) {
+                fail(batch.get(0), e.getMessage());
+            } else {
+                retryOrFail(batch, e);
+            }
+        } catch (ProviderUnavailableException e) {
+            if (batch.size() > 1) {
+                sendSeparately(batch);
+                return;
+            }
+            // Nothing was sent, so wait for a provider to come back without using up an attempt
+            long availableAt = System.currentTimeMillis() + Math.max(e.getRetryAfterMillis(), pollIntervalMs);
+            System.err.println("[EmailOutboxService] " + e.getMessage() + ", postponing email " + batch.get(0).getId());
+            postpone(batch.get(0), availableAt);
+        } catch (EmailMaybeSentException e) {
+            // Sending again could deliver a second copy, so leave these for someone to check and resend by hand
+            for (OutboxEmail email : batch) {
+                fail(email, "Not retried: " + e.getMessage());
+            }
+        } catch (InterruptedException e) {
+            // Leave the lease to expire so the emails are sent again after a restart
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            retryOrFail(batch, e);
+        }
+    }
+
+    private void sendSeparately(List<OutboxEmail> batch) {
+        for (OutboxEmail email : batch) {
+            dispatch(List.of(email));
+        }
+    }
+
+    /**
+     * Block until this thread may send the next request: requests are spaced evenly at the configured rate
+     * and nothing is sent while Brevo has asked us to back off.
+     */
+    private void awaitRequestSlot() throws InterruptedException {
+        long waitNanos = 0;
+        if (requestsPerSecond > 0) {
+            long interval = (long) (1_000_000_000L / requestsPerSecond);
+            synchronized (rateLock) {
+                long now = System.nanoTime();
+                long slot = Math.max(now, nextRequestAt);
+                nextRequestAt = slot + interval;
+                waitNanos = slot - now;
+            }
+        }
+        long pausedMillis = pausedUntil - System.currentTimeMillis();
+        if (pausedMillis > 0) {
+            waitNanos = Math.max(waitNanos, TimeUnit.MILLISECONDS.toNanos(pausedMillis));
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private void retryOrFail(List<OutboxEmail> batch, Exception error) {
+        System.err.println("[EmailOutboxService] Sending " + batch.size() + " email(s) failed: " + error.getMessage());
+        for (OutboxEmail email : batch) {
+            if (email.getAttempts() >= maxAttempts) {
+                fail(email, error.getMessage());
+                continue;
+            }
+            long delay = Backoff.jittered(BASE_RETRY_DELAY_MS, MAX_RETRY_DELAY_MS, email.getAttempts());
+            try {
+                outboxStore.retry(email.getId(), System.currentTimeMillis() + delay, error.getMessage());
+            } catch (Exception storeError) {
+                // The lease will expire and another poll will pick the email up again
+                System.err.println("[EmailOutboxService] Could not record failure for email " + email.getId() + ": "
+                        + storeError.getMessage());
+            }
+        }
+    }
+
+    private void complete(OutboxEmail email, long now) {
+        sentCounter.increment();
+        try {
+            outboxStore.complete(email.getId(), now);
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Could not mark email " + email.getId() + " as sent: "
+                    + e.getMessage());
+        }
+        deleteAttachment(email);
+        notifyDelivery(email, OutboxEmail.STATUS_DONE);
+    }
+
+    private void fail(OutboxEmail email, String error) {
+        failedCounter.increment();
+        System.err.println("[EmailOutboxService] Giving up on email " + email.getId() + " to " + email.getToEmail()
+                + ": " + error);
+        try {
+            outboxStore.fail(email.getId(), System.currentTimeMillis(), error);
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Could not mark email " + email.getId() + " as failed: "
+                    + e.getMessage());
+        }
+        deleteAttachment(email);
+        notifyDelivery(email, OutboxEmail.STATUS_FAILED);
+    }
+
+    private void notifyDelivery(OutboxEmail email, String status) {
+        CompletableFuture<String> delivery = deliveries.get(email.getId());
+        if (delivery != null) {
+            delivery.complete(status);
+        }
+    }
+
+    private void postpone(OutboxEmail email, long availableAt) {
+        try {
+            outboxStore.postpone(email.getId(), availableAt);
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Could not postpone email " + email.getId() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private void deleteAttachment(OutboxEmail email) {
+        if (email.getAttachmentPath() == null) {
+            return;
+        }
+        try {
+            blobStore.delete(email.getAttachmentPath());
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Could not delete attachment " + email.getAttachmentPath() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    void purgeFinished() {
+        try {
+            long cutoff = System.currentTimeMillis() - retentionMs;
+            int purged = 0;
+            int deleted;
+            do {
+                deleted = outboxStore.deleteFinishedBefore(cutoff, PURGE_BATCH_SIZE);
+                purged += deleted;
+            } while (deleted == PURGE_BATCH_SIZE);
+            if (purged > 0) {
+                System.out.println("[EmailOutboxService] Purged " + purged + " finished emails");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Error purging finished emails: " + e.getMessage());
+        }
+    }
+
+    private void refreshQueueMetrics() {
+        try {
+            queueDepth.set(outboxStore.countActive());
+            Long oldest = outboxStore.oldestActiveEnqueuedAt();
+            queueLagMs.set(oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("[EmailOutboxService] Error sampling outbox metrics: " + e.getMessage());
+        }
+    }
+}
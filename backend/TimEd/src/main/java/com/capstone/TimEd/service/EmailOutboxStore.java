@@ -0,0 +1,55 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Durable storage for outbox emails, claimed by the dispatcher the same way certificate jobs are.
+ */
+public interface EmailOutboxStore {
+
+    /**
+     * Store a new PENDING email. Returns false if an email with the same ID already exists.
+     */
+    boolean enqueue(OutboxEmail email) throws ExecutionException, InterruptedException;
+
+    /**
+     * Claim up to {@code limit} emails of the given priority that are ready to send (PENDING, or PROCESSING with
+     * an expired lease) and mark them PROCESSING until {@code now + leaseMillis}.
+     */
+    List<OutboxEmail> claim(int limit, int priority, long now, long leaseMillis)
+            throws ExecutionException, InterruptedException;
+
+    void complete(String emailId, long now) throws ExecutionException, InterruptedException;
+
+    /**
+     * Put an email back to PENDING so it is retried at {@code availableAt}.
+     */
+    void retry(String emailId, long availableAt, String error) throws ExecutionException, InterruptedException;
+
+    /**
+     * Put an email back to PENDING without counting the attempt, e.g. when the provider rate-limited the request.
+     */
+    void postpone(String emailId, long availableAt) throws ExecutionException, InterruptedException;
+
+    void fail(String emailId, long now, String error) throws ExecutionException, InterruptedException;
+
+    OutboxEmail get(String emailId) throws ExecutionException, InterruptedException;
+
+    /**
+     * Delete up to {@code limit} DONE or FAILED emails completed before {@code cutoff}. Returns the number deleted.
+     */
+    int deleteFinishedBefore(long cutoff, int limit) throws ExecutionException, InterruptedException;
+
+    /**
+     * Number of emails that are PENDING or PROCESSING.
+     */
+    long countActive() throws ExecutionException, InterruptedException;
+
+    /**
+     * Enqueue time of the oldest PENDING or PROCESSING email, or null when the outbox is empty.
+     */
+    Long oldestActiveEnqueuedAt() throws ExecutionException, InterruptedException;
+}
@@ -0,0 +1,263 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Short-lived cache of event documents for the time-in and certificate paths.
+ * A cached event gets a document listener, so edits show up without waiting for the TTL;
+ * events nobody has asked about for a TTL are dropped along with their listener.
+ * Ids that don't exist are never cached, and at most max-entries events are held at once.
+ */
+@Service
+public class EventMetadataCache {
+
+    private final Firestore firestore;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${app.event-cache.ttl-ms:300000}")
+    private long ttlMs;
+
+    @Value("${app.event-cache.max-entries:500}")
+    private int maxEntries;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "event-cache-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public EventMetadataCache(Firestore firestore, MeterRegistry meterRegistry) {
+        this.firestore = firestore;
+        this.hits = Counter.builder("event.cache.requests").tag("result", "hit")
+                .description("Event metadata lookups served from the cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("event.cache.requests").tag("result", "miss")
+                .description("Event metadata lookups that read Firestore")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper.scheduleWithFixedDelay(this::evictIdle, 60, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+        entries.values().forEach(Entry::removeListener);
+        entries.clear();
+    }
+
+    public EventMetadata get(String eventId) throws ExecutionException, InterruptedException {
+        return getAsync(eventId).get();
+    }
+
+    /**
+     * Completes immediately on a hit, so callers can issue it alongside their other reads.
+     */
+    public ApiFuture<EventMetadata> getAsync(String eventId) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(eventId);
+        if (entry != null && entry.isFresh(now, ttlMs)) {
+            entry.lastAccess = now;
+            hits.increment();
+            return ApiFutures.immediateFuture(entry.metadata);
+        }
+
+        misses.increment();
+        return ApiFutures.transform(firestore.collection("events").document(eventId).get(), snapshot -> {
+            EventMetadata metadata = new EventMetadata(eventId, snapshot);
+            store(eventId, metadata);
+            return metadata;
+        }, MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Drop an event immediately, e.g. after it is deleted.
+     */
+    public void invalidate(String eventId) {
+        entries.computeIfPresent(eventId, (id, entry) -> {
+            entry.removeListener();
+            return null;
+        });
+    }
+
+    private void store(String eventId, EventMetadata metadata) {
+        if (!metadata.exists()) {
+            // A mistyped or stale event id shouldn't hold a cache slot and a listener
+            invalidate(eventId);
+            return;
+        }
+        if (!entries.containsKey(eventId) && entries.size() >= maxEntries) {
+            evictLeastRecent();
+        }
+
+        long now = System.currentTimeMillis();
+        // compute() keeps creating the entry and attaching its listener atomic with eviction
+        entries.compute(eventId, (id, entry) -> {
+            if (entry == null) {
+                Entry created = new Entry();
+                created.registration = listen(eventId, created);
+                entry = created;
+            }
+            entry.metadata = metadata;
+            entry.loadedAt = now;
+            entry.lastAccess = now;
+            return entry;
+        });
+    }
+
+    private ListenerRegistration listen(String eventId, Entry entry) {
+        return firestore.collection("events").document(eventId).addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                // Fall back to TTL expiry until the entry is reloaded
+                System.err.println("[EventMetadataCache] Listener failed for event " + eventId + ": "
+                        + error.getMessage());
+                entry.listening = false;
+                return;
+            }
+            if (snapshot == null) {
+                return;
+            }
+            if (!snapshot.exists()) {
+                // Deleted: drop the entry so the next lookup reads Firestore
+                entries.computeIfPresent(eventId, (id, current) -> {
+                    if (current != entry) {
+                        return current;
+                    }
+                    current.removeListener();
+                    return null;
+                });
+                return;
+            }
+            entry.metadata = new EventMetadata(eventId, snapshot);
+            entry.loadedAt = System.currentTimeMillis();
+            entry.listening = true;
+        });
+    }
+
+    private void evictLeastRecent() {
+        String oldest = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+            if (candidate.getValue().lastAccess < oldestAccess) {
+                oldest = candidate.getKey();
+                oldestAccess = candidate.getValue().lastAccess;
+            }
+        }
+        if (oldest != null) {
+            invalidate(oldest);
+        }
+    }
+
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (String eventId : entries.keySet()) {
+            entries.computeIfPresent(eventId, (id, entry) -> {
+                if (now - entry.lastAccess <= ttlMs) {
+                    return entry;
+                }
+                entry.removeListener();
+                return null;
+            });
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private volatile EventMetadata metadata;
+        private volatile long loadedAt;
+        private volatile long lastAccess;
+        private volatile boolean listening;
+        private ListenerRegistration registration;
+
+        boolean isFresh(long now, long ttlMs) {
+            return metadata != null && (listening || now - loadedAt < ttlMs);
+        }
+
+        synchronized void removeListener() {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+        }
+    }
+
+    /**
+     * Read-only view of an event document
+     */
+    public static class EventMetadata {
+        private final String eventId;
+        private final DocumentSnapshot snapshot;
+
+        EventMetadata(String eventId, DocumentSnapshot snapshot) {
+            this.eventId = eventId;
+            this.snapshot = snapshot;
+        }
+
+        public String getEventId() {
+            return eventId;
+        }
+
+        public boolean exists() {
+            return snapshot.exists();
+        }
+
+        public String getEventName() {
+            return exists() ? snapshot.getString("eventName") : null;
+        }
+
+        /**
+         * Event start, whether "date" is stored as a Timestamp or a legacy ISO string
+         */
+        public Date getDate() {
+            if (!exists()) {
+                return null;
+            }
+            Object date = snapshot.get("date");
+            if (date instanceof Timestamp) {
+                return ((Timestamp) date).toDate();
+            }
+            if (date instanceof Date) {
+                return (Date) date;
+            }
+            if (date instanceof String && !((String) date).isEmpty()) {
+                try {
+                    return Date.from(java.time.Instant.parse((String) date));
+                } catch (java.time.format.DateTimeParseException e) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        public DocumentSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+}
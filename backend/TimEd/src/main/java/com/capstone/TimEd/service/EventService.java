@@ -27,11 +27,14 @@ public class EventService {
     private final CollectionReference departmentsCollection = firestore.collection("departments"); // Correct reference to 'departments' collection
     
     private final CertificateService certificateService;
+    private final CertificatePdfStore certificatePdfStore;
     
     @Autowired
-    public EventService(FirebaseApp firebaseApp, CertificateService certificateService) {
+    public EventService(FirebaseApp firebaseApp, CertificateService certificateService,
+                        CertificatePdfStore certificatePdfStore) {
         this.firebaseApp = firebaseApp;
         this.certificateService = certificateService;
+        this.certificatePdfStore = certificatePdfStore;
         // Initialize FirebaseApp before using Firestore
     }
 
@@ -184,6 +187,9 @@ public class EventService {
             batch.commit().get();
             
             System.out.println("[DEBUG] Event and all associated data deleted successfully");
+
+            // Generated certificate PDFs are only useful while the event exists
+            certificatePdfStore.evictEvent(eventId);
             
             if (certificatesDeleted > 0) {
                 return "Event, " + attendees.size() + " attendee records, and " + certificatesDeleted + " associated certificate(s) deleted successfully";
@@ -1,10 +1,11 @@
 package com.capstone.TimEd.service;
 
+import com.capstone.TimEd.service.CertificateService.GeneratedCertificate;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.CollectionReference;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
-import com.google.firebase.cloud.FirestoreClient;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
@@ -14,74 +15,171 @@ import java.util.concurrent.ExecutionException;
 @Service
 public class FirebaseEmailService {
 
-    private final Firestore firestore = FirestoreClient.getFirestore();
-    private final CollectionReference mailCollection = firestore.collection("mail");
+    private final CollectionReference mailCollection;
+    private final EventMetadataCache eventMetadataCache;
+    private final CertificatePdfStore certificatePdfStore;
+
+    // Long enough for the Trigger Email extension to fetch the attachment, including its retries
+    @Value("${app.mail.attachment-url-ttl-ms:604800000}")
+    private long attachmentUrlTtlMs;
+
+    @Value("${app.mail.recent-sends-size:10000}")
+    private int recentSendsSize;
+
+    // duplicateCheckIds this instance has written or seen rejected, oldest first
+    private final Map<String, Boolean> recentSends = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > recentSendsSize;
+        }
+    };
+
+    private static final int MAIL_WRITE_ATTEMPTS = 3;
+    private static final long MAIL_WRITE_RETRY_BASE_MS = 200;
+    private static final long MAIL_WRITE_RETRY_MAX_MS = 2_000;
+
+    public FirebaseEmailService(Firestore firestore, EventMetadataCache eventMetadataCache,
+                                CertificatePdfStore certificatePdfStore) {
+        this.mailCollection = firestore.collection("mail");
+        this.eventMetadataCache = eventMetadataCache;
+        this.certificatePdfStore = certificatePdfStore;
+    }
 
     /**
      * Send certificate email using Firebase Extensions Trigger Email
      * This replaces the SMTP-based email service to avoid double-sending issues
      */
     public void sendCertificateEmail(String toEmail, String eventId, byte[] certificatePdf) {
-        try {
-            System.out.println("Preparing to send certificate email via Firebase to " + toEmail);
-
-            // Check if email already sent for this user and event to prevent duplicates
-            String duplicateCheckId = eventId + "_" + extractUserIdFromEmail(toEmail);
-            if (isEmailAlreadySent(duplicateCheckId)) {
-                System.out.println("Certificate email already sent for user " + toEmail + " in event " + eventId + ". Skipping duplicate.");
-                return;
-            }
+        sendCertificateEmail(toEmail, eventId, new GeneratedCertificate(certificatePdf, null));
+    }
 
-            // Get event details for the email
-            String eventName = getEventName(eventId);
-            
-            // Convert PDF to base64 for email attachment
-            String base64Pdf = Base64.getEncoder().encodeToString(certificatePdf);
-            
-            // Create email document for Firebase Extension
-            Map<String, Object> emailData = new HashMap<>();
-            emailData.put("to", Arrays.asList(toEmail));
-            emailData.put("from", "noreply@timed-system.com"); // Use your verified domain
-            
-            // Create message content
-            Map<String, Object> message = new HashMap<>();
-            message.put("subject", "Your Certificate for " + eventName);
-            message.put("html", createEmailHtml(eventName));
-            message.put("text", createEmailText(eventName));
-            
-            // Add PDF attachment
-            List<Map<String, Object>> attachments = new ArrayList<>();
-            Map<String, Object> attachment = new HashMap<>();
-            attachment.put("filename", "Certificate_" + eventName.replaceAll("[^a-zA-Z0-9]", "_") + ".pdf");
-            attachment.put("content", base64Pdf);
-            attachment.put("encoding", "base64");
-            attachment.put("contentType", "application/pdf");
-            attachments.add(attachment);
-            message.put("attachments", attachments);
-            
-            emailData.put("message", message);
-            
-            // Add metadata for tracking and duplicate prevention
-            emailData.put("eventId", eventId);
-            emailData.put("emailType", "certificate");
-            emailData.put("timestamp", Instant.now().toEpochMilli());
-            emailData.put("userId", extractUserIdFromEmail(toEmail));
-            emailData.put("duplicateCheckId", duplicateCheckId); // Add unique identifier
-            
-            // Add to Firestore mail collection - this triggers the Firebase Extension
-            ApiFuture<DocumentReference> future = mailCollection.add(emailData);
-            DocumentReference docRef = future.get();
-            
-            System.out.println("Certificate email queued successfully via Firebase with ID: " + docRef.getId());
-            System.out.println("Email will be processed by Firebase Extensions Trigger Email");
-            
+    /**
+     * Send a generated certificate, linking the stored copy when there is one
+     */
+    public void sendCertificateEmail(String toEmail, String eventId, GeneratedCertificate certificate) {
+        try {
+            queueCertificateEmail(toEmail, eventId, certificate);
         } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             System.err.println("Error queueing certificate email via Firebase: " + e.getMessage());
             e.printStackTrace();
             // Don't throw exception to avoid breaking the attendance flow
         }
     }
 
+    /**
+     * Queue a certificate email, retrying transient Firestore errors with backoff.
+     * Throws if it still could not be queued, so background jobs can try again later.
+     */
+    public void queueCertificateEmail(String toEmail, String eventId, GeneratedCertificate certificate)
+            throws Exception {
+        queueCertificateEmail(toEmail, eventId, certificate, false);
+    }
+
+    /**
+     * Send a certificate again even though one was already sent for this user and event,
+     * e.g. when an admin resends it after the first one bounced.
+     * Writes a new mail document, so the original still blocks later duplicate sends.
+     */
+    public void resendCertificateEmail(String toEmail, String eventId, GeneratedCertificate certificate)
+            throws Exception {
+        queueCertificateEmail(toEmail, eventId, certificate, true);
+    }
+
+    private void queueCertificateEmail(String toEmail, String eventId, GeneratedCertificate certificate,
+                                       boolean resend) throws Exception {
+        System.out.println("Preparing to " + (resend ? "resend" : "send") + " certificate email via Firebase to " + toEmail);
+
+        // Check if email already sent for this user and event to prevent duplicates
+        String duplicateCheckId = eventId + "_" + extractUserIdFromEmail(toEmail);
+        if (!resend && !markRecentSend(duplicateCheckId)) {
+            System.out.println("Certificate email already sent for user " + toEmail + " in event " + eventId + ". Skipping duplicate.");
+            return;
+        }
+
+        // Get event details for the email
+        String eventName = getEventName(eventId);
+        
+        // Create email document for Firebase Extension
+        Map<String, Object> emailData = new HashMap<>();
+        emailData.put("to", Arrays.asList(toEmail));
+        emailData.put("from", "noreply@timed-system.com"); // Use your verified domain
+        
+        // Create message content
+        Map<String, Object> message = new HashMap<>();
+        message.put("subject", "Your Certificate for " + eventName);
+        message.put("html", createEmailHtml(eventName));
+        message.put("text", createEmailText(eventName));
+        
+        // Add PDF attachment
+        List<Map<String, Object>> attachments = new ArrayList<>();
+        Map<String, Object> attachment = new HashMap<>();
+        attachment.put("filename", "Certificate_" + eventName.replaceAll("[^a-zA-Z0-9]", "_") + ".pdf");
+        attachment.put("contentType", "application/pdf");
+        String storeKey = certificate.getStoreKey();
+        String attachmentUrl = storeKey != null
+                ? certificatePdfStore.signedUrl(eventId, storeKey, attachmentUrlTtlMs)
+                : null;
+        if (attachmentUrl != null) {
+            // The extension downloads the stored certificate when it sends, so the mail document stays small
+            attachment.put("path", attachmentUrl);
+            emailData.put("attachmentPath", certificatePdfStore.path(eventId, storeKey));
+        } else {
+            attachment.put("content", Base64.getEncoder().encodeToString(certificate.getPdf()));
+            attachment.put("encoding", "base64");
+        }
+        attachments.add(attachment);
+        message.put("attachments", attachments);
+        
+        emailData.put("message", message);
+        
+        // Add metadata for tracking and duplicate prevention
+        emailData.put("eventId", eventId);
+        emailData.put("emailType", "certificate");
+        emailData.put("timestamp", Instant.now().toEpochMilli());
+        emailData.put("userId", extractUserIdFromEmail(toEmail));
+        emailData.put("duplicateCheckId", duplicateCheckId); // Add unique identifier
+        if (resend) {
+            emailData.put("resend", true);
+        }
+        
+        // Add to Firestore mail collection - this triggers the Firebase Extension.
+        // The duplicateCheckId is the document ID, so create() fails if another send got there first
+        String documentId = resend
+                ? resendDocumentId(duplicateCheckId, (Long) emailData.get("timestamp"))
+                : mailDocumentId(duplicateCheckId);
+        DocumentReference docRef = mailCollection.document(documentId);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    docRef.create(emailData).get();
+                    break;
+                } catch (ExecutionException e) {
+                    // Also covers a retry whose earlier attempt was written but timed out
+                    if (FirestoreErrors.isAlreadyExists(e)) {
+                        System.out.println("Certificate email already sent for user " + toEmail + " in event " + eventId + ". Skipping duplicate.");
+                        return;
+                    }
+                    if (attempt >= MAIL_WRITE_ATTEMPTS) {
+                        throw e;
+                    }
+                    System.err.println("Error queueing certificate email for " + toEmail + " (attempt " + attempt + "), retrying: " + e.getMessage());
+                    Thread.sleep(Backoff.jittered(MAIL_WRITE_RETRY_BASE_MS, MAIL_WRITE_RETRY_MAX_MS, attempt));
+                }
+            }
+        } catch (Exception e) {
+            if (!resend) {
+                forgetRecentSend(duplicateCheckId);
+            }
+            throw e;
+        }
+        
+        System.out.println("Certificate email queued successfully via Firebase with ID: " + docRef.getId());
+        System.out.println("Email will be processed by Firebase Extensions Trigger Email");
+    }
+
     /**
      * Send a simple notification email
      */
@@ -220,11 +318,9 @@ public class FirebaseEmailService {
 
     private String getEventName(String eventId) {
         try {
-            DocumentReference eventDoc = firestore.collection("events").document(eventId);
-            Map<String, Object> eventData = eventDoc.get().get().getData();
-            
-            if (eventData != null && eventData.containsKey("eventName")) {
-                return (String) eventData.get("eventName");
+            String eventName = eventMetadataCache.get(eventId).getEventName();
+            if (eventName != null) {
+                return eventName;
             }
             
             return "Event #" + eventId.substring(0, Math.min(8, eventId.length()));
@@ -241,25 +337,28 @@ public class FirebaseEmailService {
     }
 
     /**
-     * Check if an email with the same duplicateCheckId has already been sent
+     * Record a certificate send in the recent-sends filter.
+     * Returns false if this instance already sent it, so the duplicate costs no Firestore call at all.
      */
-    private boolean isEmailAlreadySent(String duplicateCheckId) {
-        try {
-            // Query for existing emails with the same duplicateCheckId OR same eventId + userId combination
-            var query = mailCollection.whereEqualTo("duplicateCheckId", duplicateCheckId).limit(1);
-            var querySnapshot = query.get().get();
-            
-            boolean exists = !querySnapshot.isEmpty();
-            if (exists) {
-                System.out.println("Found existing email with duplicateCheckId: " + duplicateCheckId);
-                System.out.println("Skipping duplicate email to prevent double-sending");
-            }
-            return exists;
-            
-        } catch (Exception e) {
-            System.err.println("Error checking for duplicate emails: " + e.getMessage());
-            // In case of error, allow the email to be sent (safer approach)
-            return false;
+    private boolean markRecentSend(String duplicateCheckId) {
+        synchronized (recentSends) {
+            return recentSends.putIfAbsent(duplicateCheckId, Boolean.TRUE) == null;
+        }
+    }
+
+    private void forgetRecentSend(String duplicateCheckId) {
+        synchronized (recentSends) {
+            recentSends.remove(duplicateCheckId);
         }
     }
-} 
\ No newline at end of file
+
+    // Document IDs cannot contain '/', which an email's local part may
+    static String mailDocumentId(String duplicateCheckId) {
+        return "certificate_" + duplicateCheckId.replace('/', '_');
+    }
+
+    // A fresh ID per resend, so create() doesn't collide with the original send
+    static String resendDocumentId(String duplicateCheckId, long timestamp) {
+        return mailDocumentId(duplicateCheckId) + "_resend_" + timestamp;
+    }
+}
@@ -0,0 +1,168 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.CertificateJob;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Certificate job queue stored in the "certificateJobs" collection so queued work survives restarts.
+ * Requires composite indexes on (status, availableAt) and (status, enqueuedAt).
+ */
+@Component
+@ConditionalOnProperty(name = "app.certificate-jobs.store", havingValue = "firestore", matchIfMissing = true)
+public class FirestoreCertificateJobStore implements CertificateJobStore {
+
+    private static final String COLLECTION_NAME = "certificateJobs";
+    private static final List<String> ACTIVE_STATUSES = Arrays.asList(
+            CertificateJob.STATUS_PENDING, CertificateJob.STATUS_PROCESSING);
+
+    private final Firestore firestore;
+
+    public FirestoreCertificateJobStore(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    private CollectionReference jobs() {
+        return firestore.collection(COLLECTION_NAME);
+    }
+
+    @Override
+    public boolean enqueue(CertificateJob job) throws ExecutionException, InterruptedException {
+        try {
+            // create() fails with ALREADY_EXISTS instead of overwriting, which makes enqueue idempotent
+            jobs().document(job.getId()).create(job).get();
+            return true;
+        } catch (ExecutionException e) {
+            if (FirestoreErrors.isAlreadyExists(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int enqueueAll(List<CertificateJob> jobsToAdd) throws ExecutionException, InterruptedException {
+        BulkWriter writer = firestore.bulkWriter();
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+        for (CertificateJob job : jobsToAdd) {
+            writes.add(writer.create(jobs().document(job.getId()), job));
+        }
+        writer.close(); // flushes and waits for every write
+
+        int created = 0;
+        for (ApiFuture<WriteResult> write : writes) {
+            try {
+                write.get();
+                created++;
+            } catch (ExecutionException e) {
+                if (!FirestoreErrors.isAlreadyExists(e)) {
+                    throw e;
+                }
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public List<CertificateJob> claim(int limit, long now, long leaseMillis)
+            throws ExecutionException, InterruptedException {
+        List<CertificateJob> claimed = new ArrayList<>();
+        if (limit <= 0) {
+            return claimed;
+        }
+
+        List<QueryDocumentSnapshot> candidates = jobs()
+                .whereIn("status", ACTIVE_STATUSES)
+                .whereLessThanOrEqualTo("availableAt", now)
+                .orderBy("availableAt")
+                .limit(limit)
+                .get()
+                .get()
+                .getDocuments();
+
+        for (QueryDocumentSnapshot candidate : candidates) {
+            DocumentReference jobRef = candidate.getReference();
+
+            // Claim inside a transaction so two instances never pick up the same job
+            CertificateJob job = firestore.runTransaction(transaction -> {
+                DocumentSnapshot snapshot = transaction.get(jobRef).get();
+                CertificateJob current = snapshot.exists() ? snapshot.toObject(CertificateJob.class) : null;
+                if (current == null
+                        || !ACTIVE_STATUSES.contains(current.getStatus())
+                        || current.getAvailableAt() > now) {
+                    return null;
+                }
+
+                current.setStatus(CertificateJob.STATUS_PROCESSING);
+                current.setAttempts(current.getAttempts() + 1);
+                current.setAvailableAt(now + leaseMillis);
+                transaction.set(jobRef, current);
+                return current;
+            }).get();
+
+            if (job != null) {
+                claimed.add(job);
+            }
+        }
+
+        return claimed;
+    }
+
+    @Override
+    public void complete(String jobId, long now) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", CertificateJob.STATUS_DONE);
+        updates.put("completedAt", now);
+        updates.put("lastError", null);
+        jobs().document(jobId).update(updates).get();
+    }
+
+    @Override
+    public void retry(String jobId, long availableAt, String error) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", CertificateJob.STATUS_PENDING);
+        updates.put("availableAt", availableAt);
+        updates.put("lastError", error);
+        jobs().document(jobId).update(updates).get();
+    }
+
+    @Override
+    public void fail(String jobId, long now, String error) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", CertificateJob.STATUS_FAILED);
+        updates.put("completedAt", now);
+        updates.put("lastError", error);
+        jobs().document(jobId).update(updates).get();
+    }
+
+    @Override
+    public CertificateJob get(String jobId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot snapshot = jobs().document(jobId).get().get();
+        return snapshot.exists() ? snapshot.toObject(CertificateJob.class) : null;
+    }
+
+    @Override
+    public long countActive() throws ExecutionException, InterruptedException {
+        return jobs().whereIn("status", ACTIVE_STATUSES).count().get().get().getCount();
+    }
+
+    @Override
+    public Long oldestActiveEnqueuedAt() throws ExecutionException, InterruptedException {
+        List<QueryDocumentSnapshot> oldest = jobs()
+                .whereIn("status", ACTIVE_STATUSES)
+                .orderBy("enqueuedAt")
+                .limit(1)
+                .get()
+                .get()
+                .getDocuments();
+        if (oldest.isEmpty()) {
+            return null;
+        }
+        return oldest.get(0).getLong("enqueuedAt");
+    }
+}
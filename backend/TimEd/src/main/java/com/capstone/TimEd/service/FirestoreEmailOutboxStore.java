@@ -0,0 +1,159 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import com.google.cloud.firestore.*;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Email outbox stored in the "emailOutbox" collection so queued emails survive restarts.
+ * Requires composite indexes on (priority, status, availableAt), (status, enqueuedAt) and (status, completedAt).
+ */
+@Component
+@ConditionalOnProperty(name = "app.email-outbox.store", havingValue = "firestore", matchIfMissing = true)
+public class FirestoreEmailOutboxStore implements EmailOutboxStore {
+
+    private static final String COLLECTION_NAME = "emailOutbox";
+    private static final List<String> ACTIVE_STATUSES = Arrays.asList(
+            OutboxEmail.STATUS_PENDING, OutboxEmail.STATUS_PROCESSING);
+    private static final List<String> FINISHED_STATUSES = Arrays.asList(
+            OutboxEmail.STATUS_DONE, OutboxEmail.STATUS_FAILED);
+
+    private final Firestore firestore;
+
+    public FirestoreEmailOutboxStore(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    private CollectionReference emails() {
+        return firestore.collection(COLLECTION_NAME);
+    }
+
+    @Override
+    public boolean enqueue(OutboxEmail email) throws ExecutionException, InterruptedException {
+        try {
+            emails().document(email.getId()).create(email).get();
+            return true;
+        } catch (ExecutionException e) {
+            if (FirestoreErrors.isAlreadyExists(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<OutboxEmail> claim(int limit, int priority, long now, long leaseMillis)
+            throws ExecutionException, InterruptedException {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        Query ready = emails()
+                .whereEqualTo("priority", priority)
+                .whereIn("status", ACTIVE_STATUSES)
+                .whereLessThanOrEqualTo("availableAt", now)
+                .orderBy("availableAt")
+                .limit(limit);
+
+        // Claim the whole page in one transaction: the query read is part of it, so two instances never
+        // claim the same email, and a page costs one commit instead of one transaction per email
+        return firestore.runTransaction(transaction -> {
+            List<OutboxEmail> claimed = new ArrayList<>();
+            for (QueryDocumentSnapshot snapshot : transaction.get(ready).get().getDocuments()) {
+                OutboxEmail email = snapshot.toObject(OutboxEmail.class);
+                email.setStatus(OutboxEmail.STATUS_PROCESSING);
+                email.setAttempts(email.getAttempts() + 1);
+                email.setAvailableAt(now + leaseMillis);
+                transaction.set(snapshot.getReference(), email);
+                claimed.add(email);
+            }
+            return claimed;
+        }).get();
+    }
+
+    @Override
+    public void complete(String emailId, long now) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", OutboxEmail.STATUS_DONE);
+        updates.put("completedAt", now);
+        updates.put("lastError", null);
+        emails().document(emailId).update(updates).get();
+    }
+
+    @Override
+    public void retry(String emailId, long availableAt, String error) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", OutboxEmail.STATUS_PENDING);
+        updates.put("availableAt", availableAt);
+        updates.put("lastError", error);
+        emails().document(emailId).update(updates).get();
+    }
+
+    @Override
+    public void postpone(String emailId, long availableAt) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", OutboxEmail.STATUS_PENDING);
+        updates.put("availableAt", availableAt);
+        updates.put("attempts", FieldValue.increment(-1));
+        emails().document(emailId).update(updates).get();
+    }
+
+    @Override
+    public void fail(String emailId, long now, String error) throws ExecutionException, InterruptedException {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("status", OutboxEmail.STATUS_FAILED);
+        updates.put("completedAt", now);
+        updates.put("lastError", error);
+        emails().document(emailId).update(updates).get();
+    }
+
+    @Override
+    public OutboxEmail get(String emailId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot snapshot = emails().document(emailId).get().get();
+        return snapshot.exists() ? snapshot.toObject(OutboxEmail.class) : null;
+    }
+
+    @Override
+    public int deleteFinishedBefore(long cutoff, int limit) throws ExecutionException, InterruptedException {
+        List<QueryDocumentSnapshot> finished = emails()
+                .whereIn("status", FINISHED_STATUSES)
+                .whereLessThan("completedAt", cutoff)
+                .limit(limit)
+                .get()
+                .get()
+                .getDocuments();
+        if (finished.isEmpty()) {
+            return 0;
+        }
+        WriteBatch batch = firestore.batch();
+        for (QueryDocumentSnapshot email : finished) {
+            batch.delete(email.getReference());
+        }
+        batch.commit().get();
+        return finished.size();
+    }
+
+    @Override
+    public long countActive() throws ExecutionException, InterruptedException {
+        return emails().whereIn("status", ACTIVE_STATUSES).count().get().get().getCount();
+    }
+
+    @Override
+    public Long oldestActiveEnqueuedAt() throws ExecutionException, InterruptedException {
+        List<QueryDocumentSnapshot> oldest = emails()
+                .whereIn("status", ACTIVE_STATUSES)
+                .orderBy("enqueuedAt")
+                .limit(1)
+                .get()
+                .get()
+                .getDocuments();
+        if (oldest.isEmpty()) {
+            return null;
+        }
+        return oldest.get(0).getLong("enqueuedAt");
+    }
+}
@@ -0,0 +1,28 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+
+/**
+ * Helpers for inspecting errors returned by Firestore futures
+ */
+public final class FirestoreErrors {
+
+    private FirestoreErrors() {}
+
+    /**
+     * True if the failure (or any of its causes) is an ALREADY_EXISTS error,
+     * which is what DocumentReference.create() reports when the document is already there.
+     */
+    public static boolean isAlreadyExists(Throwable error) {
+        Throwable current = error;
+        while (current != null) {
+            if (current instanceof ApiException
+                    && ((ApiException) current).getStatusCode().getCode() == StatusCode.Code.ALREADY_EXISTS) {
+                return true;
+            }
+            current = current.getCause();
+        }
+        return false;
+    }
+}
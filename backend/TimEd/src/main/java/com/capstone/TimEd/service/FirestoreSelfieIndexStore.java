@@ -0,0 +1,50 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.SelfieIndexEntry;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Selfie index stored in the "selfieIndex" collection, one document per {userId}_{eventId}.
+ */
+@Component
+@ConditionalOnProperty(name = "app.selfie-index.store", havingValue = "firestore", matchIfMissing = true)
+public class FirestoreSelfieIndexStore implements SelfieIndexStore {
+
+    private static final String COLLECTION_NAME = "selfieIndex";
+
+    private final Firestore firestore;
+
+    public FirestoreSelfieIndexStore(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public void put(SelfieIndexEntry entry) throws ExecutionException, InterruptedException {
+        DocumentReference entryRef = firestore.collection(COLLECTION_NAME).document(entry.getId());
+
+        // Finalize notifications can arrive out of order; never let an older upload win
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(entryRef).get();
+            Long existingUpdatedAt = snapshot.exists() ? snapshot.getLong("updatedAt") : null;
+            if (existingUpdatedAt == null || existingUpdatedAt <= entry.getUpdatedAt()) {
+                transaction.set(entryRef, entry);
+            }
+            return null;
+        }).get();
+    }
+
+    @Override
+    public SelfieIndexEntry get(String userId, String eventId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot snapshot = firestore.collection(COLLECTION_NAME)
+                .document(SelfieIndexEntry.idFor(userId, eventId))
+                .get()
+                .get();
+        return snapshot.exists() ? snapshot.toObject(SelfieIndexEntry.class) : null;
+    }
+}
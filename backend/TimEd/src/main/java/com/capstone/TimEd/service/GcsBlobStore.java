@@ -0,0 +1,127 @@
+package com.capstone.TimEd.service;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageException;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.cloud.StorageClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BlobStore on the app's Cloud Storage bucket (app.blob-store.type=gcs, the default).
+ */
+@Component
+@ConditionalOnProperty(name = "app.blob-store.type", havingValue = "gcs", matchIfMissing = true)
+public class GcsBlobStore implements BlobStore {
+
+    // Storage rejects larger delete batches
+    private static final int DELETE_BATCH_SIZE = 100;
+
+    // Longest lifetime Storage allows for a V4 signed URL
+    private static final long MAX_SIGNED_URL_TTL_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private final FirebaseApp firebaseApp;
+
+    @Value("${app.blob-store.bucket:" + SelfieService.BUCKET_NAME + "}")
+    private String bucketName;
+
+    public GcsBlobStore(FirebaseApp firebaseApp) {
+        this.firebaseApp = firebaseApp;
+    }
+
+    @Override
+    public byte[] get(String path) throws IOException {
+        try {
+            Blob blob = bucket().get(path);
+            return blob != null ? blob.getContent() : null;
+        } catch (StorageException e) {
+            throw new IOException("Error reading " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String path, byte[] content, String contentType) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(bucketName, path)
+                .setContentType(contentType)
+                .build();
+        try {
+            storage().create(blobInfo, content, Storage.BlobTargetOption.doesNotExist());
+            return true;
+        } catch (StorageException e) {
+            if (e.getCode() == 412) {
+                return false; // precondition failed: the object already exists
+            }
+            throw new IOException("Error writing " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean delete(String path) throws IOException {
+        try {
+            return storage().delete(BlobId.of(bucketName, path));
+        } catch (StorageException e) {
+            throw new IOException("Error deleting " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int deletePrefix(String prefix) throws IOException {
+        try {
+            int deleted = 0;
+            List<BlobId> batch = new ArrayList<>();
+            for (Blob blob : bucket().list(Storage.BlobListOption.prefix(prefix)).iterateAll()) {
+                batch.add(blob.getBlobId());
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    deleted += countDeleted(storage().delete(batch));
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                deleted += countDeleted(storage().delete(batch));
+            }
+            return deleted;
+        } catch (StorageException e) {
+            throw new IOException("Error deleting " + prefix + "*: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String signedUrl(String path, long ttlMillis) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(bucketName, path).build();
+        try {
+            return storage().signUrl(blobInfo, Math.min(ttlMillis, MAX_SIGNED_URL_TTL_MS), TimeUnit.MILLISECONDS,
+                    Storage.SignUrlOption.withV4Signature()).toString();
+        } catch (StorageException | IllegalStateException e) {
+            // IllegalStateException: the credentials in use can't sign (no service account key)
+            throw new IOException("Error signing URL for " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    private int countDeleted(List<Boolean> results) {
+        int count = 0;
+        for (Boolean result : results) {
+            if (Boolean.TRUE.equals(result)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Bucket bucket() {
+        return StorageClient.getInstance(firebaseApp).bucket(bucketName);
+    }
+
+    private Storage storage() {
+        return bucket().getStorage();
+    }
+}
@@ -0,0 +1,123 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.CertificateJob;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for FirestoreCertificateJobStore, used in tests and local runs
+ * (app.certificate-jobs.store=memory). Jobs do not survive a restart.
+ */
+@Component
+@ConditionalOnProperty(name = "app.certificate-jobs.store", havingValue = "memory")
+public class InMemoryCertificateJobStore implements CertificateJobStore {
+
+    private final Map<String, CertificateJob> jobs = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean enqueue(CertificateJob job) {
+        return jobs.putIfAbsent(job.getId(), copy(job)) == null;
+    }
+
+    @Override
+    public int enqueueAll(List<CertificateJob> jobsToAdd) {
+        int created = 0;
+        for (CertificateJob job : jobsToAdd) {
+            if (enqueue(job)) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    @Override
+    public synchronized List<CertificateJob> claim(int limit, long now, long leaseMillis) {
+        List<CertificateJob> ready = jobs.values().stream()
+                .filter(job -> isActive(job) && job.getAvailableAt() <= now)
+                .sorted(Comparator.comparingLong(CertificateJob::getAvailableAt))
+                .limit(Math.max(limit, 0))
+                .collect(Collectors.toList());
+
+        List<CertificateJob> claimed = new ArrayList<>();
+        for (CertificateJob job : ready) {
+            job.setStatus(CertificateJob.STATUS_PROCESSING);
+            job.setAttempts(job.getAttempts() + 1);
+            job.setAvailableAt(now + leaseMillis);
+            claimed.add(copy(job));
+        }
+        return claimed;
+    }
+
+    @Override
+    public synchronized void complete(String jobId, long now) {
+        CertificateJob job = jobs.get(jobId);
+        if (job != null) {
+            job.setStatus(CertificateJob.STATUS_DONE);
+            job.setCompletedAt(now);
+            job.setLastError(null);
+        }
+    }
+
+    @Override
+    public synchronized void retry(String jobId, long availableAt, String error) {
+        CertificateJob job = jobs.get(jobId);
+        if (job != null) {
+            job.setStatus(CertificateJob.STATUS_PENDING);
+            job.setAvailableAt(availableAt);
+            job.setLastError(error);
+        }
+    }
+
+    @Override
+    public synchronized void fail(String jobId, long now, String error) {
+        CertificateJob job = jobs.get(jobId);
+        if (job != null) {
+            job.setStatus(CertificateJob.STATUS_FAILED);
+            job.setCompletedAt(now);
+            job.setLastError(error);
+        }
+    }
+
+    @Override
+    public CertificateJob get(String jobId) {
+        CertificateJob job = jobs.get(jobId);
+        return job != null ? copy(job) : null;
+    }
+
+    @Override
+    public long countActive() {
+        return jobs.values().stream().filter(this::isActive).count();
+    }
+
+    @Override
+    public Long oldestActiveEnqueuedAt() {
+        return jobs.values().stream()
+                .filter(this::isActive)
+                .map(CertificateJob::getEnqueuedAt)
+                .min(Long::compare)
+                .orElse(null);
+    }
+
+    private boolean isActive(CertificateJob job) {
+        return CertificateJob.STATUS_PENDING.equals(job.getStatus())
+                || CertificateJob.STATUS_PROCESSING.equals(job.getStatus());
+    }
+
+    // Hand out copies so callers can't mutate queue state behind the store's back
+    private CertificateJob copy(CertificateJob job) {
+        CertificateJob copy = new CertificateJob(job.getEventId(), job.getUserId(), job.getEmail(),
+                job.getFirstName(), job.getLastName(), job.getTimeIn(), job.isManualEntry());
+        copy.setId(job.getId());
+        copy.setStatus(job.getStatus());
+        copy.setAttempts(job.getAttempts());
+        copy.setEnqueuedAt(job.getEnqueuedAt());
+        copy.setAvailableAt(job.getAvailableAt());
+        copy.setCompletedAt(job.getCompletedAt());
+        copy.setLastError(job.getLastError());
+        return copy;
+    }
+}
@@ -0,0 +1,137 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in for FirestoreEmailOutboxStore, used in tests and local runs
+ * (app.email-outbox.store=memory). Queued emails do not survive a restart.
+ */
+@Component
+@ConditionalOnProperty(name = "app.email-outbox.store", havingValue = "memory")
+public class InMemoryEmailOutboxStore implements EmailOutboxStore {
+
+    private final Map<String, OutboxEmail> emails = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean enqueue(OutboxEmail email) {
+        return emails.putIfAbsent(email.getId(), copy(email)) == null;
+    }
+
+    @Override
+    public synchronized List<OutboxEmail> claim(int limit, int priority, long now, long leaseMillis) {
+        List<OutboxEmail> ready = emails.values().stream()
+                .filter(email -> isActive(email) && email.getPriority() == priority && email.getAvailableAt() <= now)
+                .sorted(Comparator.comparingLong(OutboxEmail::getAvailableAt))
+                .limit(Math.max(limit, 0))
+                .collect(Collectors.toList());
+
+        List<OutboxEmail> claimed = new ArrayList<>();
+        for (OutboxEmail email : ready) {
+            email.setStatus(OutboxEmail.STATUS_PROCESSING);
+            email.setAttempts(email.getAttempts() + 1);
+            email.setAvailableAt(now + leaseMillis);
+            claimed.add(copy(email));
+        }
+        return claimed;
+    }
+
+    @Override
+    public synchronized void complete(String emailId, long now) {
+        OutboxEmail email = emails.get(emailId);
+        if (email != null) {
+            email.setStatus(OutboxEmail.STATUS_DONE);
+            email.setCompletedAt(now);
+            email.setLastError(null);
+        }
+    }
+
+    @Override
+    public synchronized void retry(String emailId, long availableAt, String error) {
+        OutboxEmail email = emails.get(emailId);
+        if (email != null) {
+            email.setStatus(OutboxEmail.STATUS_PENDING);
+            email.setAvailableAt(availableAt);
+            email.setLastError(error);
+        }
+    }
+
+    @Override
+    public synchronized void postpone(String emailId, long availableAt) {
+        OutboxEmail email = emails.get(emailId);
+        if (email != null) {
+            email.setStatus(OutboxEmail.STATUS_PENDING);
+            email.setAvailableAt(availableAt);
+            email.setAttempts(Math.max(0, email.getAttempts() - 1));
+        }
+    }
+
+    @Override
+    public synchronized void fail(String emailId, long now, String error) {
+        OutboxEmail email = emails.get(emailId);
+        if (email != null) {
+            email.setStatus(OutboxEmail.STATUS_FAILED);
+            email.setCompletedAt(now);
+            email.setLastError(error);
+        }
+    }
+
+    @Override
+    public OutboxEmail get(String emailId) {
+        OutboxEmail email = emails.get(emailId);
+        return email != null ? copy(email) : null;
+    }
+
+    @Override
+    public synchronized int deleteFinishedBefore(long cutoff, int limit) {
+        List<String> finished = emails.values().stream()
+                .filter(email -> !isActive(email) && email.getCompletedAt() < cutoff)
+                .limit(Math.max(limit, 0))
+                .map(OutboxEmail::getId)
+                .collect(Collectors.toList());
+        finished.forEach(emails::remove);
+        return finished.size();
+    }
+
+    @Override
+    public long countActive() {
+        return emails.values().stream().filter(this::isActive).count();
+    }
+
+    @Override
+    public Long oldestActiveEnqueuedAt() {
+        return emails.values().stream()
+                .filter(this::isActive)
+                .map(OutboxEmail::getEnqueuedAt)
+                .min(Long::compare)
+                .orElse(null);
+    }
+
+    private boolean isActive(OutboxEmail email) {
+        return OutboxEmail.STATUS_PENDING.equals(email.getStatus())
+                || OutboxEmail.STATUS_PROCESSING.equals(email.getStatus());
+    }
+
+    // Hand out copies so callers can't mutate outbox state behind the store's back
+    private OutboxEmail copy(OutboxEmail email) {
+        OutboxEmail copy = new OutboxEmail(email.getToEmail(), email.getSubject(), email.getHtmlContent(),
+                email.getTextContent(), email.getTags());
+        copy.setId(email.getId());
+        copy.setAttachmentName(email.getAttachmentName());
+        copy.setAttachmentPath(email.getAttachmentPath());
+        copy.setPriority(email.getPriority());
+        copy.setExpiresAt(email.getExpiresAt());
+        copy.setStatus(email.getStatus());
+        copy.setAttempts(email.getAttempts());
+        copy.setEnqueuedAt(email.getEnqueuedAt());
+        copy.setAvailableAt(email.getAvailableAt());
+        copy.setCompletedAt(email.getCompletedAt());
+        copy.setLastError(email.getLastError());
+        return copy;
+    }
+}
@@ -0,0 +1,30 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.SelfieIndexEntry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory stand-in for FirestoreSelfieIndexStore, used in tests and local runs
+ * (app.selfie-index.store=memory). Entries do not survive a restart.
+ */
+@Component
+@ConditionalOnProperty(name = "app.selfie-index.store", havingValue = "memory")
+public class InMemorySelfieIndexStore implements SelfieIndexStore {
+
+    private final Map<String, SelfieIndexEntry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(SelfieIndexEntry entry) {
+        entries.merge(entry.getId(), entry,
+                (existing, incoming) -> existing.getUpdatedAt() <= incoming.getUpdatedAt() ? incoming : existing);
+    }
+
+    @Override
+    public SelfieIndexEntry get(String userId, String eventId) {
+        return entries.get(SelfieIndexEntry.idFor(userId, eventId));
+    }
+}
@@ -0,0 +1,108 @@
+package com.capstone.TimEd.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BlobStore on the local filesystem, used in tests and local runs (app.blob-store.type=local).
+ * It can't hand out URLs that work off this machine, so signedUrl returns null.
+ */
+@Component
+@ConditionalOnProperty(name = "app.blob-store.type", havingValue = "local")
+public class LocalBlobStore implements BlobStore {
+
+    private final Path root;
+
+    public LocalBlobStore(@Value("${app.blob-store.local-dir:./blob-store}") String rootDir) {
+        this.root = Paths.get(rootDir).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public byte[] get(String path) throws IOException {
+        try {
+            return Files.readAllBytes(resolve(path));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean putIfAbsent(String path, byte[] content, String contentType) throws IOException {
+        Path target = resolve(path);
+        if (Files.exists(target)) {
+            return false;
+        }
+        Files.createDirectories(target.getParent());
+        // Write beside the target, then link it into place: readers never see a partial file, and unlike a
+        // rename the link fails instead of replacing an object another writer put there first
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.createLink(target, temp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public boolean delete(String path) throws IOException {
+        return Files.deleteIfExists(resolve(path));
+    }
+
+    @Override
+    public int deletePrefix(String prefix) throws IOException {
+        if (!Files.exists(root)) {
+            return 0;
+        }
+        List<Path> matches = new ArrayList<>();
+        // Other threads may delete files while we walk, so skip anything that has gone instead of failing
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && root.relativize(file).toString().replace('\\', '/').startsWith(prefix)) {
+                    matches.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+        });
+        int deleted = 0;
+        for (Path file : matches) {
+            if (Files.deleteIfExists(file)) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    private Path resolve(String path) throws IOException {
+        Path resolved = root.resolve(path).normalize();
+        if (!resolved.startsWith(root)) {
+            throw new IOException("Path escapes the blob store: " + path);
+        }
+        return resolved;
+    }
+}
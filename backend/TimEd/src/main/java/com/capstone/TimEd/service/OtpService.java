@@ -15,7 +15,7 @@ public class OtpService {
 
     // Store OTPs with expiration time (schoolId -> [otp, expirationTime])
     private final ConcurrentHashMap<String, String[]> otpStore = new ConcurrentHashMap<>();
-    private static final long OTP_VALID_DURATION = 5 * 60 * 1000; // 5 minutes
+    static final long OTP_VALID_DURATION = 5 * 60 * 1000; // 5 minutes
 
     public String generateOtp(String schoolId) throws Exception {
         System.out.println("--- OTP Service: Starting OTP generation ---");
@@ -47,6 +47,7 @@ public class OtpService {
             System.out.println("--- OTP Service: Email sent successfully ---");
             
         } catch (Exception emailException) {
+            otpStore.remove(schoolId, otpData); // never delivered, so it can't be used
             System.err.println("--- OTP Service: EMAIL SENDING FAILED ---");
             System.err.println("Email error: " + emailException.getMessage());
             emailException.printStackTrace();
@@ -0,0 +1,21 @@
+package com.capstone.TimEd.service;
+
+import java.io.IOException;
+
+/**
+ * No email provider accepted the call: every circuit was open or every provider was at its concurrency
+ * limit. Nothing was sent, so the email can be tried again without counting an attempt.
+ */
+public class ProviderUnavailableException extends IOException {
+
+    private final long retryAfterMillis;
+
+    public ProviderUnavailableException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
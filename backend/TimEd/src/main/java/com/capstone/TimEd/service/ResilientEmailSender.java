@@ -0,0 +1,273 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends outbox emails through Brevo, falling back to SMTP when Brevo fails or is unavailable.
+ * Each provider has a circuit breaker, so an outage costs one fast rejection instead of a timeout per email,
+ * and a bulkhead that caps its concurrent calls. Connect failures and 5xx responses are retried with jittered
+ * backoff before they count against the circuit. A Brevo read timeout or dropped response is thrown as an
+ * EmailMaybeSentException: Brevo may already have accepted the email, and trying again could send it twice.
+ */
+@Component
+public class ResilientEmailSender {
+
+    static final String BREVO = "brevo";
+    static final String SMTP = "smtp";
+
+    private final BrevoClient brevoClient;
+    private final SmtpEmailClient smtpEmailClient;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.email-providers.smtp-fallback:true}")
+    private boolean smtpFallback;
+
+    @Value("${app.email-providers.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${app.email-providers.open-ms:30000}")
+    private long openMs;
+
+    @Value("${app.email-providers.retries:2}")
+    private int retries;
+
+    @Value("${app.email-providers.retry-base-ms:250}")
+    private long retryBaseMs;
+
+    @Value("${app.email-providers.retry-max-ms:2000}")
+    private long retryMaxMs;
+
+    @Value("${app.email-providers.bulkhead-wait-ms:500}")
+    private long bulkheadWaitMs;
+
+    @Value("${app.email-providers.brevo.max-concurrent:8}")
+    private int brevoMaxConcurrent;
+
+    @Value("${app.email-providers.smtp.max-concurrent:2}")
+    private int smtpMaxConcurrent;
+
+    private Provider brevo;
+    private Provider smtp;
+    private Counter fallbackCounter;
+
+    public ResilientEmailSender(BrevoClient brevoClient, SmtpEmailClient smtpEmailClient,
+                                MeterRegistry meterRegistry) {
+        this.brevoClient = brevoClient;
+        this.smtpEmailClient = smtpEmailClient;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        brevo = new Provider(BREVO, brevoMaxConcurrent);
+        smtp = new Provider(SMTP, smtpMaxConcurrent);
+        fallbackCounter = Counter.builder("email.provider.fallbacks")
+                .description("Emails sent through SMTP because Brevo failed or was unavailable")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Send one email, with its attachment if it has one. Returns the provider that sent it.
+     * Only failures where the email can't have been sent fall back to SMTP; Brevo rate limits and rejected
+     * requests are thrown as they are, since SMTP would not fix them.
+     */
+    public String send(OutboxEmail email, byte[] attachment) throws IOException, InterruptedException {
+        List<Provider> providers = new ArrayList<>(List.of(brevo));
+        if (smtpFallback) {
+            providers.add(smtp);
+        }
+
+        IOException lastError = null;
+        boolean attempted = false;
+        for (Provider provider : providers) {
+            try {
+                if (provider == brevo) {
+                    call(provider, () -> brevoClient.send(email, attachment));
+                } else {
+                    call(provider, () -> smtpEmailClient.send(email, attachment));
+                    fallbackCounter.increment();
+                }
+                return provider.name;
+            } catch (ProviderUnavailableException e) {
+                if (lastError == null) {
+                    lastError = e;
+                }
+            } catch (IOException e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                attempted = true;
+                lastError = e;
+            }
+            System.err.println("[ResilientEmailSender] " + provider.name + " could not send email " + email.getId()
+                    + ": " + lastError.getMessage());
+        }
+
+        if (!attempted) {
+            long retryAfter = providers.stream()
+                    .mapToLong(provider -> provider.breaker.remainingOpenMillis())
+                    .filter(remaining -> remaining > 0)
+                    .min()
+                    .orElse(bulkheadWaitMs);
+            throw new ProviderUnavailableException("No email provider is available", retryAfter);
+        }
+        throw lastError;
+    }
+
+    /**
+     * Send several emails as one Brevo request. There is no fallback: if this throws, the caller sends them
+     * one at a time through send().
+     */
+    public void sendBatch(List<OutboxEmail> emails) throws IOException, InterruptedException {
+        call(brevo, () -> brevoClient.sendVersions(emails));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (Provider provider : List.of(brevo, smtp)) {
+            Map<String, Object> providerStats = new LinkedHashMap<>();
+            providerStats.put("circuit", provider.breaker.getState().name());
+            providerStats.put("inFlight", provider.maxConcurrent - provider.bulkhead.availablePermits());
+            providerStats.put("succeeded", (long) provider.succeeded.count());
+            providerStats.put("failed", (long) provider.failed.count());
+            providerStats.put("rejected", (long) provider.rejected.count());
+            stats.put(provider.name, providerStats);
+        }
+        stats.put("fallbacks", (long) fallbackCounter.count());
+        return stats;
+    }
+
+    EmailCircuitBreaker.State getState(String providerName) {
+        return (BREVO.equals(providerName) ? brevo : smtp).breaker.getState();
+    }
+
+    private void call(Provider provider, ProviderCall call) throws IOException, InterruptedException {
+        if (!provider.breaker.tryAcquire()) {
+            provider.rejected.increment();
+            throw new ProviderUnavailableException(provider.name + " circuit is open",
+                    provider.breaker.remainingOpenMillis());
+        }
+        if (!provider.bulkhead.tryAcquire(bulkheadWaitMs, TimeUnit.MILLISECONDS)) {
+            provider.breaker.release();
+            provider.rejected.increment();
+            throw new ProviderUnavailableException(provider.name + " is at its concurrency limit", bulkheadWaitMs);
+        }
+
+        boolean recorded = false;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    call.run();
+                    provider.breaker.onSuccess();
+                    recorded = true;
+                    provider.succeeded.increment();
+                    return;
+                } catch (BrevoApiException e) {
+                    if (!e.isServerError()) {
+                        // Brevo answered, so it is up; the request itself is the problem
+                        provider.breaker.onSuccess();
+                        recorded = true;
+                        throw e;
+                    }
+                    if (attempt > retries) {
+                        provider.breaker.onFailure();
+                        recorded = true;
+                        provider.failed.increment();
+                        throw e;
+                    }
+                } catch (IOException e) {
+                    if (!isRetryable(e) || attempt > retries) {
+                        provider.breaker.onFailure();
+                        recorded = true;
+                        provider.failed.increment();
+                        // SMTP errors don't say how far the send got, so only Brevo's are flagged
+                        if (provider == brevo && !isRetryable(e)) {
+                            throw new EmailMaybeSentException(provider.name, e);
+                        }
+                        throw e;
+                    }
+                }
+                Thread.sleep(Backoff.jittered(retryBaseMs, retryMaxMs, attempt));
+            }
+        } finally {
+            // An unexpected exception or an interrupted backoff must not keep a half-open circuit's probe for ever
+            if (!recorded) {
+                provider.breaker.release();
+            }
+            provider.bulkhead.release();
+        }
+    }
+
+    /**
+     * True if the email can't have reached the provider (a connect failure) or the provider failed on its side
+     * (a Brevo 5xx). A read timeout or dropped response is not: the email may already be on its way.
+     */
+    static boolean isRetryable(IOException error) {
+        if (error instanceof BrevoApiException) {
+            return ((BrevoApiException) error).isServerError();
+        }
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof ConnectException || current instanceof NoRouteToHostException
+                    || current instanceof UnknownHostException) {
+                return true;
+            }
+            if (current instanceof SocketTimeoutException && current.getMessage() != null
+                    && current.getMessage().toLowerCase().contains("connect")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private interface ProviderCall {
+        void run() throws IOException;
+    }
+
+    private class Provider {
+        final String name;
+        final int maxConcurrent;
+        final EmailCircuitBreaker breaker;
+        final Semaphore bulkhead;
+        final Counter succeeded;
+        final Counter failed;
+        final Counter rejected;
+
+        Provider(String name, int maxConcurrent) {
+            this.name = name;
+            this.maxConcurrent = Math.max(1, maxConcurrent);
+            this.breaker = new EmailCircuitBreaker(name, failureThreshold, openMs);
+            this.bulkhead = new Semaphore(this.maxConcurrent);
+            Gauge.builder("email.provider.circuit", breaker, b -> b.getState().ordinal())
+                    .tag("provider", name)
+                    .description("Circuit state: 0 closed, 1 half-open, 2 open")
+                    .register(meterRegistry);
+            Gauge.builder("email.provider.in_flight", bulkhead, b -> this.maxConcurrent - b.availablePermits())
+                    .tag("provider", name)
+                    .register(meterRegistry);
+            succeeded = Counter.builder("email.provider.calls").tag("provider", name).tag("outcome", "success")
+                    .register(meterRegistry);
+            failed = Counter.builder("email.provider.calls").tag("provider", name).tag("outcome", "failure")
+                    .register(meterRegistry);
+            rejected = Counter.builder("email.provider.calls").tag("provider", name).tag("outcome", "rejected")
+                    .register(meterRegistry);
+        }
+    }
+}
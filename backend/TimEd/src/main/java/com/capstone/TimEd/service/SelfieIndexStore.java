@@ -0,0 +1,18 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.SelfieIndexEntry;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Lookup table from (userId, eventId) to the newest selfie uploaded for that time-in.
+ */
+public interface SelfieIndexStore {
+
+    /**
+     * Record a selfie. An entry only replaces an existing one if it is at least as new.
+     */
+    void put(SelfieIndexEntry entry) throws ExecutionException, InterruptedException;
+
+    SelfieIndexEntry get(String userId, String eventId) throws ExecutionException, InterruptedException;
+}
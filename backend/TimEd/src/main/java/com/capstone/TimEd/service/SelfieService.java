@@ -0,0 +1,226 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.SelfieIndexEntry;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Bucket;
+import com.google.cloud.storage.Storage;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.cloud.StorageClient;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the selfie index in step with event selfie uploads and resolves selfie URLs from it,
+ * so time-in never has to list the bucket.
+ */
+@Service
+public class SelfieService {
+
+    public static final String BUCKET_NAME = "timed-system.firebasestorage.app";
+
+    private static final String SELFIE_ROOT = "event_selfies/";
+    private static final String SELFIE_PREFIX = "selfie_event_";
+    private static final String MANUAL_SELFIE_PREFIX = "manual_selfie_";
+    private static final String TOKEN_METADATA_KEY = "firebaseStorageDownloadTokens";
+
+    private final FirebaseApp firebaseApp;
+    private final SelfieIndexStore selfieIndexStore;
+
+    // Shared secret the storage-finalize trigger sends as X-Hook-Token; the hook is closed while it is empty
+    @Value("${app.selfie-index.hook-token:}")
+    private String hookToken;
+
+    // Lets time-in run the selfie lookup alongside its Firestore reads
+    private final ExecutorService lookupExecutor = Executors.newFixedThreadPool(8, runnable -> {
+        Thread thread = new Thread(runnable, "selfie-lookup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SelfieService(FirebaseApp firebaseApp, SelfieIndexStore selfieIndexStore) {
+        this.firebaseApp = firebaseApp;
+        this.selfieIndexStore = selfieIndexStore;
+    }
+
+    @PreDestroy
+    public void stop() {
+        lookupExecutor.shutdownNow();
+    }
+
+    /**
+     * Upload a selfie for a time-in and index it. Uses the same object path as the mobile app.
+     */
+    public String upload(String eventId, String userId, MultipartFile file, boolean manual)
+            throws IOException, ExecutionException, InterruptedException {
+        String objectName = SELFIE_ROOT + userId + "/" + (manual ? MANUAL_SELFIE_PREFIX : SELFIE_PREFIX) + eventId + ".jpg";
+        String contentType = file.getContentType() != null ? file.getContentType() : "image/jpeg";
+
+        BlobInfo blobInfo = BlobInfo.newBuilder(BUCKET_NAME, objectName)
+                .setContentType(contentType)
+                .setMetadata(Collections.singletonMap(TOKEN_METADATA_KEY, UUID.randomUUID().toString()))
+                .build();
+        Blob blob = storage().create(blobInfo, file.getBytes());
+
+        SelfieIndexEntry entry = indexBlob(blob);
+        System.out.println("[SelfieService] Uploaded selfie " + objectName);
+        return entry.getUrl();
+    }
+
+    /**
+     * True if the finalize hook is configured and the caller sent its token. Always false without a token.
+     */
+    public boolean isHookAuthorized(String token) {
+        if (hookToken == null || hookToken.isEmpty() || token == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(hookToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Index an object reported by the storage-finalize hook. Returns false if the object is not an event selfie.
+     */
+    public boolean indexObject(String objectName, Map<String, String> metadata, long updatedAt)
+            throws ExecutionException, InterruptedException {
+        String[] ids = parseObjectName(objectName);
+        if (ids == null) {
+            return false;
+        }
+        selfieIndexStore.put(new SelfieIndexEntry(ids[0], ids[1], objectName, buildUrl(objectName, metadata), updatedAt));
+        return true;
+    }
+
+    /**
+     * Selfie URL for a time-in, or null if none was uploaded.
+     */
+    public String findSelfieUrl(String userId, String eventId) throws ExecutionException, InterruptedException {
+        SelfieIndexEntry entry = selfieIndexStore.get(userId, eventId);
+        if (entry != null) {
+            return entry.getUrl();
+        }
+
+        // The finalize hook may not have fired yet; check the two known object paths directly
+        Bucket bucket = bucket();
+        for (String prefix : new String[] { SELFIE_PREFIX, MANUAL_SELFIE_PREFIX }) {
+            Blob blob = bucket.get(SELFIE_ROOT + userId + "/" + prefix + eventId + ".jpg");
+            if (blob != null) {
+                return indexBlob(blob).getUrl();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs findSelfieUrl in the background. Completes with null if there is no selfie or the lookup fails.
+     */
+    public CompletableFuture<String> findSelfieUrlAsync(String userId, String eventId) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return findSelfieUrl(userId, eventId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (Exception e) {
+                System.err.println("[SelfieService] Error looking up selfie: " + e.getMessage());
+                return null;
+            }
+        }, lookupExecutor);
+    }
+
+    /**
+     * One-off pass over existing selfies for uploads that predate the index. Returns the number indexed.
+     */
+    public int reindexAll() throws ExecutionException, InterruptedException {
+        int indexed = 0;
+        for (Blob blob : bucket().list(Storage.BlobListOption.prefix(SELFIE_ROOT)).iterateAll()) {
+            if (parseObjectName(blob.getName()) != null) {
+                indexBlob(blob);
+                indexed++;
+            }
+        }
+        System.out.println("[SelfieService] Reindexed " + indexed + " selfies");
+        return indexed;
+    }
+
+    private SelfieIndexEntry indexBlob(Blob blob) throws ExecutionException, InterruptedException {
+        String[] ids = parseObjectName(blob.getName());
+        if (ids == null) {
+            throw new IllegalArgumentException("Not an event selfie: " + blob.getName());
+        }
+        long updatedAt = blob.getUpdateTime() != null ? blob.getUpdateTime() : System.currentTimeMillis();
+        SelfieIndexEntry entry = new SelfieIndexEntry(ids[0], ids[1], blob.getName(),
+                buildUrl(blob.getName(), blob.getMetadata()), updatedAt);
+        selfieIndexStore.put(entry);
+        return entry;
+    }
+
+    /**
+     * Splits event_selfies/{userId}/selfie_event_{eventId}.jpg (or manual_selfie_...) into {userId, eventId}.
+     * A trailing _{digits} suffix from older uploads is ignored.
+     */
+    static String[] parseObjectName(String objectName) {
+        if (objectName == null || !objectName.startsWith(SELFIE_ROOT)) {
+            return null;
+        }
+        String[] parts = objectName.substring(SELFIE_ROOT.length()).split("/");
+        if (parts.length != 2 || parts[0].isEmpty()) {
+            return null;
+        }
+
+        String fileName = parts[1];
+        int dot = fileName.lastIndexOf('.');
+        if (dot > 0) {
+            fileName = fileName.substring(0, dot);
+        }
+
+        String eventId;
+        if (fileName.startsWith(SELFIE_PREFIX)) {
+            eventId = fileName.substring(SELFIE_PREFIX.length());
+        } else if (fileName.startsWith(MANUAL_SELFIE_PREFIX)) {
+            eventId = fileName.substring(MANUAL_SELFIE_PREFIX.length());
+        } else {
+            return null;
+        }
+        eventId = eventId.replaceFirst("_\\d+$", "");
+
+        return eventId.isEmpty() ? null : new String[] { parts[0], eventId };
+    }
+
+    private String buildUrl(String objectName, Map<String, String> metadata) {
+        String url = "https://firebasestorage.googleapis.com/v0/b/" + BUCKET_NAME + "/o/"
+                + URLEncoder.encode(objectName, StandardCharsets.UTF_8) + "?alt=media";
+
+        // Add token if available
+        if (metadata != null && metadata.get(TOKEN_METADATA_KEY) != null) {
+            String token = metadata.get(TOKEN_METADATA_KEY);
+            // If multiple tokens, take the first one
+            if (token.contains(",")) {
+                token = token.split(",")[0];
+            }
+            url += "&token=" + token;
+        }
+        return url;
+    }
+
+    private Bucket bucket() {
+        return StorageClient.getInstance(firebaseApp).bucket(BUCKET_NAME);
+    }
+
+    private Storage storage() {
+        return bucket().getStorage();
+    }
+}
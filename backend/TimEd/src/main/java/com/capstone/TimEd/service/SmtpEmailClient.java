@@ -0,0 +1,55 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.mail.MailException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Sends outbox emails through the SMTP server from EmailConfig. Used when Brevo is unavailable.
+ */
+@Component
+public class SmtpEmailClient {
+
+    private final JavaMailSender mailSender;
+
+    @Value("${spring.mail.username:timeedsystem@gmail.com}")
+    private String fromAddress;
+
+    public SmtpEmailClient(JavaMailSender mailSender) {
+        this.mailSender = mailSender;
+    }
+
+    public void send(OutboxEmail email, byte[] attachment) throws IOException {
+        boolean hasAttachment = attachment != null && attachment.length > 0;
+        try {
+            MimeMessage message = mailSender.createMimeMessage();
+            MimeMessageHelper helper = new MimeMessageHelper(message, hasAttachment, "UTF-8");
+            helper.setFrom(fromAddress, BrevoClient.SENDER_NAME);
+            helper.setTo(email.getToEmail());
+            helper.setSubject(email.getSubject());
+            if (email.getHtmlContent() != null && email.getTextContent() != null) {
+                helper.setText(email.getTextContent(), email.getHtmlContent());
+            } else if (email.getHtmlContent() != null) {
+                helper.setText(email.getHtmlContent(), true);
+            } else {
+                helper.setText(email.getTextContent() != null ? email.getTextContent() : "", false);
+            }
+            if (hasAttachment) {
+                String name = email.getAttachmentName() != null ? email.getAttachmentName() : "attachment";
+                helper.addAttachment(name, new ByteArrayResource(attachment));
+            }
+            mailSender.send(message);
+        } catch (MessagingException | MailException | UnsupportedEncodingException e) {
+            throw new IOException("SMTP send to " + email.getToEmail() + " failed: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.dto.AttendeeDto;
+import com.capstone.TimEd.dto.AttendeePageDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AttendanceExportServiceTest {
+
+    private AttendanceService attendanceService;
+    private AttendanceExportService exportService;
+
+    @BeforeEach
+    public void setUp() {
+        attendanceService = mock(AttendanceService.class);
+        exportService = new AttendanceExportService(attendanceService, new ObjectMapper());
+    }
+
+    private AttendeeDto attendee(String userId) {
+        AttendeeDto attendee = new AttendeeDto();
+        attendee.setUserId(userId);
+        attendee.setFirstName("Ana");
+        attendee.setLastName("Cruz");
+        attendee.setTimeIn("2025-04-01 08:00:00");
+        return attendee;
+    }
+
+    @Test
+    public void testFirstPageErrorIsThrownBeforeStreaming() throws Exception {
+        when(attendanceService.getAttendeePage(eq("event1"), isNull(), anyInt(), any(), any(), any(), eq(false)))
+                .thenThrow(new ExecutionException(new RuntimeException("unavailable")));
+
+        assertThrows(ExecutionException.class, () -> exportService.firstPage("event1", null, null, null));
+    }
+
+    @Test
+    public void testAllPagesAreWritten() throws Exception {
+        AttendeePageDto first = new AttendeePageDto(List.of(attendee("u1")), "u1", 2);
+        when(attendanceService.getAttendeePage(eq("event1"), eq("u1"), anyInt(), any(), any(), any(), eq(false)))
+                .thenReturn(new AttendeePageDto(List.of(attendee("u2")), null, 2));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export("event1", AttendanceExportService.FORMAT_CSV, null, null, null, first, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("u1,"));
+        assertTrue(lines[2].startsWith("u2,"));
+    }
+
+    @Test
+    public void testMidStreamErrorMarksCsvAndAborts() throws Exception {
+        AttendeePageDto first = new AttendeePageDto(List.of(attendee("u1")), "u1", 2);
+        when(attendanceService.getAttendeePage(eq("event1"), eq("u1"), anyInt(), any(), any(), any(), eq(false)))
+                .thenThrow(new ExecutionException(new RuntimeException("deadline exceeded")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOException error = assertThrows(IOException.class, () -> exportService.export("event1",
+                AttendanceExportService.FORMAT_CSV, null, null, null, first, out));
+
+        assertInstanceOf(ExecutionException.class, error.getCause());
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertTrue(lines[1].startsWith("u1,"));
+        assertTrue(lines[lines.length - 1].startsWith("#ERROR,"));
+    }
+
+    @Test
+    public void testMidStreamErrorMarksNdjson() throws Exception {
+        AttendeePageDto first = new AttendeePageDto(List.of(attendee("u1")), "u1", 2);
+        when(attendanceService.getAttendeePage(eq("event1"), eq("u1"), anyInt(), any(), any(), any(), eq(false)))
+                .thenThrow(new ExecutionException(new RuntimeException("deadline exceeded")));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(IOException.class, () -> exportService.export("event1", AttendanceExportService.FORMAT_NDJSON,
+                null, null, null, first, out));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(new ObjectMapper().readTree(lines[1]).has("error"));
+    }
+}
@@ -0,0 +1,105 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.dto.AttendeeDto;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreException;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class AttendanceFeedServiceTest {
+
+    private final AtomicReference<EventListener<QuerySnapshot>> listener = new AtomicReference<>();
+
+    private Firestore firestore;
+    private CollectionReference attendees;
+    private ListenerRegistration registration;
+    private AttendanceService attendanceService;
+    private AttendanceFeedService feedService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        firestore = mock(Firestore.class);
+        CollectionReference events = mock(CollectionReference.class);
+        DocumentReference eventRef = mock(DocumentReference.class);
+        attendees = mock(CollectionReference.class);
+        registration = mock(ListenerRegistration.class);
+        when(firestore.collection("events")).thenReturn(events);
+        when(events.document("event1")).thenReturn(eventRef);
+        when(eventRef.collection("attendees")).thenReturn(attendees);
+
+        attendanceService = mock(AttendanceService.class);
+        when(attendanceService.toAttendeeDtos(anyList())).thenReturn(List.of(new AttendeeDto()));
+        feedService = new AttendanceFeedService(firestore, attendanceService, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        feedService.stop();
+    }
+
+    private QuerySnapshot snapshot(DocumentChange... changes) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges()).thenReturn(List.of(changes));
+        return snapshot;
+    }
+
+    private DocumentChange added() {
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getType()).thenReturn(DocumentChange.Type.ADDED);
+        when(change.getDocument()).thenReturn(mock(QueryDocumentSnapshot.class));
+        return change;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSnapshotDeliveredDuringRegistrationIsNotLost() throws Exception {
+        // Firestore may call back with the initial roster before addSnapshotListener returns
+        when(attendees.addSnapshotListener(any(EventListener.class))).thenAnswer(invocation -> {
+            EventListener<QuerySnapshot> callback = invocation.getArgument(0);
+            listener.set(callback);
+            callback.onEvent(snapshot(added()), null);
+            return registration;
+        });
+
+        feedService.subscribe("event1");
+        listener.get().onEvent(snapshot(added()), null);
+
+        // Only the second snapshot is a change; the first was taken as the roster
+        verify(attendanceService, timeout(1000).times(1)).toAttendeeDtos(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testListenerErrorDropsFeedSoNextViewerStartsAgain() {
+        when(attendees.addSnapshotListener(any(EventListener.class))).thenAnswer(invocation -> {
+            listener.set(invocation.getArgument(0));
+            return registration;
+        });
+
+        feedService.subscribe("event1");
+        listener.get().onEvent(null, null);
+        verify(registration, never()).remove();
+
+        listener.get().onEvent(null, mock(FirestoreException.class));
+        verify(registration).remove();
+
+        feedService.subscribe("event1");
+        verify(attendees, times(2)).addSnapshotListener(any(EventListener.class));
+    }
+}
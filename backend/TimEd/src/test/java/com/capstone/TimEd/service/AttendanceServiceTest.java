@@ -0,0 +1,329 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.dto.AttendeeDto;
+import com.capstone.TimEd.dto.BulkTimeInRequest;
+import com.capstone.TimEd.dto.BulkTimeInResult;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.BulkWriter;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * AttendanceService against a mocked Firestore. Documents are plain maps; users are served through getAll.
+ */
+public class AttendanceServiceTest {
+
+    private Firestore firestore;
+    private CollectionReference attendees;
+    private DocumentReference attendeeRef;
+    private DepartmentCache departmentCache;
+    private EventMetadataCache eventMetadataCache;
+    private CertificateJobService certificateJobService;
+    private SimpleMeterRegistry meterRegistry;
+    private AttendanceService attendanceService;
+
+    private final List<QueryDocumentSnapshot> attendeeDocs = new ArrayList<>();
+    private final List<QueryDocumentSnapshot> legacyDocs = new ArrayList<>();
+    private Query legacyQuery;
+    private CollectionReference events;
+    private final Map<String, DocumentSnapshot> users = new HashMap<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        firestore = mock(Firestore.class);
+        events = mock(CollectionReference.class);
+        DocumentReference event = mock(DocumentReference.class);
+        attendees = mock(CollectionReference.class);
+        CollectionReference usersCollection = mock(CollectionReference.class);
+        when(firestore.collection("events")).thenReturn(events);
+        when(events.document("event1")).thenReturn(event);
+        when(event.collection("attendees")).thenReturn(attendees);
+        when(firestore.collection("users")).thenReturn(usersCollection);
+
+        QuerySnapshot attendeeSnapshot = mock(QuerySnapshot.class);
+        when(attendeeSnapshot.getDocuments()).thenReturn(attendeeDocs);
+        when(attendees.get()).thenReturn(ApiFutures.immediateFuture(attendeeSnapshot));
+
+        when(usersCollection.document(anyString())).thenAnswer(invocation -> {
+            String userId = invocation.getArgument(0);
+            DocumentReference ref = mock(DocumentReference.class);
+            when(ref.getId()).thenReturn(userId);
+            when(ref.get()).thenAnswer(read -> ApiFutures.immediateFuture(
+                    users.containsKey(userId) ? users.get(userId) : missing(userId)));
+            return ref;
+        });
+        when(firestore.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<DocumentSnapshot> found = new ArrayList<>();
+            for (Object argument : invocation.getArguments()) {
+                for (DocumentReference ref : argument instanceof DocumentReference[]
+                        ? (DocumentReference[]) argument : new DocumentReference[] { (DocumentReference) argument }) {
+                    found.add(users.containsKey(ref.getId()) ? users.get(ref.getId()) : missing(ref.getId()));
+                }
+            }
+            return ApiFutures.immediateFuture(found);
+        });
+
+        attendeeRef = mock(DocumentReference.class);
+        when(attendees.document(anyString())).thenReturn(attendeeRef);
+        when(attendeeRef.create(anyMap())).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        // Older manual time-ins in the top-level attendees collection
+        CollectionReference legacyAttendees = mock(CollectionReference.class);
+        legacyQuery = mock(Query.class);
+        QuerySnapshot legacySnapshot = mock(QuerySnapshot.class);
+        when(firestore.collection("attendees")).thenReturn(legacyAttendees);
+        when(legacyAttendees.whereEqualTo(anyString(), any())).thenReturn(legacyQuery);
+        when(legacyQuery.whereEqualTo(anyString(), any())).thenReturn(legacyQuery);
+        when(legacyQuery.limit(anyInt())).thenReturn(legacyQuery);
+        when(legacyQuery.select(any(String[].class))).thenReturn(legacyQuery);
+        when(legacyQuery.get()).thenReturn(ApiFutures.immediateFuture(legacySnapshot));
+        when(legacySnapshot.getDocuments()).thenReturn(legacyDocs);
+        when(legacySnapshot.isEmpty()).thenAnswer(invocation -> legacyDocs.isEmpty());
+
+        DocumentSnapshot eventDoc = mock(DocumentSnapshot.class);
+        when(eventDoc.exists()).thenReturn(true);
+        when(eventDoc.getString("eventName")).thenReturn("Tech Summit");
+        eventMetadataCache = mock(EventMetadataCache.class);
+        EventMetadataCache.EventMetadata eventMetadata = new EventMetadataCache.EventMetadata("event1", eventDoc);
+        when(eventMetadataCache.getAsync("event1")).thenReturn(ApiFutures.immediateFuture(eventMetadata));
+        when(eventMetadataCache.get("event1")).thenReturn(eventMetadata);
+        SelfieService selfieService = mock(SelfieService.class);
+        when(selfieService.findSelfieUrlAsync(anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        departmentCache = mock(DepartmentCache.class);
+        when(departmentCache.getNames(anyCollection())).thenReturn(Map.of("cs", "Computer Science"));
+        certificateJobService = mock(CertificateJobService.class);
+        meterRegistry = new SimpleMeterRegistry();
+
+        attendanceService = new AttendanceService(firestore, null, certificateJobService, departmentCache,
+                selfieService, meterRegistry, eventMetadataCache);
+    }
+
+    static QueryDocumentSnapshot doc(String id, Map<String, Object> data) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.exists()).thenReturn(true);
+        when(doc.getData()).thenReturn(data);
+        when(doc.getReference()).thenReturn(mock(DocumentReference.class));
+        when(doc.contains(anyString())).thenAnswer(invocation -> data.containsKey(invocation.<String>getArgument(0)));
+        when(doc.get(anyString())).thenAnswer(invocation -> data.get(invocation.<String>getArgument(0)));
+        when(doc.getString(anyString())).thenAnswer(invocation -> (String) data.get(invocation.<String>getArgument(0)));
+        when(doc.getBoolean(anyString())).thenAnswer(invocation -> (Boolean) data.get(invocation.<String>getArgument(0)));
+        return doc;
+    }
+
+    private static DocumentSnapshot missing(String id) {
+        DocumentSnapshot doc = mock(DocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.exists()).thenReturn(false);
+        return doc;
+    }
+
+    private void addUser(String userId, String departmentId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("firstName", "First " + userId);
+        data.put("lastName", "Last " + userId);
+        data.put("email", userId + "@example.com");
+        data.put("departmentId", departmentId);
+        users.put(userId, doc(userId, data));
+    }
+
+    private void addAttendee(String userId, String timestamp) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", userId);
+        data.put("firstName", "First " + userId);
+        data.put("lastName", "Last " + userId);
+        data.put("email", userId + "@example.com");
+        data.put("timestamp", timestamp);
+        data.put("hasTimedOut", false);
+        attendeeDocs.add(doc(userId, data));
+    }
+
+    @Test
+    public void testGetAttendeesResolvesUsersInOneBatchedRead() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            addUser("user" + i, "cs");
+            addAttendee("user" + i, "2025-01-01 08:00:0" + i);
+        }
+
+        List<Map<String, String>> result = attendanceService.getAttendees("event1");
+
+        assertEquals(5, result.size());
+        for (Map<String, String> attendee : result) {
+            assertEquals("Computer Science", attendee.get("department"));
+        }
+        verify(firestore, times(1)).getAll(any(DocumentReference[].class));
+        verify(departmentCache, times(1)).getNames(anyCollection());
+    }
+
+    @Test
+    public void testGetAttendeesKeepsAttendeeWhoseUserIsGone() throws Exception {
+        addAttendee("deleted", "2025-01-01 08:00:00");
+
+        List<Map<String, String>> result = attendanceService.getAttendees("event1");
+
+        assertEquals(1, result.size());
+        assertEquals("N/A", result.get(0).get("department"));
+        assertEquals("deleted@example.com", result.get(0).get("email"));
+    }
+
+    @Test
+    public void testLegacyManualTimeInBlocksSecondTimeIn() throws Exception {
+        addUser("user1", "cs");
+        Map<String, Object> legacy = new HashMap<>();
+        legacy.put("userId", "user1");
+        legacy.put("eventId", "event1");
+        legacy.put("type", "event_time_in");
+        legacyDocs.add(doc("legacy1", legacy));
+
+        String qr = attendanceService.markAttendance("event1", "user1", null, null, false);
+        String manual = attendanceService.manualTimeIn("event1", "user1");
+
+        assertTrue(qr.startsWith("Already timed in"), qr);
+        assertTrue(manual.startsWith("User has already timed in"), manual);
+        verify(attendeeRef, never()).create(anyMap());
+        verifyNoInteractions(certificateJobService);
+        // The event's legacy time-ins are read once, not on every time-in
+        verify(legacyQuery, times(1)).get();
+    }
+
+    @Test
+    public void testTimeInWithoutLegacyRecordIsCreated() throws Exception {
+        addUser("user1", "cs");
+
+        assertEquals("Attendance marked successfully",
+                attendanceService.markAttendance("event1", "user1", null, null, false));
+        verify(attendeeRef).create(anyMap());
+        verify(certificateJobService).enqueue(eq("event1"), eq("user1"), eq("user1@example.com"), any(), any(),
+                any(), eq(false));
+    }
+
+    @Test
+    public void testBulkTimeInUndoesWritesWhenCertificatesCannotBeQueued() throws Exception {
+        addUser("user1", "cs");
+        addUser("user2", "cs");
+        BulkWriter writer = mock(BulkWriter.class);
+        when(firestore.bulkWriter()).thenReturn(writer);
+        when(writer.create(any(DocumentReference.class), anyMap()))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        when(certificateJobService.enqueueAll(anyList()))
+                .thenThrow(new ExecutionException(new RuntimeException("unavailable")));
+
+        BulkTimeInRequest request = new BulkTimeInRequest();
+        request.setCheckIns(List.of(checkIn("user1"), checkIn("user2")));
+        List<BulkTimeInResult> results = attendanceService.bulkTimeIn("event1", request);
+
+        assertEquals(2, results.size());
+        for (BulkTimeInResult result : results) {
+            assertEquals(BulkTimeInResult.ERROR, result.getStatus());
+        }
+        verify(writer, times(2)).delete(any(DocumentReference.class));
+        assertEquals(1, meterRegistry.get("attendance.timein.latency").tag("path", "bulk").timer().count());
+    }
+
+    @Test
+    public void testBulkTimeInIsTimedWhenItFails() throws Exception {
+        when(eventMetadataCache.get("event1")).thenThrow(new IllegalStateException("cache down"));
+
+        assertThrows(IllegalStateException.class, () -> attendanceService.bulkTimeIn("event1",
+                new BulkTimeInRequest()));
+        assertEquals(1, meterRegistry.get("attendance.timein.latency").tag("path", "bulk").timer().count());
+    }
+
+    private static BulkTimeInRequest.CheckIn checkIn(String userId) {
+        BulkTimeInRequest.CheckIn checkIn = new BulkTimeInRequest.CheckIn();
+        checkIn.setUserId(userId);
+        return checkIn;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrationBackfillsAttendeeWithoutDepartmentOrTimestamp() throws Exception {
+        addUser("mobile", "cs");
+        addUser("legacy", "cs");
+        addAttendee("mobile", "2025-01-01 08:00:00"); // written by the mobile app, no departmentId
+        Map<String, Object> legacy = new HashMap<>();
+        legacy.put("attended", true);
+        legacy.put("timeIn", "2025-01-01T00:05:00Z");
+        legacy.put("departmentId", "cs");
+        attendeeDocs.add(doc("legacy", legacy));
+
+        BulkWriter writer = mock(BulkWriter.class);
+        when(firestore.bulkWriter()).thenReturn(writer);
+        Query eventPage = mock(Query.class);
+        when(events.orderBy(any(FieldPath.class))).thenReturn(eventPage);
+        when(eventPage.select(any(FieldPath[].class))).thenReturn(eventPage);
+        when(eventPage.limit(anyInt())).thenReturn(eventPage);
+        QueryDocumentSnapshot eventDoc = doc("event1", Map.of());
+        QuerySnapshot eventSnapshot = mock(QuerySnapshot.class);
+        when(eventSnapshot.getDocuments()).thenReturn(List.of(eventDoc));
+        when(eventPage.get()).thenReturn(ApiFutures.immediateFuture(eventSnapshot));
+
+        String result = attendanceService.migrateAttendeeRecords();
+
+        ArgumentCaptor<Map<String, Object>> mobileUpdate = ArgumentCaptor.forClass(Map.class);
+        verify(writer).update(eq(attendeeDocs.get(0).getReference()), mobileUpdate.capture());
+        assertEquals(Map.of("departmentId", "cs"), mobileUpdate.getValue());
+        ArgumentCaptor<Map<String, Object>> legacyUpdate = ArgumentCaptor.forClass(Map.class);
+        verify(writer).update(eq(attendeeDocs.get(1).getReference()), legacyUpdate.capture());
+        assertEquals(Map.of("timestamp", "2025-01-01 08:05:00"), legacyUpdate.getValue());
+        assertEquals("Updated 2 attendee records across 1 events", result);
+    }
+
+    @Test
+    public void testFirstPageDoesNotScanTheEvent() throws Exception {
+        Query page = mock(Query.class);
+        when(attendees.whereEqualTo("departmentId", "cs")).thenReturn(page);
+        when(page.orderBy(anyString())).thenReturn(page);
+        when(page.orderBy(any(FieldPath.class))).thenReturn(page);
+        when(page.limit(anyInt())).thenReturn(page);
+        QuerySnapshot pageSnapshot = mock(QuerySnapshot.class);
+        when(pageSnapshot.getDocuments()).thenReturn(List.of());
+        when(page.get()).thenReturn(ApiFutures.immediateFuture(pageSnapshot));
+
+        attendanceService.getAttendeePage("event1", null, 50, "cs", null, null, false);
+
+        verify(attendees, never()).get();
+        verify(firestore, never()).bulkWriter();
+    }
+
+    @Test
+    public void testAttendeeWithoutDepartmentFallsBackToUser() throws Exception {
+        addUser("mobile", "cs");
+        addAttendee("mobile", "2025-01-01 08:00:00");
+
+        List<AttendeeDto> dtos = attendanceService.toAttendeeDtos(attendeeDocs);
+
+        assertEquals("cs", dtos.get(0).getDepartmentId());
+        assertEquals("Computer Science", dtos.get(0).getDepartment());
+    }
+}
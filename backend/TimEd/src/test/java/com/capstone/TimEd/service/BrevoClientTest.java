@@ -0,0 +1,98 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.config.BrevoHttpConfig;
+import com.capstone.TimEd.model.OutboxEmail;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BrevoClient on the shared pooled HTTP client, against a local stub of Brevo's /smtp/email endpoint
+ */
+public class BrevoClientTest {
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+    private HttpServer stub;
+    private SimpleMeterRegistry meterRegistry;
+    private OkHttpClient httpClient;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/v3/smtp/email", exchange -> {
+            requests.add(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            byte[] body = "{\"messageId\":\"<stub@brevo>\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(201, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        stub.start();
+
+        meterRegistry = new SimpleMeterRegistry();
+        httpClient = BrevoHttpConfig.build(meterRegistry, 4, 60_000, 16, 4, 1_000, 1_000, 1_000, 5_000);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        httpClient.connectionPool().evictAll();
+        stub.stop(0);
+    }
+
+    private BrevoClient client(int port) {
+        return new BrevoClient("http://localhost:" + port + "/v3", "test-key", httpClient);
+    }
+
+    private OutboxEmail email(String toEmail) {
+        return new OutboxEmail(toEmail, "Account approved", "<p>Welcome</p>", null, List.of("notification"));
+    }
+
+    @Test
+    public void testSequentialSendsReuseOneConnection() throws IOException {
+        BrevoClient client = client(stub.getAddress().getPort());
+        for (int i = 0; i < 5; i++) {
+            client.send(email("user" + i + "@example.com"), null);
+        }
+
+        assertEquals(5, requests.size());
+        assertEquals(1.0, meterRegistry.get("brevo.http.connections").tag("type", "new").counter().count());
+        assertEquals(4.0, meterRegistry.get("brevo.http.connections").tag("type", "reused").counter().count());
+        assertEquals(5, meterRegistry.get("brevo.http.call").tag("outcome", "success").timer().count());
+        assertEquals(1.0, meterRegistry.get("brevo.http.pool.idle").gauge().value());
+    }
+
+    @Test
+    public void testClientsShareThePool() throws IOException {
+        client(stub.getAddress().getPort()).send(email("a@example.com"), null);
+        client(stub.getAddress().getPort()).sendVersions(List.of(email("b@example.com"), email("c@example.com")));
+
+        assertEquals(2, requests.size());
+        assertTrue(requests.get(1).contains("messageVersions"));
+        assertEquals(1.0, meterRegistry.get("brevo.http.connections").tag("type", "new").counter().count());
+    }
+
+    @Test
+    public void testFailedCallsAreTimedSeparately() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+
+        assertThrows(IOException.class, () -> client(closedPort).send(email("a@example.com"), null));
+        assertEquals(1, meterRegistry.get("brevo.http.call").tag("outcome", "failure").timer().count());
+        assertEquals(0, meterRegistry.get("brevo.http.call").tag("outcome", "success").timer().count());
+    }
+}
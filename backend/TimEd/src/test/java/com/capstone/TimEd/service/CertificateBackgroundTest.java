@@ -0,0 +1,87 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Background normalization done when a template is compiled
+ */
+public class CertificateBackgroundTest {
+
+    private final CertificateService certificateService = new CertificateService();
+
+    private CompiledCertificateTemplate compile(String backgroundImage) {
+        Certificate template = new Certificate();
+        template.setTitle("CERTIFICATE");
+        template.setBackgroundImage(backgroundImage);
+        return certificateService.compileTemplate(template, "v1");
+    }
+
+    @Test
+    public void testTransparentPngIsFlattenedOntoWhite() throws IOException {
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setColor(Color.RED);
+        g2d.fillRect(100, 0, 100, 100);
+        g2d.dispose();
+
+        CompiledCertificateTemplate compiled = compile(base64(image, "png"));
+
+        BufferedImage normalized = ImageIO.read(new ByteArrayInputStream(compiled.getBackgroundImageBytes()));
+        assertFalse(normalized.getColorModel().hasAlpha());
+        assertEquals(0xFFFFFF, normalized.getRGB(10, 10) & 0xFFFFFF);
+        assertEquals(0xFF0000, normalized.getRGB(150, 10) & 0xFFFFFF);
+        assertNotNull(compiled.getBackgroundImage());
+    }
+
+    @Test
+    public void testJpegIsKeptAsUploaded() throws IOException {
+        BufferedImage image = new BufferedImage(200, 100, BufferedImage.TYPE_INT_RGB);
+        String jpeg = base64(image, "jpg");
+
+        CompiledCertificateTemplate compiled = compile(jpeg);
+
+        assertArrayEquals(Base64.getDecoder().decode(jpeg), compiled.getBackgroundImageBytes());
+    }
+
+    @Test
+    public void testDataUrlPrefixIsAccepted() throws IOException {
+        BufferedImage image = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+
+        CompiledCertificateTemplate compiled = compile("data:image/png;base64," + base64(image, "png"));
+
+        assertNotNull(compiled.getBackgroundImage());
+    }
+
+    @Test
+    public void testUnreadableBackgroundFallsBackToPlainPage() throws IOException {
+        String garbage = Base64.getEncoder().encodeToString("definitely not an image".getBytes());
+
+        CompiledCertificateTemplate compiled = compile(garbage);
+        assertNull(compiled.getBackgroundImage());
+
+        byte[] pdf = certificateService.renderFullCertificate(compiled, "Tech Summit", "June 01, 2025", "Ana Cruz");
+        try (PdfDocument document = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdf)))) {
+            assertEquals(1, document.getNumberOfPages());
+        }
+    }
+
+    private static String base64(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, format, baos);
+        return Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+}
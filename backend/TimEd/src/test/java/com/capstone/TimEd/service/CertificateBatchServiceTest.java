@@ -0,0 +1,181 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.CertificateBatch;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.layout.Document;
+import com.itextpdf.layout.element.Paragraph;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CertificateBatchServiceTest {
+
+    // Last saved copy of each batch, as Firestore would hold it
+    private final Map<String, Map<String, Object>> saved = new ConcurrentHashMap<>();
+
+    private Firestore firestore;
+    private CertificateService certificateService;
+    private AttendanceService attendanceService;
+    private FirebaseEmailService firebaseEmailService;
+    private CertificateBatchService batchService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        firestore = mock(Firestore.class);
+        CollectionReference batches = mock(CollectionReference.class);
+        when(firestore.collection(CertificateBatchService.BATCH_COLLECTION)).thenReturn(batches);
+        when(batches.document(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            DocumentReference ref = mock(DocumentReference.class);
+            when(ref.set(anyMap())).thenAnswer(set -> {
+                saved.put(id, set.getArgument(0));
+                return ApiFutures.immediateFuture(mock(WriteResult.class));
+            });
+            when(ref.get()).thenAnswer(get -> {
+                DocumentSnapshot doc = mock(DocumentSnapshot.class);
+                when(doc.getId()).thenReturn(id);
+                when(doc.exists()).thenReturn(saved.containsKey(id));
+                when(doc.getData()).thenReturn(saved.get(id));
+                return ApiFutures.immediateFuture(doc);
+            });
+            return ref;
+        });
+
+        certificateService = mock(CertificateService.class);
+        attendanceService = mock(AttendanceService.class);
+        firebaseEmailService = mock(FirebaseEmailService.class);
+        when(certificateService.generateStoredCertificate(anyMap(), eq("event1")))
+                .thenReturn(new CertificateService.GeneratedCertificate(new byte[] { 1 }, "key1"));
+        when(attendanceService.getAttendees("event1")).thenReturn(List.of(
+                Map.of("email", "a@example.com", "firstName", "Ana"),
+                Map.of("email", "b@example.com", "firstName", "Ben")));
+
+        batchService = newService();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        batchService.stop();
+    }
+
+    private CertificateBatchService newService() {
+        CertificateBatchService service = new CertificateBatchService(firestore, certificateService,
+                attendanceService, mock(BrevoEmailService.class), firebaseEmailService, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "threadCount", 2);
+        ReflectionTestUtils.setField(service, "retentionMs", 3_600_000L);
+        service.start();
+        return service;
+    }
+
+    private void awaitFinished(CertificateBatch batch) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (batch.isRunning() || !saved.containsKey(batch.getId())
+                || !CertificateBatch.STATUS_DONE.equals(saved.get(batch.getId()).get("status"))) {
+            assertTrue(System.currentTimeMillis() < deadline, "Batch did not finish");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testFinishedBatchIsSaved() throws Exception {
+        CertificateBatch batch = batchService.startAttendanceSend("event1");
+        awaitFinished(batch);
+
+        Map<String, Object> data = saved.get(batch.getId());
+        assertEquals("event1", data.get("eventId"));
+        assertEquals(2, data.get("total"));
+        assertEquals(2, data.get("succeeded"));
+        verify(firebaseEmailService, times(2)).sendCertificateEmail(anyString(), eq("event1"),
+                any(CertificateService.GeneratedCertificate.class));
+    }
+
+    @Test
+    public void testBatchIsReadBackAfterRestart() throws Exception {
+        CertificateBatch batch = batchService.startAttendanceSend("event1");
+        awaitFinished(batch);
+        batchService.stop();
+
+        batchService = newService();
+        CertificateBatch restored = batchService.getBatch(batch.getId());
+
+        assertNotNull(restored);
+        assertEquals(CertificateBatch.STATUS_DONE, restored.getStatus());
+        assertEquals(2, restored.getSucceeded());
+        assertEquals(0, restored.getPending());
+        assertNull(batchService.getBatch("unknown"));
+    }
+
+    @Test
+    public void testAttendeesWithoutEmailAreLeftOut() throws Exception {
+        when(attendanceService.getAttendees("event1")).thenReturn(List.of(
+                Map.of("email", "a@example.com", "firstName", "Ana"),
+                Map.of("email", "", "firstName", "Ben"),
+                Map.of("firstName", "Cara")));
+
+        CertificateBatch batch = batchService.startAttendanceSend("event1");
+        awaitFinished(batch);
+
+        assertEquals(1, batch.getTotal());
+        assertEquals(1, batch.getSucceeded());
+        assertEquals(0, batch.getFailed());
+        verify(certificateService, times(1)).generateStoredCertificate(anyMap(), eq("event1"));
+    }
+
+    @Test
+    public void testArchiveLeavesOutInvalidPdfsAndKeepsNonAsciiNames() throws Exception {
+        Map<String, String> jose = Map.of("firstName", "José", "lastName", "Peña");
+        Map<String, String> broken = Map.of("firstName", "Ben", "lastName", "Reyes");
+        Map<String, String> minjun = Map.of("firstName", "민준", "lastName", "김");
+        Map<String, String> joseAgain = Map.of("firstName", "José", "lastName", "Peña", "email", "j2@example.com");
+        when(certificateService.generateCertificate(jose, "event1")).thenReturn(pdf("José"));
+        when(certificateService.generateCertificate(broken, "event1")).thenReturn(new byte[] { 1, 2, 3 });
+        when(certificateService.generateCertificate(minjun, "event1")).thenReturn(pdf("Minjun"));
+        when(certificateService.generateCertificate(joseAgain, "event1")).thenReturn(pdf("José"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batchService.writeCertificateArchive("event1", List.of(jose, broken, minjun, joseAgain), out);
+
+        List<String> names = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                names.add(entry.getName());
+                assertTrue(CertificateBatchService.checkedPdf(zip.readAllBytes()).length > 0);
+            }
+        }
+        assertEquals(List.of("Peña_José.pdf", "김_민준.pdf", "Peña_José_2.pdf"), names);
+    }
+
+    private static byte[] pdf(String text) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (Document document = new Document(new PdfDocument(new PdfWriter(baos)))) {
+            document.add(new Paragraph(text));
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The merged print PDF written by writeCertificateBook
+ */
+public class CertificateBookTest {
+
+    private CertificateService certificateService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        DocumentSnapshot eventDoc = mock(DocumentSnapshot.class);
+        when(eventDoc.exists()).thenReturn(true);
+        when(eventDoc.getString("eventName")).thenReturn("Tech Summit");
+        when(eventDoc.get("date")).thenReturn("June 01, 2025");
+        EventMetadataCache eventMetadataCache = mock(EventMetadataCache.class);
+        when(eventMetadataCache.get("event1")).thenReturn(new EventMetadataCache.EventMetadata("event1", eventDoc));
+
+        certificateService = new CertificateService();
+        ReflectionTestUtils.setField(certificateService, "eventMetadataCache", eventMetadataCache);
+        ReflectionTestUtils.setField(certificateService, "staticLayerEnabled", true);
+        ReflectionTestUtils.setField(certificateService, "templateCacheSize", 10);
+
+        Certificate template = new Certificate();
+        template.setTitle("CERTIFICATE");
+        template.setShowQRCode(true);
+        certificateService.cacheTemplate("event1", certificateService.compileTemplate(template, "v1"),
+                System.currentTimeMillis());
+    }
+
+    @Test
+    public void testOnePagePerRecipientInOrder() throws Exception {
+        String longName = "Maximiliano Sebastian Alejandro de los Santos y Villanueva-Fernandez III";
+        List<Map<String, String>> recipients = List.of(
+                Map.of("firstName", "Ana", "lastName", "Cruz", "email", "ana@example.com"),
+                Map.of("firstName", "Ben", "lastName", "Reyes", "email", ""), // printed even without an email
+                Map.of("name", longName, "email", "long@example.com")); // too long for the slot, rendered in full
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        certificateService.writeCertificateBook("event1", recipients, out);
+
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(out.toByteArray())))) {
+            assertEquals(3, pdf.getNumberOfPages());
+            assertTrue(PdfTextExtractor.getTextFromPage(pdf.getPage(1)).contains("Ana Cruz"));
+            assertTrue(PdfTextExtractor.getTextFromPage(pdf.getPage(2)).contains("Ben Reyes"));
+            String third = PdfTextExtractor.getTextFromPage(pdf.getPage(3));
+            assertTrue(third.contains("Tech Summit"));
+            assertFalse(third.contains("Ana Cruz"));
+        }
+    }
+}
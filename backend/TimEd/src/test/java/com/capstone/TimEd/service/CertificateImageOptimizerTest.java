@@ -0,0 +1,170 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.service.CertificateImageOptimizer.OptimizedImage;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CertificateImageOptimizerTest {
+
+    private final CertificateImageOptimizer optimizer = new CertificateImageOptimizer();
+
+    @Test
+    public void photoBackgroundIsDownsampledToPageResolutionAsJpeg() throws IOException {
+        byte[] original = encode(photo(3000, 4000), "png");
+
+        OptimizedImage optimized = optimizer.optimizeBackground(original);
+
+        assertEquals("jpeg", optimized.getFormat());
+        assertEquals(optimizer.toPixels(595), optimized.getWidth());
+        assertEquals(optimizer.toPixels(842), optimized.getHeight());
+        assertTrue(optimized.getBytesSaved() > 0);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(optimized.getBytes()));
+        assertEquals(optimized.getWidth(), decoded.getWidth());
+        assertFalse(decoded.getColorModel().hasAlpha());
+    }
+
+    @Test
+    public void transparentSignatureKeepsAlphaAndFitsTheSignatureBox() throws IOException {
+        BufferedImage signature = new BufferedImage(2000, 600, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = signature.createGraphics();
+        g2d.setColor(Color.BLUE);
+        g2d.fillOval(100, 100, 1800, 400);
+        g2d.dispose();
+
+        OptimizedImage optimized = optimizer.optimizeSignature(encode(signature, "png"));
+
+        assertEquals("png", optimized.getFormat());
+        assertTrue(optimized.getWidth() <= optimizer.toPixels(CertificateImageOptimizer.SIGNATURE_WIDTH));
+        assertTrue(optimized.getHeight() <= optimizer.toPixels(CertificateImageOptimizer.SIGNATURE_HEIGHT));
+        assertEquals(2000.0 / 600, (double) optimized.getWidth() / optimized.getHeight(), 0.05);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(optimized.getBytes()));
+        assertTrue(decoded.getColorModel().hasAlpha());
+        assertEquals(0, decoded.getRGB(0, 0) >>> 24);
+    }
+
+    @Test
+    public void opaqueImageWithAlphaChannelIsNotTreatedAsTransparent() throws IOException {
+        BufferedImage logo = new BufferedImage(2000, 2000, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = logo.createGraphics();
+        g2d.setColor(Color.RED);
+        g2d.fillRect(0, 0, 2000, 2000);
+        g2d.dispose();
+
+        OptimizedImage optimized = optimizer.optimizeLogo(encode(logo, "png"), 150, 150);
+
+        assertEquals("png", optimized.getFormat());
+        assertEquals(optimizer.toPixels(CertificateImageOptimizer.MIN_LOGO_SIZE), optimized.getWidth());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(optimized.getBytes()));
+        assertFalse(decoded.getColorModel().hasAlpha());
+    }
+
+    @Test
+    public void watermarkIsNeverResized() throws IOException {
+        OptimizedImage optimized = optimizer.optimizeWatermark(encode(photo(3000, 100), "png"));
+
+        assertEquals(3000, optimized.getWidth());
+        assertEquals(100, optimized.getHeight());
+    }
+
+    @Test
+    public void unreadableDataIsStoredUnchanged() throws IOException {
+        byte[] original = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+
+        OptimizedImage optimized = optimizer.optimizeBackground(original);
+
+        assertEquals("original", optimized.getFormat());
+        assertArrayEquals(original, optimized.getBytes());
+        assertEquals(0, optimized.getBytesSaved());
+    }
+
+    @Test
+    public void cmykJpegIsStoredUnchanged() throws IOException {
+        // ImageIO.read decodes four-channel JPEGs as if they were RGB, so they must be caught from the header
+        WritableRaster raster = Raster.createInterleavedRaster(DataBuffer.TYPE_BYTE, 64, 64, 4, null);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(raster, null, null), null);
+        } finally {
+            writer.dispose();
+        }
+        byte[] original = out.toByteArray();
+
+        OptimizedImage optimized = optimizer.optimizeBackground(original);
+
+        assertEquals("original", optimized.getFormat());
+        assertArrayEquals(original, optimized.getBytes());
+        assertTrue(CertificateImageOptimizer.isFourChannelJpeg(original));
+        assertFalse(CertificateImageOptimizer.isFourChannelJpeg(jpeg(photo(64, 64), 0.8f)));
+    }
+
+    @Test
+    public void imageThatWouldGrowIsStoredUnchanged() throws IOException {
+        byte[] original = jpeg(photo(400, 300), 0.3f);
+
+        OptimizedImage optimized = optimizer.optimizeWatermark(original);
+
+        assertEquals("original", optimized.getFormat());
+        assertArrayEquals(original, optimized.getBytes());
+        assertEquals(400, optimized.getWidth());
+        assertEquals(0, optimized.getBytesSaved());
+    }
+
+    /**
+     * Gradient with per-pixel noise, which compresses like a camera photo rather than flat artwork
+     */
+    private static BufferedImage photo(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 255 / width + random.nextInt(32)) & 0xFF;
+                int green = (y * 255 / height + random.nextInt(32)) & 0xFF;
+                int blue = random.nextInt(64) + 96;
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] jpeg(BufferedImage image, float quality) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        return out.toByteArray();
+    }
+}
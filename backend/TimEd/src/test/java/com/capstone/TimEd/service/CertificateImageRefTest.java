@@ -0,0 +1,115 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Inline images against stored image references when templates are saved, compiled and read back
+ */
+public class CertificateImageRefTest {
+
+    private static final String OLD_REF = "a".repeat(64);
+
+    private CertificateImageStore imageStore;
+    private CertificateService certificateService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference certificates = mock(CollectionReference.class);
+        DocumentReference ref = mock(DocumentReference.class);
+        when(firestore.collection("certificates")).thenReturn(certificates);
+        when(certificates.document(anyString())).thenReturn(ref);
+        when(ref.set(any(Certificate.class))).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        imageStore = mock(CertificateImageStore.class);
+        when(imageStore.get(OLD_REF)).thenReturn(png(10, 10));
+
+        certificateService = new CertificateService();
+        ReflectionTestUtils.setField(certificateService, "firestore", firestore);
+        ReflectionTestUtils.setField(certificateService, "certificateImageStore", imageStore);
+        ReflectionTestUtils.setField(certificateService, "certificatePdfStore", mock(CertificatePdfStore.class));
+        ReflectionTestUtils.setField(certificateService, "templateCacheSize", 10);
+    }
+
+    private Certificate templateReplacingImages(String newImage) {
+        Certificate template = new Certificate();
+        template.setId("t1");
+        template.setTitle("CERTIFICATE");
+        template.setLogoImageRef(OLD_REF);
+        template.setLogoImage(newImage);
+        template.setSignatureImageRefs(new HashMap<>(Map.of("Maria Santos", OLD_REF)));
+        template.setSignatureImages(new HashMap<>(Map.of("Maria Santos", newImage)));
+        return template;
+    }
+
+    @Test
+    public void testStoredImagesReplaceTheirReferences() throws Exception {
+        String newImage = Base64.getEncoder().encodeToString(png(20, 20));
+        String newRef = "b".repeat(64);
+        when(imageStore.put(any())).thenReturn(newRef);
+
+        Certificate saved = certificateService.updateCertificate("t1", templateReplacingImages(newImage));
+
+        assertNull(saved.getLogoImage());
+        assertEquals(newRef, saved.getLogoImageRef());
+        assertTrue(saved.getSignatureImages().isEmpty());
+        assertEquals(newRef, saved.getSignatureImageRefs().get("Maria Santos"));
+    }
+
+    @Test
+    public void testInlineImageWinsWhenTheStoreFails() throws Exception {
+        String newImage = Base64.getEncoder().encodeToString(png(20, 20));
+        when(imageStore.put(any())).thenThrow(new IOException("bucket unavailable"));
+
+        Certificate saved = certificateService.updateCertificate("t1", templateReplacingImages(newImage));
+
+        assertEquals(newImage, saved.getLogoImage());
+        assertNull(saved.getLogoImageRef());
+        assertEquals(newImage, saved.getSignatureImages().get("Maria Santos"));
+        assertFalse(saved.getSignatureImageRefs().containsKey("Maria Santos"));
+    }
+
+    @Test
+    public void testCompileAndInlinePreferInlineData() throws Exception {
+        byte[] newImage = png(20, 20);
+        String newBase64 = Base64.getEncoder().encodeToString(newImage);
+
+        CompiledCertificateTemplate compiled = certificateService.compileTemplate(templateReplacingImages(newBase64),
+                "v1");
+        assertEquals(20f, compiled.getLogoImage().getWidth());
+        assertEquals(20f, compiled.getSignatureImage("Maria Santos").getWidth());
+
+        Certificate inlined = certificateService.inlineImages(templateReplacingImages(newBase64));
+        assertEquals(newBase64, inlined.getLogoImage());
+        assertEquals(newBase64, inlined.getSignatureImages().get("Maria Santos"));
+        verify(imageStore, never()).get(OLD_REF);
+    }
+
+    private static byte[] png(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return baos.toByteArray();
+    }
+}
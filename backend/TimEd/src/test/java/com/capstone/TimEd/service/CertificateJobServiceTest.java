@@ -0,0 +1,162 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.CertificateJob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CertificateJobServiceTest {
+
+    private InMemoryCertificateJobStore jobStore;
+    private CertificateService certificateService;
+    private FirebaseEmailService firebaseEmailService;
+    private CertificateJobService jobService;
+
+    @BeforeEach
+    public void setUp() {
+        jobStore = new InMemoryCertificateJobStore();
+        certificateService = mock(CertificateService.class);
+        firebaseEmailService = mock(FirebaseEmailService.class);
+        jobService = new CertificateJobService(jobStore, certificateService, firebaseEmailService,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jobService, "maxAttempts", 2);
+        ReflectionTestUtils.setField(jobService, "leaseMs", 60_000L);
+    }
+
+    @Test
+    public void testEnqueueIsIdempotentPerEventAndUser() throws Exception {
+        assertTrue(jobService.enqueue("event1", "user1", "a@example.com", "Ana", "Cruz", "2025-01-01 08:00:00", false));
+        assertFalse(jobService.enqueue("event1", "user1", "a@example.com", "Ana", "Cruz", "2025-01-01 08:00:05", false));
+        assertTrue(jobService.enqueue("event1", "user2", "b@example.com", "Ben", "Reyes", "2025-01-01 08:00:00", true));
+
+        assertEquals(2, jobStore.countActive());
+    }
+
+    @Test
+    public void testEnqueueFailureIsThrown() throws Exception {
+        CertificateJobStore failingStore = mock(CertificateJobStore.class);
+        when(failingStore.enqueue(any())).thenThrow(new ExecutionException(new RuntimeException("unavailable")));
+        CertificateJobService service = new CertificateJobService(failingStore, certificateService,
+                firebaseEmailService, new SimpleMeterRegistry());
+
+        assertThrows(ExecutionException.class, () -> service.enqueue("event1", "user1", "a@example.com", "Ana",
+                "Cruz", "2025-01-01 08:00:00", false));
+        assertEquals(0L, service.getStats().get("depth"));
+    }
+
+    @Test
+    public void testProcessGeneratesAndEmailsCertificate() throws Exception {
+        CertificateService.GeneratedCertificate certificate =
+                new CertificateService.GeneratedCertificate(new byte[] { 1, 2, 3 }, "key1");
+        when(certificateService.generateStoredCertificate(anyMap(), eq("event1"))).thenReturn(certificate);
+
+        jobService.enqueue("event1", "user1", "a@example.com", "Ana", "Cruz", "2025-01-01 08:00:00", false);
+        List<CertificateJob> claimed = jobStore.claim(10, System.currentTimeMillis(), 60_000);
+        assertEquals(1, claimed.size());
+
+        jobService.process(claimed.get(0));
+
+        verify(firebaseEmailService).queueCertificateEmail("a@example.com", "event1", certificate);
+        assertEquals(CertificateJob.STATUS_DONE, jobStore.get("event1_user1").getStatus());
+        assertEquals(0, jobStore.countActive());
+        assertEquals(1L, jobService.getStats().get("completed"));
+    }
+
+    @Test
+    public void testFailedJobIsRetriedThenMarkedFailed() throws Exception {
+        when(certificateService.generateStoredCertificate(anyMap(), any())).thenThrow(new RuntimeException("boom"));
+        jobService.enqueue("event1", "user1", "a@example.com", "Ana", "Cruz", "2025-01-01 08:00:00", false);
+
+        CertificateJob first = jobStore.claim(1, System.currentTimeMillis(), 60_000).get(0);
+        jobService.process(first);
+        CertificateJob afterFirst = jobStore.get(first.getId());
+        assertEquals(CertificateJob.STATUS_PENDING, afterFirst.getStatus());
+        assertTrue(afterFirst.getAvailableAt() > System.currentTimeMillis());
+
+        CertificateJob second = jobStore.claim(1, afterFirst.getAvailableAt(), 60_000).get(0);
+        jobService.process(second);
+        assertEquals(CertificateJob.STATUS_FAILED, jobStore.get(first.getId()).getStatus());
+        verify(firebaseEmailService, never()).queueCertificateEmail(any(), any(), any());
+    }
+
+    @Test
+    public void testEmailQueueFailureRetriesJob() throws Exception {
+        when(certificateService.generateStoredCertificate(anyMap(), eq("event1")))
+                .thenReturn(new CertificateService.GeneratedCertificate(new byte[] { 1 }, null));
+        doThrow(new Exception("Firestore unavailable"))
+                .when(firebaseEmailService).queueCertificateEmail(any(), any(), any());
+        jobService.enqueue("event1", "user1", "a@example.com", "Ana", "Cruz", "2025-01-01 08:00:00", false);
+
+        CertificateJob job = jobStore.claim(1, System.currentTimeMillis(), 60_000).get(0);
+        jobService.process(job);
+
+        assertEquals(CertificateJob.STATUS_PENDING, jobStore.get(job.getId()).getStatus());
+        assertEquals(0L, jobService.getStats().get("completed"));
+    }
+
+    @Test
+    public void testExpiredLeaseIsReclaimed() throws Exception {
+        jobService.enqueue("event1", "user1", "a@example.com", "Ana", "Cruz", "2025-01-01 08:00:00", false);
+        long now = System.currentTimeMillis();
+
+        assertEquals(1, jobStore.claim(1, now, 1_000).size());
+        assertTrue(jobStore.claim(1, now + 500, 1_000).isEmpty());
+        assertEquals(1, jobStore.claim(1, now + 1_000, 1_000).size());
+    }
+
+    @Test
+    public void testBurstOfEnqueuesAddsOnePoll() throws Exception {
+        InMemoryCertificateJobStore store = spy(new InMemoryCertificateJobStore());
+        CountDownLatch firstPoll = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            firstPoll.countDown();
+            release.await(); // hold the poller while the burst is enqueued
+            return invocation.callRealMethod();
+        }).doCallRealMethod().when(store).claim(anyInt(), anyLong(), anyLong());
+        when(certificateService.generateStoredCertificate(anyMap(), eq("event1")))
+                .thenReturn(new CertificateService.GeneratedCertificate(new byte[] { 1 }, null));
+
+        CertificateJobService service = new CertificateJobService(store, certificateService, firebaseEmailService,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "workerCount", 8);
+        ReflectionTestUtils.setField(service, "pollIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(service, "leaseMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxAttempts", 2);
+        service.start();
+        try {
+            assertTrue(firstPoll.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 8; i++) {
+                service.enqueue("event1", "user" + i, "user" + i + "@example.com", "Ana", "Cruz",
+                        "2025-01-01 08:00:00", false);
+            }
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while ((long) service.getStats().get("completed") < 8) {
+                assertTrue(System.currentTimeMillis() < deadline, "Jobs were not processed");
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            // The scheduled poll, plus one for the whole burst
+            verify(store, times(2)).claim(anyInt(), anyLong(), anyLong());
+        } finally {
+            service.stop();
+        }
+    }
+}
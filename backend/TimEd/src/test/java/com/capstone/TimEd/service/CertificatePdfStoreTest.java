@@ -0,0 +1,120 @@
+package com.capstone.TimEd.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CertificatePdfStore on a LocalBlobStore in a temporary directory
+ */
+public class CertificatePdfStoreTest {
+
+    @TempDir
+    Path root;
+
+    private LocalBlobStore blobStore;
+    private CertificatePdfStore pdfStore;
+
+    @BeforeEach
+    public void setUp() {
+        blobStore = new LocalBlobStore(root.toString());
+        pdfStore = new CertificatePdfStore(blobStore, new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void testStoredPdfIsReadBack() {
+        assertNull(pdfStore.get("event1", "abc"));
+
+        pdfStore.put("event1", "abc", new byte[] { 1, 2, 3 });
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, pdfStore.get("event1", "abc"));
+    }
+
+    @Test
+    public void testPutIfAbsentNeverOverwrites() throws IOException {
+        assertTrue(blobStore.putIfAbsent("a/b.pdf", new byte[] { 1 }, "application/pdf"));
+        assertFalse(blobStore.putIfAbsent("a/b.pdf", new byte[] { 2 }, "application/pdf"));
+
+        assertArrayEquals(new byte[] { 1 }, blobStore.get("a/b.pdf"));
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void testConcurrentWritersStoreOneObject() throws Exception {
+        int writers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(writers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < writers; i++) {
+                byte[] content = { (byte) i };
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return blobStore.putIfAbsent("event1/same.pdf", content, "application/pdf");
+                }));
+            }
+            start.countDown();
+
+            int stored = 0;
+            int winner = -1;
+            for (int i = 0; i < writers; i++) {
+                if (results.get(i).get()) {
+                    stored++;
+                    winner = i;
+                }
+            }
+            assertEquals(1, stored);
+            assertArrayEquals(new byte[] { (byte) winner }, blobStore.get("event1/same.pdf"));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertNoTempFiles();
+    }
+
+    @Test
+    public void testEvictEventDeletesOnlyThatEvent() {
+        pdfStore.put("event1", "a", new byte[] { 1 });
+        pdfStore.put("event1", "b", new byte[] { 2 });
+        pdfStore.put("event10", "c", new byte[] { 3 });
+
+        assertEquals(2, pdfStore.evictEvent("event1"));
+
+        assertNull(pdfStore.get("event1", "a"));
+        assertNull(pdfStore.get("event1", "b"));
+        assertNotNull(pdfStore.get("event10", "c"));
+    }
+
+    @Test
+    public void testLocalStoreHandsOutNoUrls() {
+        pdfStore.put("event1", "abc", new byte[] { 1 });
+
+        // A file URL would only work on this machine, so emails attach the PDF instead
+        assertNull(pdfStore.signedUrl("event1", "abc", 60_000));
+    }
+
+    @Test
+    public void testPathsCannotEscapeTheRoot() {
+        assertThrows(IOException.class, () -> blobStore.get("../outside.pdf"));
+        assertThrows(IOException.class, () -> blobStore.putIfAbsent("../outside.pdf", new byte[] { 1 }, "application/pdf"));
+    }
+
+    private void assertNoTempFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+}
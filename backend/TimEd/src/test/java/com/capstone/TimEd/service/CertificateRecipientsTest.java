@@ -0,0 +1,136 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CertificateRecipientsTest {
+
+    private Firestore firestore;
+    private CollectionReference users;
+    private CertificateService certificateService;
+
+    @BeforeEach
+    public void setUp() {
+        firestore = mock(Firestore.class);
+        certificateService = new CertificateService();
+        ReflectionTestUtils.setField(certificateService, "firestore", firestore);
+
+        users = mock(CollectionReference.class);
+        when(firestore.collection("users")).thenReturn(users);
+        when(users.document(anyString())).thenAnswer(invocation -> {
+            DocumentReference ref = mock(DocumentReference.class);
+            when(ref.getId()).thenReturn(invocation.getArgument(0));
+            return ref;
+        });
+    }
+
+    private QueryDocumentSnapshot queryDoc(String id, Map<String, Object> data) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.exists()).thenReturn(true);
+        when(doc.getData()).thenReturn(data);
+        data.forEach((key, value) -> when(doc.getString(key)).thenReturn((String) value));
+        return doc;
+    }
+
+    @Test
+    public void testOnlyReferencedUsersAreRead() throws Exception {
+        CollectionReference events = mock(CollectionReference.class);
+        DocumentReference eventRef = mock(DocumentReference.class);
+        CollectionReference attendees = mock(CollectionReference.class);
+        when(firestore.collection("events")).thenReturn(events);
+        when(events.document("event1")).thenReturn(eventRef);
+        when(eventRef.collection("attendees")).thenReturn(attendees);
+        // Built before the when() below: stubbing inside its argument would leave that stubbing unfinished
+        QueryDocumentSnapshot attendeeWithUserId = queryDoc("u1", Map.of("userId", "u1"));
+        QueryDocumentSnapshot legacyAttendee = queryDoc("legacy", Map.of("email", "ben@example.com"));
+        QuerySnapshot attendeeSnapshot = mock(QuerySnapshot.class);
+        when(attendeeSnapshot.getDocuments()).thenReturn(List.of(attendeeWithUserId, legacyAttendee));
+        when(attendees.get()).thenReturn(ApiFutures.immediateFuture(attendeeSnapshot));
+
+        DocumentSnapshot ana = queryDoc("u1", Map.of("email", "ana@example.com", "firstName", "Ana",
+                "lastName", "Cruz"));
+        when(firestore.getAll(any(DocumentReference[].class))).thenReturn(ApiFutures.immediateFuture(List.of(ana)));
+
+        Query byEmail = mock(Query.class);
+        QuerySnapshot emailSnapshot = mock(QuerySnapshot.class);
+        QueryDocumentSnapshot ben = queryDoc("u2", Map.of("email", "ben@example.com", "firstName", "Ben",
+                "lastName", "Reyes"));
+        when(emailSnapshot.getDocuments()).thenReturn(List.of(ben));
+        when(users.whereIn(eq("email"), anyList())).thenReturn(byEmail);
+        when(byEmail.get()).thenReturn(ApiFutures.immediateFuture(emailSnapshot));
+
+        List<Map<String, String>> recipients = certificateService.getCertificateRecipients("event1");
+
+        assertEquals(2, recipients.size());
+        assertEquals("Ana Cruz", recipients.get(0).get("name"));
+        assertEquals("ana@example.com", recipients.get(0).get("email"));
+        assertEquals("Ben Reyes", recipients.get(1).get("name"));
+        verify(users, never()).get();
+        verify(users).whereIn("email", List.of("ben@example.com"));
+    }
+
+    @Test
+    public void testSingleRecipientMatchesTheBulkRead() throws Exception {
+        CollectionReference events = mock(CollectionReference.class);
+        DocumentReference eventRef = mock(DocumentReference.class);
+        CollectionReference attendees = mock(CollectionReference.class);
+        when(firestore.collection("events")).thenReturn(events);
+        when(events.document("event1")).thenReturn(eventRef);
+        when(eventRef.collection("attendees")).thenReturn(attendees);
+        QueryDocumentSnapshot attendee = queryDoc("u1", Map.of("userId", "u1", "email", "ana@school.edu"));
+        QuerySnapshot attendeeSnapshot = mock(QuerySnapshot.class);
+        when(attendeeSnapshot.getDocuments()).thenReturn(List.of(attendee));
+        when(attendees.get()).thenReturn(ApiFutures.immediateFuture(attendeeSnapshot));
+        DocumentReference attendeeRef = mock(DocumentReference.class);
+        when(attendees.document("u1")).thenReturn(attendeeRef);
+        when(attendeeRef.get()).thenReturn(ApiFutures.immediateFuture(attendee));
+        DocumentReference missingRef = mock(DocumentReference.class);
+        DocumentSnapshot missing = mock(DocumentSnapshot.class);
+        when(attendees.document("u9")).thenReturn(missingRef);
+        when(missingRef.get()).thenReturn(ApiFutures.immediateFuture(missing));
+
+        DocumentSnapshot ana = queryDoc("u1", Map.of("email", "ana@example.com", "firstName", "Ana",
+                "lastName", "Cruz"));
+        when(firestore.getAll(any(DocumentReference[].class))).thenReturn(ApiFutures.immediateFuture(List.of(ana)));
+
+        Map<String, String> recipient = certificateService.getCertificateRecipient("event1", "u1");
+
+        assertEquals(certificateService.getCertificateRecipients("event1").get(0), recipient);
+        assertEquals("Ana Cruz", recipient.get("name"));
+        assertNull(certificateService.getCertificateRecipient("event1", "u9"));
+        verify(users, never()).whereIn(anyString(), anyList());
+    }
+
+    @Test
+    public void testEmailSendsSkipRecipientsWithoutEmail() {
+        List<Map<String, String>> recipients = List.of(
+                Map.of("name", "Ana Cruz", "email", "ana@example.com"),
+                Map.of("name", "Ben Reyes", "email", ""),
+                Map.of("name", "Cara Lim"));
+
+        List<Map<String, String>> withEmail = CertificateService.withEmail(recipients);
+
+        assertEquals(1, withEmail.size());
+        assertEquals("ana@example.com", withEmail.get(0).get("email"));
+    }
+}
@@ -0,0 +1,111 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares certificates stamped on the static layer with fully rendered ones.
+ * Timing of the two paths is measured by CertificateRenderBenchmark.
+ */
+public class CertificateStaticLayerTest {
+
+    private CertificateService certificateService;
+    private CompiledCertificateTemplate compiled;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        Certificate template = new Certificate();
+        template.setTitle("CERTIFICATE");
+        template.setBackgroundImage(pngBase64(1600, 1200));
+        template.setLogoImage(pngBase64(200, 200));
+        template.setSignatories(List.of(Map.of("name", "Maria Santos", "title", "Dean")));
+        template.setShowQRCode(true);
+
+        certificateService = new CertificateService();
+        compiled = certificateService.compileTemplate(template, "v1");
+    }
+
+    @Test
+    public void testStampedCertificateHasSameTextAsFullRender() throws IOException {
+        byte[] full = certificateService.renderFullCertificate(compiled, "Tech Summit", "June 01, 2025", "Ana Cruz");
+        byte[] stamped = certificateService.stampCertificate("event1", compiled, "Tech Summit", "June 01, 2025",
+                "Ana Cruz");
+
+        assertNotNull(stamped);
+        String fullText = pageText(full);
+        String stampedText = pageText(stamped);
+        for (String expected : List.of("CERTIFICATE", "Ana Cruz", "Tech Summit", "June 01, 2025", "Maria Santos")) {
+            assertTrue(fullText.contains(expected), "full render is missing " + expected);
+            assertTrue(stampedText.contains(expected), "stamped certificate is missing " + expected);
+        }
+    }
+
+    @Test
+    public void testNameTooLongForSlotFallsBack() throws IOException {
+        String longName = "Maximiliano Sebastian Alejandro de los Santos y Villanueva-Fernandez III";
+        assertNull(certificateService.stampCertificate("event1", compiled, "Tech Summit", "June 01, 2025", longName));
+    }
+
+    @Test
+    public void testEveryStampHasOnlyItsOwnName() throws IOException {
+        // Stamps after the first reuse the parsed layer, so check more than one pass through it
+        for (int i = 0; i < 20; i++) {
+            String text = pageText(certificateService.stampCertificate("event1", compiled, "Tech Summit",
+                    "June 01, 2025", "Attendee " + i));
+            assertTrue(text.contains("Attendee " + i));
+            assertFalse(text.contains("Attendee " + (i - 1)));
+            assertTrue(text.contains("Tech Summit"));
+        }
+    }
+
+    @Test
+    public void testChangedTemplateRebuildsLayer() throws IOException {
+        certificateService.stampCertificate("event1", compiled, "Tech Summit", "June 01, 2025", "Ana Cruz");
+
+        Certificate updated = new Certificate();
+        updated.setTitle("CERTIFICATE OF APPRECIATION");
+        CompiledCertificateTemplate recompiled = certificateService.compileTemplate(updated, "v2");
+        String text = pageText(certificateService.stampCertificate("event1", recompiled, "Tech Summit",
+                "June 01, 2025", "Ana Cruz"));
+
+        assertTrue(text.contains("CERTIFICATE OF APPRECIATION"));
+        assertTrue(text.contains("Ana Cruz"));
+    }
+
+    private static String pageText(byte[] pdfBytes) throws IOException {
+        try (PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(pdfBytes)))) {
+            assertEquals(1, pdf.getNumberOfPages());
+            // Long titles wrap, so compare text with line breaks folded into spaces
+            return PdfTextExtractor.getTextFromPage(pdf.getFirstPage()).replaceAll("\\s+", " ");
+        }
+    }
+
+    private static String pngBase64(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        for (int y = 0; y < height; y += 20) {
+            g2d.setColor(new java.awt.Color((y * 7) % 256, (y * 3) % 256, 200));
+            g2d.fillRect(0, y, width, 20);
+        }
+        g2d.dispose();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+}
@@ -0,0 +1,137 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.Certificate;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfTextExtractor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CertificateTemplateCacheTest {
+
+    private CertificateService certificateService;
+    private Firestore firestore;
+    private CertificatePdfStore certificatePdfStore;
+
+    @BeforeEach
+    public void setUp() {
+        firestore = mock(Firestore.class);
+        certificateService = new CertificateService();
+        ReflectionTestUtils.setField(certificateService, "firestore", firestore);
+        ReflectionTestUtils.setField(certificateService, "templateCacheSize", 2);
+        certificatePdfStore = mock(CertificatePdfStore.class);
+        ReflectionTestUtils.setField(certificateService, "certificatePdfStore", certificatePdfStore);
+    }
+
+    private Certificate template(String id) throws IOException {
+        Certificate template = new Certificate();
+        template.setId(id);
+        template.setTitle("CERTIFICATE");
+        template.setHeaderColor("#1a2b3c");
+        template.setLogoImage(pngBase64(120, 120));
+        template.setWatermarkImage(pngBase64(300, 300));
+        template.setSignatories(List.of(Map.of("name", "Maria Santos", "title", "Dean")));
+        template.setSignatureImages(Map.of("Maria Santos", pngBase64(100, 40)));
+        return template;
+    }
+
+    @Test
+    public void testImagesAndColorsAreNotSharedBetweenRenders() throws IOException {
+        CompiledCertificateTemplate compiled = certificateService.compileTemplate(template("t1"), "v1");
+
+        assertNotNull(compiled.getLogoImage());
+        assertNotSame(compiled.getLogoImage(), compiled.getLogoImage());
+        assertNotSame(compiled.getWatermarkImage(), compiled.getWatermarkImage());
+        assertNotSame(compiled.getSignatureImage("Maria Santos"), compiled.getSignatureImage("Maria Santos"));
+        assertNotSame(compiled.getTitleColor(), compiled.getTitleColor());
+        assertEquals(compiled.getTitleColor(), compiled.getTitleColor());
+    }
+
+    @Test
+    public void testConcurrentRendersFromOneCompiledTemplate() throws Exception {
+        CompiledCertificateTemplate compiled = certificateService.compileTemplate(template("t1"), "v1");
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> renders = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                String name = "Attendee " + i;
+                renders.add(pool.submit(() -> certificateService.renderFullCertificate(compiled, "Tech Summit",
+                        "June 01, 2025", name)));
+            }
+            for (int i = 0; i < renders.size(); i++) {
+                try (PdfDocument pdf = new PdfDocument(new PdfReader(new ByteArrayInputStream(renders.get(i).get())))) {
+                    assertTrue(PdfTextExtractor.getTextFromPage(pdf.getFirstPage()).contains("Attendee " + i));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyChecked() throws IOException {
+        certificateService.cacheTemplate("event1", certificateService.compileTemplate(template("t1"), "v1"), 1);
+        certificateService.cacheTemplate("event2", certificateService.compileTemplate(template("t2"), "v1"), 2);
+        certificateService.cacheTemplate("event3", certificateService.compileTemplate(template("t3"), "v1"), 3);
+
+        assertNull(certificateService.cachedTemplate("event1"));
+        assertNotNull(certificateService.cachedTemplate("event2"));
+        assertNotNull(certificateService.cachedTemplate("event3"));
+    }
+
+    @Test
+    public void testDeleteEvictsOnlyThatTemplate() throws Exception {
+        CollectionReference certificates = mock(CollectionReference.class);
+        DocumentReference ref = mock(DocumentReference.class);
+        when(firestore.collection("certificates")).thenReturn(certificates);
+        when(certificates.document("t1")).thenReturn(ref);
+        DocumentSnapshot doc = mock(DocumentSnapshot.class);
+        when(doc.exists()).thenReturn(true);
+        Certificate stored = template("t1");
+        stored.setEventId("event1");
+        when(doc.toObject(Certificate.class)).thenReturn(stored);
+        when(ref.get()).thenReturn(ApiFutures.immediateFuture(doc));
+        when(ref.delete()).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        certificateService.cacheTemplate("event1", certificateService.compileTemplate(template("t1"), "v1"), 1);
+        certificateService.cacheTemplate("event2", certificateService.compileTemplate(template("t2"), "v1"), 2);
+
+        certificateService.deleteCertificate("t1");
+
+        assertNull(certificateService.cachedTemplate("event1"));
+        assertNotNull(certificateService.cachedTemplate("event2"));
+        verify(certificatePdfStore).evictEvent("event1");
+        verify(certificatePdfStore, never()).evictEvent("event2");
+    }
+
+    private static String pngBase64(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", baos);
+        return Base64.getEncoder().encodeToString(baos.toByteArray());
+    }
+}
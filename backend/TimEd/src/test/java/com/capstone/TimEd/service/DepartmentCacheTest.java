@@ -0,0 +1,94 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class DepartmentCacheTest {
+
+    private Firestore firestore;
+    private CollectionReference departments;
+    private EventListener<QuerySnapshot> listener;
+    private DepartmentCache departmentCache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        firestore = mock(Firestore.class);
+        departments = mock(CollectionReference.class);
+        when(firestore.collection("departments")).thenReturn(departments);
+        when(departments.document(anyString())).thenAnswer(invocation -> mock(DocumentReference.class));
+
+        departmentCache = new DepartmentCache(firestore);
+        departmentCache.start();
+        ArgumentCaptor<EventListener<QuerySnapshot>> captor = ArgumentCaptor.forClass(EventListener.class);
+        verify(departments).addSnapshotListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    private DocumentChange change(DocumentChange.Type type, String id, String name) {
+        QueryDocumentSnapshot doc = mock(QueryDocumentSnapshot.class);
+        when(doc.getId()).thenReturn(id);
+        when(doc.getString("name")).thenReturn(name);
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getType()).thenReturn(type);
+        when(change.getDocument()).thenReturn(doc);
+        return change;
+    }
+
+    private void deliver(DocumentChange... changes) {
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocumentChanges()).thenReturn(List.of(changes));
+        listener.onEvent(snapshot, null);
+    }
+
+    @Test
+    public void testListenerServesNamesWithoutReads() throws Exception {
+        deliver(change(DocumentChange.Type.ADDED, "cs", "Computer Science"),
+                change(DocumentChange.Type.ADDED, "ee", "Electrical Engineering"));
+
+        Map<String, String> names = departmentCache.getNames(List.of("cs", "ee", "unknown"));
+
+        assertEquals(Map.of("cs", "Computer Science", "ee", "Electrical Engineering"), names);
+        verify(firestore, never()).getAll(any(DocumentReference[].class));
+    }
+
+    @Test
+    public void testChangesAndRemovalsAreApplied() throws Exception {
+        deliver(change(DocumentChange.Type.ADDED, "cs", "Computer Science"));
+        deliver(change(DocumentChange.Type.MODIFIED, "cs", "Computing"));
+        assertEquals("Computing", departmentCache.getName("cs"));
+
+        deliver(change(DocumentChange.Type.REMOVED, "cs", null));
+        assertNull(departmentCache.getName("cs"));
+    }
+
+    @Test
+    public void testFallsBackToBatchedReadBeforeFirstSnapshot() throws Exception {
+        DocumentSnapshot cs = mock(DocumentSnapshot.class);
+        when(cs.exists()).thenReturn(true);
+        when(cs.getId()).thenReturn("cs");
+        when(cs.getString("name")).thenReturn("Computer Science");
+        when(firestore.getAll(any(DocumentReference[].class))).thenReturn(ApiFutures.immediateFuture(List.of(cs)));
+
+        assertEquals(Map.of("cs", "Computer Science"), departmentCache.getNames(List.of("cs", "cs")));
+        verify(firestore, times(1)).getAll(any(DocumentReference[].class));
+    }
+}
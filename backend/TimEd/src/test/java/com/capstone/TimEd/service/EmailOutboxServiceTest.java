@@ -0,0 +1,328 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Runs the outbox dispatcher against a local HTTP stub that stands in for Brevo's /smtp/email endpoint.
+ */
+public class EmailOutboxServiceTest {
+
+    @TempDir
+    Path blobDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final AtomicInteger rateLimitedResponses = new AtomicInteger();
+    private final AtomicInteger droppedResponses = new AtomicInteger();
+    private volatile long latencyMs;
+
+    private HttpServer stub;
+    private InMemoryEmailOutboxStore outboxStore;
+    private SimpleMeterRegistry meterRegistry;
+    private EmailOutboxService outboxService;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/v3/smtp/email", this::handle);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.start();
+
+        outboxStore = new InMemoryEmailOutboxStore();
+        meterRegistry = new SimpleMeterRegistry();
+        BrevoClient brevoClient = new BrevoClient("http://localhost:" + stub.getAddress().getPort() + "/v3",
+                "test-key", new OkHttpClient.Builder().retryOnConnectionFailure(false).build());
+        ResilientEmailSender emailSender = new ResilientEmailSender(brevoClient, mock(SmtpEmailClient.class),
+                meterRegistry);
+        ReflectionTestUtils.setField(emailSender, "failureThreshold", 5);
+        ReflectionTestUtils.setField(emailSender, "openMs", 30_000L);
+        ReflectionTestUtils.setField(emailSender, "bulkheadWaitMs", 1_000L);
+        ReflectionTestUtils.setField(emailSender, "brevoMaxConcurrent", 8);
+        emailSender.start();
+        outboxService = new EmailOutboxService(outboxStore, new LocalBlobStore(blobDir.toString()), emailSender,
+                meterRegistry);
+        ReflectionTestUtils.setField(outboxService, "enabled", true);
+        ReflectionTestUtils.setField(outboxService, "concurrency", 4);
+        ReflectionTestUtils.setField(outboxService, "batchSize", 50);
+        ReflectionTestUtils.setField(outboxService, "requestsPerSecond", 0.0);
+        ReflectionTestUtils.setField(outboxService, "pollIntervalMs", 10L);
+        ReflectionTestUtils.setField(outboxService, "leaseMs", 60_000L);
+        ReflectionTestUtils.setField(outboxService, "maxAttempts", 3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        outboxService.stop();
+        stub.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int active = concurrent.incrementAndGet();
+        maxConcurrent.accumulateAndGet(active, Math::max);
+        try {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            requests.add(objectMapper.readTree(body));
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+
+            if (droppedResponses.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                return; // close the connection without answering, as if the response was lost
+            }
+
+            int status = 201;
+            String response = "{\"messageId\":\"<stub@brevo>\"}";
+            if (!"test-key".equals(exchange.getRequestHeaders().getFirst("api-key"))) {
+                status = 401;
+                response = "{\"code\":\"unauthorized\"}";
+            } else if (rateLimitedResponses.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                status = 429;
+                response = "{\"code\":\"too_many_requests\"}";
+                exchange.getResponseHeaders().add("x-sib-ratelimit-reset", "1");
+            } else if (body.contains("bad@example.com")) {
+                status = 400;
+                response = "{\"code\":\"invalid_parameter\",\"message\":\"email is not valid\"}";
+            }
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            exchange.getResponseBody().write(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            concurrent.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void awaitDrained(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (outboxStore.countActive() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Outbox did not drain in " + timeoutMs + " ms");
+            Thread.sleep(10);
+        }
+    }
+
+    private OutboxEmail notification(String toEmail) {
+        return new OutboxEmail(toEmail, "Account approved", "<p>Welcome " + toEmail + "</p>", null,
+                List.of("notification", "account-management"));
+    }
+
+    @Test
+    public void testNotificationsAreBatchedIntoMessageVersions() throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            ids.add(outboxService.enqueue(notification("user" + i + "@example.com"), null));
+        }
+
+        outboxService.start();
+        awaitDrained(10_000);
+
+        assertEquals(3, requests.size()); // 50 + 50 + 20
+        int versions = 0;
+        for (JsonNode request : requests) {
+            versions += request.get("messageVersions").size();
+            assertEquals("notification", request.get("tags").get(0).asText());
+        }
+        assertEquals(120, versions);
+        for (String id : ids) {
+            assertEquals(OutboxEmail.STATUS_DONE, outboxStore.get(id).getStatus());
+        }
+        assertEquals(120L, outboxService.getStats().get("sent"));
+    }
+
+    @Test
+    public void testRateLimitPausesDispatchWithoutUsingAnAttempt() throws Exception {
+        rateLimitedResponses.set(1);
+        String id = outboxService.enqueue(notification("a@example.com"), null);
+
+        long start = System.currentTimeMillis();
+        outboxService.start();
+        awaitDrained(10_000);
+
+        assertEquals(2, requests.size());
+        assertTrue(System.currentTimeMillis() - start >= 900, "Retried before the rate limit window reset");
+        OutboxEmail email = outboxStore.get(id);
+        assertEquals(OutboxEmail.STATUS_DONE, email.getStatus());
+        assertEquals(1, email.getAttempts());
+        assertEquals(1L, outboxService.getStats().get("rateLimited"));
+    }
+
+    @Test
+    public void testRejectedBatchIsSplitSoOnlyTheBadAddressFails() throws Exception {
+        String good1 = outboxService.enqueue(notification("a@example.com"), null);
+        String bad = outboxService.enqueue(notification("bad@example.com"), null);
+        String good2 = outboxService.enqueue(notification("b@example.com"), null);
+
+        outboxService.start();
+        awaitDrained(10_000);
+
+        assertEquals(4, requests.size()); // the rejected batch, then one request per email
+        assertEquals(OutboxEmail.STATUS_DONE, outboxStore.get(good1).getStatus());
+        assertEquals(OutboxEmail.STATUS_DONE, outboxStore.get(good2).getStatus());
+        assertEquals(OutboxEmail.STATUS_FAILED, outboxStore.get(bad).getStatus());
+    }
+
+    @Test
+    public void testEmailThatMayHaveBeenSentIsNotResent() throws Exception {
+        droppedResponses.set(2);
+        OutboxEmail certificate = notification("admin@example.com");
+        certificate.setAttachmentName("Certificate.pdf");
+        String single = outboxService.enqueue(certificate, new byte[] { 1 });
+        String batched1 = outboxService.enqueue(notification("a@example.com"), null);
+        String batched2 = outboxService.enqueue(notification("b@example.com"), null);
+
+        outboxService.start();
+        awaitDrained(10_000);
+
+        assertEquals(2, requests.size()); // neither the single email nor the batch was sent again
+        for (String id : List.of(single, batched1, batched2)) {
+            assertEquals(OutboxEmail.STATUS_FAILED, outboxStore.get(id).getStatus());
+            assertTrue(outboxStore.get(id).getLastError().contains("may have sent the email"));
+        }
+    }
+
+    @Test
+    public void testBulkCertificateSendRespectsConcurrencyCap() throws Exception {
+        int emails = 200;
+        latencyMs = 20;
+        byte[] pdf = new byte[32 * 1024];
+        for (int i = 0; i < emails; i++) {
+            OutboxEmail email = new OutboxEmail("user" + i + "@example.com", "Your Certificate for Event: event1",
+                    "<p>Please find your certificate attached.</p>", null, List.of("certificate", "event-completion"));
+            email.setAttachmentName("Certificate.pdf");
+            outboxService.enqueue(email, pdf);
+        }
+
+        long start = System.nanoTime();
+        outboxService.start();
+        awaitDrained(30_000);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        assertEquals(emails, requests.size());
+        assertTrue(maxConcurrent.get() <= 4, "Brevo saw " + maxConcurrent.get() + " concurrent requests");
+        for (JsonNode request : requests) {
+            assertEquals("Certificate.pdf", request.get("attachment").get(0).get("name").asText());
+        }
+        assertEquals(emails, (long) meterRegistry.get("email.outbox.request").timer().count());
+        System.out.printf("[EmailOutboxServiceTest] Sent %d certificate emails in %.2f s (%.0f emails/s, "
+                + "%d ms stub latency, max %d concurrent requests)%n", emails, seconds, emails / seconds, latencyMs,
+                maxConcurrent.get());
+
+        // Attachments are removed once sent
+        outboxService.stop();
+        assertEquals(0, new LocalBlobStore(blobDir.toString()).deletePrefix(EmailOutboxService.ATTACHMENT_ROOT));
+    }
+
+    @Test
+    public void testRequestsAreSpacedToTheConfiguredRate() throws Exception {
+        ReflectionTestUtils.setField(outboxService, "requestsPerSecond", 20.0);
+        for (int i = 0; i < 10; i++) {
+            OutboxEmail email = notification("user" + i + "@example.com");
+            email.setAttachmentName("Certificate.pdf");
+            outboxService.enqueue(email, new byte[] { 1 });
+        }
+
+        long start = System.nanoTime();
+        outboxService.start();
+        awaitDrained(10_000);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(10, requests.size());
+        assertTrue(elapsedMs >= 400, "10 requests at 20/s finished in " + elapsedMs + " ms");
+    }
+
+    @Test
+    public void testOtpIsSentAheadOfABulkSend() throws Exception {
+        ReflectionTestUtils.setField(outboxService, "concurrency", 2);
+        latencyMs = 100;
+        for (int i = 0; i < 20; i++) {
+            OutboxEmail email = new OutboxEmail("user" + i + "@example.com", "Your Certificate for Event: event1",
+                    "<p>Please find your certificate attached.</p>", null, List.of("certificate", "event-completion"));
+            email.setAttachmentName("Certificate.pdf");
+            outboxService.enqueue(email, new byte[] { 1 });
+        }
+        outboxService.start();
+        Thread.sleep(150);
+
+        OutboxEmail otp = new OutboxEmail("admin@example.com", "Verification Code", "<p>123456</p>", null,
+                List.of("otp-verification"));
+        otp.setPriority(OutboxEmail.PRIORITY_HIGH);
+        long start = System.currentTimeMillis();
+        String status = outboxService.enqueueAndWait(otp, null, 5_000);
+
+        assertEquals(OutboxEmail.STATUS_DONE, status);
+        assertTrue(System.currentTimeMillis() - start < 1_000, "OTP waited behind the bulk send");
+        assertTrue(outboxStore.countActive() > 0, "Bulk send finished before the OTP was sent");
+        awaitDrained(10_000);
+    }
+
+    @Test
+    public void testEnqueueAndWaitReportsAFailedDelivery() throws Exception {
+        outboxService.start();
+
+        String status = outboxService.enqueueAndWait(notification("bad@example.com"), null, 5_000);
+
+        assertEquals(OutboxEmail.STATUS_FAILED, status);
+    }
+
+    @Test
+    public void testExpiredEmailIsNeverSent() throws Exception {
+        OutboxEmail otp = notification("admin@example.com");
+        otp.setExpiresAt(System.currentTimeMillis() - 1);
+        String id = outboxService.enqueue(otp, null);
+
+        outboxService.start();
+        awaitDrained(10_000);
+
+        assertEquals(0, requests.size());
+        assertEquals(OutboxEmail.STATUS_FAILED, outboxStore.get(id).getStatus());
+    }
+
+    @Test
+    public void testFinishedEmailsArePurgedAfterRetention() throws Exception {
+        String sent = outboxService.enqueue(notification("a@example.com"), null);
+        outboxService.start();
+        awaitDrained(10_000);
+        outboxService.stop();
+        OutboxEmail pending = notification("b@example.com");
+        pending.setId("pending");
+        outboxStore.enqueue(pending);
+
+        ReflectionTestUtils.setField(outboxService, "retentionMs", 60_000L);
+        outboxService.purgeFinished();
+        assertNotNull(outboxStore.get(sent));
+
+        ReflectionTestUtils.setField(outboxService, "retentionMs", -1L);
+        outboxService.purgeFinished();
+        assertNull(outboxStore.get(sent));
+        assertEquals(OutboxEmail.STATUS_PENDING, outboxStore.get("pending").getStatus());
+    }
+}
@@ -0,0 +1,126 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class EventMetadataCacheTest {
+
+    private final Map<String, DocumentReference> refs = new HashMap<>();
+    private final Map<String, ListenerRegistration> registrations = new HashMap<>();
+    private final Map<String, EventListener<DocumentSnapshot>> listeners = new HashMap<>();
+
+    private Firestore firestore;
+    private EventMetadataCache cache;
+
+    @BeforeEach
+    public void setUp() {
+        firestore = mock(Firestore.class);
+        CollectionReference events = mock(CollectionReference.class);
+        when(firestore.collection("events")).thenReturn(events);
+        when(events.document(anyString())).thenAnswer(invocation -> refs.get(invocation.<String>getArgument(0)));
+
+        cache = new EventMetadataCache(firestore, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "ttlMs", 300_000L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private DocumentReference event(String eventId, boolean exists) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(exists);
+        when(snapshot.getString("eventName")).thenReturn(exists ? "Event " + eventId : null);
+        DocumentReference ref = mock(DocumentReference.class);
+        when(ref.get()).thenReturn(ApiFutures.immediateFuture(snapshot));
+        ListenerRegistration registration = mock(ListenerRegistration.class);
+        when(ref.addSnapshotListener(any(EventListener.class))).thenAnswer(invocation -> {
+            listeners.put(eventId, invocation.getArgument(0));
+            return registration;
+        });
+        refs.put(eventId, ref);
+        registrations.put(eventId, registration);
+        return ref;
+    }
+
+    @Test
+    public void testExistingEventIsCachedWithOneListener() throws Exception {
+        DocumentReference ref = event("event1", true);
+
+        assertEquals("Event event1", cache.get("event1").getEventName());
+        assertEquals("Event event1", cache.get("event1").getEventName());
+
+        verify(ref, times(1)).get();
+        verify(ref, times(1)).addSnapshotListener(any(EventListener.class));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testMissingEventIsNotCachedOrListened() throws Exception {
+        DocumentReference ref = event("nope", false);
+
+        assertFalse(cache.get("nope").exists());
+        assertFalse(cache.get("nope").exists());
+
+        verify(ref, times(2)).get();
+        verify(ref, never()).addSnapshotListener(any(EventListener.class));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testCapEvictsLeastRecentlyUsedAndClosesItsListener() throws Exception {
+        event("event1", true);
+        event("event2", true);
+        event("event3", true);
+
+        cache.get("event1");
+        Thread.sleep(5);
+        cache.get("event2");
+        Thread.sleep(5);
+        cache.get("event3");
+
+        assertEquals(2, cache.size());
+        verify(registrations.get("event1")).remove();
+        verify(registrations.get("event2"), never()).remove();
+    }
+
+    @Test
+    public void testEvictIdleClosesListener() throws Exception {
+        event("event1", true);
+        cache.get("event1");
+
+        ReflectionTestUtils.setField(cache, "ttlMs", -1L);
+        cache.evictIdle();
+
+        assertEquals(0, cache.size());
+        verify(registrations.get("event1")).remove();
+    }
+
+    @Test
+    public void testDeletedEventIsDropped() throws Exception {
+        event("event1", true);
+        cache.get("event1");
+
+        DocumentSnapshot deleted = mock(DocumentSnapshot.class);
+        when(deleted.exists()).thenReturn(false);
+        listeners.get("event1").onEvent(deleted, null);
+
+        assertEquals(0, cache.size());
+        verify(registrations.get("event1")).remove();
+    }
+}
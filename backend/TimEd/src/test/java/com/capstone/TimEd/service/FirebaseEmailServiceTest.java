@@ -0,0 +1,138 @@
+package com.capstone.TimEd.service;
+
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * How certificate PDFs are attached to the mail documents read by the Trigger Email extension
+ */
+public class FirebaseEmailServiceTest {
+
+    private static final byte[] PDF = { 1, 2, 3 };
+
+    @TempDir
+    Path root;
+
+    // Mail documents as created, by document ID
+    private final Map<String, Map<String, Object>> created = new ConcurrentHashMap<>();
+
+    private Firestore firestore;
+    private EventMetadataCache eventMetadataCache;
+    private BlobStore blobStore;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        firestore = mock(Firestore.class);
+        CollectionReference mail = mock(CollectionReference.class);
+        when(firestore.collection("mail")).thenReturn(mail);
+        when(mail.document(anyString())).thenAnswer(invocation -> {
+            String id = invocation.getArgument(0);
+            DocumentReference ref = mock(DocumentReference.class);
+            when(ref.getId()).thenReturn(id);
+            when(ref.create(anyMap())).thenAnswer(create -> {
+                created.put(id, create.getArgument(0));
+                return ApiFutures.immediateFuture(mock(WriteResult.class));
+            });
+            return ref;
+        });
+
+        DocumentSnapshot eventDoc = mock(DocumentSnapshot.class);
+        when(eventDoc.exists()).thenReturn(true);
+        when(eventDoc.getString("eventName")).thenReturn("Tech Summit");
+        eventMetadataCache = mock(EventMetadataCache.class);
+        when(eventMetadataCache.get("event1")).thenReturn(new EventMetadataCache.EventMetadata("event1", eventDoc));
+
+        blobStore = mock(BlobStore.class);
+        when(blobStore.signedUrl(anyString(), anyLong()))
+                .thenAnswer(invocation -> "https://storage.example/" + invocation.getArgument(0));
+    }
+
+    private FirebaseEmailService newService(BlobStore store) {
+        FirebaseEmailService service = new FirebaseEmailService(firestore, eventMetadataCache,
+                new CertificatePdfStore(store, new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(service, "attachmentUrlTtlMs", 604_800_000L);
+        ReflectionTestUtils.setField(service, "recentSendsSize", 100);
+        return service;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> attachment(Map<String, Object> mailDocument) {
+        Map<String, Object> message = (Map<String, Object>) mailDocument.get("message");
+        return ((List<Map<String, Object>>) message.get("attachments")).get(0);
+    }
+
+    @Test
+    public void testStoredCertificateIsLinkedWithoutACopy() throws Exception {
+        newService(blobStore).queueCertificateEmail("ana@example.com", "event1",
+                new CertificateService.GeneratedCertificate(PDF, "key1"));
+
+        Map<String, Object> mailDocument = created.get("certificate_event1_ana");
+        assertEquals("generated-certificates/event1/key1.pdf", mailDocument.get("attachmentPath"));
+        Map<String, Object> attachment = attachment(mailDocument);
+        assertEquals("https://storage.example/generated-certificates/event1/key1.pdf", attachment.get("path"));
+        assertFalse(attachment.containsKey("content"));
+        verify(blobStore).signedUrl("generated-certificates/event1/key1.pdf", 604_800_000L);
+        verify(blobStore, never()).putIfAbsent(anyString(), any(), anyString());
+    }
+
+    @Test
+    public void testUnstoredCertificateIsAttachedInline() throws Exception {
+        newService(blobStore).queueCertificateEmail("ana@example.com", "event1",
+                new CertificateService.GeneratedCertificate(PDF, null));
+
+        Map<String, Object> mailDocument = created.get("certificate_event1_ana");
+        assertFalse(mailDocument.containsKey("attachmentPath"));
+        assertEquals(Base64.getEncoder().encodeToString(PDF), attachment(mailDocument).get("content"));
+        verify(blobStore, never()).signedUrl(anyString(), anyLong());
+    }
+
+    @Test
+    public void testLocalStoreAttachesInline() throws Exception {
+        LocalBlobStore localStore = new LocalBlobStore(root.toString());
+        new CertificatePdfStore(localStore, new SimpleMeterRegistry()).put("event1", "key1", PDF);
+
+        newService(localStore).queueCertificateEmail("ana@example.com", "event1",
+                new CertificateService.GeneratedCertificate(PDF, "key1"));
+
+        Map<String, Object> attachment = attachment(created.get("certificate_event1_ana"));
+        assertFalse(attachment.containsKey("path"));
+        assertEquals(Base64.getEncoder().encodeToString(PDF), attachment.get("content"));
+    }
+
+    @Test
+    public void testSigningFailureAttachesInline() throws Exception {
+        when(blobStore.signedUrl(anyString(), anyLong())).thenThrow(new IOException("no signing key"));
+
+        newService(blobStore).queueCertificateEmail("ana@example.com", "event1",
+                new CertificateService.GeneratedCertificate(PDF, "key1"));
+
+        assertEquals(Base64.getEncoder().encodeToString(PDF),
+                attachment(created.get("certificate_event1_ana")).get("content"));
+        verify(blobStore).signedUrl(eq("generated-certificates/event1/key1.pdf"), anyLong());
+    }
+}
@@ -0,0 +1,275 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.OutboxEmail;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Drives ResilientEmailSender against a Brevo stub that injects faults: scripted error statuses,
+ * dropped connections and slow responses. SMTP is a Mockito mock.
+ */
+public class ResilientEmailSenderTest {
+
+    // Scripted responses, consumed one per request; 0 drops the connection. Empty means 201.
+    private final ConcurrentLinkedQueue<Integer> faults = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger brevoRequests = new AtomicInteger();
+    private volatile long latencyMs;
+    private volatile boolean down;
+
+    private HttpServer stub;
+    private SmtpEmailClient smtpEmailClient;
+    private SimpleMeterRegistry meterRegistry;
+    private ResilientEmailSender sender;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        stub = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        stub.createContext("/v3/smtp/email", this::handle);
+        stub.setExecutor(Executors.newCachedThreadPool());
+        stub.start();
+
+        smtpEmailClient = mock(SmtpEmailClient.class);
+        sender = newSender(stub.getAddress().getPort());
+    }
+
+    private ResilientEmailSender newSender(int brevoPort) {
+        meterRegistry = new SimpleMeterRegistry();
+        BrevoClient brevoClient = new BrevoClient("http://localhost:" + brevoPort + "/v3",
+                "test-key", new OkHttpClient.Builder()
+                .readTimeout(500, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false) // every injected fault must reach the sender
+                .build());
+        ResilientEmailSender sender = new ResilientEmailSender(brevoClient, smtpEmailClient, meterRegistry);
+        ReflectionTestUtils.setField(sender, "smtpFallback", true);
+        ReflectionTestUtils.setField(sender, "failureThreshold", 3);
+        ReflectionTestUtils.setField(sender, "openMs", 300L);
+        ReflectionTestUtils.setField(sender, "retries", 1);
+        ReflectionTestUtils.setField(sender, "retryBaseMs", 10L);
+        ReflectionTestUtils.setField(sender, "retryMaxMs", 50L);
+        ReflectionTestUtils.setField(sender, "bulkheadWaitMs", 20L);
+        ReflectionTestUtils.setField(sender, "brevoMaxConcurrent", 1);
+        ReflectionTestUtils.setField(sender, "smtpMaxConcurrent", 1);
+        sender.start();
+        return sender;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        stub.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        brevoRequests.incrementAndGet();
+        try {
+            exchange.getRequestBody().readAllBytes();
+            if (latencyMs > 0) {
+                Thread.sleep(latencyMs);
+            }
+            Integer fault = faults.poll();
+            int status = down ? 503 : fault != null ? fault : 201;
+            if (status == 0) {
+                return; // close without a response, like a dropped connection
+            }
+            byte[] body = (status == 201 ? "{\"messageId\":\"<stub@brevo>\"}" : "{\"code\":\"injected\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private OutboxEmail email(String toEmail) {
+        OutboxEmail email = new OutboxEmail(toEmail, "Subject", "<p>Hi</p>", null, List.of("notification"));
+        email.setId(toEmail);
+        return email;
+    }
+
+    private double circuitGauge(String provider) {
+        return meterRegistry.get("email.provider.circuit").tag("provider", provider).gauge().value();
+    }
+
+    @Test
+    public void testTransientFailureIsRetriedOnBrevo() throws Exception {
+        faults.add(502);
+
+        assertEquals(ResilientEmailSender.BREVO, sender.send(email("a@example.com"), null));
+        assertEquals(2, brevoRequests.get());
+        verify(smtpEmailClient, never()).send(any(), any());
+        assertEquals(EmailCircuitBreaker.State.CLOSED, sender.getState(ResilientEmailSender.BREVO));
+    }
+
+    @Test
+    public void testConnectFailureFallsBackToSmtp() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        sender = newSender(closedPort);
+        OutboxEmail email = email("a@example.com");
+        byte[] pdf = new byte[] { 1, 2, 3 };
+
+        assertEquals(ResilientEmailSender.SMTP, sender.send(email, pdf));
+        verify(smtpEmailClient).send(email, pdf);
+        assertEquals(1.0, meterRegistry.get("email.provider.fallbacks").counter().count());
+    }
+
+    @Test
+    public void testDroppedResponseIsNotRetriedOrFallenBack() {
+        // Brevo read the request before the connection dropped, so the email may already be sent
+        faults.add(0);
+
+        assertThrows(EmailMaybeSentException.class, () -> sender.send(email("a@example.com"), null));
+        assertEquals(1, brevoRequests.get());
+        verifyNoInteractions(smtpEmailClient);
+        assertEquals(0.0, meterRegistry.get("email.provider.fallbacks").counter().count());
+    }
+
+    @Test
+    public void testReadTimeoutIsNotRetriedOrFallenBack() {
+        latencyMs = 1_000;
+
+        assertThrows(EmailMaybeSentException.class, () -> sender.send(email("slow@example.com"), null));
+        assertEquals(1, brevoRequests.get());
+        verifyNoInteractions(smtpEmailClient);
+        assertEquals(1.0, meterRegistry.get("email.provider.calls").tag("provider", ResilientEmailSender.BREVO)
+                .tag("outcome", "failure").counter().count());
+    }
+
+    @Test
+    public void testUnexpectedErrorReleasesTheProbe() throws Exception {
+        down = true;
+        doThrow(new IOException("SMTP down")).when(smtpEmailClient).send(any(), any());
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> sender.send(email("a@example.com"), null));
+        }
+        assertEquals(EmailCircuitBreaker.State.OPEN, sender.getState(ResilientEmailSender.SMTP));
+        Thread.sleep(350);
+
+        // The SMTP probe blows up with a bug rather than an IOException
+        doThrow(new IllegalStateException("bug")).when(smtpEmailClient).send(any(), any());
+        assertThrows(IllegalStateException.class, () -> sender.send(email("probe@example.com"), null));
+        assertEquals(0.0, meterRegistry.get("email.provider.fallbacks").counter().count());
+
+        // The probe was given back, so the next call can still close the circuit
+        doNothing().when(smtpEmailClient).send(any(), any());
+        assertEquals(ResilientEmailSender.SMTP, sender.send(email("next@example.com"), null));
+        assertEquals(EmailCircuitBreaker.State.CLOSED, sender.getState(ResilientEmailSender.SMTP));
+        assertEquals(1.0, meterRegistry.get("email.provider.fallbacks").counter().count());
+    }
+
+    @Test
+    public void testOutageOpensCircuitAndSkipsBrevo() throws Exception {
+        down = true;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(ResilientEmailSender.SMTP, sender.send(email("user" + i + "@example.com"), null));
+        }
+        assertEquals(EmailCircuitBreaker.State.OPEN, sender.getState(ResilientEmailSender.BREVO));
+        assertEquals(2.0, circuitGauge(ResilientEmailSender.BREVO));
+        int requestsWhenOpened = brevoRequests.get();
+        assertEquals(6, requestsWhenOpened); // three sends, each tried twice
+
+        // While open, Brevo is not called at all
+        long start = System.nanoTime();
+        assertEquals(ResilientEmailSender.SMTP, sender.send(email("late@example.com"), null));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 100);
+        assertEquals(requestsWhenOpened, brevoRequests.get());
+
+        // After the open period one probe goes through and closes the circuit once Brevo is back
+        down = false;
+        Thread.sleep(350);
+        assertEquals(ResilientEmailSender.BREVO, sender.send(email("back@example.com"), null));
+        assertEquals(EmailCircuitBreaker.State.CLOSED, sender.getState(ResilientEmailSender.BREVO));
+        assertEquals(0.0, circuitGauge(ResilientEmailSender.BREVO));
+    }
+
+    @Test
+    public void testFailedProbeReopensCircuit() throws Exception {
+        down = true;
+        for (int i = 0; i < 3; i++) {
+            sender.send(email("user" + i + "@example.com"), null);
+        }
+        Thread.sleep(350);
+
+        sender.send(email("probe@example.com"), null);
+        assertEquals(EmailCircuitBreaker.State.OPEN, sender.getState(ResilientEmailSender.BREVO));
+    }
+
+    @Test
+    public void testRejectedRequestIsNotRetriedOrFallenBack() {
+        faults.add(400);
+
+        BrevoApiException error = assertThrows(BrevoApiException.class,
+                () -> sender.send(email("bad@example.com"), null));
+        assertTrue(error.isPermanent());
+        assertEquals(1, brevoRequests.get());
+        verifyNoInteractions(smtpEmailClient);
+        assertEquals(EmailCircuitBreaker.State.CLOSED, sender.getState(ResilientEmailSender.BREVO));
+    }
+
+    @Test
+    public void testBulkheadSendsOverflowToSmtp() throws Exception {
+        latencyMs = 300;
+        CountDownLatch smtpCalled = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            smtpCalled.countDown();
+            return null;
+        }).when(smtpEmailClient).send(any(), any());
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = callers.submit(() -> sender.send(email("a@example.com"), null));
+            Thread.sleep(50); // let the first call take Brevo's only slot
+            Future<String> second = callers.submit(() -> sender.send(email("b@example.com"), null));
+
+            assertEquals(ResilientEmailSender.SMTP, second.get(5, TimeUnit.SECONDS));
+            assertEquals(ResilientEmailSender.BREVO, first.get(5, TimeUnit.SECONDS));
+            assertTrue(smtpCalled.await(1, TimeUnit.SECONDS));
+            assertEquals(1.0, meterRegistry.get("email.provider.calls").tag("provider", ResilientEmailSender.BREVO)
+                    .tag("outcome", "rejected").counter().count());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEverythingUnavailableDoesNotCountAsAnAttempt() throws Exception {
+        down = true;
+        doThrow(new IOException("SMTP down")).when(smtpEmailClient).send(any(), any());
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> sender.send(email("a@example.com"), null));
+        }
+
+        // Both circuits are open now, so nothing is even tried
+        ProviderUnavailableException error = assertThrows(ProviderUnavailableException.class,
+                () -> sender.send(email("a@example.com"), null));
+        assertTrue(error.getRetryAfterMillis() > 0);
+        assertEquals(EmailCircuitBreaker.State.OPEN, sender.getState(ResilientEmailSender.SMTP));
+        assertEquals(0.0, meterRegistry.get("email.provider.fallbacks").counter().count());
+    }
+}
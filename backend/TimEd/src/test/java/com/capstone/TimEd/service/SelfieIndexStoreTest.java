@@ -0,0 +1,65 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.SelfieIndexEntry;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Both selfie index stores must keep the newest upload when finalize notifications arrive out of order.
+ */
+public class SelfieIndexStoreTest {
+
+    private SelfieIndexEntry entry(String objectName, long updatedAt) {
+        return new SelfieIndexEntry("user1", "event1", objectName, "https://example.com/" + objectName, updatedAt);
+    }
+
+    @Test
+    public void testInMemoryStoreKeepsNewestEntry() {
+        InMemorySelfieIndexStore store = new InMemorySelfieIndexStore();
+        store.put(entry("new.jpg", 2_000L));
+        store.put(entry("old.jpg", 1_000L));
+
+        assertEquals("new.jpg", store.get("user1", "event1").getObjectName());
+        assertNull(store.get("user2", "event1"));
+
+        store.put(entry("newer.jpg", 3_000L));
+        assertEquals("newer.jpg", store.get("user1", "event1").getObjectName());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFirestoreStoreSkipsOlderEntry() throws Exception {
+        Firestore firestore = mock(Firestore.class);
+        CollectionReference collection = mock(CollectionReference.class);
+        DocumentReference entryRef = mock(DocumentReference.class);
+        when(firestore.collection("selfieIndex")).thenReturn(collection);
+        when(collection.document("user1_event1")).thenReturn(entryRef);
+
+        DocumentSnapshot existing = mock(DocumentSnapshot.class);
+        when(existing.exists()).thenReturn(true);
+        when(existing.getLong("updatedAt")).thenReturn(2_000L);
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.get(entryRef)).thenReturn(ApiFutures.immediateFuture(existing));
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation ->
+                ApiFutures.immediateFuture(
+                        invocation.<Transaction.Function<Object>>getArgument(0).updateCallback(transaction)));
+
+        FirestoreSelfieIndexStore store = new FirestoreSelfieIndexStore(firestore);
+        store.put(entry("old.jpg", 1_000L));
+        verify(transaction, never()).set(any(DocumentReference.class), any());
+
+        SelfieIndexEntry newer = entry("new.jpg", 3_000L);
+        store.put(newer);
+        verify(transaction).set(eq(entryRef), eq(newer));
+    }
+}
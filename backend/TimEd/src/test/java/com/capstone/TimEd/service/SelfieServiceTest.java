@@ -0,0 +1,66 @@
+package com.capstone.TimEd.service;
+
+import com.capstone.TimEd.model.SelfieIndexEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SelfieServiceTest {
+
+    private InMemorySelfieIndexStore selfieIndexStore;
+    private SelfieService selfieService;
+
+    @BeforeEach
+    public void setUp() {
+        selfieIndexStore = new InMemorySelfieIndexStore();
+        selfieService = new SelfieService(null, selfieIndexStore);
+    }
+
+    @Test
+    public void testHookIsClosedWithoutAToken() {
+        ReflectionTestUtils.setField(selfieService, "hookToken", "");
+
+        assertFalse(selfieService.isHookAuthorized(null));
+        assertFalse(selfieService.isHookAuthorized(""));
+        assertFalse(selfieService.isHookAuthorized("anything"));
+    }
+
+    @Test
+    public void testHookRequiresTheConfiguredToken() {
+        ReflectionTestUtils.setField(selfieService, "hookToken", "s3cret");
+
+        assertTrue(selfieService.isHookAuthorized("s3cret"));
+        assertFalse(selfieService.isHookAuthorized("s3cre"));
+        assertFalse(selfieService.isHookAuthorized(null));
+    }
+
+    @Test
+    public void testFinalizedSelfieIsIndexedWithDownloadToken() throws Exception {
+        assertTrue(selfieService.indexObject("event_selfies/user1/selfie_event_event1_1718000000.jpg",
+                Map.of("firebaseStorageDownloadTokens", "tok1,tok2"), 1_000L));
+
+        SelfieIndexEntry entry = selfieIndexStore.get("user1", "event1");
+        assertNotNull(entry);
+        assertEquals("event_selfies/user1/selfie_event_event1_1718000000.jpg", entry.getObjectName());
+        assertTrue(entry.getUrl().endsWith("&token=tok1"));
+    }
+
+    @Test
+    public void testOtherObjectsAreIgnored() throws Exception {
+        assertFalse(selfieService.indexObject("profile_pictures/user1.jpg", Map.of(), 1_000L));
+        assertFalse(selfieService.indexObject("event_selfies/user1/avatar.jpg", Map.of(), 1_000L));
+        assertFalse(selfieService.indexObject(null, Map.of(), 1_000L));
+    }
+
+    @Test
+    public void testParseObjectName() {
+        assertArrayEquals(new String[] { "user1", "event1" },
+                SelfieService.parseObjectName("event_selfies/user1/manual_selfie_event1.jpg"));
+        assertNull(SelfieService.parseObjectName("event_selfies/user1/nested/selfie_event_event1.jpg"));
+        assertNull(SelfieService.parseObjectName("event_selfies//selfie_event_event1.jpg"));
+    }
+}
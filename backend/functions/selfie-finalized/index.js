@@ -0,0 +1,27 @@
+// Storage-finalize trigger for the TimEd selfie index.
+// Forwards each new object under event_selfies/ to POST /api/attendance/selfies/finalized.
+
+const functions = require('@google-cloud/functions-framework');
+
+const HOOK_URL = process.env.HOOK_URL;
+const HOOK_TOKEN = process.env.SELFIE_HOOK_TOKEN;
+
+functions.cloudEvent('selfieFinalized', async (cloudEvent) => {
+  const object = cloudEvent.data;
+  if (!object || !object.name || !object.name.startsWith('event_selfies/')) {
+    return;
+  }
+  if (!HOOK_URL || !HOOK_TOKEN) {
+    throw new Error('HOOK_URL and SELFIE_HOOK_TOKEN must be set');
+  }
+
+  const response = await fetch(HOOK_URL, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json', 'X-Hook-Token': HOOK_TOKEN },
+    body: JSON.stringify({ name: object.name, metadata: object.metadata || {}, updated: object.updated }),
+  });
+  if (!response.ok) {
+    // Throwing lets the trigger's retry policy redeliver the event
+    throw new Error(`Selfie hook returned ${response.status}: ${await response.text()}`);
+  }
+});
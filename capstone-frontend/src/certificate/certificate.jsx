@@ -613,25 +613,7 @@ export default function Certificate() {
         });
       }
       
-      // Make sure we have all certificate images
-      for (const cert of filteredCertificates) {
-        // If we have an eventId but images are missing, try to fetch them separately
-        if (cert.eventId && (!cert.backgroundImage || !cert.logoImage || !cert.watermarkImage)) {
-          try {
-            const detailResponse = await axios.get(`https://timed-utd9.onrender.com/api/certificates/getByEventId/${cert.eventId}`);
-            if (detailResponse.data) {
-              // Merge any image data that might be available in the detailed response
-              if (detailResponse.data.backgroundImage) cert.backgroundImage = detailResponse.data.backgroundImage;
-              if (detailResponse.data.logoImage) cert.logoImage = detailResponse.data.logoImage;
-              if (detailResponse.data.watermarkImage) cert.watermarkImage = detailResponse.data.watermarkImage;
-              if (detailResponse.data.signatureImages) cert.signatureImages = detailResponse.data.signatureImages;
-            }
-          } catch (detailError) {
-            console.log(`[DEBUG] Could not fetch detailed certificate for event ID ${cert.eventId}`);
-          }
-        }
-      }
-      
+      // Stored images are not in the list; thumbnails load them by reference
       setCertificates(filteredCertificates);
     } catch (error) {
       console.error('Error fetching certificates:', error);
@@ -1127,8 +1109,18 @@ export default function Certificate() {
     setActiveTab(newValue);
   };
 
+  // Inline base64 from older documents, otherwise the stored image by reference (cached by the browser)
+  const thumbnailImageSrc = (inlineImage, imageRef) => {
+    if (inlineImage) return `data:image/png;base64,${inlineImage}`;
+    if (imageRef) return `https://timed-utd9.onrender.com/api/certificates/images/${imageRef}`;
+    return null;
+  };
+
   // Render certificate thumbnail
   const renderCertificateThumbnail = (certificate) => {
+    const backgroundSrc = thumbnailImageSrc(certificate.backgroundImage, certificate.backgroundImageRef);
+    const logoSrc = thumbnailImageSrc(certificate.logoImage, certificate.logoImageRef);
+    const watermarkSrc = thumbnailImageSrc(certificate.watermarkImage, certificate.watermarkImageRef);
     return (
       <Box 
         sx={{
@@ -1149,10 +1141,11 @@ export default function Certificate() {
         }}
       >
         {/* Background Image */}
-        {certificate.backgroundImage && (
+        {backgroundSrc && (
           <Box
             component="img"
-            src={`data:image/png;base64,${certificate.backgroundImage}`}
+            src={backgroundSrc}
+            loading="lazy"
             sx={{
               position: 'absolute',
               top: 0,
@@ -1167,10 +1160,11 @@ export default function Certificate() {
         )}
         
         {/* Logo */}
-        {certificate.logoImage && (
+        {logoSrc && (
           <Box
             component="img"
-            src={`data:image/png;base64,${certificate.logoImage}`}
+            src={logoSrc}
+            loading="lazy"
             sx={{
               position: 'absolute',
               width: certificate.logoWidth || 60,
@@ -1200,10 +1194,11 @@ export default function Certificate() {
         )}
 
         {/* Watermark */}
-        {certificate.watermarkImage && (
+        {watermarkSrc && (
           <Box
             component="img"
-            src={`data:image/png;base64,${certificate.watermarkImage}`}
+            src={watermarkSrc}
+            loading="lazy"
             sx={{
               position: 'absolute',
               top: '50%',